@@ -76,6 +76,10 @@ public final class Log {
 
 	private static List<Log> queuedLogs = new ArrayList<Log>(128);
 
+	private static volatile LogAppender appender;
+
+	private static boolean flushHookInstalled;
+
 	private final Type type;
 
 	private final StackTraceElement caller;
@@ -95,23 +99,20 @@ public final class Log {
 		time = System.currentTimeMillis();
 		switch (type) {
 		case Error:
-			if (MainFrame.hasGUI()) {
-				MainFrame.the().addLog(this);
-				ErrorDialog.show(this);
-			} else if (quiStatusKnown)
-				System.err.println(toString()); // CS_IGNORE
+			if (MainFrame.hasGUI() || quiStatusKnown)
+				append(this);
 			else
 				queuedLogs.add(this);
 			break;
 		case ConsoleOutput:
 			System.out.println(msg); // CS_IGNORE
 			if (MainFrame.hasGUI())
-				MainFrame.the().addLog(this);
+				append(this);
 			else if (!quiStatusKnown) queuedLogs.add(this);
 			break;
 		case ConsoleInput:
 			if (MainFrame.hasGUI())
-				MainFrame.the().addLog(this);
+				append(this);
 			else if (!quiStatusKnown) queuedLogs.add(this);
 			break;
 		default:
@@ -119,16 +120,28 @@ public final class Log {
 				// we have to queue it for later output, because
 				// we currently don't now, if we really have to output this log
 				queuedLogs.add(this);
-			else if (MainFrame.hasGUI())
-				MainFrame.the().addLog(this);
-			else if (quiStatusKnown)
-				System.err.println(toString()); // CS_IGNORE
+			else if (MainFrame.hasGUI() || quiStatusKnown)
+				append(this);
 			else
 				queuedLogs.add(this);
 			break;
 		}
 	}
 
+	/**
+	 * Sends this log entry to the GUI's log, if any, or to the standard error
+	 * otherwise.<br>
+	 * Called from the {@link LogAppender}'s thread if logging is
+	 * asynchronous.
+	 */
+	void publish() {
+		if (MainFrame.hasGUI()) {
+			MainFrame.the().addLog(this);
+			if (type == Type.Error) ErrorDialog.show(this);
+		} else if (type != Type.ConsoleOutput && type != Type.ConsoleInput)
+			System.err.println(toString()); // CS_IGNORE
+	}
+
 	/**
 	 * @return the {@link Type} of this log entry.
 	 */
@@ -369,6 +382,91 @@ public final class Log {
 		return sb.toString();
 	}
 
+	private static void append(final Log log) {
+		final LogAppender app = getAppender();
+		if (app == null)
+			log.publish();
+		else
+			app.append(log);
+	}
+
+	private static LogAppender getAppender() {
+		LogAppender app = appender;
+		if (app == null && LogConfig.CFG_ASYNC.getContent()) {
+			configureAppender();
+			app = appender;
+		}
+		return app;
+	}
+
+	/**
+	 * Creates, replaces or stops the {@link LogAppender} according to the
+	 * current configuration in {@link LogConfig}.
+	 */
+	static synchronized void configureAppender() {
+		final LogAppender old = appender;
+		if (!LogConfig.CFG_ASYNC.getContent()) {
+			appender = null;
+			if (old != null) old.close();
+			return;
+		}
+		final int capacity = LogConfig.CFG_QUEUE_SIZE.getContent();
+		final LogAppender.Overflow overflow = LogConfig.CFG_QUEUE_OVERFLOW
+				.getEnum();
+		if (old != null && old.getCapacity() == capacity
+				&& old.getOverflow() == overflow) return;
+		appender = new LogAppender(capacity, overflow);
+		if (old != null) old.close();
+		if (!flushHookInstalled) {
+			// don't lose messages still waiting if the application exits
+			flushHookInstalled = true;
+			Runtime.getRuntime().addShutdownHook(
+					new Thread("Log-Appender-Flush") {
+						@Override
+						public void run() {
+							flush();
+						}
+					});
+		}
+	}
+
+	/**
+	 * Waits until all log messages created so far have been sent to the
+	 * GUI's log or the standard error.
+	 */
+	public static void flush() {
+		final LogAppender app = appender;
+		if (app != null) app.flush();
+	}
+
+	/**
+	 * @return number of log messages which are currently waiting for being
+	 *         sent to the GUI's log or the standard error
+	 */
+	public static int getQueueDepth() {
+		final LogAppender app = appender;
+		return app == null ? 0 : app.getQueueDepth();
+	}
+
+	/**
+	 * @return highest number of log messages which have been waiting at the
+	 *         same time for being sent to the GUI's log or the standard error
+	 */
+	public static int getMaxQueueDepth() {
+		final LogAppender app = appender;
+		return app == null ? 0 : app.getMaxQueueDepth();
+	}
+
+	/**
+	 * @return number of log messages which have been dropped because too
+	 *         many messages have been waiting for being sent to the GUI's log
+	 *         or the standard error
+	 */
+	public static long getDroppedCount() {
+		final LogAppender app = appender;
+		return app == null ? 0 : app.getDroppedCount();
+	}
+
 	private static StackTraceElement getCallerSTE(final int stepsBack) {
 		final StackTraceElement[] st = new Throwable().getStackTrace();
 		return st.length < stepsBack ? st[st.length - 1] : st[stepsBack];
@@ -414,6 +512,12 @@ public final class Log {
 	/**
 	 * Creates a new message of {@link Type#Detail} which will be printed to
 	 * error output or send to the GUI.
+	 * <p>
+	 * Returns immediately without capturing the caller if detailed messages
+	 * are not logged. Code which is executed for every single data block
+	 * should additionally check {@link #canLogDetail()} before, so that
+	 * neither the array for the arguments is created nor primitive arguments
+	 * are boxed.
 	 * 
 	 * @param msg
 	 *            the message - interpreted as a format string (like in
@@ -424,7 +528,8 @@ public final class Log {
 	 *            be zero)
 	 */
 	public static void detail(final String msg, final Object... args) {
-		msg(Type.Detail, null, getCallerSTE(2), msg, null, args);
+		if (canLog(Type.Detail))
+			msg(Type.Detail, null, getCallerSTE(2), msg, null, args);
 	}
 
 	/**
@@ -440,7 +545,8 @@ public final class Log {
 	 *            be zero)
 	 */
 	public static void info(final String msg, final Object... args) {
-		msg(Type.Info, null, getCallerSTE(2), msg, null, args);
+		if (canLog(Type.Info))
+			msg(Type.Info, null, getCallerSTE(2), msg, null, args);
 	}
 
 	/**
@@ -456,7 +562,8 @@ public final class Log {
 	 *            be zero)
 	 */
 	public static void warn(final String msg, final Object... args) {
-		msg(Type.Warn, null, getCallerSTE(2), msg, null, args);
+		if (canLog(Type.Warn))
+			msg(Type.Warn, null, getCallerSTE(2), msg, null, args);
 	}
 
 	/**
@@ -472,7 +579,8 @@ public final class Log {
 	 *            be zero)
 	 */
 	public static void error(final String msg, final Object... args) {
-		msg(Type.Error, null, getCallerSTE(2), msg, null, args);
+		if (canLog(Type.Error))
+			msg(Type.Error, null, getCallerSTE(2), msg, null, args);
 	}
 
 	/**
@@ -564,6 +672,7 @@ public final class Log {
 	 */
 	public static void error(final Throwable throwable, final String msg,
 			final Object... args) {
+		if (!canLog(Type.Error)) return;
 		final StringBuilder sb = new StringBuilder();
 		if (!msg.isEmpty()) {
 			sb.append(args.length == 0 ? msg : String.format(msg, args));
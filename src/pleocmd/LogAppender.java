@@ -0,0 +1,248 @@
+// This file is part of PleoCommand:
+// Interactively control Pleo with psychobiological parameters
+//
+// Copyright (C) 2010 Oliver Hoffmann - Hoffmann_Oliver@gmx.de
+//
+// This program is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License
+// as published by the Free Software Foundation; either version 2
+// of the License, or (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Boston, USA.
+
+package pleocmd;
+
+/**
+ * Passes {@link Log} messages from the threads which created them to the GUI
+ * or the standard error via a preallocated ring-buffer which is drained in
+ * batches by one background thread, so a thread which logs never has to wait
+ * for any I/O.
+ * 
+ * @author oliver
+ */
+final class LogAppender implements Runnable {
+
+	/**
+	 * Specifies what happens if a {@link Log} is appended while the
+	 * ring-buffer is full.
+	 * 
+	 * @author oliver
+	 */
+	enum Overflow {
+		/**
+		 * The logging thread waits until the background thread has made
+		 * room.
+		 */
+		Block,
+		/**
+		 * {@link Log.Type#Detail} messages are dropped (the new one or the
+		 * oldest one in the ring-buffer). The logging thread only waits if
+		 * neither the new nor any queued message is a detailed one.
+		 */
+		DropDetailFirst,
+		/**
+		 * The new message is dropped.
+		 */
+		DropNewest
+	}
+
+	private static final int BATCH_SIZE = 64;
+
+	private final Log[] ring;
+
+	private final Log[] batch = new Log[BATCH_SIZE];
+
+	private final Overflow overflow;
+
+	private final Thread thread;
+
+	private int head;
+
+	private int size;
+
+	private int maxSize;
+
+	private long dropped;
+
+	private boolean publishing;
+
+	private boolean closed;
+
+	LogAppender(final int capacity, final Overflow overflow) {
+		ring = new Log[capacity];
+		this.overflow = overflow;
+		thread = new Thread(this, "Log-Appender");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	int getCapacity() {
+		return ring.length;
+	}
+
+	Overflow getOverflow() {
+		return overflow;
+	}
+
+	/**
+	 * Queues the {@link Log} for being published by the background thread.
+	 * 
+	 * @param log
+	 *            the {@link Log} to publish
+	 */
+	void append(final Log log) {
+		// the background thread must never wait for itself
+		if (Thread.currentThread() == thread) {
+			log.publish();
+			return;
+		}
+		synchronized (this) {
+			while (size == ring.length && !closed) {
+				if (overflow == Overflow.DropNewest
+						|| overflow == Overflow.DropDetailFirst
+						&& log.getType() == Log.Type.Detail) {
+					++dropped;
+					return;
+				}
+				if (overflow == Overflow.DropDetailFirst && dropOldestDetail())
+					break;
+				try {
+					wait();
+				} catch (final InterruptedException e) {
+					Thread.currentThread().interrupt();
+					++dropped;
+					return;
+				}
+			}
+			if (!closed) {
+				ring[(head + size) % ring.length] = log;
+				maxSize = Math.max(maxSize, ++size);
+				if (size == 1) notifyAll();
+				return;
+			}
+		}
+		log.publish();
+	}
+
+	/**
+	 * Removes the oldest {@link Log.Type#Detail} message from the
+	 * ring-buffer.
+	 * 
+	 * @return true if a message has been removed
+	 */
+	private boolean dropOldestDetail() {
+		for (int i = 0; i < size; ++i) {
+			final int idx = (head + i) % ring.length;
+			if (ring[idx].getType() == Log.Type.Detail) {
+				// close the gap by moving all older messages one up
+				for (int j = idx; j != head; j = (j - 1 + ring.length)
+						% ring.length)
+					ring[j] = ring[(j - 1 + ring.length) % ring.length];
+				ring[head] = null;
+				head = (head + 1) % ring.length;
+				--size;
+				++dropped;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public void run() {
+		while (true) {
+			final int cnt;
+			synchronized (this) {
+				publishing = false;
+				notifyAll();
+				while (size == 0 && !closed)
+					try {
+						wait();
+					} catch (final InterruptedException e) {
+						// ignore, only close() stops this thread
+					}
+				if (size == 0) return;
+				cnt = Math.min(size, BATCH_SIZE);
+				for (int i = 0; i < cnt; ++i) {
+					batch[i] = ring[head];
+					ring[head] = null;
+					head = (head + 1) % ring.length;
+				}
+				size -= cnt;
+				publishing = true;
+				// wake up threads waiting for room
+				notifyAll();
+			}
+			for (int i = 0; i < cnt; ++i) {
+				try {
+					batch[i].publish();
+				} catch (final Throwable t) { // CS_IGNORE must not die here
+					t.printStackTrace(); // CS_IGNORE
+				}
+				batch[i] = null;
+			}
+		}
+	}
+
+	/**
+	 * Waits until all {@link Log}s appended so far have been published.
+	 */
+	synchronized void flush() {
+		if (Thread.currentThread() == thread) return;
+		while ((size > 0 || publishing) && thread.isAlive())
+			try {
+				wait();
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+	}
+
+	/**
+	 * Publishes all remaining {@link Log}s and stops the background thread.
+	 * {@link Log}s appended afterwards will be published directly.
+	 */
+	void close() {
+		synchronized (this) {
+			closed = true;
+			notifyAll();
+		}
+		if (Thread.currentThread() != thread)
+			try {
+				thread.join();
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+	}
+
+	/**
+	 * @return number of {@link Log}s currently waiting in the ring-buffer
+	 */
+	synchronized int getQueueDepth() {
+		return size;
+	}
+
+	/**
+	 * @return highest number of {@link Log}s which have been waiting in the
+	 *         ring-buffer at the same time
+	 */
+	synchronized int getMaxQueueDepth() {
+		return maxSize;
+	}
+
+	/**
+	 * @return number of {@link Log}s which have been dropped because the
+	 *         ring-buffer was full
+	 */
+	synchronized long getDroppedCount() {
+		return dropped;
+	}
+
+}
@@ -22,7 +22,9 @@ package pleocmd;
 import java.text.SimpleDateFormat;
 import java.util.List;
 
+import pleocmd.cfg.ConfigBoolean;
 import pleocmd.cfg.ConfigEnum;
+import pleocmd.cfg.ConfigInt;
 import pleocmd.cfg.ConfigString;
 import pleocmd.cfg.Configuration;
 import pleocmd.cfg.ConfigurationInterface;
@@ -44,6 +46,15 @@ final class LogConfig implements ConfigurationInterface {
 	public static ConfigString CFG_EXPORT_COLUMNS = new ConfigString(
 			"Columns To Export", "TYSM");
 
+	public static final ConfigBoolean CFG_ASYNC = new ConfigBoolean(
+			"Asynchronous Output", true);
+
+	public static final ConfigInt CFG_QUEUE_SIZE = new ConfigInt(
+			"Queue Size", 4096, 16, 1000000);
+
+	public static final ConfigEnum<LogAppender.Overflow> CFG_QUEUE_OVERFLOW = new ConfigEnum<LogAppender.Overflow>(
+			"Queue Overflow", LogAppender.Overflow.DropDetailFirst);
+
 	static {
 		// must be *after* declaration of all static fields !!!
 		new LogConfig();
@@ -61,7 +72,8 @@ final class LogConfig implements ConfigurationInterface {
 	@Override
 	public Group getSkeleton(final String groupName) {
 		return new Group(groupName).add(CFG_TIMEFORMAT).add(CFG_MIN_LOG_TYPE)
-				.add(CFG_EXPORT_COLUMNS);
+				.add(CFG_EXPORT_COLUMNS).add(CFG_ASYNC).add(CFG_QUEUE_SIZE)
+				.add(CFG_QUEUE_OVERFLOW);
 	}
 
 	@Override
@@ -79,6 +91,7 @@ final class LogConfig implements ConfigurationInterface {
 		DATE_FORMATTER.applyPattern(CFG_TIMEFORMAT.getContent());
 		if (MainFrame.hasGUI()) MainFrame.the().updateState();
 		Log.setMinLogType(Log.getMinLogType());
+		Log.configureAppender();
 	}
 
 	@Override
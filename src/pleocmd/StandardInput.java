@@ -30,7 +30,10 @@ import pleocmd.pipe.data.DataQueue;
  * In console mode, the standard input gets simply wrapped by this class.<br>
  * In GUI mode, data coming from the GUI's {@link javax.swing.JTextField} will
  * be cached inside a ring buffer of this {@link StandardInput} to later be read
- * by {@link #read()}.
+ * by {@link #read()}.<br>
+ * Readers waiting for data are woken up by the writer as soon as new data has
+ * been put into the ring buffer, so there is no polling delay. Whole ranges of
+ * bytes are copied in and out of the ring buffer at once.
  * 
  * @author oliver
  * @see DataQueue
@@ -56,6 +59,11 @@ public final class StandardInput extends InputStream {
 	 */
 	private int writePos;
 
+	/**
+	 * The number of bytes in {@link #buffer} which have not been read yet.
+	 */
+	private int count;
+
 	/**
 	 * Only true if the cache has been closed, i.e. the remaining data in
 	 * {@link #buffer} can still be read, but no new data can be put into the
@@ -64,6 +72,12 @@ public final class StandardInput extends InputStream {
 	 */
 	private boolean closed;
 
+	/**
+	 * Incremented on every {@link #resetCache()}, so that waiting in
+	 * {@link #available()} can be ended by a reset.
+	 */
+	private int resetCount;
+
 	private StandardInput() {
 		stdin = this;
 		resetCache();
@@ -94,8 +108,7 @@ public final class StandardInput extends InputStream {
 	 * console mode.<br>
 	 * The remaining {@link #available()} data in the ring buffer can still be
 	 * {@link #read()} but no new data can be {@link #put(byte)} into it. After
-	 * no more data is {@link #available()} {@link #read()} throws an
-	 * {@link IOException}.<br>
+	 * no more data is {@link #available()} {@link #read()} returns -1.<br>
 	 * Has no effect if the {@link StandardInput} is already closed.
 	 */
 	@Override
@@ -103,6 +116,7 @@ public final class StandardInput extends InputStream {
 		if (MainFrame.hasGUI()) synchronized (this) {
 			Log.detail("Sending close to ring-buffer '%s'", this);
 			closed = true;
+			notifyAll();
 		}
 		EventQueue.invokeLater(new Runnable() {
 			@Override
@@ -123,7 +137,10 @@ public final class StandardInput extends InputStream {
 			buffer = new byte[RB_DEFAULT];
 			readPos = 0;
 			writePos = 0;
+			count = 0;
 			closed = false;
+			++resetCount;
+			notifyAll();
 			Log.detail("Reset ring-buffer '%s'", this);
 		}
 		EventQueue.invokeLater(new Runnable() {
@@ -144,29 +161,14 @@ public final class StandardInput extends InputStream {
 	 */
 	@Override
 	public int available() throws IOException {
-		if (MainFrame.hasGUI()) while (true) {
-			// check if read catches up write?
-			int avail;
-			synchronized (this) {
-				avail = (writePos - readPos) % buffer.length;
-			}
-			// Java's mod doesn't work as expected with negative numbers
-			if (avail < 0) avail += buffer.length;
-			if (avail > 0) {
-				Log.detail("%d bytes available in '%s'", avail, this);
-				return avail;
-			}
-			synchronized (this) {
-				if (closed)
-				// no need to wait any longer - there can never be any new data
-					return 0;
-			}
-			// block until data available
-			try {
-				Thread.sleep(30);
-			} catch (final InterruptedException e) {
-				throw new IOException("Interrupted while waiting for input", e);
-			}
+		if (MainFrame.hasGUI()) synchronized (this) {
+			final int resets = resetCount;
+			// no need to wait if closed - there can never be any new data
+			while (count == 0 && !closed && resets == resetCount)
+				waitForData();
+			if (Log.canLogDetail())
+				Log.detail("%d bytes available in '%s'", count, this);
+			return count;
 		}
 		return System.in.available(); // CS_IGNORE
 	}
@@ -176,35 +178,71 @@ public final class StandardInput extends InputStream {
 	 * Blocks until the byte is available.<br>
 	 * In GUI mode, it should <b>not</b> be called from the GUI thread.
 	 * 
-	 * @return the next byte
+	 * @return the next byte or -1 if the stream has been closed
 	 */
 	@Override
 	public int read() throws IOException {
-		if (MainFrame.hasGUI()) {
-			while (true) {
-				// check if read catches up write?
-				synchronized (this) {
-					if (readPos != writePos) break;
-					if (closed) return -1;
-				}
-				// block until data available
-				try {
-					Thread.sleep(30);
-				} catch (final InterruptedException e) {
-					throw new IOException(
-							"Interrupted while waiting for input", e);
-				}
-			}
-			synchronized (this) {
-				final int b = buffer[readPos] & 0xFF;
-				Log.detail("Read from %03d 0x%02X in '%s'", readPos, b, this);
-				readPos = (readPos + 1) % buffer.length;
-				return b;
+		if (MainFrame.hasGUI()) synchronized (this) {
+			while (count == 0) {
+				if (closed) return -1;
+				waitForData();
 			}
+			final int b = buffer[readPos] & 0xFF;
+			readPos = (readPos + 1) % buffer.length;
+			--count;
+			return b;
 		}
 		return System.in.read(); // CS_IGNORE
 	}
 
+	/**
+	 * Reads up to len bytes from the input stream or (in GUI mode) the ring
+	 * buffer.<br>
+	 * Blocks until at least one byte is available, but never waits for more
+	 * than that.<br>
+	 * In GUI mode, it should <b>not</b> be called from the GUI thread.
+	 * 
+	 * @param b
+	 *            the buffer receiving the bytes
+	 * @param off
+	 *            position of the first byte in b
+	 * @param len
+	 *            maximum number of bytes to read
+	 * @return number of bytes read or -1 if the stream has been closed
+	 */
+	@Override
+	public int read(final byte[] b, final int off, final int len)
+			throws IOException {
+		if (off < 0 || len < 0 || len > b.length - off)
+			throw new IndexOutOfBoundsException();
+		if (len == 0) return 0;
+		if (MainFrame.hasGUI()) synchronized (this) {
+			while (count == 0) {
+				if (closed) return -1;
+				waitForData();
+			}
+			final int cnt = Math.min(len, count);
+			final int first = Math.min(cnt, buffer.length - readPos);
+			System.arraycopy(buffer, readPos, b, off, first);
+			System.arraycopy(buffer, 0, b, off + first, cnt - first);
+			readPos = (readPos + cnt) % buffer.length;
+			count -= cnt;
+			if (Log.canLogDetail())
+				Log.detail("Read %d bytes from '%s'", cnt, this);
+			return cnt;
+		}
+		return System.in.read(b, off, len); // CS_IGNORE
+	}
+
+	private void waitForData() throws IOException {
+		assert Thread.holdsLock(this);
+		try {
+			wait();
+		} catch (final InterruptedException e) {
+			throw new IOException("Interrupted while waiting for input", e);
+		}
+	}
+
 	/**
 	 * Puts one byte into the ringbuffer in GUI mode, so it can be read by
 	 * {@link #read()}.<br>
@@ -215,26 +253,8 @@ public final class StandardInput extends InputStream {
 	 * @throws IOException
 	 *             if the stream has been closed
 	 */
-	public synchronized void put(final byte b) throws IOException {
-		assert MainFrame.hasGUI();
-		if (closed) throw new IOException("StandardInput is closed");
-		buffer[writePos] = b;
-		Log.detail("Put at %03d 0x%02X in '%s'", writePos, b, this);
-		writePos = (writePos + 1) % buffer.length;
-		// check if write catches up read?
-		if (writePos == readPos) {
-			// we need to increase our ring buffer:
-			// we "insert space" between the current write and
-			// read position so writePos stays the same while
-			// readPos moves.
-			final byte[] newbuf = new byte[buffer.length * 2];
-			readPos += newbuf.length - buffer.length;
-			System.arraycopy(buffer, 0, newbuf, 0, writePos);
-			System.arraycopy(buffer, writePos, newbuf, readPos, buffer.length
-					- writePos);
-			buffer = newbuf;
-			Log.detail("Increased from '%s'", this);
-		}
+	public void put(final byte b) throws IOException {
+		put(new byte[] { b }, 0, 1);
 	}
 
 	/**
@@ -245,17 +265,62 @@ public final class StandardInput extends InputStream {
 	 *            data to put into the ring buffer
 	 * @throws IOException
 	 *             if the stream has been closed
-	 * @see #put(byte)
+	 * @see #put(byte[], int, int)
 	 */
-	public synchronized void put(final byte[] bytes) throws IOException {
-		for (final byte b : bytes)
-			put(b);
+	public void put(final byte[] bytes) throws IOException {
+		put(bytes, 0, bytes.length);
+	}
+
+	/**
+	 * Puts a range of bytes into the ring buffer as an atomic operation and
+	 * wakes up all threads waiting for data.<br>
+	 * The ring buffer grows if the bytes don't fit into it.<br>
+	 * Should only be called in GUI mode.
+	 * 
+	 * @param bytes
+	 *            data to put into the ring buffer
+	 * @param off
+	 *            position of the first byte in bytes
+	 * @param len
+	 *            number of bytes to put into the ring buffer
+	 * @throws IOException
+	 *             if the stream has been closed
+	 */
+	public synchronized void put(final byte[] bytes, final int off,
+			final int len) throws IOException {
+		assert MainFrame.hasGUI();
+		if (off < 0 || len < 0 || len > bytes.length - off)
+			throw new IndexOutOfBoundsException();
+		if (closed) throw new IOException("StandardInput is closed");
+		if (count + len > buffer.length) {
+			// we need to increase our ring buffer:
+			// the unread bytes are moved to the beginning of the new one
+			int cap = buffer.length * 2;
+			while (cap < count + len)
+				cap *= 2;
+			final byte[] newbuf = new byte[cap];
+			final int first = Math.min(count, buffer.length - readPos);
+			System.arraycopy(buffer, readPos, newbuf, 0, first);
+			System.arraycopy(buffer, 0, newbuf, first, count - first);
+			buffer = newbuf;
+			readPos = 0;
+			writePos = count;
+			Log.detail("Increased to '%s'", this);
+		}
+		final int first = Math.min(len, buffer.length - writePos);
+		System.arraycopy(bytes, off, buffer, writePos, first);
+		System.arraycopy(bytes, off + first, buffer, 0, len - first);
+		writePos = (writePos + len) % buffer.length;
+		count += len;
+		if (Log.canLogDetail())
+			Log.detail("Put %d bytes in '%s'", len, this);
+		notifyAll();
 	}
 
 	@Override
 	public String toString() {
-		return String.format("cap: %d, read: %d, write: %d",
-				buffer == null ? -1 : buffer.length, readPos, writePos);
+		return String.format("cap: %d, read: %d, write: %d, count: %d",
+				buffer == null ? -1 : buffer.length, readPos, writePos, count);
 	}
 
 }
@@ -21,10 +21,14 @@ package pleocmd.itfc.gui.dse;
 
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.List;
 
 import javax.swing.JButton;
@@ -38,11 +42,15 @@ import pleocmd.cfg.Configuration;
 import pleocmd.cfg.ConfigurationInterface;
 import pleocmd.cfg.Group;
 import pleocmd.exc.ConfigurationException;
+import pleocmd.exc.FormatException;
 import pleocmd.itfc.gui.AutoDisposableWindow;
 import pleocmd.itfc.gui.HelpDialog;
 import pleocmd.itfc.gui.Layouter;
 import pleocmd.itfc.gui.Layouter.Button;
 import pleocmd.itfc.gui.MainFrame;
+import pleocmd.pipe.data.Data;
+import pleocmd.pipe.data.DataFileReader;
+import pleocmd.pipe.data.DataFileWriter;
 
 public final class DataFileBinaryDialog extends JDialog implements
 		ConfigurationInterface, AutoDisposableWindow {
@@ -193,11 +201,23 @@ public final class DataFileBinaryDialog extends JDialog implements
 			final byte[] buf = new byte[(int) stream.length()];
 			stream.seek(0);
 			stream.getDataInput().readFully(buf);
+			final List<Data> list = parseAll(buf);
 			final FileOutputStream out = new FileOutputStream(file);
-			try {
-				out.write(buf);
-			} finally {
-				out.close();
+			if (list == null)
+				try {
+					out.write(buf);
+				} finally {
+					out.close();
+				}
+			else {
+				final DataFileWriter writer = new DataFileWriter(
+						new BufferedOutputStream(out));
+				try {
+					for (final Data data : list)
+						writer.write(data);
+				} finally {
+					writer.close();
+				}
 			}
 			dsbPanel.resetModification();
 		} catch (final IOException e) {
@@ -205,10 +225,48 @@ public final class DataFileBinaryDialog extends JDialog implements
 		}
 	}
 
+	/**
+	 * Parses all {@link Data}s from the content of the HexTable.
+	 * 
+	 * @param buf
+	 *            content of the HexTable
+	 * @return list of all {@link Data}s or <b>null</b> if the content is not
+	 *         a valid sequence of {@link Data}s and therefore can only be
+	 *         written as it is, without an index
+	 */
+	private static List<Data> parseAll(final byte[] buf) {
+		final List<Data> list = new ArrayList<Data>();
+		final ByteBuffer bb = ByteBuffer.wrap(buf);
+		try {
+			while (bb.hasRemaining())
+				list.add(Data.createFromBinary(bb));
+		} catch (final IOException e) {
+			Log.warn("Writing file without index, as the Data at "
+					+ "position %d is incomplete: %s", bb.position(), e);
+			return null;
+		} catch (final FormatException e) {
+			Log.warn("Writing file without index, as the Data at "
+					+ "position %d is invalid: %s", bb.position(), e);
+			return null;
+		}
+		return list;
+	}
+
 	private void updateHexTableFromFile(final File file) {
 		Log.detail("Updating HexTable from file '%s'", file);
 		try {
-			if (file.exists()) {
+			if (DataFileReader.isIndexedFile(file)) {
+				final DataFileReader reader = new DataFileReader(file);
+				try {
+					final List<Long> blockStarts = new ArrayList<Long>();
+					final byte[] ba = reader.readAllFrames(blockStarts);
+					dsbPanel.setTableToStream(new RandomAccessArray(
+							new ByteArrayInputStream(ba), ba.length),
+							blockStarts);
+				} finally {
+					reader.close();
+				}
+			} else if (file.exists()) {
 				final FileInputStream in = new FileInputStream(file);
 				dsbPanel.setTableToStream(new RandomAccessArray(in, file
 						.length()));
@@ -217,6 +275,8 @@ public final class DataFileBinaryDialog extends JDialog implements
 				dsbPanel.setTableToStream(new RandomAccessArray(null, 0));
 		} catch (final IOException e) {
 			Log.error(e);
+		} catch (final FormatException e) {
+			Log.error(e);
 		}
 		dsbPanel.updateState();
 	}
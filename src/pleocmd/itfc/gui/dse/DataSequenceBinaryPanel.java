@@ -19,6 +19,8 @@
 
 package pleocmd.itfc.gui.dse;
 
+import java.util.Collection;
+
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 
@@ -56,6 +58,11 @@ public abstract class DataSequenceBinaryPanel extends JPanel {
 		table.getModel().setStream(stream);
 	}
 
+	public final void setTableToStream(final RandomAccess stream,
+			final Collection<Long> frameStarts) {
+		table.getModel().setStream(stream, frameStarts);
+	}
+
 	public final RandomAccess getTableStream() {
 		return table.getModel().getStream();
 	}
@@ -22,10 +22,14 @@ package pleocmd.itfc.gui.dse;
 import java.awt.Color;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map.Entry;
 import java.util.NavigableMap;
+import java.util.NavigableSet;
 import java.util.TreeMap;
+import java.util.TreeSet;
 
 import javax.swing.table.AbstractTableModel;
 
@@ -47,10 +51,17 @@ public abstract class HexTableModel extends AbstractTableModel {
 
 	private final NavigableMap<Long, Color[]> map;
 
+	/**
+	 * Positions at which a {@link Data} is known to start, even if the
+	 * {@link Data}s before it have not been parsed yet.
+	 */
+	private final NavigableSet<Long> knownStarts;
+
 	private boolean modified;
 
 	public HexTableModel() {
 		map = new TreeMap<Long, Color[]>();
+		knownStarts = new TreeSet<Long>();
 	}
 
 	public final void updateColumnCount(final int newColumnCount) {
@@ -72,7 +83,25 @@ public abstract class HexTableModel extends AbstractTableModel {
 	}
 
 	public final void setStream(final RandomAccess stream) {
+		setStream(stream, null);
+	}
+
+	/**
+	 * Sets a new stream which contains {@link Data}s in binary form.
+	 * 
+	 * @param stream
+	 *            the new stream - may be <b>null</b>
+	 * @param frameStarts
+	 *            positions in the stream at which a {@link Data} is known to
+	 *            start, like the block boundaries of an indexed file - may be
+	 *            <b>null</b>. Parsing may begin at any of them instead of at
+	 *            the start of the stream.
+	 */
+	public final void setStream(final RandomAccess stream,
+			final Collection<Long> frameStarts) {
 		map.clear();
+		knownStarts.clear();
+		if (frameStarts != null) knownStarts.addAll(frameStarts);
 		if (this.stream != null) try {
 			this.stream.close();
 		} catch (final IOException e) {
@@ -144,8 +173,10 @@ public abstract class HexTableModel extends AbstractTableModel {
 	}
 
 	private void parse(final long endPos) {
-		final long pos = map.isEmpty() ? 0 : map.lastKey()
-				+ map.lastEntry().getValue().length;
+		final Entry<Long, Color[]> prev = map.floorEntry(endPos);
+		long pos = prev == null ? 0 : prev.getKey() + prev.getValue().length;
+		final Long known = knownStarts.floor(endPos);
+		if (known != null && known > pos) pos = known;
 		try {
 			stream.seek(pos);
 			long startPos;
@@ -176,6 +207,8 @@ public abstract class HexTableModel extends AbstractTableModel {
 
 	private void update(final long pos) {
 		final Long startPos = map.floorKey(pos);
+		// the edit may have moved the beginning of all following Data
+		knownStarts.tailSet(startPos == null ? pos : startPos, false).clear();
 		if (startPos != null) {
 			final Iterator<Color[]> it = map.tailMap(startPos).values()
 					.iterator();
@@ -0,0 +1,397 @@
+// This file is part of PleoCommand:
+// Interactively control Pleo with psychobiological parameters
+//
+// Copyright (C) 2010 Oliver Hoffmann - Hoffmann_Oliver@gmx.de
+//
+// This program is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License
+// as published by the Free Software Foundation; either version 2
+// of the License, or (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Boston, USA.
+package pleocmd.pipe;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import pleocmd.Log;
+import pleocmd.pipe.cvt.Converter;
+import pleocmd.pipe.data.Data;
+import pleocmd.pipe.in.Input;
+import pleocmd.pipe.out.Output;
+
+/**
+ * Executes the {@link Converter}s of a {@link Pipe} on a pool of worker
+ * threads instead of the Input-Thread.
+ * <p>
+ * Every {@link Converter} becomes one {@link Stage} with a bounded queue of
+ * incoming {@link Data}s. A {@link Stage} is run by at most one worker at a
+ * time, so every {@link Converter} still sees its {@link Data}s one after
+ * the other and in the order in which its origin created them.<br>
+ * The Input-Thread blocks if the queue of a {@link Stage} directly connected
+ * to an {@link Input} is full. Workers never block on a full queue. Instead
+ * the {@link Stage} keeps its results and stops consuming until the
+ * downstream {@link Stage} has room again, so a slow {@link Converter}
+ * throttles the whole graph without dead-locking the pool.
+ * 
+ * @author oliver
+ */
+final class ConverterStages {
+
+	/**
+	 * Maximum number of {@link Data}s one {@link Stage} converts before it
+	 * gives its worker back to the pool.
+	 */
+	private static final int BATCH_SIZE = 32;
+
+	/**
+	 * Maximum number of milliseconds {@link #close()} waits for running
+	 * conversions to finish.
+	 */
+	private static final long CLOSE_TIMEOUT = 3000;
+
+	private final Pipe pipe;
+
+	private final Map<PipePart, Stage> stages = new HashMap<PipePart, Stage>();
+
+	private final ExecutorService workers;
+
+	/**
+	 * Number of {@link Data}s which are either waiting in one of the queues
+	 * or currently being converted.
+	 */
+	private final AtomicInteger inFlight = new AtomicInteger();
+
+	private volatile boolean closed;
+
+	/**
+	 * Creates a new stage for every {@link Converter} and starts the worker
+	 * pool.
+	 * 
+	 * @param pipe
+	 *            the {@link Pipe} whose {@link Converter}s will be executed
+	 * @param converters
+	 *            all {@link Converter}s which have been initialized
+	 * @param threads
+	 *            number of worker threads
+	 * @param capacity
+	 *            maximum number of {@link Data}s waiting for one
+	 *            {@link Converter}
+	 */
+	ConverterStages(final Pipe pipe, final List<Converter> converters,
+			final int threads, final int capacity) {
+		this.pipe = pipe;
+		for (final Converter cvt : converters)
+			stages.put(cvt, new Stage(cvt, capacity));
+		final AtomicInteger nr = new AtomicInteger();
+		workers = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			@Override
+			public Thread newThread(final Runnable r) {
+				final Thread thr = new Thread(r, "Pipe-Converter-Worker-"
+						+ nr.incrementAndGet());
+				thr.setDaemon(true);
+				return thr;
+			}
+		});
+		Log.detail("Created %d converter stages on %d worker(s)",
+				stages.size(), threads);
+	}
+
+	/**
+	 * Passes a {@link Data} freshly read from an {@link Input} to all
+	 * connected {@link Converter}s and {@link Output}s.<br>
+	 * Blocks while the queue of a connected {@link Converter} is full.
+	 * 
+	 * @param data
+	 *            {@link Data} to convert
+	 * @throws IOException
+	 *             if the {@link Pipe}'s queue has been closed
+	 * @throws InterruptedException
+	 *             if waiting for a full queue has been interrupted
+	 */
+	void submit(final Data data) throws IOException, InterruptedException {
+		final PipeRoute route = data.getOrigin().getRoute();
+		for (final Converter cvt : route.getConverters()) {
+			final Stage stage = stages.get(cvt);
+			if (stage != null) stage.put(data.retain());
+		}
+		if (route.isOutputConnected()) pipe.putIntoOutputQueue(data);
+	}
+
+	/**
+	 * Blocks until all {@link Data}s which have been passed to
+	 * {@link #submit(Data)} have been converted and passed on to the
+	 * {@link Pipe}'s queue or until the stages have been {@link #close()}d.
+	 * 
+	 * @throws InterruptedException
+	 *             if waiting has been interrupted
+	 */
+	void awaitDrained() throws InterruptedException {
+		synchronized (inFlight) {
+			while (inFlight.get() > 0 && !closed)
+				inFlight.wait();
+		}
+	}
+
+	/**
+	 * Stops all workers. Already running conversions will be finished, all
+	 * waiting {@link Data}s will be discarded and released.
+	 */
+	void close() {
+		closed = true;
+		workers.shutdownNow();
+		boolean terminated = false;
+		try {
+			terminated = workers.awaitTermination(CLOSE_TIMEOUT,
+					TimeUnit.MILLISECONDS);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		for (final Stage stage : stages.values()) {
+			stage.discardInbox();
+			// the outbox belongs to the worker as long as it's running
+			if (terminated) stage.discardOutbox();
+		}
+		if (!terminated)
+			Log.warn("Converter workers did not finish within %d ms",
+					CLOSE_TIMEOUT);
+		synchronized (inFlight) {
+			inFlight.notifyAll();
+		}
+	}
+
+	private void incInFlight() {
+		inFlight.incrementAndGet();
+	}
+
+	private void decInFlight() {
+		if (inFlight.decrementAndGet() == 0) synchronized (inFlight) {
+			inFlight.notifyAll();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d stage(s), %d data in flight", stages.size(),
+				inFlight.get());
+	}
+
+	/**
+	 * One {@link Data} which has been converted but not yet passed on.<br>
+	 * Owns one reference to the {@link Data}.
+	 */
+	private static final class Delivery {
+
+		/**
+		 * The {@link Stage} to pass the {@link Data} to or <b>null</b> for
+		 * the {@link Pipe}'s queue.
+		 */
+		private final Stage target;
+
+		private final Data data;
+
+		Delivery(final Stage target, final Data data) {
+			this.target = target;
+			this.data = data;
+		}
+
+	}
+
+	/**
+	 * The execution unit for one {@link Converter}.
+	 */
+	private final class Stage implements Runnable {
+
+		private final Converter converter;
+
+		private final BlockingQueue<Data> inbox;
+
+		/**
+		 * Results of the {@link Converter} which could not yet be passed on
+		 * because the queue of a downstream {@link Stage} has been full.
+		 * Only accessed from the worker currently running this stage.
+		 */
+		private final Queue<Delivery> outbox = new ConcurrentLinkedQueue<Delivery>();
+
+		/**
+		 * All {@link Stage}s waiting for room in {@link #inbox}.
+		 */
+		private final Queue<Stage> waiters = new ConcurrentLinkedQueue<Stage>();
+
+		/**
+		 * True while this stage is either running or waiting for a worker.
+		 */
+		private final AtomicBoolean scheduled = new AtomicBoolean();
+
+		/**
+		 * True while this stage is waiting for room in a downstream
+		 * {@link Stage}.
+		 */
+		private volatile boolean blocked;
+
+		Stage(final Converter converter, final int capacity) {
+			this.converter = converter;
+			inbox = new ArrayBlockingQueue<Data>(capacity);
+		}
+
+		void put(final Data data) throws InterruptedException {
+			incInFlight();
+			try {
+				inbox.put(data);
+			} catch (final InterruptedException e) {
+				data.release();
+				decInFlight();
+				throw e;
+			}
+			// no worker will take it anymore
+			if (closed)
+				discardInbox();
+			else
+				schedule();
+		}
+
+		boolean offer(final Data data) {
+			if (!inbox.offer(data)) return false;
+			schedule();
+			return true;
+		}
+
+		void schedule() {
+			if (scheduled.compareAndSet(false, true)) try {
+				workers.execute(this);
+			} catch (final RejectedExecutionException e) {
+				// pool has already been closed
+				scheduled.set(false);
+			}
+		}
+
+		/**
+		 * Releases all {@link Data}s waiting for this stage.
+		 */
+		void discardInbox() {
+			Data data;
+			while ((data = inbox.poll()) != null) {
+				data.release();
+				decInFlight();
+			}
+			wakeUpWaiters();
+		}
+
+		/**
+		 * Releases all converted {@link Data}s which have not yet been passed
+		 * on. Must only be called if no worker is running this stage.
+		 */
+		void discardOutbox() {
+			Delivery d;
+			while ((d = outbox.poll()) != null) {
+				d.data.release();
+				decInFlight();
+			}
+		}
+
+		@Override
+		public void run() {
+			try {
+				for (int i = 0; i < BATCH_SIZE; ++i) {
+					if (closed || !flushOutbox()) return;
+					final Data data = inbox.poll();
+					if (data == null) break;
+					wakeUpWaiters();
+					final List<Data> res = pipe.convertWith(data, converter);
+					if (res != null) for (final Data newData : res) {
+						route(newData);
+						if (newData != data) newData.release();
+					}
+					data.release();
+					decInFlight();
+				}
+				flushOutbox();
+			} finally {
+				scheduled.set(false);
+				if (!blocked && (!inbox.isEmpty() || !outbox.isEmpty()))
+					schedule();
+			}
+		}
+
+		/**
+		 * Queues a converted {@link Data} for all {@link Converter}s and
+		 * {@link Output}s connected to this stage.
+		 */
+		private void route(final Data data) {
+			final PipeRoute route = ((PipePart) converter).getRoute();
+			for (final Converter cvt : route.getConverters()) {
+				final Stage stage = stages.get(cvt);
+				if (stage != null) {
+					incInFlight();
+					outbox.add(new Delivery(stage, data.retain()));
+				}
+			}
+			if (route.isOutputConnected()) {
+				incInFlight();
+				outbox.add(new Delivery(null, data.retain()));
+			}
+		}
+
+		/**
+		 * Passes on as many {@link Delivery}s as possible.
+		 * 
+		 * @return true if the outbox is empty now, false if this stage has to
+		 *         wait for room in a downstream {@link Stage}
+		 */
+		private boolean flushOutbox() {
+			Delivery d;
+			while ((d = outbox.peek()) != null) {
+				if (d.target == null) {
+					try {
+						pipe.putIntoOutputQueue(d.data);
+					} catch (final IOException e) {
+						Log.detail("Discarding '%s' as the pipe's queue "
+								+ "has been closed", d.data);
+					}
+					d.data.release();
+					decInFlight();
+				} else if (!d.target.offer(d.data)) {
+					// register before trying again, so we can't miss the
+					// wake-up if room has been made in the meantime
+					blocked = true;
+					d.target.waiters.add(this);
+					if (!d.target.offer(d.data)) return false;
+					blocked = false;
+				}
+				outbox.poll();
+			}
+			return true;
+		}
+
+		private void wakeUpWaiters() {
+			Stage s;
+			while ((s = waiters.poll()) != null) {
+				s.blocked = false;
+				s.schedule();
+			}
+		}
+
+	}
+
+}
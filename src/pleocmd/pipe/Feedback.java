@@ -29,6 +29,8 @@ abstract class Feedback {
 
 	private long startTime;
 
+	private long startNanos;
+
 	private long stopTime;
 
 	private final List<Throwable> temporaryErrors;
@@ -60,6 +62,14 @@ abstract class Feedback {
 		return startTime;
 	}
 
+	/**
+	 * @return value of {@link System#nanoTime()} at which the {@link Feedback}
+	 *         has been started - only useful for measuring time differences
+	 */
+	protected final synchronized long getStartNanos() {
+		return startNanos;
+	}
+
 	/**
 	 * @return time at which the {@link Feedback} has been stopped or <b>0</b>
 	 *         if it is still running
@@ -135,6 +145,7 @@ abstract class Feedback {
 
 	final synchronized void started() {
 		startTime = System.currentTimeMillis();
+		startNanos = System.nanoTime();
 	}
 
 	final synchronized void stopped() {
@@ -0,0 +1,50 @@
+// This file is part of PleoCommand:
+// Interactively control Pleo with psychobiological parameters
+//
+// Copyright (C) 2010 Oliver Hoffmann - Hoffmann_Oliver@gmx.de
+//
+// This program is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License
+// as published by the Free Software Foundation; either version 2
+// of the License, or (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Boston, USA.
+
+package pleocmd.pipe;
+
+import pleocmd.pipe.data.Data;
+import pleocmd.pipe.in.Input;
+
+/**
+ * Specifies how an Input-Thread of a {@link Pipe} reads from more than one
+ * {@link Input}.
+ * 
+ * @author oliver
+ */
+public enum InputMergePolicy {
+
+	/**
+	 * Reads every {@link Input} until it has no more {@link Data} and only
+	 * then continues with the next one.
+	 */
+	Sequential,
+	/**
+	 * Reads all {@link Input}s concurrently and passes their {@link Data}s
+	 * on in the order in which they arrived.
+	 */
+	Fifo,
+	/**
+	 * Reads all {@link Input}s concurrently and passes their {@link Data}s
+	 * on ordered by their time. A {@link Data} which arrives later than the
+	 * reorder window may still be passed on out of order.
+	 */
+	Timestamp
+
+}
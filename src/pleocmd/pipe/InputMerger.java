@@ -0,0 +1,255 @@
+// This file is part of PleoCommand:
+// Interactively control Pleo with psychobiological parameters
+//
+// Copyright (C) 2010 Oliver Hoffmann - Hoffmann_Oliver@gmx.de
+//
+// This program is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License
+// as published by the Free Software Foundation; either version 2
+// of the License, or (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Boston, USA.
+
+package pleocmd.pipe;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+
+import pleocmd.Log;
+import pleocmd.exc.InternalException;
+import pleocmd.pipe.data.Data;
+import pleocmd.pipe.in.Input;
+
+/**
+ * Reads the {@link Input}s of one Input-Thread concurrently and merges their
+ * {@link Data}s into one stream.
+ * <p>
+ * Every {@link Input} gets its own {@link Reader} thread which fetches
+ * {@link Data}s via {@link Pipe#getFromInput(List)} and puts them into a
+ * bounded queue. {@link #next()} always returns the head with the smallest
+ * key, which is the arrival order for {@link InputMergePolicy#Fifo} and the
+ * time of the {@link Data} for {@link InputMergePolicy#Timestamp}.<br>
+ * In the latter case a {@link Data} is held back until every {@link Input}
+ * which is still running has a {@link Data} waiting or until its time is
+ * older than the reorder window, so {@link Input}s which are idle for a long
+ * time don't block the others.
+ * 
+ * @author oliver
+ */
+final class InputMerger {
+
+	/**
+	 * Maximum number of {@link Data}s waiting for one {@link Input}. The
+	 * {@link Reader} blocks if its queue is full.
+	 */
+	private static final int QUEUE_CAPACITY = 1024;
+
+	/**
+	 * Number of milliseconds {@link #close()} waits for every {@link Reader}
+	 * to finish.
+	 */
+	private static final long JOIN_TIMEOUT = 3000;
+
+	private final Pipe pipe;
+
+	private final InputMergePolicy policy;
+
+	private final long reorderWindow;
+
+	private final List<Reader> readers = new ArrayList<Reader>();
+
+	/**
+	 * Guards the queues of all {@link Reader}s and {@link #arrivals}.
+	 */
+	private final Object lock = new Object();
+
+	private long arrivals;
+
+	/**
+	 * Creates a new {@link Reader} for every {@link Input} and starts them.
+	 * 
+	 * @param pipe
+	 *            the {@link Pipe} to which the {@link Input}s belong
+	 * @param inputs
+	 *            the {@link Input}s of the Input-Thread
+	 * @param policy
+	 *            how the {@link Data}s are ordered - must not be
+	 *            {@link InputMergePolicy#Sequential}
+	 * @param reorderWindow
+	 *            number of milliseconds a {@link Data} is held back at most
+	 *            while waiting for older {@link Data}s from other
+	 *            {@link Input}s
+	 */
+	InputMerger(final Pipe pipe, final List<Input> inputs,
+			final InputMergePolicy policy, final long reorderWindow) {
+		if (policy == InputMergePolicy.Sequential)
+			throw new InternalException("Cannot merge sequentially");
+		this.pipe = pipe;
+		this.policy = policy;
+		this.reorderWindow = reorderWindow;
+		for (final Input in : inputs)
+			readers.add(new Reader(in));
+		for (final Reader r : readers)
+			r.start();
+		Log.detail("Merging %d input(s) by %s", readers.size(), policy);
+	}
+
+	/**
+	 * Blocks until the next {@link Data} is available according to the
+	 * {@link InputMergePolicy}.
+	 * 
+	 * @return the next {@link Data} or <b>null</b> if all {@link Input}s
+	 *         have finished and all their {@link Data}s have been returned
+	 * @throws InterruptedException
+	 *             if waiting has been interrupted
+	 */
+	Data next() throws InterruptedException {
+		synchronized (lock) {
+			while (true) {
+				Reader best = null;
+				boolean complete = true;
+				for (final Reader r : readers) {
+					final Entry head = r.queue.peek();
+					if (head == null) {
+						if (!r.finished) complete = false;
+					} else if (best == null || head.key < best.queue.peek().key)
+						best = r;
+				}
+				if (best == null) {
+					if (complete) return null;
+					lock.wait();
+					continue;
+				}
+				if (policy == InputMergePolicy.Fifo || complete)
+					return take(best);
+				final long remaining = best.queue.peek().key + reorderWindow
+						- pipe.getFeedback().getElapsed();
+				if (remaining <= 0) return take(best);
+				lock.wait(remaining);
+			}
+		}
+	}
+
+	private Data take(final Reader reader) {
+		final Entry entry = reader.queue.remove();
+		// the reader may wait for room in its queue
+		lock.notifyAll();
+		return entry.data;
+	}
+
+	/**
+	 * Interrupts all {@link Reader}s and waits for them to finish.
+	 * {@link Data}s which have not yet been returned by {@link #next()} are
+	 * discarded.
+	 */
+	void close() {
+		for (final Reader r : readers)
+			r.interrupt();
+		for (final Reader r : readers)
+			try {
+				r.join(JOIN_TIMEOUT);
+				if (r.isAlive())
+					Log.warn("Reader for input '%s' did not finish in time",
+							r.input);
+			} catch (final InterruptedException e) {
+				Log.detail("Waiting for reader of input '%s' "
+						+ "has been interrupted", r.input);
+			}
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d reader(s) merged by %s", readers.size(),
+				policy);
+	}
+
+	/**
+	 * One {@link Data} waiting in the queue of a {@link Reader} together with
+	 * the key by which it is ordered.
+	 */
+	private static final class Entry {
+
+		private final Data data;
+
+		private final long key;
+
+		Entry(final Data data, final long key) {
+			this.data = data;
+			this.key = key;
+		}
+
+	}
+
+	/**
+	 * The thread which reads all {@link Data}s of one {@link Input}.
+	 */
+	private final class Reader extends Thread {
+
+		private final Input input;
+
+		private final Queue<Entry> queue = new ArrayDeque<Entry>();
+
+		/**
+		 * True if the {@link Input} has no more {@link Data}s. Only accessed
+		 * while holding {@link InputMerger#lock}.
+		 */
+		private boolean finished;
+
+		Reader(final Input input) {
+			super("Pipe-Input-Reader-" + input);
+			setDaemon(true);
+			this.input = input;
+		}
+
+		@Override
+		public void run() {
+			final List<Input> list = new ArrayList<Input>(1);
+			list.add(input);
+			try {
+				while (true) {
+					final Data data = pipe.getFromInput(list);
+					if (data == null) break;
+					put(data);
+				}
+			} catch (final InterruptedException e) {
+				Log.detail("Reading from input '%s' has been interrupted",
+						input);
+			} catch (final Throwable t) { // CS_IGNORE
+				Log.error(t, "Reader for input '%s' died", input);
+				pipe.getFeedback().addError(t, true);
+			} finally {
+				synchronized (lock) {
+					finished = true;
+					lock.notifyAll();
+				}
+			}
+		}
+
+		private void put(final Data data) throws InterruptedException {
+			synchronized (lock) {
+				while (queue.size() >= QUEUE_CAPACITY)
+					lock.wait();
+				final long key;
+				if (policy == InputMergePolicy.Fifo)
+					key = ++arrivals;
+				else if (data.getTime() == Data.TIME_NOTIME)
+					key = pipe.getFeedback().getElapsed();
+				else
+					key = data.getTime();
+				queue.add(new Entry(data, key));
+				lock.notifyAll();
+			}
+		}
+
+	}
+
+}
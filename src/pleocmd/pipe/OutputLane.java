@@ -0,0 +1,297 @@
+// This file is part of PleoCommand:
+// Interactively control Pleo with psychobiological parameters
+//
+// Copyright (C) 2010 Oliver Hoffmann - Hoffmann_Oliver@gmx.de
+//
+// This program is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License
+// as published by the Free Software Foundation; either version 2
+// of the License, or (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Boston, USA.
+
+package pleocmd.pipe;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import pleocmd.Log;
+import pleocmd.pipe.data.Data;
+import pleocmd.pipe.data.DataQueue;
+import pleocmd.pipe.data.DataQueue.PutResult;
+import pleocmd.pipe.data.LockFreeDataQueue;
+import pleocmd.pipe.out.Output;
+
+/**
+ * An execution lane for one {@link Output} of a {@link Pipe}.<br>
+ * Consists of a bounded {@link DataQueue} and a thread which writes all
+ * {@link Data}s from this queue to the {@link Output}, so an {@link Output}
+ * which blocks for a long time cannot delay any other {@link Output}.
+ * <p>
+ * The queue has the same priority semantics as the {@link Pipe}'s central
+ * queue, so a {@link Data} with a higher priority interrupts the
+ * {@link Output} and clears all waiting {@link Data}s of this lane only.<br>
+ * Waiting for the output time of timed {@link Data}s also happens in the
+ * lane, so being behind is measured where the {@link Data} is executed.
+ * 
+ * @author oliver
+ */
+final class OutputLane {
+
+	private final Pipe pipe;
+
+	private final Output output;
+
+	private final int capacity;
+
+	private final DataQueue queue = new LockFreeDataQueue();
+
+	/**
+	 * All {@link PendingWrite}s in the same order as their {@link Data} have
+	 * been put into {@link #queue}. Contains also those which have been
+	 * cleared from the queue later on.
+	 */
+	private final Queue<PendingWrite> pending = new ConcurrentLinkedQueue<PendingWrite>();
+
+	private final Thread thread;
+
+	private volatile int maxSize;
+
+	/**
+	 * Priority of the last {@link Data} which has been put into {@link #queue}
+	 * - as long as the queue is not empty this is also the priority of all
+	 * {@link Data}s in it. Only accessed by the Output-Thread.
+	 */
+	private byte lastPrio;
+
+	private volatile CountDownLatch started;
+
+	OutputLane(final Pipe pipe, final Output output, final int capacity) {
+		this.pipe = pipe;
+		this.output = output;
+		this.capacity = capacity;
+		thread = new Thread("Pipe-Output-Lane-" + output.getName()) {
+			@Override
+			public void run() {
+				try {
+					runLane();
+				} catch (final Throwable t) { // CS_IGNORE
+					Log.error(t, "Output-Lane-Thread died");
+					pipe.getFeedback().addError(t, true);
+				}
+			}
+		};
+	}
+
+	Output getOutput() {
+		return output;
+	}
+
+	Thread getThread() {
+		return thread;
+	}
+
+	DataQueue getQueue() {
+		return queue;
+	}
+
+	/**
+	 * @return the number of {@link Data}s currently waiting to be written to
+	 *         the {@link Output}
+	 */
+	int getSize() {
+		return queue.getSize();
+	}
+
+	/**
+	 * @return the highest number of {@link Data}s which have been waiting at
+	 *         the same time since this lane has been created
+	 */
+	int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Starts the thread of this lane.
+	 * 
+	 * @param started
+	 *            will be counted down as soon as the thread is running
+	 */
+	void start(final CountDownLatch started) {
+		this.started = started;
+		thread.start();
+	}
+
+	/**
+	 * Closes the queue of this lane. All {@link Data}s already in the queue
+	 * will still be written before the thread finishes.
+	 */
+	void close() {
+		queue.close();
+	}
+
+	/**
+	 * Puts a {@link Data} into the queue of this lane.<br>
+	 * If the queue is already full, the {@link Data} will be dropped unless it
+	 * has a higher priority than the {@link Data}s in the queue, in which case
+	 * the queue will be cleared as usual.
+	 * 
+	 * @param pw
+	 *            the {@link PendingWrite} of the {@link Data}
+	 * @return a {@link PutResult}
+	 * @throws IOException
+	 *             if the lane has been closed
+	 */
+	PutResult put(final PendingWrite pw) throws IOException {
+		final int size = queue.getSize();
+		final byte prio = pw.getData().getPriority();
+		// a non-empty queue only contains Data of the last put priority
+		if (size >= capacity && prio <= lastPrio) {
+			if (Log.canLogDetail())
+				Log.detail("Queue of '%s' is full", output);
+			return PutResult.Dropped;
+		}
+		// must be known to the lane before it can get the Data from the queue
+		pending.add(pw);
+		final PutResult res = queue.put(pw.getData());
+		if (res == PutResult.Dropped)
+			// the caller finishes it, so the lane must not skip it later.
+			// Only the Output-Thread puts, so the lane cannot have reached
+			// this entry yet as it has never got its Data.
+			pending.remove(pw);
+		else {
+			lastPrio = prio;
+			if (res == PutResult.ClearedAndPut)
+				maxSize = Math.max(maxSize, 1);
+			else if (size >= maxSize) maxSize = size + 1;
+		}
+		return res;
+	}
+
+	/**
+	 * This is the run() method of the Output-Lane-Thread.<br>
+	 * It fetches {@link Data} from the queue and writes it to the
+	 * {@link Output} until the queue has been closed.
+	 */
+	void runLane() {
+		Log.detail("Output-Lane-Thread for '%s' started", output);
+		started.countDown();
+		try {
+			while (true) {
+				final Data data;
+				try {
+					data = queue.get();
+				} catch (final InterruptedException e) {
+					Log.detail("Reading next data has been interrupted");
+					pipe.getFeedback().incInterruptionCount();
+					continue;
+				}
+				if (Thread.interrupted()) {
+					// interrupted while the queue has been cleared but
+					// before we got a chance to wait for new Data
+					Log.detail("Fetching next data has been interrupted");
+					pipe.getFeedback().incInterruptionCount();
+				}
+				if (data == null) break; // lane has been closed
+
+				// skip all which have been cleared from the queue
+				PendingWrite pw;
+				while ((pw = pending.poll()) != null && pw.getData() != data)
+					pw.finished(pipe, true);
+
+				// wait for the correct time, if needed ...
+				if (!pipe.waitForOutputTime(data, pw)) {
+					if (pw != null) pw.finished(pipe, true);
+					continue;
+				}
+
+				// ... and write it to the Output
+				final boolean accepted = pipe.writeToOutputLane(data, output);
+				if (pw != null) pw.finished(pipe, accepted);
+			}
+		} finally {
+			PendingWrite pw;
+			while ((pw = pending.poll()) != null)
+				pw.finished(pipe, true);
+			Log.detail("Output-Lane-Thread for '%s' finished", output);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s: %d (max %d)", output.getName(), getSize(),
+				getMaxSize());
+	}
+
+	/**
+	 * Keeps track of one {@link Data} which has been passed to one or more
+	 * {@link OutputLane}s, so the {@link Pipe} can complain if none of the
+	 * {@link Output}s accepted it.<br>
+	 * Owns one reference to the {@link Data} which will be released after the
+	 * last lane has finished.
+	 * 
+	 * @author oliver
+	 */
+	static final class PendingWrite {
+
+		private final Data data;
+
+		private final AtomicInteger remaining;
+
+		private volatile boolean handled;
+
+		private final AtomicBoolean behindCounted = new AtomicBoolean();
+
+		PendingWrite(final Data data, final int laneCount) {
+			this.data = data;
+			remaining = new AtomicInteger(laneCount);
+		}
+
+		Data getData() {
+			return data;
+		}
+
+		/**
+		 * Makes sure that a {@link Data} which is written too late is counted
+		 * only once as being behind, regardless of the number of lanes.
+		 * 
+		 * @return true if this is the first lane asking
+		 */
+		boolean claimBehindCount() {
+			return behindCounted.compareAndSet(false, true);
+		}
+
+		/**
+		 * Must be called exactly once for every lane this {@link Data} has
+		 * been passed to.
+		 * 
+		 * @param pipe
+		 *            the {@link Pipe} to which an error will be reported if
+		 *            this has been the last lane and the {@link Data} has not
+		 *            been handled by any of them
+		 * @param handledByLane
+		 *            true if the {@link Output} accepted the {@link Data} or
+		 *            it has been dropped intentionally
+		 */
+		void finished(final Pipe pipe, final boolean handledByLane) {
+			if (handledByLane) handled = true;
+			if (remaining.decrementAndGet() == 0) {
+				if (!handled) pipe.noOutputFound(data);
+				data.release();
+			}
+		}
+
+	}
+
+}
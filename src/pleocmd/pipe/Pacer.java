@@ -0,0 +1,71 @@
+// This file is part of PleoCommand:
+// Interactively control Pleo with psychobiological parameters
+//
+// Copyright (C) 2010 Oliver Hoffmann - Hoffmann_Oliver@gmx.de
+//
+// This program is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License
+// as published by the Free Software Foundation; either version 2
+// of the License, or (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Boston, USA.
+
+package pleocmd.pipe;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Waits for points in time given by {@link System#nanoTime()} with a much
+ * higher precision than {@link Thread#sleep(long)}.<br>
+ * The thread is parked until the deadline is nearer than a spin window and
+ * then busy-waits for the rest of the time, because waking up a parked
+ * thread may take considerably longer than requested.
+ * 
+ * @author oliver
+ */
+public final class Pacer {
+
+	/**
+	 * A spin window in nanoseconds which is suitable if a few microseconds of
+	 * lag do not matter.
+	 */
+	public static final long DEFAULT_SPIN = 50000;
+
+	private Pacer() {
+		// utility class => hidden
+	}
+
+	/**
+	 * Waits until {@link System#nanoTime()} has reached the given deadline.
+	 * 
+	 * @param deadline
+	 *            value of {@link System#nanoTime()} to wait for
+	 * @param spinNanos
+	 *            number of nanoseconds before the deadline during which to
+	 *            busy-wait
+	 * @return the number of nanoseconds by which the deadline has been missed
+	 *         (0 if it had not yet been reached when this method was called)
+	 * @throws InterruptedException
+	 *             if the thread has been interrupted while waiting
+	 */
+	public static long waitUntil(final long deadline, final long spinNanos)
+			throws InterruptedException {
+		long remaining = deadline - System.nanoTime();
+		if (remaining <= 0) return -remaining;
+		while (remaining > 0) {
+			if (Thread.interrupted()) throw new InterruptedException();
+			if (remaining > spinNanos)
+				LockSupport.parkNanos(remaining - spinNanos);
+			remaining = deadline - System.nanoTime();
+		}
+		return -remaining;
+	}
+
+}
@@ -27,13 +27,16 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
 
 import pleocmd.Log;
 import pleocmd.cfg.ConfigBoolean;
+import pleocmd.cfg.ConfigEnum;
 import pleocmd.cfg.ConfigInt;
 import pleocmd.cfg.ConfigPath;
 import pleocmd.cfg.ConfigPath.PathType;
@@ -50,11 +53,15 @@ import pleocmd.exc.StateException;
 import pleocmd.itfc.gui.MainFrame;
 import pleocmd.itfc.gui.MainPipePanel;
 import pleocmd.itfc.gui.PipeFlowVisualization;
+import pleocmd.pipe.OutputLane.PendingWrite;
 import pleocmd.pipe.PipePart.HelpKind;
 import pleocmd.pipe.cvt.Converter;
 import pleocmd.pipe.data.Data;
+import pleocmd.pipe.data.DataPool;
 import pleocmd.pipe.data.DataQueue;
+import pleocmd.pipe.data.DataQueue.DiscardListener;
 import pleocmd.pipe.data.DataQueue.PutResult;
+import pleocmd.pipe.data.LockFreeDataQueue;
 import pleocmd.pipe.in.Input;
 import pleocmd.pipe.out.Output;
 
@@ -71,7 +78,7 @@ public final class Pipe extends StateHandling implements ConfigurationInterface
 	/**
 	 * Number of milliseconds to reduce waiting-time in the input thread for
 	 * timed {@link Data}. before it's passed to the output thread's
-	 * {@link #waitForOutputTime(Data)}
+	 * {@link #waitForOutputTime(Data, PendingWrite)}
 	 * <p>
 	 * If too small (smaller than time needed to pass from Input thread via
 	 * {@link #dataQueue} to Output thread), very short delays for timed
@@ -85,8 +92,8 @@ public final class Pipe extends StateHandling implements ConfigurationInterface
 
 	/**
 	 * Number of milliseconds it approximately takes from
-	 * {@link #waitForOutputTime(Data)} via {@link #writeDataToAllOutputs(Data)}
-	 * to {@link Output#write(Data)}
+	 * {@link #waitForOutputTime(Data, PendingWrite)} via
+	 * {@link #writeToOutputLane(Data, Output)} to {@link Output#write(Data)}
 	 * <p>
 	 * If too small, very short delays for timed {@link Data} may occur.<br>
 	 * If too large, timed {@link Data}s may be executed too early.<br>
@@ -94,7 +101,7 @@ public final class Pipe extends StateHandling implements ConfigurationInterface
 	 * Should not be larger than {@link #cfgOverheadReductionTime}.
 	 */
 	private final ConfigInt cfgOutputInitOverhead = new ConfigInt(
-			"Output Init Overhead", 2, 0, 1000);
+			"Output Init Overhead", 0, 0, 1000);
 
 	/**
 	 * Number of milliseconds which an output may be behind for a timed
@@ -107,6 +114,94 @@ public final class Pipe extends StateHandling implements ConfigurationInterface
 	private final ConfigInt cfgMaxBehind = new ConfigInt("Max Behind", 300, 0,
 			60000);
 
+	/**
+	 * Maximum number of {@link Data}s which may wait for being written to one
+	 * {@link Output}.
+	 * <p>
+	 * If too small, {@link Data}s may be dropped during short delays of an
+	 * {@link Output}.<br>
+	 * If too large, an {@link Output} which is permanently too slow may
+	 * execute {@link Data}s a long time after they have been created.
+	 */
+	private final ConfigInt cfgOutputQueueSize = new ConfigInt(
+			"Output Queue Size", 1024, 1, 1000000);
+
+	/**
+	 * Number of worker threads which execute the {@link Converter}s.
+	 * <p>
+	 * If 0, all {@link Converter}s are executed in the Input-Thread directly
+	 * after a {@link Data} has been read.<br>
+	 * Otherwise every {@link Converter} gets its own queue and is executed
+	 * by a pool of worker threads, so a slow {@link Converter} no longer
+	 * slows down reading from the {@link Input}s.
+	 */
+	private final ConfigInt cfgConverterThreads = new ConfigInt(
+			"Converter Threads", 0, 0, 64);
+
+	/**
+	 * Maximum number of {@link Data}s which may wait for being converted by
+	 * one {@link Converter} if {@link #cfgConverterThreads} is not 0.
+	 * <p>
+	 * If the queue of a {@link Converter} is full, the Input-Thread waits
+	 * before reading the next {@link Data}.
+	 */
+	private final ConfigInt cfgConverterQueueSize = new ConfigInt(
+			"Converter Queue Size", 256, 1, 1000000);
+
+	/**
+	 * Number of microseconds before the output time of a timed {@link Data}
+	 * during which {@link #waitForOutputTime(Data, PendingWrite)} busy-waits
+	 * instead of parking the thread.
+	 * <p>
+	 * If too small, timed {@link Data}s may be executed too late because the
+	 * operating system wakes up the thread too late.<br>
+	 * If too large, CPU time is wasted while waiting.<br>
+	 * Typical values are in [0, 2000].
+	 */
+	private final ConfigInt cfgSpinWindow = new ConfigInt(
+			"Spin Window (us)", 500, 0, 100000);
+
+	/**
+	 * How an Input-Thread reads from more than one {@link Input}.
+	 * <p>
+	 * If not {@link InputMergePolicy#Sequential}, every {@link Input} is read
+	 * by its own thread and an {@link InputMerger} combines their
+	 * {@link Data}s.
+	 */
+	private final ConfigEnum<InputMergePolicy> cfgInputMergePolicy = new ConfigEnum<InputMergePolicy>(
+			InputMergePolicy.Sequential);
+
+	/**
+	 * Number of milliseconds a {@link Data} is held back at most if
+	 * {@link #cfgInputMergePolicy} is {@link InputMergePolicy#Timestamp} to
+	 * wait for older {@link Data}s from other {@link Input}s.
+	 * <p>
+	 * If too small, {@link Data}s from slow {@link Input}s may be passed on
+	 * out of order.<br>
+	 * If too large, {@link Data}s from fast {@link Input}s are delayed while
+	 * another {@link Input} is idle.
+	 */
+	private final ConfigInt cfgReorderWindow = new ConfigInt(
+			"Reorder Window (ms)", 50, 0, 60000);
+
+	/**
+	 * If true, {@link Data}s created by {@link Converter}s are taken from
+	 * the {@link DataPool} and put back into it after they have been written
+	 * to all {@link Output}s.
+	 * <p>
+	 * Must only be enabled if no {@link Converter} or {@link Output} keeps a
+	 * reference to a {@link Data} after it has been processed.
+	 */
+	private final ConfigBoolean cfgRecycleData = new ConfigBoolean(
+			"Recycle Data", false);
+
+	/**
+	 * If true, recycled {@link Data}s are never reused, so any access to a
+	 * {@link Data} after its release will throw an exception.
+	 */
+	private final ConfigBoolean cfgRecycleDebug = new ConfigBoolean(
+			"Recycle Data Debug", false);
+
 	private final ConfigPath cfgLastSaveFile = new ConfigPath("Last Save-File",
 			PathType.FileForWriting);
 
@@ -121,16 +216,51 @@ public final class Pipe extends StateHandling implements ConfigurationInterface
 
 	private final Set<PipePart> ignoredInputs = new HashSet<PipePart>();
 
-	private final Set<PipePart> ignoredConverter = new HashSet<PipePart>();
+	private final Set<PipePart> ignoredConverter = Collections
+			.synchronizedSet(new HashSet<PipePart>());
 
-	private final Set<PipePart> ignoredOutputs = new HashSet<PipePart>();
+	private final Set<PipePart> ignoredOutputs = Collections
+			.synchronizedSet(new HashSet<PipePart>());
 
-	private final DataQueue dataQueue = new DataQueue();
+	/**
+	 * Owns one reference to every {@link Data} in it until the
+	 * Output-Thread has passed it on to the {@link OutputLane}s.
+	 */
+	private final DataQueue dataQueue = new LockFreeDataQueue(true);
 
 	private final List<Thread> thrsInput = new ArrayList<Thread>();
 
 	private Thread thrOutput;
 
+	/**
+	 * Executes the {@link Converter}s while the pipe is running if
+	 * {@link #cfgConverterThreads} is not 0, <b>null</b> otherwise.
+	 */
+	private volatile ConverterStages converterStages;
+
+	/**
+	 * One {@link OutputLane} for every {@link Output} which has successfully
+	 * been initialized. Only modified while no Output-Thread is running.
+	 */
+	private final Map<PipePart, OutputLane> outputLanes = new HashMap<PipePart, OutputLane>();
+
+	/**
+	 * Synchronizes putting {@link Data} into the {@link #dataQueue} with
+	 * checking {@link #interruptingData} in the Output-Thread, so it's always
+	 * up-to-date there.
+	 */
+	private final Object dispatchLock = new Object();
+
+	/**
+	 * All {@link Data}s in the {@link #dataQueue} which caused other
+	 * {@link Data}s to be cleared from the queue before they could be passed
+	 * to any {@link OutputLane}.<br>
+	 * Entries are removed as soon as the {@link Data} leaves the queue in any
+	 * way, as a recycled {@link Data} may be put again later on.
+	 */
+	private final Set<Data> interruptingData = Collections
+			.newSetFromMap(new IdentityHashMap<Data, Boolean>());
+
 	private boolean inputThreadInterruped;
 
 	private PipeFeedback feedback;
@@ -143,7 +273,7 @@ public final class Pipe extends StateHandling implements ConfigurationInterface
 
 	private Thread mainInputThread;
 
-	private long lastTime;
+	private volatile long lastTime;
 
 	/**
 	 * Creates a new {@link Pipe}.
@@ -155,6 +285,14 @@ public final class Pipe extends StateHandling implements ConfigurationInterface
 	public Pipe(final Configuration config) {
 		this.config = config;
 		feedback = new PipeFeedback();
+		dataQueue.setDiscardListener(new DiscardListener() {
+			@Override
+			public void discarded(final Data data) {
+				synchronized (dispatchLock) {
+					interruptingData.remove(data);
+				}
+			}
+		});
 		final Set<String> groupNames = new HashSet<String>();
 		groupNames.add(getClass().getSimpleName());
 		for (final Class<? extends PipePart> ppc : PipePartDetection.ALL_PIPEPART)
@@ -428,6 +566,7 @@ public final class Pipe extends StateHandling implements ConfigurationInterface
 	@Override
 	protected void init0() throws PipeException {
 		checkSanity();
+		clearInterruptingData();
 
 		Log.detail("Initializing all input");
 		for (final PipePart pp : inputList) {
@@ -446,6 +585,8 @@ public final class Pipe extends StateHandling implements ConfigurationInterface
 			if (!pp.tryInit()) ignoredOutputs.add(pp);
 			if (initPhaseInterrupted) return;
 		}
+
+		compileRoutes();
 	}
 
 	@Override
@@ -470,6 +611,45 @@ public final class Pipe extends StateHandling implements ConfigurationInterface
 		ignoredInputs.clear();
 		ignoredConverter.clear();
 		ignoredOutputs.clear();
+		clearInterruptingData();
+		for (final PipePart pp : inputList)
+			pp.setRoute(PipeRoute.EMPTY);
+		for (final PipePart pp : converterList)
+			pp.setRoute(PipeRoute.EMPTY);
+	}
+
+	private void clearInterruptingData() {
+		synchronized (dispatchLock) {
+			interruptingData.clear();
+		}
+	}
+
+	/**
+	 * Compiles the connections of all {@link Input}s and {@link Converter}s
+	 * into {@link PipeRoute}s, skipping all ignored {@link PipePart}s.<br>
+	 * Must be called again whenever a {@link PipePart} becomes ignored or the
+	 * {@link OutputLane}s have changed.
+	 */
+	private synchronized void compileRoutes() {
+		for (final PipePart pp : inputList)
+			compileRoute(pp);
+		for (final PipePart pp : converterList)
+			compileRoute(pp);
+	}
+
+	private void compileRoute(final PipePart pp) {
+		final List<Converter> cvts = new ArrayList<Converter>();
+		final List<OutputLane> lanes = new ArrayList<OutputLane>();
+		boolean outputConnected = false;
+		for (final PipePart trg : pp.getConnectedPipeParts())
+			if (trg instanceof Converter && !ignoredConverter.contains(trg))
+				cvts.add((Converter) trg);
+			else if (trg instanceof Output && !ignoredOutputs.contains(trg)) {
+				outputConnected = true;
+				final OutputLane lane = outputLanes.get(trg);
+				if (lane != null) lanes.add(lane);
+			}
+		pp.setRoute(new PipeRoute(cvts, lanes, outputConnected));
 	}
 
 	/**
@@ -493,18 +673,33 @@ public final class Pipe extends StateHandling implements ConfigurationInterface
 			pipeInitializing = true;
 			init();
 		} finally {
-			pipeInitializing = false;
+			synchronized (this) {
+				pipeInitializing = false;
+				notifyAll();
+			}
 		}
 		if (initPhaseInterrupted) {
 			close();
+			feedback.closed();
 			return;
 		}
 		dataQueue.resetCache();
 		assert thrsInput.isEmpty();
+		DataPool.configure(cfgRecycleData.getContent(), cfgRecycleDebug
+				.getContent());
+		createOutputLanes();
+		createConverterStages();
 		createNewInputThread(new ArrayList<Input>(inputList));
+		final CountDownLatch outputReady;
+		synchronized (this) {
+			outputReady = new CountDownLatch(outputLanes.size() + 1);
+			for (final OutputLane lane : outputLanes.values())
+				lane.start(outputReady);
+		}
 		thrOutput = new Thread("Pipe-Output-Thread") {
 			@Override
 			public void run() {
+				outputReady.countDown();
 				try {
 					runOutputThread();
 				} catch (final Throwable t) { // CS_IGNORE
@@ -513,49 +708,125 @@ public final class Pipe extends StateHandling implements ConfigurationInterface
 				}
 			}
 		};
-		feedback.started();
 		thrOutput.start();
+		// the Input-Thread must not clear Data from the queue before the
+		// Output-Thread and its lanes had a chance to fetch it
+		outputReady.await();
+		feedback.started();
 		mainInputThread = thrsInput.get(0);
 		thrsInput.get(0).start();
 
 		Log.detail("Started waiting for threads");
-		while (thrOutput.isAlive())
-			Thread.sleep(100);
+		thrOutput.join();
 		Log.detail("Output Thread no longer alive");
 		// wait up to 3 seconds ...
-		int remThrCnt = Integer.MAX_VALUE;
-		for (int i = 0; i < 30 && remThrCnt > 0; ++i) {
-			Thread.sleep(100);
-			synchronized (this) {
-				remThrCnt = thrsInput.size();
-			}
-		}
-		// ... then interrupt remaining input threads ...
-		if (remThrCnt > 0) {
-			Log.error("%d Input-Thread(s) still alive but "
-					+ "Output-Thread died", remThrCnt);
-			inputThreadInterruped = true;
+		if (!waitForInputThreads(3000)) {
+			// ... then interrupt remaining input threads ...
 			synchronized (this) {
+				Log.error("%d Input-Thread(s) still alive but "
+						+ "Output-Thread died", thrsInput.size());
+				inputThreadInterruped = true;
 				for (final Thread thr : thrsInput)
 					thr.interrupt();
 			}
-			while (true) {
-				synchronized (this) {
-					if (thrsInput.isEmpty()) break;
-				}
-				Thread.sleep(100);
-			}
+			waitForInputThreads(0);
 		}
 		// .. and wait till they finally finished
 		Log.detail("Input Thread no longer alive");
+		closeConverterStages();
 		feedback.stopped();
 		assert thrsInput.isEmpty();
 		assert mainInputThread == null;
-		thrOutput = null;
+		synchronized (this) {
+			thrOutput = null;
+			notifyAll();
+		}
 		close();
+		feedback.closed();
 		Log.info("Pipe finished and closed");
 	}
 
+	/**
+	 * Waits until all Input-Threads have finished.
+	 * 
+	 * @param timeout
+	 *            maximum number of milliseconds to wait or 0 to wait until
+	 *            they have finished
+	 * @return true if all Input-Threads have finished
+	 * @throws InterruptedException
+	 *             if waiting has been interrupted
+	 */
+	private synchronized boolean waitForInputThreads(final long timeout)
+			throws InterruptedException {
+		final long end = System.currentTimeMillis() + timeout;
+		while (!thrsInput.isEmpty())
+			if (timeout == 0)
+				wait();
+			else {
+				final long rem = end - System.currentTimeMillis();
+				if (rem <= 0) return false;
+				wait(rem);
+			}
+		return true;
+	}
+
+	private void createOutputLanes() {
+		synchronized (this) {
+			assert outputLanes.isEmpty();
+			for (final Output out : outputList)
+				if (!ignoredOutputs.contains(out))
+					outputLanes.put(out, new OutputLane(this, out,
+							cfgOutputQueueSize.getContent()));
+			feedback.setOutputLanes(outputLanes.values());
+			compileRoutes();
+		}
+	}
+
+	private void createConverterStages() {
+		final int threads = cfgConverterThreads.getContent();
+		if (threads == 0) return;
+		final List<Converter> cvts = new ArrayList<Converter>();
+		for (final Converter cvt : converterList)
+			if (!ignoredConverter.contains(cvt)) cvts.add(cvt);
+		converterStages = new ConverterStages(this, cvts, threads,
+				cfgConverterQueueSize.getContent());
+	}
+
+	private void closeConverterStages() {
+		final ConverterStages cs = converterStages;
+		if (cs != null) {
+			cs.close();
+			converterStages = null;
+		}
+	}
+
+	/**
+	 * Closes all {@link OutputLane}s and waits until they have written all
+	 * their remaining {@link Data}s.
+	 */
+	private void closeOutputLanes() {
+		final List<OutputLane> lanes;
+		synchronized (this) {
+			lanes = new ArrayList<OutputLane>(outputLanes.values());
+		}
+		for (final OutputLane lane : lanes)
+			lane.close();
+		for (final OutputLane lane : lanes)
+			while (true)
+				try {
+					lane.getThread().join();
+					break;
+				} catch (final InterruptedException e) {
+					// abortPipe() interrupts us, but we need to wait anyway
+					Log.detail("Ignoring interrupt while waiting for '%s'",
+							lane);
+				}
+		synchronized (this) {
+			outputLanes.clear();
+			compileRoutes();
+		}
+	}
+
 	public Thread createNewInputThread(final List<Input> inputSubList) {
 		synchronized (this) {
 			for (final Input in : inputSubList)
@@ -590,21 +861,25 @@ public final class Pipe extends StateHandling implements ConfigurationInterface
 	 */
 	public void abortPipe() throws StateException, InterruptedException {
 		Log.info("Aborting pipe");
+		feedback.abortRequested();
 		inputThreadInterruped = true;
 		initPhaseInterrupted = true;
 		synchronized (this) {
 			for (final Thread thr : thrsInput)
 				thr.interrupt();
 		}
+		closeConverterStages();
 		dataQueue.close();
 		if (thrOutput != null) thrOutput.interrupt();
+		synchronized (this) {
+			for (final OutputLane lane : outputLanes.values())
+				lane.getThread().interrupt();
+		}
 		Log.detail("Waiting for accepted abort in threads");
-		while (true) {
-			synchronized (this) {
-				if (!pipeInitializing && thrsInput.isEmpty()
-						&& thrOutput == null) break;
-			}
-			Thread.sleep(100);
+		synchronized (this) {
+			while (pipeInitializing || !thrsInput.isEmpty()
+					|| thrOutput != null)
+				wait();
 		}
 		Log.info("Pipe successfully aborted");
 	}
@@ -623,9 +898,15 @@ public final class Pipe extends StateHandling implements ConfigurationInterface
 	protected void runInputThread(final List<Input> inputSubList)
 			throws IOException {
 		inputThreadInterruped = false;
+		InputMerger merger = null;
 		try {
 			Log.info("Input-Thread started");
 			lastTime = 0;
+			final InputMergePolicy policy = cfgInputMergePolicy.getEnum();
+			if (policy != InputMergePolicy.Sequential
+					&& inputSubList.size() > 1)
+				merger = new InputMerger(this, inputSubList, policy,
+						cfgReorderWindow.getContent());
 			while (!inputThreadInterruped) {
 				try {
 					ensureInitialized();
@@ -634,24 +915,48 @@ public final class Pipe extends StateHandling implements ConfigurationInterface
 				}
 
 				// read next data block ...
-				final Data data = getFromInput(inputSubList);
+				final Data data;
+				if (merger == null)
+					data = getFromInput(inputSubList);
+				else
+					try {
+						data = merger.next();
+					} catch (final InterruptedException e) {
+						Log.detail("Waiting for merged data "
+								+ "has been interrupted");
+						break;
+					}
 				if (data == null) {
 					Log.info("No more Inputs");
 					break; // marks end of all inputs
 				}
 
 				// ... and convert it
-				convertDataToDataList(data);
+				final ConverterStages cs = converterStages;
+				if (cs == null)
+					convertDataToDataList(data);
+				else
+					try {
+						cs.submit(data);
+					} catch (final InterruptedException e) {
+						Log.detail("Passing data to converters "
+								+ "has been interrupted");
+						break;
+					}
 			}
 		} finally {
+			if (merger != null) merger.close();
+			final boolean last;
 			synchronized (this) {
 				if (Thread.currentThread() == mainInputThread)
 					mainInputThread = null;
 				if (!thrsInput.remove(Thread.currentThread()))
 					Log.error("Internal error: "
 							+ "Input-Thread not found in thread-list");
-				if (thrsInput.isEmpty()) dataQueue.close();
+				last = thrsInput.isEmpty();
+				notifyAll();
 			}
+			if (last) closeDataQueue();
 			Log.info("Input-Thread finished");
 		}
 	}
@@ -659,9 +964,10 @@ public final class Pipe extends StateHandling implements ConfigurationInterface
 	/**
 	 * This is the run() method of the Output-Thread.<br>
 	 * It fetches {@link Data} from the {@link DataQueue} and passes it to the
-	 * {@link Output}s in a loop until the {@link DataQueue} has been closed.
+	 * {@link OutputLane}s of the {@link Output}s in a loop until the
+	 * {@link DataQueue} has been closed.
 	 * <p>
-	 * If the thread gets interrupted, only writing of the current {@link Data}
+	 * If the thread gets interrupted, only waiting for the current {@link Data}
 	 * will be aborted. To interrupt the thread itself, one has to close the
 	 * {@link DataQueue}.
 	 */
@@ -680,45 +986,73 @@ public final class Pipe extends StateHandling implements ConfigurationInterface
 				try {
 					data = dataQueue.get();
 				} catch (final InterruptedException e1) {
+					// interrupting the writing itself is counted in the lanes
 					Log.detail("Reading next data has been interrupted");
-					feedback.incInterruptionCount();
 					continue;
 				}
 				if (data == null) break; // Input-Thread has finished piping
 
-				// There's no need to continue if we have no more outputs
-				if (ignoredOutputs.size() == outputList.size()) break;
+				// must be forgotten even if the Data is not passed on
+				final boolean interrupting;
+				synchronized (dispatchLock) {
+					interrupting = interruptingData.remove(data);
+				}
 
-				// ... wait for the correct time, if needed ...
-				if (!waitForOutputTime(data)) continue;
+				// There's no need to continue if we have no more outputs
+				if (ignoredOutputs.size() == outputList.size()) {
+					data.release();
+					break;
+				}
 
 				// ... and send it to all currently registered outputs
-				writeDataToAllOutputs(data);
+				writeDataToAllOutputs(data, interrupting);
 			}
 		} finally {
+			closeOutputLanes();
 			Log.info("Output-Thread finished");
 			Log.detail("Sent %d data blocks to output",
 					feedback.getDataOutputCount());
 		}
 	}
 
-	private boolean waitForOutputTime(final Data data) {
+	/**
+	 * Waits until the time at which a timed {@link Data} should be executed
+	 * and updates the behind counters if that time has already passed.<br>
+	 * Called from the {@link OutputLane} directly before writing the
+	 * {@link Data}. A {@link Data} is counted as behind only once, by the
+	 * first lane which notices it.
+	 * 
+	 * @param data
+	 *            the {@link Data} which will be written next
+	 * @param pw
+	 *            the {@link PendingWrite} of the {@link Data} - may be
+	 *            <b>null</b>
+	 * @return true if the {@link Data} should be written, false if waiting
+	 *         has been interrupted
+	 */
+	boolean waitForOutputTime(final Data data, final PendingWrite pw) {
 		if (data.getTime() == Data.TIME_NOTIME) return true;
 		final long execTime = feedback.getStartTime() + data.getTime();
-		final long delta = execTime - System.currentTimeMillis()
-				- cfgOutputInitOverhead.getContent();
-		if (delta > 0) {
-			Log.detail("Waiting %d ms", delta);
+		final long deadline = feedback.getStartNanos()
+				+ (data.getTime() - cfgOutputInitOverhead.getContent())
+				* 1000000L;
+		final long remaining = deadline - System.nanoTime();
+		final long delta = remaining / 1000000L;
+		if (remaining > 0) {
+			if (Log.canLogDetail())
+				Log.detail("Waiting %d ms", delta);
 			try {
-				Thread.sleep(delta);
+				Pacer.waitUntil(deadline, cfgSpinWindow.getContent() * 1000L);
 			} catch (final InterruptedException e) {
 				Log.error(e, "Failed to wait %d ms for "
 						+ "correct output time", delta);
 				// no incInterruptionCount() here
 				return false;
 			}
+			feedback.addSchedulingJitter(System.nanoTime() - deadline);
 			return true;
 		}
+		if (pw != null && !pw.claimBehindCount()) return true;
 		final boolean significant = delta < -cfgMaxBehind.getContent();
 		data.getOrigin().getFeedback().incBehindCount(-delta, significant);
 		feedback.incBehindCount(-delta, significant);
@@ -733,6 +1067,24 @@ public final class Pipe extends StateHandling implements ConfigurationInterface
 		return true;
 	}
 
+	/**
+	 * Closes the {@link DataQueue} after the last Input-Thread has finished,
+	 * waiting for the {@link ConverterStages} to pass on all their
+	 * {@link Data}s first.
+	 */
+	private void closeDataQueue() {
+		final ConverterStages cs = converterStages;
+		if (cs != null) try {
+			cs.awaitDrained();
+		} catch (final InterruptedException e) {
+			Log.detail("Waiting for converters has been interrupted");
+		}
+		synchronized (this) {
+			// another Input-Thread may have been started in the meantime
+			if (thrsInput.isEmpty()) dataQueue.close();
+		}
+	}
+
 	/**
 	 * Tries to read one {@link Data} block from the currently active
 	 * {@link Input}.<br>
@@ -746,8 +1098,9 @@ public final class Pipe extends StateHandling implements ConfigurationInterface
 	 * @return a new {@link Data} or <b>null</b> if no {@link Input} in the list
 	 *         has any more available {@link Data}
 	 */
-	private Data getFromInput(final List<Input> inputSubList) {
-		Log.detail("Reading one data block from input");
+	Data getFromInput(final List<Input> inputSubList) {
+		if (Log.canLogDetail())
+			Log.detail("Reading one data block from input");
 		Input in;
 		while (true) {
 			if (inputThreadInterruped) return null;
@@ -763,7 +1116,8 @@ public final class Pipe extends StateHandling implements ConfigurationInterface
 				in.decThreadReferenceCounter();
 				continue;
 			}
-			Log.detail("Trying input '%s'", in);
+			if (Log.canLogDetail())
+				Log.detail("Trying input '%s'", in);
 			try {
 				final Data res = in.readData();
 				if (res != null) {
@@ -824,17 +1178,19 @@ public final class Pipe extends StateHandling implements ConfigurationInterface
 	 * @throws IOException
 	 *             if the {@link DataQueue} has been closed
 	 */
-	private void putIntoOutputQueue(final Data data) throws IOException {
+	void putIntoOutputQueue(final Data data) throws IOException {
 		// if time-to-wait is positive we wait here before we are
 		// forced to immediately drop a data block or clear the queue
 		if (data.getTime() != Data.TIME_NOTIME) {
-			final long execTime = feedback.getStartTime() + data.getTime();
-			final long delta = execTime - System.currentTimeMillis()
-					- cfgOverheadReductionTime.getContent();
+			final long deadline = feedback.getStartNanos()
+					+ (data.getTime() - cfgOverheadReductionTime.getContent())
+					* 1000000L;
+			final long delta = (deadline - System.nanoTime()) / 1000000L;
 			if (delta > 0) {
-				Log.detail("Waiting %d ms", delta);
+				if (Log.canLogDetail())
+					Log.detail("Waiting %d ms", delta);
 				try {
-					Thread.sleep(delta);
+					Pacer.waitUntil(deadline, 0);
 				} catch (final InterruptedException e) {
 					Log.error(e, "Failed to wait %d ms for "
 							+ "correct output time", delta);
@@ -846,13 +1202,51 @@ public final class Pipe extends StateHandling implements ConfigurationInterface
 
 		if (Log.canLogDetail())
 			Log.detail("Currently on queue: " + dataQueue.getAll());
-		final PutResult res = dataQueue.put(data);
+		// a Data which has already been passed to an OutputLane will be
+		// interrupted there, so the Output-Thread itself never needs to be
+		// interrupted
+		final PutResult res;
+		// the reference will be released after all OutputLanes are done
+		data.retain();
+		synchronized (dispatchLock) {
+			try {
+				res = dataQueue.put(data);
+			} catch (final IOException e) {
+				data.release();
+				throw e;
+			}
+			if (res == PutResult.ClearedAndPut
+					&& dataQueue.getSizeBeforeClear() > 0)
+				interruptingData.add(data);
+		}
+		handlePutResult(res, data, dataQueue, null);
+		if (res == PutResult.Dropped) data.release();
+	}
+
+	/**
+	 * Updates the {@link PipeFeedback} according to the result of putting a
+	 * {@link Data} into a {@link DataQueue} and interrupts the consumer of
+	 * the queue if the {@link Data} has a higher priority.
+	 * 
+	 * @param res
+	 *            result of {@link DataQueue#put(Data)}
+	 * @param data
+	 *            the {@link Data} which has been put
+	 * @param queue
+	 *            the {@link DataQueue}
+	 * @param consumer
+	 *            the thread reading from the {@link DataQueue} which will be
+	 *            interrupted if the queue has been cleared - may be
+	 *            <b>null</b>
+	 */
+	private void handlePutResult(final PutResult res, final Data data,
+			final DataQueue queue, final Thread consumer) {
 		switch (res) {
 		case ClearedAndPut:
 			Log.info("Canceling current command, "
 					+ "because of higher-priority command '%s'", data);
-			thrOutput.interrupt();
-			feedback.incDropCount(dataQueue.getSizeBeforeClear());
+			if (consumer != null) consumer.interrupt();
+			feedback.incDropCount(queue.getSizeBeforeClear());
 			break;
 		case Dropped:
 			data.getOrigin().getFeedback().incDropCount();
@@ -883,25 +1277,23 @@ public final class Pipe extends StateHandling implements ConfigurationInterface
 	 */
 	private List<Data> convertDataToDataList(final Data data)
 			throws IOException {
-		Log.detail("Converting data block to list of data blocks");
+		if (Log.canLogDetail())
+			Log.detail("Converting data block to list of data blocks");
 		List<Data> res = null;
 		final List<Data> sum = new ArrayList<Data>();
 		boolean found = false;
-		boolean outputExists = false;
-		for (final PipePart pp : data.getOrigin().getConnectedPipeParts()) {
-			if (pp instanceof Converter && !ignoredConverter.contains(pp)
-					&& (res = convertOneData(data, (Converter) pp)) != null) {
+		final PipeRoute route = data.getOrigin().getRoute();
+		for (final Converter cvt : route.getConverters())
+			if ((res = convertOneData(data, cvt)) != null) {
 				found = true;
 				sum.addAll(res);
 			}
-			if (pp instanceof Output && !ignoredOutputs.contains(pp))
-				outputExists = true;
-		}
-		if (outputExists) putIntoOutputQueue(data);
+		if (route.isOutputConnected()) putIntoOutputQueue(data);
 		if (found) return sum;
 
 		// no fitting (and not ignored and working) converter found
-		Log.detail("No Converter found, returning data as is: '%s'", data);
+		if (Log.canLogDetail())
+			Log.detail("No Converter found, returning data as is: '%s'", data);
 		res = new ArrayList<Data>(1);
 		res.add(data);
 		return res;
@@ -909,8 +1301,6 @@ public final class Pipe extends StateHandling implements ConfigurationInterface
 
 	/**
 	 * Tries to convert the given {@link Data} block with the {@link Converter}.
-	 * The converter is added to the {@link #ignoredConverter} list if it fails
-	 * permanently during the conversion.<br>
 	 * All {@link Data}s returned by the converter will immediately be converted
 	 * again.<br>
 	 * This method recursively calls {@link #convertDataToDataList(Data)} which
@@ -923,20 +1313,52 @@ public final class Pipe extends StateHandling implements ConfigurationInterface
 	 * @return list of {@link Data} created from {@link Converter} or
 	 *         <b>null</b> if the {@link Converter} could not handle the
 	 *         {@link Data} or an error occurred during conversion
+	 * @throws IOException
+	 *             if the DataQueue has been closed
+	 */
+	private List<Data> convertOneData(final Data data, final Converter cvt)
+			throws IOException {
+		final List<Data> newDatas = convertWith(data, cvt);
+		if (newDatas == null) return null;
+		final List<Data> res = new ArrayList<Data>(newDatas.size());
+		try {
+			for (final Data newData : newDatas)
+				res.addAll(convertDataToDataList(newData));
+		} finally {
+			// everyone who still needs them has retained them by now - or
+			// the queue has been closed and no one will ever need them
+			for (final Data newData : newDatas)
+				if (newData != data) newData.release();
+		}
+		return res;
+	}
+
+	/**
+	 * Converts the given {@link Data} block with the {@link Converter} without
+	 * converting the results again.<br>
+	 * The converter is added to the {@link #ignoredConverter} list if it fails
+	 * permanently during the conversion.
+	 * 
+	 * @param data
+	 *            {@link Data} to convert
+	 * @param cvt
+	 *            {@link Converter} to use for conversion
+	 * @return list of {@link Data} created from {@link Converter} with their
+	 *         origin set to the {@link Converter} or <b>null</b> if the
+	 *         {@link Converter} could not handle the {@link Data} or an error
+	 *         occurred during conversion
 	 */
-	private List<Data> convertOneData(final Data data, final Converter cvt) {
+	List<Data> convertWith(final Data data, final Converter cvt) {
 		try {
-			Log.detail("Converting '%s' with '%s'", data, cvt);
+			if (Log.canLogDetail())
+				Log.detail("Converting '%s' with '%s'", data, cvt);
 			feedback.incDataConvertedCount();
 			visualizePipeFlow(data.getOrigin(), cvt);
 			final List<Data> newDatas = cvt.convert(data);
 			if (newDatas != null) {
-				final List<Data> res = new ArrayList<Data>(newDatas.size());
-				for (final Data newData : newDatas) {
+				for (final Data newData : newDatas)
 					newData.setOrigin(cvt);
-					res.addAll(convertDataToDataList(newData));
-				}
-				return res;
+				return newDatas;
 			}
 		} catch (final ConverterException e) {
 			Log.error(e);
@@ -946,6 +1368,7 @@ public final class Pipe extends StateHandling implements ConfigurationInterface
 				Log.info("Removing no longer working converter '%s'", cvt);
 				cvt.tryClose();
 				ignoredConverter.add(cvt);
+				compileRoutes();
 			} else
 				Log.info("Skipping converter '%s' for one data block '%s'",
 						cvt, data);
@@ -960,30 +1383,84 @@ public final class Pipe extends StateHandling implements ConfigurationInterface
 	}
 
 	/**
-	 * Writes the given {@link Data} to all {@link Output}s connected to
-	 * {@link Data}'s origin, ignoring those which have permanently failed.<br>
-	 * Complains if the {@link Data} has not been accepted by at least one
-	 * {@link Output}.
+	 * Passes the given {@link Data} to the {@link OutputLane}s of all
+	 * {@link Output}s connected to {@link Data}'s origin, ignoring those which
+	 * have permanently failed.<br>
+	 * Complains (possibly later on) if the {@link Data} has not been accepted
+	 * by at least one {@link Output}.
 	 * 
 	 * @param data
 	 *            {@link Data} to write
+	 * @param interrupting
+	 *            true if the {@link Data} has cleared other {@link Data}s from
+	 *            the {@link DataQueue} which therefore never reached an
+	 *            {@link Output} - counted as one interruption unless an
+	 *            {@link OutputLane} gets interrupted by it, too
 	 */
-	private void writeDataToAllOutputs(final Data data) {
-		Log.detail("Writing data block '%s' to %d output(s)", data,
-				outputList.size());
-		boolean foundOne = false;
-		for (final PipePart trg : data.getOrigin().getConnectedPipeParts())
-			if (trg instanceof Output && !ignoredOutputs.contains(trg))
-				foundOne |= writeToOutput(data, (Output) trg);
-		if (!foundOne) {
-			final Throwable t = new OutputException(null, false,
-					"Skipping data block '%s' because no fitting "
-							+ "output has been found", data);
-			Log.error(t);
-			feedback.addError(t, false);
+	private void writeDataToAllOutputs(final Data data,
+			final boolean interrupting) {
+		if (Log.canLogDetail())
+			Log.detail("Writing data block '%s' to %d output(s)", data,
+					outputList.size());
+		final OutputLane[] lanes = data.getOrigin().getRoute().getLanes();
+		boolean counted = !interrupting;
+		if (lanes.length == 0) {
+			noOutputFound(data);
+			data.release();
+		}
+		final PendingWrite pw = lanes.length == 0 ? null : new PendingWrite(
+				data, lanes.length);
+		for (final OutputLane lane : lanes) {
+			final PutResult res;
+			try {
+				res = lane.put(pw);
+			} catch (final IOException e) {
+				// lanes are only closed after the Output-Thread has finished
+				throw new InternalException(e);
+			}
+			handlePutResult(res, data, lane.getQueue(), lane.getThread());
+			if (res == PutResult.Dropped) pw.finished(this, true);
+			// the lane itself counts the interruption
+			if (res == PutResult.ClearedAndPut) counted = true;
+		}
+		if (!counted) {
+			Log.detail("Data cleared from queue by '%s' counts as "
+					+ "interruption", data);
+			feedback.incInterruptionCount();
 		}
 	}
 
+	/**
+	 * Complains about a {@link Data} which has not been accepted by any
+	 * {@link Output}.
+	 * 
+	 * @param data
+	 *            the {@link Data} which has been skipped
+	 */
+	void noOutputFound(final Data data) {
+		final Throwable t = new OutputException(null, false,
+				"Skipping data block '%s' because no fitting "
+						+ "output has been found", data);
+		Log.error(t);
+		feedback.addError(t, false);
+	}
+
+	/**
+	 * Writes one {@link Data} object from an {@link OutputLane} to its
+	 * {@link Output} if the {@link Output} has not permanently failed in the
+	 * meantime.
+	 * 
+	 * @param data
+	 *            {@link Data} to write
+	 * @param out
+	 *            {@link Output} to write to
+	 * @return true if the {@link Output} accepted the {@link Data}
+	 */
+	boolean writeToOutputLane(final Data data, final Output out) {
+		if (ignoredOutputs.contains(out)) return false;
+		return writeToOutput(data, out);
+	}
+
 	/**
 	 * Writes one {@link Data} object to one {@link Output}.
 	 * 
@@ -1015,6 +1492,7 @@ public final class Pipe extends StateHandling implements ConfigurationInterface
 				Log.info("Removing no longer working output '%s'", out);
 				out.tryClose();
 				ignoredOutputs.add(out);
+				compileRoutes();
 			} else
 				Log.info("Skipping output '%s' for one data block '%s'", out,
 						data);
@@ -1056,7 +1534,12 @@ public final class Pipe extends StateHandling implements ConfigurationInterface
 		if (groupName.equals(getClass().getSimpleName()))
 			return new Group(groupName).add(cfgMaxBehind)
 					.add(cfgOutputInitOverhead).add(cfgOverheadReductionTime)
-					.add(cfgLastSaveFile).add(cfgModifiedSinceSave);
+					.add(cfgOutputQueueSize).add(cfgConverterThreads)
+					.add(cfgConverterQueueSize).add(cfgSpinWindow)
+					.add(cfgInputMergePolicy).add(cfgReorderWindow)
+					.add(cfgRecycleData).add(cfgRecycleDebug)
+					.add(cfgLastSaveFile)
+					.add(cfgModifiedSinceSave);
 		final String prefix = getClass().getSimpleName() + ":";
 		if (!groupName.startsWith(prefix))
 			throw new InternalException("Wrong groupName for "
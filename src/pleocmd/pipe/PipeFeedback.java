@@ -19,6 +19,11 @@
 
 package pleocmd.pipe;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
 import pleocmd.pipe.cvt.Converter;
 import pleocmd.pipe.data.Data;
 import pleocmd.pipe.in.Input;
@@ -40,6 +45,20 @@ public final class PipeFeedback extends Feedback {
 
 	private long lastNormalDataOutput;
 
+	private long firstOutputNanos;
+
+	private long abortNanos;
+
+	private long closedNanos;
+
+	private int jitterCount;
+
+	private long jitterSum;
+
+	private long jitterMax;
+
+	private List<OutputLane> outputLanes = Collections.emptyList();
+
 	PipeFeedback() {
 		String s1;
 		assert (s1 = new Throwable().getStackTrace()[1].getClassName())
@@ -76,14 +95,106 @@ public final class PipeFeedback extends Feedback {
 	}
 
 	synchronized void incDataOutputCount(final boolean isNormalData) {
-		++dataOutputCount;
+		if (++dataOutputCount == 1) firstOutputNanos = System.nanoTime();
 		if (isNormalData) lastNormalDataOutput = System.currentTimeMillis();
 	}
 
+	synchronized void abortRequested() {
+		if (abortNanos == 0 && closedNanos == 0)
+			abortNanos = System.nanoTime();
+	}
+
+	synchronized void closed() {
+		closedNanos = System.nanoTime();
+	}
+
+	/**
+	 * @return number of nanoseconds from starting the {@link Pipe} until the
+	 *         first {@link Data} has been written to an {@link Output} or
+	 *         <b>-1</b> if no {@link Data} has been written yet
+	 */
+	public synchronized long getStartToFirstOutput() {
+		return firstOutputNanos == 0 ? -1 : firstOutputNanos
+				- getStartNanos();
+	}
+
+	/**
+	 * @return number of nanoseconds from requesting an abort of the
+	 *         {@link Pipe} until it has been closed or <b>-1</b> if the
+	 *         {@link Pipe} has not been aborted or is not yet closed
+	 */
+	public synchronized long getAbortToClosed() {
+		return abortNanos == 0 || closedNanos == 0 ? -1 : closedNanos
+				- abortNanos;
+	}
+
+	synchronized void addSchedulingJitter(final long nanos) {
+		++jitterCount;
+		jitterSum += nanos;
+		jitterMax = Math.max(jitterMax, nanos);
+	}
+
+	/**
+	 * @return number of timed {@link Data}s for which the Output-Thread had to
+	 *         wait until their output time
+	 */
+	public synchronized int getSchedulingJitterCount() {
+		return jitterCount;
+	}
+
+	/**
+	 * @return average number of nanoseconds between the output time of a
+	 *         timed {@link Data} and the time the waiting for it actually
+	 *         ended
+	 */
+	public synchronized long getAverageSchedulingJitter() {
+		return jitterCount == 0 ? 0 : jitterSum / jitterCount;
+	}
+
+	/**
+	 * @return maximum number of nanoseconds between the output time of a
+	 *         timed {@link Data} and the time the waiting for it actually
+	 *         ended
+	 */
+	public synchronized long getMaxSchedulingJitter() {
+		return jitterMax;
+	}
+
 	public synchronized long getLastNormalDataOutput() {
 		return lastNormalDataOutput;
 	}
 
+	synchronized void setOutputLanes(final Collection<OutputLane> lanes) {
+		outputLanes = new ArrayList<OutputLane>(lanes);
+	}
+
+	/**
+	 * @param out
+	 *            one of the {@link Output}s of the {@link Pipe}
+	 * @return number of {@link Data} currently waiting to be written to the
+	 *         {@link Output} or <b>-1</b> if the {@link Output} has no queue
+	 *         (because it failed during initialization or the {@link Pipe}
+	 *         has never been started)
+	 */
+	public synchronized int getOutputQueueSize(final Output out) {
+		for (final OutputLane lane : outputLanes)
+			if (lane.getOutput() == out) return lane.getSize();
+		return -1;
+	}
+
+	/**
+	 * @param out
+	 *            one of the {@link Output}s of the {@link Pipe}
+	 * @return highest number of {@link Data} which have been waiting at the
+	 *         same time to be written to the {@link Output} or <b>-1</b> if the
+	 *         {@link Output} has no queue
+	 */
+	public synchronized int getOutputQueueMaxSize(final Output out) {
+		for (final OutputLane lane : outputLanes)
+			if (lane.getOutput() == out) return lane.getMaxSize();
+		return -1;
+	}
+
 	@Override
 	protected String getAdditionalString1() {
 		return String.format(
@@ -107,7 +218,23 @@ public final class PipeFeedback extends Feedback {
 
 	@Override
 	protected void addAdditionalHTMLTable2(final StringBuilder sb) {
-		// nothing to do
+		final long firstOutput = getStartToFirstOutput();
+		if (firstOutput != -1)
+			appendToHTMLTable(sb, "Start to first output", String.format(
+					"%.3f ms", firstOutput / 1e6));
+		final long abortToClosed = getAbortToClosed();
+		if (abortToClosed != -1)
+			appendToHTMLTable(sb, "Abort to closed", String.format("%.3f ms",
+					abortToClosed / 1e6));
+		if (getSchedulingJitterCount() > 0)
+			appendToHTMLTable(sb, "Scheduling jitter", String.format(
+					"%.3f ms (max %.3f ms)",
+					getAverageSchedulingJitter() / 1e6,
+					getMaxSchedulingJitter() / 1e6));
+		for (final OutputLane lane : outputLanes)
+			appendToHTMLTable(sb, "Queue of " + lane.getOutput().getName(),
+					String.format("%d (max %d)", lane.getSize(), lane
+							.getMaxSize()));
 	}
 
 }
@@ -128,6 +128,8 @@ public abstract class PipePart extends StateHandling {
 
 	private final PipePartFeedback feedback;
 
+	private volatile PipeRoute route = PipeRoute.EMPTY;
+
 	public PipePart() {
 		feedback = new PipePartFeedback();
 
@@ -387,6 +389,18 @@ public abstract class PipePart extends StateHandling {
 		return Collections.unmodifiableSet(connected);
 	}
 
+	/**
+	 * @return the connections of this {@link PipePart} as compiled by the
+	 *         {@link Pipe} during initialization
+	 */
+	final PipeRoute getRoute() {
+		return route;
+	}
+
+	final void setRoute(final PipeRoute route) {
+		this.route = route;
+	}
+
 	public final void connectToPipePart(final PipePart target)
 			throws StateException {
 		ensureConstructed();
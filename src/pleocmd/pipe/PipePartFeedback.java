@@ -19,6 +19,9 @@
 
 package pleocmd.pipe;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import pleocmd.pipe.data.Data;
 
 /**
@@ -41,10 +44,13 @@ public final class PipePartFeedback extends Feedback {
 
 	private int execInterruptedCount;
 
+	private final Map<String, Object> details;
+
 	PipePartFeedback() {
 		String s1;
 		assert (s1 = new Throwable().getStackTrace()[1].getClassName())
 				.equals(PipePart.class.getName()) : s1;
+		details = new LinkedHashMap<String, Object>();
 	}
 
 	public synchronized int getConfiguredCount() {
@@ -107,6 +113,48 @@ public final class PipePartFeedback extends Feedback {
 		++execInterruptedCount;
 	}
 
+	/**
+	 * Sets a {@link PipePart} specific statistic which will be listed after
+	 * the common counters, like the throughput of one of its connections.
+	 * 
+	 * @param name
+	 *            name of the statistic - replaces a previous one with the same
+	 *            name
+	 * @param value
+	 *            the current value of the statistic
+	 */
+	public synchronized void setDetail(final String name, final Object value) {
+		details.put(name, value);
+	}
+
+	/**
+	 * Removes a {@link PipePart} specific statistic.
+	 * 
+	 * @param name
+	 *            name of the statistic
+	 * @see #setDetail(String, Object)
+	 */
+	public synchronized void removeDetail(final String name) {
+		details.remove(name);
+	}
+
+	/**
+	 * Removes all {@link PipePart} specific statistics.
+	 * 
+	 * @see #setDetail(String, Object)
+	 */
+	public synchronized void clearDetails() {
+		details.clear();
+	}
+
+	/**
+	 * @return a copy of all {@link PipePart} specific statistics
+	 * @see #setDetail(String, Object)
+	 */
+	public synchronized Map<String, Object> getDetails() {
+		return new LinkedHashMap<String, Object>(details);
+	}
+
 	@Override
 	protected String getAdditionalString1() {
 		return String.format(
@@ -128,6 +176,8 @@ public final class PipePartFeedback extends Feedback {
 		appendToHTMLTable(sb, "Data Received", getDataReceivedCount());
 		appendToHTMLTable(sb, "Data Sent", getDataSentCount());
 		appendToHTMLTable(sb, "Data Plotted", getDataPlotCount());
+		for (final Map.Entry<String, Object> e : details.entrySet())
+			appendToHTMLTable(sb, e.getKey(), e.getValue());
 	}
 
 	@Override
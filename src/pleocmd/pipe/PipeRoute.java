@@ -0,0 +1,86 @@
+// This file is part of PleoCommand:
+// Interactively control Pleo with psychobiological parameters
+//
+// Copyright (C) 2010 Oliver Hoffmann - Hoffmann_Oliver@gmx.de
+//
+// This program is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License
+// as published by the Free Software Foundation; either version 2
+// of the License, or (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Boston, USA.
+
+package pleocmd.pipe;
+
+import java.util.List;
+
+import pleocmd.pipe.cvt.Converter;
+import pleocmd.pipe.data.Data;
+import pleocmd.pipe.out.Output;
+
+/**
+ * Immutable snapshot of the connections of one {@link PipePart}, compiled by
+ * the {@link Pipe} during initialization, so routing a {@link Data} only
+ * needs to scan plain arrays.<br>
+ * Contains all connected {@link Converter}s and {@link Output}s which are
+ * not ignored by the {@link Pipe}. A new snapshot is compiled whenever a
+ * {@link PipePart} becomes ignored.
+ * 
+ * @author oliver
+ */
+final class PipeRoute {
+
+	static final PipeRoute EMPTY = new PipeRoute(new Converter[0],
+			new OutputLane[0], false);
+
+	private final Converter[] converters;
+
+	private final OutputLane[] lanes;
+
+	private final boolean outputConnected;
+
+	private PipeRoute(final Converter[] converters, final OutputLane[] lanes,
+			final boolean outputConnected) {
+		this.converters = converters;
+		this.lanes = lanes;
+		this.outputConnected = outputConnected;
+	}
+
+	PipeRoute(final List<Converter> converters, final List<OutputLane> lanes,
+			final boolean outputConnected) {
+		this(converters.toArray(new Converter[converters.size()]), lanes
+				.toArray(new OutputLane[lanes.size()]), outputConnected);
+	}
+
+	/**
+	 * @return all connected {@link Converter}s which are not ignored - must
+	 *         not be modified
+	 */
+	Converter[] getConverters() {
+		return converters;
+	}
+
+	/**
+	 * @return the {@link OutputLane}s of all connected {@link Output}s which
+	 *         are not ignored - must not be modified and is empty if the
+	 *         {@link Pipe} is currently not running
+	 */
+	OutputLane[] getLanes() {
+		return lanes;
+	}
+
+	/**
+	 * @return true if at least one connected {@link Output} is not ignored
+	 */
+	boolean isOutputConnected() {
+		return outputConnected;
+	}
+
+}
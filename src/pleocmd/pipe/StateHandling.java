@@ -198,8 +198,9 @@ public abstract class StateHandling {
 		if (!checkValidChange(this.state, state))
 			throw new StateException(this, true,
 					"Cannot change state from '%s' to '%s'", this.state, state);
-		Log.detail("'%s' changed state: '%s' => '%s'", toString(), this.state,
-				state);
+		if (Log.canLogDetail())
+			Log.detail("'%s' changed state: '%s' => '%s'", toString(),
+					this.state, state);
 		this.state = state;
 	}
 
@@ -67,7 +67,8 @@ public final class BCIChannelSplitter extends Converter { // NO_UCD
 		final List<Data> res = new ArrayList<Data>(cnt);
 		for (int i = 0; i < cnt; ++i) {
 			final double val = MultiFloatData.getValue(data, i);
-			res.add(new SingleFloatData(val, i + 1, data));
+			res.add(SingleFloatData.create(val, i + 1, data,
+					Data.PRIO_DEFAULT, Data.TIME_NOTIME));
 			if (isVisualize() && i <= MAX_VIS) plot(i, val);
 		}
 		return res;
@@ -82,7 +82,7 @@ public final class DataBlockSplitter extends Converter { // NO_UCD
 			time = getPipe().getFeedback().getElapsed();
 		for (int i = 0; i < cnt; ++i) {
 			final double val = MultiFloatData.getValue(data, i);
-			res.add(new SingleFloatData(val, cfgChannelNr.getContent(), data,
+			res.add(SingleFloatData.create(val, cfgChannelNr.getContent(), data,
 					Data.PRIO_DEFAULT, time));
 			if (isVisualize() && i <= MAX_VIS) plot(i, val);
 			time += cfgDelay.getContent();
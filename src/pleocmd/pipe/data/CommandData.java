@@ -28,28 +28,26 @@ import pleocmd.pipe.val.ValueType;
 
 public class CommandData extends Data {
 
-	private static List<Value> l;
-
 	public CommandData(final String command, final String argument,
 			final Data parent, final byte priority, final long time) {
-		super(l = new ArrayList<Value>(2), parent, priority, time, CTOR_DIRECT);
-		Value val = Value.createForType(ValueType.NullTermString);
-		((StringValue) val).set(command);
-		l.add(val);
-		val = Value.createForType(ValueType.NullTermString);
-		((StringValue) val).set(argument);
-		l.add(val);
+		super(asList(command, argument), parent, priority, time, CTOR_DIRECT);
 	}
 
 	public CommandData(final String command, final String argument,
 			final Data parent) {
-		super(l = new ArrayList<Value>(2), parent, CTOR_DIRECT);
+		super(asList(command, argument), parent, CTOR_DIRECT);
+	}
+
+	private static List<Value> asList(final String command,
+			final String argument) {
+		final List<Value> l = new ArrayList<Value>(2);
 		Value val = Value.createForType(ValueType.NullTermString);
 		((StringValue) val).set(command);
 		l.add(val);
 		val = Value.createForType(ValueType.NullTermString);
 		((StringValue) val).set(argument);
 		l.add(val);
+		return l;
 	}
 
 	public static boolean isCommandData(final Data data) {
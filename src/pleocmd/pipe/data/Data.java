@@ -19,17 +19,17 @@
 
 package pleocmd.pipe.data;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.DataInput;
-import java.io.DataInputStream;
 import java.io.DataOutput;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 import pleocmd.Log;
 import pleocmd.exc.FormatException;
@@ -38,6 +38,7 @@ import pleocmd.pipe.PipePart;
 import pleocmd.pipe.cvt.Converter;
 import pleocmd.pipe.in.Input;
 import pleocmd.pipe.out.Output;
+import pleocmd.pipe.val.AsciiBuffer;
 import pleocmd.pipe.val.DataAsciiConverter;
 import pleocmd.pipe.val.DataBinaryConverter;
 import pleocmd.pipe.val.DummyValue;
@@ -48,7 +49,8 @@ import pleocmd.pipe.val.Value;
  * Contains information about one command which will be created from
  * {@link Input}s, converted by {@link Converter}s and then written out by
  * {@link Output}s inside the {@link Pipe}.<br>
- * Is immutable.
+ * Is immutable unless it has been obtained from the {@link DataPool}, in
+ * which case it will be reused after its last {@link #release()}.
  * 
  * @author oliver
  */
@@ -85,16 +87,25 @@ public class Data extends AbstractList<Value> {
 	protected static final char[] HEX_TABLE = new char[] { '0', '1', '2', '3',
 			'4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F' };
 
+	private static final AtomicIntegerFieldUpdater<Data> REFS = AtomicIntegerFieldUpdater
+			.newUpdater(Data.class, "refs");
+
 	private final List<Value> values;
 
 	private PipePart origin;
 
-	private final Data parent;
+	private Data parent;
 
-	private final byte priority;
+	private byte priority;
 
 	private long time;
 
+	/**
+	 * Number of references to a {@link Data} from the {@link DataPool}.<br>
+	 * 0 if this {@link Data} is not pooled, -1 if it has been released.
+	 */
+	private volatile int refs;
+
 	/**
 	 * Creates a new {@link Data} object where all fields can be set
 	 * individually.
@@ -152,13 +163,10 @@ public class Data extends AbstractList<Value> {
 			final byte priority, final long time, final long dummy) {
 		assert dummy == CTOR_DIRECT;
 		this.values = values;
-		this.parent = parent;
-		this.priority = priority == PRIO_DEFAULT && parent != null ? parent
-				.getPriority() : priority;
-		this.time = time == TIME_NOTIME && parent != null ? parent.getTime()
-				: time;
-		Log.detail("New Data created: %s (parent: '%s' priority: %d time: %d)",
-				this, parent, priority, time);
+		init(parent, priority, time);
+		if (Log.canLogDetail())
+			Log.detail("New Data created: %s (parent: '%s' "
+					+ "priority: %d time: %d)", this, parent, priority, time);
 	}
 
 	/**
@@ -176,6 +184,111 @@ public class Data extends AbstractList<Value> {
 		this(values, parent, PRIO_DEFAULT, TIME_NOTIME, dummy);
 	}
 
+	private void init(final Data newParent, final byte newPriority,
+			final long newTime) {
+		parent = newParent;
+		priority = newPriority == PRIO_DEFAULT && newParent != null ? newParent
+				.getPriority() : newPriority;
+		time = newTime == TIME_NOTIME && newParent != null ? newParent
+				.getTime() : newTime;
+	}
+
+	/**
+	 * Marks this {@link Data} as being managed by the {@link DataPool}, either
+	 * after it has been freshly created or after it has been taken from the
+	 * pool for reuse.<br>
+	 * The caller holds the only reference afterwards and the parent will be
+	 * retained until this {@link Data} is released.
+	 * 
+	 * @param newParent
+	 *            the parent which was the cause for this {@link Data} being
+	 *            created - may be <b>null</b>
+	 * @param newPriority
+	 *            priority of the {@link Data}
+	 * @param newTime
+	 *            relative time at which this {@link Data} has been created
+	 */
+	final void reinit(final Data newParent, final byte newPriority,
+			final long newTime) {
+		assert refs <= 0;
+		origin = null;
+		init(newParent, newPriority, newTime);
+		if (newParent != null) newParent.retain();
+		refs = 1;
+	}
+
+	/**
+	 * Adds a reference to this {@link Data}, so it will not be reused before
+	 * a matching {@link #release()}.<br>
+	 * Does nothing if this {@link Data} has not been obtained from the
+	 * {@link DataPool}.
+	 * 
+	 * @return this {@link Data}
+	 * @throws IllegalStateException
+	 *             if this {@link Data} has already been released
+	 */
+	public final Data retain() {
+		while (true) {
+			final int r = refs;
+			if (r == 0) return this;
+			if (r < 0) throw usedAfterRelease();
+			if (REFS.compareAndSet(this, r, r + 1)) return this;
+		}
+	}
+
+	/**
+	 * Drops one reference to this {@link Data}. After the last one has been
+	 * dropped, the {@link Data} will be handed back to the {@link DataPool}
+	 * and must no longer be accessed.<br>
+	 * Does nothing if this {@link Data} has not been obtained from the
+	 * {@link DataPool}.
+	 * 
+	 * @throws IllegalStateException
+	 *             if this {@link Data} has already been released
+	 */
+	public final void release() {
+		while (true) {
+			final int r = refs;
+			if (r == 0) return;
+			if (r < 0) throw usedAfterRelease();
+			if (REFS.compareAndSet(this, r, r == 1 ? -1 : r - 1)) {
+				if (r == 1) {
+					final Data p = parent;
+					parent = null;
+					recycle();
+					if (p != null) p.release();
+				}
+				return;
+			}
+		}
+	}
+
+	/**
+	 * @return true if this {@link Data} has been obtained from the
+	 *         {@link DataPool} and already been released
+	 */
+	public final boolean isReleased() {
+		return refs < 0;
+	}
+
+	/**
+	 * Called after the last reference to a pooled {@link Data} has been
+	 * released.
+	 */
+	protected void recycle() { // CS_IGNORE
+		// design for extension: *is* empty
+	}
+
+	private void checkAlive() {
+		if (refs < 0) throw usedAfterRelease();
+	}
+
+	private IllegalStateException usedAfterRelease() {
+		return new IllegalStateException(String.format(
+				"Data %08X used after it has been released",
+				System.identityHashCode(this)));
+	}
+
 	/**
 	 * Returns the {@link Value} at the given position.
 	 * 
@@ -188,6 +301,7 @@ public class Data extends AbstractList<Value> {
 	@Override
 	// CS_IGNORE_NEXT unchecked exception thrown intentionally
 	public final Value get(final int index) throws IndexOutOfBoundsException {
+		checkAlive();
 		if (index < 0 || index >= values.size())
 			throw new IndexOutOfBoundsException(String.format(
 					"Argument %d does not exist in data '%s'", index, this));
@@ -204,20 +318,32 @@ public class Data extends AbstractList<Value> {
 	 * @return {@link Value} at this position or {@link DummyValue}
 	 */
 	public final Value getSafe(final int index) {
+		checkAlive();
 		return index < 0 || index >= values.size() ? new DummyValue() : values
 				.get(index);
 	}
 
 	@Override
 	public final int size() {
+		checkAlive();
 		return values.size();
 	}
 
+	/**
+	 * @return the list of {@link Value}s backing this {@link Data} - must not
+	 *         be modified
+	 */
+	final List<Value> getValueList() {
+		checkAlive();
+		return values;
+	}
+
 	/**
 	 * @return the {@link PipePart} which has created or most recently "touched"
 	 *         this {@link Data}.
 	 */
 	public final PipePart getOrigin() {
+		checkAlive();
 		return origin;
 	}
 
@@ -241,6 +367,7 @@ public class Data extends AbstractList<Value> {
 	 *         been read from an {@link Input}).
 	 */
 	public final Data getParent() {
+		checkAlive();
 		return parent;
 	}
 
@@ -252,6 +379,7 @@ public class Data extends AbstractList<Value> {
 	 *         priority than other ones already in the queue will be ignored.
 	 */
 	public final byte getPriority() {
+		checkAlive();
 		return priority;
 	}
 
@@ -262,9 +390,38 @@ public class Data extends AbstractList<Value> {
 	 *         top position in the {@link DataQueue}.
 	 */
 	public final long getTime() {
+		checkAlive();
 		return time;
 	}
 
+	/**
+	 * Creates a new {@link Data} with the {@link Value}s of another one but a
+	 * different parent, priority and time.<br>
+	 * Unlike {@link #Data(List, Data, byte, long)}, the list of {@link Value}s
+	 * is shared instead of being copied, so for example the primitive backing
+	 * of a {@link SingleFloatData} or {@link MultiFloatData} is kept. The
+	 * list of a {@link Data} from the {@link DataPool} is copied, as it will
+	 * be reused later on.
+	 * 
+	 * @param source
+	 *            the {@link Data} whose {@link Value}s will be used - must not
+	 *            be modified afterwards
+	 * @param parent
+	 *            the parent which was the cause for the new {@link Data}
+	 *            being created - may be <b>null</b>
+	 * @param priority
+	 *            priority of the new {@link Data}
+	 * @param time
+	 *            relative time at which the new {@link Data} has been created
+	 * @return new {@link Data}
+	 */
+	public static Data wrap(final Data source, final Data parent,
+			final byte priority, final long time) {
+		final List<Value> vals = source.getValueList();
+		return new Data(source.refs == 0 ? vals : new ArrayList<Value>(vals),
+				parent, priority, time, CTOR_DIRECT);
+	}
+
 	/**
 	 * Creates a new {@link Data} object from a {@link DataInput}.
 	 * 
@@ -304,6 +461,51 @@ public class Data extends AbstractList<Value> {
 		return new DataBinaryConverter(in, syntaxList).createDataFromFields();
 	}
 
+	/**
+	 * Creates a new {@link Data} object directly from the binary
+	 * representation in a {@link ByteBuffer} without copying binary payloads.
+	 * 
+	 * @param in
+	 *            buffer with binary data - its content must not be modified as
+	 *            long as the {@link Data} is in use
+	 * @return new {@link Data} with a list of {@link Value}s read from buffer
+	 * @throws IOException
+	 *             if the buffer does not contain a complete {@link Data} - its
+	 *             position is left unchanged in this case
+	 * @throws FormatException
+	 *             if data is of an invalid type or is of an invalid format for
+	 *             its type
+	 * @see DataBinaryConverter#DataBinaryConverter(ByteBuffer, List)
+	 */
+	public static Data createFromBinary(final ByteBuffer in)
+			throws IOException, FormatException {
+		return new DataBinaryConverter(in, null).createDataFromFields();
+	}
+
+	/**
+	 * Creates a new {@link Data} object directly from the binary
+	 * representation in a {@link ByteBuffer} without copying binary payloads.
+	 * 
+	 * @param in
+	 *            buffer with binary data - its content must not be modified as
+	 *            long as the {@link Data} is in use
+	 * @param syntaxList
+	 *            an (empty) list which receives all elements found during
+	 *            parsing - may be <b>null</b>
+	 * @return new {@link Data} with a list of {@link Value}s read from buffer
+	 * @throws IOException
+	 *             if the buffer does not contain a complete {@link Data} - its
+	 *             position is left unchanged in this case
+	 * @throws FormatException
+	 *             if data is of an invalid type or is of an invalid format for
+	 *             its type
+	 * @see DataBinaryConverter#DataBinaryConverter(ByteBuffer, List)
+	 */
+	public static Data createFromBinary(final ByteBuffer in,
+			final List<Syntax> syntaxList) throws IOException, FormatException {
+		return new DataBinaryConverter(in, syntaxList).createDataFromFields();
+	}
+
 	/**
 	 * Creates a new {@link Data} object from a {@link DataInput}.
 	 * 
@@ -360,9 +562,8 @@ public class Data extends AbstractList<Value> {
 	 */
 	public static Data createFromAscii(final String string) throws IOException,
 			FormatException {
-		return new DataAsciiConverter(
-				new DataInputStream(new ByteArrayInputStream(
-						(string + '\n').getBytes("ISO-8859-1"))), null)
+		final byte[] ba = (string + '\n').getBytes("ISO-8859-1");
+		return new DataAsciiConverter(ba, 0, ba.length, null)
 				.createDataFromFields();
 	}
 
@@ -386,9 +587,33 @@ public class Data extends AbstractList<Value> {
 	 */
 	public static Data createFromAscii(final String string,
 			final List<Syntax> syntaxList) throws IOException, FormatException {
-		return new DataAsciiConverter(
-				new DataInputStream(new ByteArrayInputStream(
-						(string + '\n').getBytes("ISO-8859-1"))), syntaxList)
+		final byte[] ba = (string + '\n').getBytes("ISO-8859-1");
+		return new DataAsciiConverter(ba, 0, ba.length, syntaxList)
+				.createDataFromFields();
+	}
+
+	/**
+	 * Creates a new {@link Data} object from a part of a byte array.
+	 * 
+	 * @param ba
+	 *            text data in ISO-8859-1 encoding - parsing stops at the first
+	 *            line-break or the end of the given range
+	 * @param off
+	 *            index of the first byte in ba
+	 * @param len
+	 *            number of valid bytes in ba
+	 * @return new {@link Data} with a list of {@link Value}s read from the
+	 *         array
+	 * @throws IOException
+	 *             if the data ends unexpectedly
+	 * @throws FormatException
+	 *             if data is of an invalid type or is of an invalid format for
+	 *             its type
+	 * @see DataAsciiConverter
+	 */
+	public static Data createFromAscii(final byte[] ba, final int off,
+			final int len) throws IOException, FormatException {
+		return new DataAsciiConverter(ba, off, len, null)
 				.createDataFromFields();
 	}
 
@@ -428,6 +653,50 @@ public class Data extends AbstractList<Value> {
 		new DataBinaryConverter(this).writeToBinary(out, syntaxList);
 	}
 
+	/**
+	 * Writes this {@link Data} directly into a {@link ByteBuffer}.
+	 * 
+	 * @param out
+	 *            the buffer to which this {@link Data} will be written in a
+	 *            binary form
+	 * @throws IOException
+	 *             if this {@link Data}'s fields cannot be put into binary
+	 *             representation (for example more than eight values
+	 *             associated)
+	 * @throws BufferOverflowException
+	 *             if the buffer is too small - its position is left unchanged
+	 *             in this case
+	 * @see DataBinaryConverter
+	 */
+	public final void writeToBinary(final ByteBuffer out) throws IOException,
+			BufferOverflowException {
+		new DataBinaryConverter(this).writeToBinary(out, null);
+	}
+
+	/**
+	 * Writes this {@link Data} directly into a {@link ByteBuffer}.
+	 * 
+	 * @param out
+	 *            the buffer to which this {@link Data} will be written in a
+	 *            binary form
+	 * @param syntaxList
+	 *            an (empty) list which receives all elements created during
+	 *            printing - may be <b>null</b>
+	 * @throws IOException
+	 *             if this {@link Data}'s fields cannot be put into binary
+	 *             representation (for example more than eight values
+	 *             associated)
+	 * @throws BufferOverflowException
+	 *             if the buffer is too small - its position is left unchanged
+	 *             in this case
+	 * @see DataBinaryConverter
+	 */
+	public final void writeToBinary(final ByteBuffer out,
+			final List<Syntax> syntaxList) throws IOException,
+			BufferOverflowException {
+		new DataBinaryConverter(this).writeToBinary(out, syntaxList);
+	}
+
 	/**
 	 * Writes this {@link Data} to a {@link DataOutput}.
 	 * 
@@ -495,15 +764,27 @@ public class Data extends AbstractList<Value> {
 		new DataAsciiConverter(this, syntaxList).writeToAscii(out, writeLF);
 	}
 
+	/**
+	 * Appends this {@link Data} to an {@link AsciiBuffer}.<br>
+	 * The {@link AsciiBuffer} may be cleared and reused for the next
+	 * {@link Data}, so writing many {@link Data}s this way does not create
+	 * any temporary objects.
+	 * 
+	 * @param out
+	 *            the {@link AsciiBuffer} to which this {@link Data} will be
+	 *            appended in ISO-8859-1 encoding
+	 * @param writeLF
+	 *            if a line-feed should be appended
+	 * @see DataAsciiConverter
+	 */
+	public final void writeToAscii(final AsciiBuffer out, final boolean writeLF) {
+		new DataAsciiConverter(this, null).writeToAscii(out, writeLF);
+	}
+
 	public final String asString() {
-		final ByteArrayOutputStream out = new ByteArrayOutputStream(128);
-		try {
-			writeToAscii(new DataOutputStream(out), false);
-			return out.toString("ISO-8859-1");
-		} catch (final IOException e) {
-			Log.error(e);
-			return String.format("S:%s", e.getMessage());
-		}
+		final AsciiBuffer out = new AsciiBuffer();
+		writeToAscii(out, false);
+		return out.toString();
 	}
 
 	@Override
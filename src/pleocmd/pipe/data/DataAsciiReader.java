@@ -0,0 +1,231 @@
+// This file is part of PleoCommand:
+// Interactively control Pleo with psychobiological parameters
+//
+// Copyright (C) 2010 Oliver Hoffmann - Hoffmann_Oliver@gmx.de
+//
+// This program is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License
+// as published by the Free Software Foundation; either version 2
+// of the License, or (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Boston, USA.
+
+package pleocmd.pipe.data;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Queue;
+
+import pleocmd.exc.FormatException;
+
+/**
+ * Reads {@link Data}s in their Ascii representation from an
+ * {@link InputStream}.<br>
+ * Instead of fetching the stream byte by byte, the reader fills a large chunk
+ * buffer, searches the line-feeds in one pass over the chunk and parses every
+ * complete line directly out of the buffer. All {@link Data}s found in one
+ * chunk are returned as a batch, so the per-byte and per-call overhead is
+ * paid only once per chunk.<br>
+ * The reader never asks the stream for more bytes than
+ * {@link InputStream#available()} reports (but at least one), so it can
+ * safely be used on interactive streams like the console, which would
+ * otherwise block until a whole chunk has been typed in.
+ * 
+ * @author oliver
+ */
+public final class DataAsciiReader {
+
+	/**
+	 * Default size of the chunk buffer. It grows if a single line doesn't fit
+	 * into it.
+	 */
+	public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+	private final InputStream in;
+
+	private final Queue<Data> pending = new ArrayDeque<Data>();
+
+	private byte[] buf;
+
+	/**
+	 * Index of the first byte in {@link #buf} which has not been parsed yet.
+	 */
+	private int start;
+
+	/**
+	 * Index behind the last valid byte in {@link #buf}.
+	 */
+	private int end;
+
+	/**
+	 * Bytes between {@link #start} and this index are known to contain no
+	 * line-feed.
+	 */
+	private int scanned;
+
+	private boolean eof;
+
+	/**
+	 * Creates a new {@link DataAsciiReader} with a chunk buffer of
+	 * {@link #DEFAULT_CHUNK_SIZE} bytes.
+	 * 
+	 * @param in
+	 *            the stream with text data in ISO-8859-1 encoding
+	 */
+	public DataAsciiReader(final InputStream in) {
+		this(in, DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * Creates a new {@link DataAsciiReader}.
+	 * 
+	 * @param in
+	 *            the stream with text data in ISO-8859-1 encoding
+	 * @param chunkSize
+	 *            initial size of the chunk buffer
+	 */
+	public DataAsciiReader(final InputStream in, final int chunkSize) {
+		if (chunkSize <= 0)
+			throw new IllegalArgumentException("chunkSize must be positive");
+		this.in = in;
+		buf = new byte[chunkSize];
+	}
+
+	/**
+	 * Returns the next {@link Data} from the stream, parsing a whole chunk
+	 * worth of lines if no more {@link Data} of the last chunk is left.
+	 * 
+	 * @return the next {@link Data} or <b>null</b> if the end of the stream
+	 *         has been reached
+	 * @throws IOException
+	 *             if reading from the stream failed
+	 * @throws FormatException
+	 *             if a line could not be parsed - the line is skipped, so the
+	 *             next call continues with the following one
+	 */
+	public Data read() throws IOException, FormatException {
+		if (pending.isEmpty() && readBatch(pending) == 0) return null;
+		return pending.poll();
+	}
+
+	/**
+	 * Parses all complete lines currently available in the chunk buffer and
+	 * adds the resulting {@link Data}s to a collection. If the buffer doesn't
+	 * contain a complete line, the buffer is refilled from the stream until
+	 * either one is found or the end of the stream is reached.<br>
+	 * {@link Data}s returned from {@link #read()} and this method never
+	 * overlap, but {@link Data}s already parsed for {@link #read()} are
+	 * returned here first.
+	 * 
+	 * @param batch
+	 *            receives the {@link Data}s in the order they appear in the
+	 *            stream
+	 * @return number of {@link Data}s added to the batch - only 0 if the end
+	 *         of the stream has been reached
+	 * @throws IOException
+	 *             if reading from the stream failed
+	 * @throws FormatException
+	 *             if the first line of the batch could not be parsed - if a
+	 *             later line is invalid, the batch ends before it and the
+	 *             exception is thrown during the next call
+	 */
+	public int readBatch(final Collection<Data> batch) throws IOException,
+			FormatException {
+		if (!pending.isEmpty() && batch != pending) {
+			final int cnt = pending.size();
+			batch.addAll(pending);
+			pending.clear();
+			return cnt;
+		}
+		int cnt = 0;
+		while (true) {
+			int nl = findLineFeed();
+			while (nl >= 0) {
+				final int off = start;
+				final Data data;
+				try {
+					data = Data.createFromAscii(buf, off, nl - off);
+				} catch (final FormatException e) {
+					if (cnt > 0) return cnt; // report it on the next call
+					start = scanned = nl + 1;
+					throw e;
+				}
+				start = scanned = nl + 1;
+				batch.add(data);
+				++cnt;
+				nl = findLineFeed();
+			}
+			if (cnt > 0) return cnt;
+			if (eof) {
+				if (start == end) return 0;
+				// the last line has no line-feed
+				final int off = start;
+				start = scanned = end;
+				batch.add(Data.createFromAscii(buf, off, end - off));
+				return 1;
+			}
+			fill();
+		}
+	}
+
+	private int findLineFeed() {
+		final byte[] b = buf;
+		final int e = end;
+		for (int i = scanned; i < e; ++i)
+			if (b[i] == '\n') return i;
+		scanned = e;
+		return -1;
+	}
+
+	private void fill() throws IOException {
+		if (start > 0) {
+			// move the incomplete line to the beginning of the buffer
+			System.arraycopy(buf, start, buf, 0, end - start);
+			end -= start;
+			scanned -= start;
+			start = 0;
+		}
+		if (end == buf.length) {
+			final byte[] nb = new byte[buf.length * 2];
+			System.arraycopy(buf, 0, nb, 0, end);
+			buf = nb;
+		}
+		final int want = Math.min(buf.length - end, Math.max(1, in
+				.available()));
+		final int cnt = in.read(buf, end, want);
+		if (cnt < 0)
+			eof = true;
+		else
+			end += cnt;
+	}
+
+	/**
+	 * @return <b>true</b> if {@link Data}s parsed from the last chunk are
+	 *         still waiting to be returned by {@link #read()} or bytes are
+	 *         left in the chunk buffer
+	 */
+	public boolean hasBufferedData() {
+		return !pending.isEmpty() || start < end;
+	}
+
+	/**
+	 * Closes the underlying stream.
+	 * 
+	 * @throws IOException
+	 *             if closing the stream failed
+	 */
+	public void close() throws IOException {
+		pending.clear();
+		in.close();
+	}
+
+}
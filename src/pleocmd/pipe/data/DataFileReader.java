@@ -0,0 +1,398 @@
+// This file is part of PleoCommand:
+// Interactively control Pleo with psychobiological parameters
+//
+// Copyright (C) 2010 Oliver Hoffmann - Hoffmann_Oliver@gmx.de
+//
+// This program is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License
+// as published by the Free Software Foundation; either version 2
+// of the License, or (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Boston, USA.
+
+package pleocmd.pipe.data;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import pleocmd.Log;
+import pleocmd.exc.FormatException;
+
+/**
+ * Reads {@link Data}s from an indexed binary container file written by a
+ * {@link DataFileWriter}.<br>
+ * Thanks to the index at the end of the file, the reader can jump to a
+ * {@link Data} by its number or by its time with a binary search over the
+ * blocks and only has to parse the {@link Data}s of one block to find the
+ * exact position.<br>
+ * If the index is missing, e.g. because the writing application has been
+ * terminated before closing the file, it is rebuilt by scanning all blocks.
+ * 
+ * @author oliver
+ * @see DataFileWriter
+ */
+public final class DataFileReader {
+
+	private final RandomAccessFile raf;
+
+	private final long[] blockOffset;
+
+	private final long[] blockFirstFrame;
+
+	private final long[] blockMaxTime;
+
+	private final long frameCount;
+
+	private final RecordingCodec codec;
+
+	private int curBlock = -1;
+
+	private ByteBuffer payload;
+
+	private long curFrame;
+
+	private Data pending;
+
+	/**
+	 * Opens an indexed binary container file and reads its index.
+	 * 
+	 * @param file
+	 *            the file to read from
+	 * @throws IOException
+	 *             if the file could not be read or is not an indexed binary
+	 *             container file
+	 * @throws FormatException
+	 *             if the index is missing and a {@link Data} could not be
+	 *             parsed while rebuilding it
+	 */
+	public DataFileReader(final File file) throws IOException,
+			FormatException {
+		raf = new RandomAccessFile(file, "r");
+		try {
+			if (raf.length() < DataFileWriter.HEADER_SIZE
+					|| raf.readInt() != DataFileWriter.MAGIC)
+				throw new IOException(String.format(
+						"'%s' is not an indexed binary file", file));
+			final int version = raf.readInt();
+			if (version > DataFileWriter.VERSION)
+				throw new IOException(String.format(
+						"Unsupported version %d of indexed binary file '%s'",
+						version, file));
+			raf.readInt(); // preferred block size
+			final int encoding = raf.readInt();
+			if (encoding < 0
+					|| encoding >= DataFileWriter.Encoding.values().length)
+				throw new IOException(String.format(
+						"Unsupported encoding %d of indexed binary file '%s'",
+						encoding, file));
+			codec = encoding == DataFileWriter.Encoding.Plain.ordinal() ? null
+					: new RecordingCodec(
+							encoding == DataFileWriter.Encoding.DeltaXor
+									.ordinal());
+			final int cnt = readFooter();
+			if (cnt >= 0) {
+				blockOffset = new long[cnt];
+				blockFirstFrame = new long[cnt];
+				blockMaxTime = new long[cnt];
+				for (int i = 0; i < cnt; ++i) {
+					blockOffset[i] = raf.readLong();
+					blockFirstFrame[i] = raf.readLong();
+					blockMaxTime[i] = raf.readLong();
+				}
+				if (cnt == 0)
+					frameCount = 0;
+				else {
+					raf.seek(blockOffset[cnt - 1]);
+					frameCount = blockFirstFrame[cnt - 1] + raf.readInt();
+				}
+			} else {
+				Log.warn("Index of '%s' is missing, rebuilding it", file);
+				final long[][] idx = new long[3][16];
+				int blocks = 0;
+				long frames = 0;
+				long maxTime = Data.TIME_NOTIME;
+				long pos = DataFileWriter.HEADER_SIZE;
+				while (pos + DataFileWriter.BLOCK_HEADER_SIZE <= raf.length()) {
+					raf.seek(pos);
+					final int frm = raf.readInt();
+					final int len = raf.readInt();
+					if (frm <= 0 || len < 0
+							|| pos + DataFileWriter.BLOCK_HEADER_SIZE + len > raf
+									.length()) break; // incomplete last block
+					final ByteBuffer bb = readPayload(len);
+					if (codec != null) codec.reset();
+					for (int i = 0; i < frm; ++i)
+						maxTime = Math.max(maxTime, parse(bb).getTime());
+					if (blocks == idx[0].length)
+						for (int i = 0; i < idx.length; ++i)
+							idx[i] = Arrays.copyOf(idx[i], blocks * 2);
+					idx[0][blocks] = pos;
+					idx[1][blocks] = frames;
+					idx[2][blocks] = maxTime;
+					++blocks;
+					frames += frm;
+					pos += DataFileWriter.BLOCK_HEADER_SIZE + len;
+				}
+				blockOffset = Arrays.copyOf(idx[0], blocks);
+				blockFirstFrame = Arrays.copyOf(idx[1], blocks);
+				blockMaxTime = Arrays.copyOf(idx[2], blocks);
+				frameCount = frames;
+			}
+		} catch (final IOException e) {
+			raf.close();
+			throw e;
+		} catch (final FormatException e) {
+			raf.close();
+			throw e;
+		}
+		Log.detail("Opened '%s' with %d Data in %d blocks", file, frameCount,
+				blockOffset.length);
+	}
+
+	/**
+	 * Checks whether the file has been written by a {@link DataFileWriter}.
+	 * 
+	 * @param file
+	 *            the file to check
+	 * @return true if the file starts with {@link DataFileWriter#MAGIC}, false
+	 *         if it does not (i.e. is in the old format which just
+	 *         concatenates binary {@link Data}s) or cannot be read
+	 */
+	public static boolean isIndexedFile(final File file) {
+		try {
+			final RandomAccessFile raf = new RandomAccessFile(file, "r");
+			try {
+				return raf.length() >= 4
+						&& raf.readInt() == DataFileWriter.MAGIC;
+			} finally {
+				raf.close();
+			}
+		} catch (final IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Validates the footer and positions the file at the first index entry.
+	 * 
+	 * @return number of blocks or -1 if the footer is missing or invalid
+	 */
+	private int readFooter() throws IOException {
+		final long len = raf.length();
+		if (len < DataFileWriter.HEADER_SIZE + DataFileWriter.FOOTER_SIZE)
+			return -1;
+		raf.seek(len - DataFileWriter.FOOTER_SIZE);
+		final long indexPos = raf.readLong();
+		final int cnt = raf.readInt();
+		if (raf.readInt() != DataFileWriter.FOOTER_MAGIC
+				|| cnt < 0
+				|| indexPos < DataFileWriter.HEADER_SIZE
+				|| indexPos + (long) cnt * DataFileWriter.INDEX_ENTRY_SIZE
+						+ DataFileWriter.FOOTER_SIZE != len) return -1;
+		raf.seek(indexPos);
+		return cnt;
+	}
+
+	private ByteBuffer readPayload(final int len) throws IOException {
+		// a new array for every block, as Data parsed from a ByteBuffer
+		// may still refer to it
+		final byte[] ba = new byte[len];
+		raf.readFully(ba);
+		return ByteBuffer.wrap(ba);
+	}
+
+	private Data parse(final ByteBuffer bb) throws IOException,
+			FormatException {
+		return codec == null ? Data.createFromBinary(bb) : codec.decode(bb);
+	}
+
+	private void loadBlock(final int block) throws IOException {
+		raf.seek(blockOffset[block]);
+		raf.readInt(); // number of Data is already known from the index
+		payload = readPayload(raf.readInt());
+		if (codec != null) codec.reset();
+		curBlock = block;
+		curFrame = blockFirstFrame[block];
+		pending = null;
+	}
+
+	/**
+	 * Reads the next {@link Data} from the file.
+	 * 
+	 * @return the next {@link Data} or <b>null</b> if the end of the file
+	 *         has been reached
+	 * @throws IOException
+	 *             if reading from the file failed
+	 * @throws FormatException
+	 *             if the {@link Data} is of an invalid format
+	 */
+	public Data read() throws IOException, FormatException {
+		if (pending != null) {
+			final Data data = pending;
+			pending = null;
+			return data;
+		}
+		while (payload == null || !payload.hasRemaining()) {
+			if (curBlock + 1 >= blockOffset.length) return null;
+			loadBlock(curBlock + 1);
+		}
+		final Data data = parse(payload);
+		++curFrame;
+		return data;
+	}
+
+	/**
+	 * Positions the reader so that the next call to {@link #read()} returns
+	 * the {@link Data} with the given number.
+	 * 
+	 * @param frame
+	 *            number of the {@link Data}, starting with 0 - if equal to
+	 *            {@link #getFrameCount()}, the reader is positioned at the end
+	 *            of the file
+	 * @throws IOException
+	 *             if reading from the file failed
+	 * @throws FormatException
+	 *             if one of the skipped {@link Data}s is of an invalid format
+	 */
+	public void seekToFrame(final long frame) throws IOException,
+			FormatException {
+		if (frame < 0 || frame > frameCount)
+			throw new IndexOutOfBoundsException(String.format(
+					"Invalid Data number %d, file contains %d", frame,
+					frameCount));
+		if (frame == frameCount) {
+			seekToEnd();
+			return;
+		}
+		int block = Arrays.binarySearch(blockFirstFrame, frame);
+		if (block < 0) block = -block - 2;
+		loadBlock(block);
+		while (curFrame < frame) {
+			parse(payload);
+			++curFrame;
+		}
+	}
+
+	/**
+	 * Positions the reader so that the next call to {@link #read()} returns
+	 * the first {@link Data} which has a time greater or equal to the given
+	 * one. If the times are not in ascending order, this is the first
+	 * {@link Data} after which the recording reached the given time.
+	 * 
+	 * @param time
+	 *            time in milliseconds relative to the start of the recording
+	 * @throws IOException
+	 *             if reading from the file failed
+	 * @throws FormatException
+	 *             if one of the skipped {@link Data}s is of an invalid format
+	 */
+	public void seekToTime(final long time) throws IOException,
+			FormatException {
+		// blockMaxTime is ascending, so find the first block which reaches it
+		int lo = 0;
+		int hi = blockMaxTime.length;
+		while (lo < hi) {
+			final int mid = lo + hi >>> 1;
+			if (blockMaxTime[mid] < time)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		if (lo == blockMaxTime.length) {
+			seekToEnd();
+			return;
+		}
+		loadBlock(lo);
+		Data data;
+		while ((data = read()) != null)
+			if (data.getTime() >= time) {
+				pending = data;
+				return;
+			}
+	}
+
+	private void seekToEnd() {
+		curBlock = blockOffset.length - 1;
+		payload = null;
+		curFrame = frameCount;
+		pending = null;
+	}
+
+	/**
+	 * Reads the binary representation of all {@link Data}s without parsing
+	 * them, i.e. converts the content of the file to the old format.
+	 * 
+	 * @param blockStarts
+	 *            receives the position of the first {@link Data} of every
+	 *            block inside the returned array - may be <b>null</b>
+	 * @return all {@link Data}s concatenated in their binary representation
+	 * @throws IOException
+	 *             if reading from the file failed
+	 * @throws FormatException
+	 *             if the blocks use a compact {@link DataFileWriter.Encoding}
+	 *             and contain an invalid {@link Data}
+	 */
+	public byte[] readAllFrames(final List<Long> blockStarts)
+			throws IOException, FormatException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final DataOutputStream dos = new DataOutputStream(out);
+		for (int block = 0; block < blockOffset.length; ++block) {
+			if (blockStarts != null) blockStarts.add((long) out.size());
+			raf.seek(blockOffset[block]);
+			final int cnt = raf.readInt();
+			final byte[] ba = new byte[raf.readInt()];
+			raf.readFully(ba);
+			if (codec == null)
+				out.write(ba);
+			else {
+				// convert to the normal binary representation
+				final ByteBuffer bb = ByteBuffer.wrap(ba);
+				codec.reset();
+				for (int i = 0; i < cnt; ++i)
+					codec.decode(bb).writeToBinary(dos);
+			}
+		}
+		seekToEnd();
+		return out.toByteArray();
+	}
+
+	/**
+	 * @return total number of {@link Data}s in the file
+	 */
+	public long getFrameCount() {
+		return frameCount;
+	}
+
+	/**
+	 * @return number of blocks in the file
+	 */
+	public int getBlockCount() {
+		return blockOffset.length;
+	}
+
+	/**
+	 * @return number of the {@link Data} which will be returned by the next
+	 *         call to {@link #read()}
+	 */
+	public long getPosition() {
+		return pending == null ? curFrame : curFrame - 1;
+	}
+
+	public void close() throws IOException {
+		raf.close();
+	}
+
+}
@@ -0,0 +1,295 @@
+// This file is part of PleoCommand:
+// Interactively control Pleo with psychobiological parameters
+//
+// Copyright (C) 2010 Oliver Hoffmann - Hoffmann_Oliver@gmx.de
+//
+// This program is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License
+// as published by the Free Software Foundation; either version 2
+// of the License, or (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Boston, USA.
+
+package pleocmd.pipe.data;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import pleocmd.Log;
+
+/**
+ * Writes {@link Data}s into an indexed binary container file (version 2 of
+ * the "Pleo Binary Data" format).
+ * <p>
+ * The file has the following format (all numbers big-endian):<br>
+ * <table>
+ * <tr>
+ * <th align=left>Description</th>
+ * <th align=left>Size</th>
+ * </tr>
+ * <tr>
+ * <td>Magic {@link #MAGIC}</td>
+ * <td>4 Bytes</td>
+ * </tr>
+ * <tr>
+ * <td>Version, currently {@link #VERSION}</td>
+ * <td>4 Bytes</td>
+ * </tr>
+ * <tr>
+ * <td>Preferred size of the payload of one block</td>
+ * <td>4 Bytes</td>
+ * </tr>
+ * <tr>
+ * <td>{@link Encoding} of the payload of the blocks</td>
+ * <td>4 Bytes</td>
+ * </tr>
+ * <tr>
+ * <td>Block #0 .. #N</td>
+ * <td>Depends on content</td>
+ * </tr>
+ * <tr>
+ * <td>Index entry for Block #0 .. #N</td>
+ * <td>24 Bytes each</td>
+ * </tr>
+ * <tr>
+ * <td>Footer</td>
+ * <td>16 Bytes</td>
+ * </tr>
+ * </table>
+ * <p>
+ * Every block consists of the number of {@link Data}s in it (4 Bytes), the
+ * size of its payload (4 Bytes) and the payload itself, which is either just
+ * a concatenation of {@link Data}s in their binary representation or the
+ * compact representation described in {@link RecordingCodec}. A
+ * {@link Data} is never split across two blocks, so a block is only roughly
+ * of the preferred size.<br>
+ * An index entry consists of the file offset of the block (8 Bytes), the
+ * number of the first {@link Data} in the block (8 Bytes) and the highest
+ * time of all {@link Data}s in the block and all blocks before it or
+ * {@link Data#TIME_NOTIME} if none of them has a time (8 Bytes).<br>
+ * The footer consists of the file offset of the first index entry (8 Bytes),
+ * the number of blocks (4 Bytes) and the magic {@link #FOOTER_MAGIC} (4
+ * Bytes).
+ * <p>
+ * The first byte of {@link #MAGIC} has both reserved flags set, so it can
+ * never be the beginning of a file of the old format, which just
+ * concatenates binary {@link Data}s.
+ * 
+ * @author oliver
+ * @see DataFileReader
+ */
+public final class DataFileWriter {
+
+	/**
+	 * How the {@link Data}s inside the blocks are stored.
+	 */
+	public enum Encoding {
+		/**
+		 * Every {@link Data} in its normal binary representation.
+		 */
+		Plain,
+		/**
+		 * Repeated headers and identifiers are replaced by a schema, times and
+		 * integers are stored as variable length differences.
+		 */
+		Delta,
+		/**
+		 * Like {@link #Delta}, but floating point values are additionally
+		 * stored as XOR of their bits with the previous value.
+		 */
+		DeltaXor
+	}
+
+	public static final int MAGIC = 0xFF504244; // 0xFF "PBD"
+
+	public static final int FOOTER_MAGIC = 0xFF504458; // 0xFF "PDX"
+
+	public static final int VERSION = 2;
+
+	public static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+
+	static final int HEADER_SIZE = 16;
+
+	static final int BLOCK_HEADER_SIZE = 8;
+
+	static final int INDEX_ENTRY_SIZE = 24;
+
+	static final int FOOTER_SIZE = 16;
+
+	private final DataOutputStream out;
+
+	private final int blockSize;
+
+	private final RecordingCodec codec;
+
+	private final ByteArrayOutputStream block;
+
+	/**
+	 * Receives the binary representation of one {@link Data} before it will
+	 * be appended to {@link #block}, so a rejected {@link Data} leaves
+	 * nothing behind.
+	 */
+	private final ByteArrayOutputStream frame;
+
+	private final DataOutputStream frameOut;
+
+	private final ByteArrayOutputStream index;
+
+	private final DataOutputStream indexOut;
+
+	private long filePos;
+
+	private int blockCount;
+
+	private int blockFrames;
+
+	private long frameCount;
+
+	private long maxTime = Data.TIME_NOTIME;
+
+	private boolean closed;
+
+	/**
+	 * Creates a new {@link DataFileWriter} using the
+	 * {@link #DEFAULT_BLOCK_SIZE} and writes the file header.
+	 * 
+	 * @param out
+	 *            the {@link OutputStream} of an empty file - will be closed
+	 *            by {@link #close()}
+	 * @throws IOException
+	 *             if writing the header failed
+	 */
+	public DataFileWriter(final OutputStream out) throws IOException {
+		this(out, DEFAULT_BLOCK_SIZE, Encoding.Plain);
+	}
+
+	/**
+	 * Creates a new {@link DataFileWriter} and writes the file header.
+	 * 
+	 * @param out
+	 *            the {@link OutputStream} of an empty file - will be closed
+	 *            by {@link #close()}
+	 * @param blockSize
+	 *            preferred size of the payload of one block in bytes
+	 * @param encoding
+	 *            how the {@link Data}s inside the blocks will be stored
+	 * @throws IOException
+	 *             if writing the header failed
+	 */
+	public DataFileWriter(final OutputStream out, final int blockSize,
+			final Encoding encoding) throws IOException {
+		if (blockSize <= 0)
+			throw new IllegalArgumentException("Invalid block size: "
+					+ blockSize);
+		this.out = new DataOutputStream(out);
+		this.blockSize = blockSize;
+		codec = encoding == Encoding.Plain ? null : new RecordingCodec(
+				encoding == Encoding.DeltaXor);
+		block = new ByteArrayOutputStream(blockSize + 256);
+		frame = new ByteArrayOutputStream(256);
+		frameOut = new DataOutputStream(frame);
+		index = new ByteArrayOutputStream();
+		indexOut = new DataOutputStream(index);
+		this.out.writeInt(MAGIC);
+		this.out.writeInt(VERSION);
+		this.out.writeInt(blockSize);
+		this.out.writeInt(encoding.ordinal());
+		filePos = HEADER_SIZE;
+	}
+
+	/**
+	 * Appends one {@link Data} to the current block and writes the block to
+	 * the file if it has reached its preferred size.
+	 * 
+	 * @param data
+	 *            the {@link Data} to write
+	 * @throws IOException
+	 *             if writing to the file failed or the {@link Data} cannot
+	 *             be encoded - the file is left unchanged in the latter case
+	 */
+	public void write(final Data data) throws IOException {
+		if (closed) throw new IOException("DataFileWriter has been closed");
+		if (codec == null) {
+			frame.reset();
+			data.writeToBinary(frameOut);
+			frame.writeTo(block);
+		} else {
+			if (blockFrames == 0) codec.reset();
+			codec.encode(data, block);
+		}
+		// only now the Data is known to be part of the block
+		if (blockFrames == 0) {
+			indexOut.writeLong(filePos);
+			indexOut.writeLong(frameCount);
+		}
+		++blockFrames;
+		++frameCount;
+		if (data.getTime() > maxTime) maxTime = data.getTime();
+		if (block.size() >= blockSize) writeBlock();
+	}
+
+	private void writeBlock() throws IOException {
+		if (blockFrames == 0) return;
+		indexOut.writeLong(maxTime);
+		out.writeInt(blockFrames);
+		out.writeInt(block.size());
+		block.writeTo(out);
+		filePos += BLOCK_HEADER_SIZE + block.size();
+		++blockCount;
+		blockFrames = 0;
+		block.reset();
+	}
+
+	/**
+	 * Writes the current block to the file, even if it has not reached its
+	 * preferred size yet, and flushes the underlying {@link OutputStream}.
+	 * 
+	 * @throws IOException
+	 *             if writing to the file failed
+	 */
+	public void flush() throws IOException {
+		if (closed) throw new IOException("DataFileWriter has been closed");
+		writeBlock();
+		out.flush();
+	}
+
+	/**
+	 * Writes the last, incomplete block, the index and the footer and closes
+	 * the underlying {@link OutputStream}.<br>
+	 * Has no effect if the {@link DataFileWriter} is already closed.
+	 * 
+	 * @throws IOException
+	 *             if writing to the file failed
+	 */
+	public void close() throws IOException {
+		if (closed) return;
+		closed = true;
+		try {
+			writeBlock();
+			index.writeTo(out);
+			out.writeLong(filePos);
+			out.writeInt(blockCount);
+			out.writeInt(FOOTER_MAGIC);
+			Log.detail("Written %d Data in %d blocks", frameCount, blockCount);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * @return number of {@link Data}s written so far
+	 */
+	public long getFrameCount() {
+		return frameCount;
+	}
+
+}
@@ -0,0 +1,189 @@
+// This file is part of PleoCommand:
+// Interactively control Pleo with psychobiological parameters
+//
+// Copyright (C) 2010 Oliver Hoffmann - Hoffmann_Oliver@gmx.de
+//
+// This program is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License
+// as published by the Free Software Foundation; either version 2
+// of the License, or (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Boston, USA.
+
+package pleocmd.pipe.data;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import pleocmd.pipe.Pipe;
+
+/**
+ * Optionally recycles {@link SingleFloatData}s, which are the most frequently
+ * created {@link Data}s inside a running {@link Pipe}, so that steady-state
+ * piping does not have to allocate new objects for every sample.<br>
+ * A {@link Data} taken from this pool starts with one reference owned by its
+ * creator. Every additional owner must call {@link Data#retain()} and every
+ * owner must call {@link Data#release()} when it no longer needs the
+ * {@link Data}. After the last reference has been released, the {@link Data}
+ * is put back into this pool. {@link Data}s which are never released will
+ * just be garbage collected.
+ * <p>
+ * In debug mode released {@link Data}s are never reused, so any access to
+ * them throws an {@link IllegalStateException}.
+ * 
+ * @author oliver
+ */
+public final class DataPool {
+
+	/**
+	 * Maximum number of {@link Data}s kept for reuse.
+	 */
+	private static final int CAPACITY = 4096;
+
+	private static final SingleFloatData[] FREE = new SingleFloatData[CAPACITY];
+
+	private static final AtomicLong CNT_CREATED = new AtomicLong();
+
+	private static final AtomicLong CNT_REUSED = new AtomicLong();
+
+	private static final AtomicLong CNT_QUARANTINED = new AtomicLong();
+
+	/**
+	 * Number of valid entries in {@link #FREE}, guarded by {@link #FREE}.
+	 */
+	private static int freeCount;
+
+	private static volatile boolean enabled;
+
+	private static volatile boolean debug;
+
+	private DataPool() {
+		// final class and only static methods
+	}
+
+	/**
+	 * Enables or disables recycling and the detection of accesses to released
+	 * {@link Data}s.<br>
+	 * Disabling recycling discards all currently pooled {@link Data}s.
+	 * 
+	 * @param enable
+	 *            true if {@link Data}s should be taken from this pool
+	 * @param debugMode
+	 *            true if released {@link Data}s should never be reused
+	 */
+	public static void configure(final boolean enable, final boolean debugMode) {
+		enabled = enable;
+		debug = debugMode;
+		if (!enable || debugMode) synchronized (FREE) {
+			for (int i = 0; i < freeCount; ++i)
+				FREE[i] = null;
+			freeCount = 0;
+		}
+	}
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	public static boolean isDebug() {
+		return debug;
+	}
+
+	/**
+	 * Returns a {@link SingleFloatData} which is either taken from this pool
+	 * or newly created. If recycling is disabled, a normal unpooled
+	 * {@link SingleFloatData} will be created.
+	 * 
+	 * @param val
+	 *            value for the {@link SingleFloatData}
+	 * @param user
+	 *            user data for the {@link SingleFloatData}
+	 * @param parent
+	 *            the parent which was the cause for this {@link Data} being
+	 *            created - may be <b>null</b>
+	 * @param priority
+	 *            priority of the {@link Data}
+	 * @param time
+	 *            relative time at which this {@link Data} has been created
+	 * @return a {@link SingleFloatData} with one reference owned by the caller
+	 */
+	static SingleFloatData obtainSingleFloat(final double val,
+			final long user, final Data parent, final byte priority,
+			final long time) {
+		if (!enabled)
+			return new SingleFloatData(val, user, parent, priority, time);
+		SingleFloatData res = null;
+		synchronized (FREE) {
+			if (freeCount > 0) {
+				res = FREE[--freeCount];
+				FREE[freeCount] = null;
+			}
+		}
+		if (res == null) {
+			res = new SingleFloatData(val, user, parent, priority, time);
+			res.reinit(parent, priority, time);
+			CNT_CREATED.incrementAndGet();
+		} else {
+			res.reuse(val, user, parent, priority, time);
+			CNT_REUSED.incrementAndGet();
+		}
+		return res;
+	}
+
+	/**
+	 * Puts a {@link SingleFloatData} back into this pool after its last
+	 * reference has been released.
+	 * 
+	 * @param data
+	 *            the released {@link SingleFloatData}
+	 */
+	static void recycle(final SingleFloatData data) {
+		if (debug || !enabled) {
+			CNT_QUARANTINED.incrementAndGet();
+			return;
+		}
+		synchronized (FREE) {
+			if (freeCount < CAPACITY) FREE[freeCount++] = data;
+		}
+	}
+
+	/**
+	 * @return number of {@link Data}s currently waiting for reuse
+	 */
+	public static int getFreeCount() {
+		synchronized (FREE) {
+			return freeCount;
+		}
+	}
+
+	/**
+	 * @return number of pooled {@link Data}s which had to be created because
+	 *         the pool has been empty
+	 */
+	public static long getCreatedCount() {
+		return CNT_CREATED.get();
+	}
+
+	/**
+	 * @return number of {@link Data}s which have been taken from the pool
+	 */
+	public static long getReusedCount() {
+		return CNT_REUSED.get();
+	}
+
+	/**
+	 * @return number of released {@link Data}s which have not been reused
+	 *         because of the debug mode or because recycling has been
+	 *         disabled in the meantime
+	 */
+	public static long getQuarantinedCount() {
+		return CNT_QUARANTINED.get();
+	}
+
+}
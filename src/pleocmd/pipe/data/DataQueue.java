@@ -20,113 +20,119 @@
 package pleocmd.pipe.data;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.List;
 
-import pleocmd.Log;
 import pleocmd.StandardInput;
-import pleocmd.exc.FormatException;
-import pleocmd.exc.InternalException;
-import pleocmd.pipe.PipePart;
 import pleocmd.pipe.cvt.Converter;
 import pleocmd.pipe.in.Input;
 import pleocmd.pipe.out.Output;
 
 /**
- * Provides a FiFo implemented as a ring-buffer which passes {@link Data} from
- * {@link Input} / {@link Converter} thread to the {@link Output} thread in a
- * thread-safe manner with priority support.
+ * Provides a FiFo which passes {@link Data} from {@link Input} /
+ * {@link Converter} thread to the {@link Output} thread in a thread-safe
+ * manner with priority support.
  * 
  * @author oliver
  * @see StandardInput
+ * @see SynchronizedDataQueue
+ * @see LockFreeDataQueue
  */
-public final class DataQueue {
+public abstract class DataQueue {
 
 	/**
 	 * Will be used if the queue is empty and there is a {@link #get()} waiting
 	 * to indicate that the queue is currently accepting everything without any
 	 * side effects.
 	 */
-	private static final int PRIO_UNDEFINED = Byte.MAX_VALUE;
+	protected static final byte PRIO_UNDEFINED = Byte.MAX_VALUE;
 
 	/**
-	 * Initial ringbuffer size after {@link #resetCache()}.
+	 * If true, every {@link Data} in the queue holds one reference (see
+	 * {@link Data#retain()}), which is released if the {@link Data} is
+	 * discarded instead of being returned by {@link #get()}.
 	 */
-	private static final int RB_DEFAULT = 16;
+	private final boolean releaseDiscarded;
 
-	/**
-	 * This array represents a ring buffer.
-	 */
-	private Data[] buffer;
+	private volatile DiscardListener discardListener;
 
 	/**
-	 * The position of the next byte to read from {@link #buffer}.
+	 * Creates a queue which does not own references to its {@link Data}s.
 	 */
-	private int readPos;
+	protected DataQueue() {
+		this(false);
+	}
 
 	/**
-	 * The position of the next byte to write to {@link #buffer}.
+	 * @param releaseDiscarded
+	 *            if true, the queue owns one reference to every {@link Data}
+	 *            put into it and releases it if the {@link Data} gets cleared
+	 *            from the queue
 	 */
-	private int writePos;
+	protected DataQueue(final boolean releaseDiscarded) {
+		this.releaseDiscarded = releaseDiscarded;
+	}
 
 	/**
-	 * The priority of all the {@link Data}s in the queue.<br>
-	 * This is {@link #PRIO_UNDEFINED} if the queue is empty and there is a
-	 * {@link #get()} waiting or there never was any {@link #get()} (since the
-	 * last {@link #resetCache()}).<br>
-	 * So it's defined for an empty queue only if the last {@link #get()} is
-	 * still being processed by the Output-Thread.
+	 * Must be called for every {@link Data} which is removed from the queue
+	 * without being returned by {@link #get()}.
+	 * 
+	 * @param data
+	 *            the discarded {@link Data}
 	 */
-	private byte priority;
+	protected final void discarded(final Data data) {
+		final DiscardListener dl = discardListener;
+		if (dl != null) dl.discarded(data);
+		if (releaseDiscarded) data.release();
+	}
 
 	/**
-	 * Only true if the cache has been closed, i.e. the remaining data in
-	 * {@link #buffer} can still be read, but no new data can be put into the
-	 * {@link #buffer} and if {@link #readPos} catches up {@link #writePos}
-	 * {@link #get()} throws an {@link IOException}.
+	 * Will be informed about every {@link Data} which is removed from a
+	 * {@link DataQueue} without being returned by {@link DataQueue#get()}.
+	 * 
+	 * @author oliver
 	 */
-	private boolean closed;
+	public interface DiscardListener {
 
-	private int sizeBeforeClear;
+		/**
+		 * Called before the reference of the {@link DataQueue} to the
+		 * {@link Data} is released. May be called from any thread accessing
+		 * the {@link DataQueue}.
+		 * 
+		 * @param data
+		 *            the discarded {@link Data}
+		 */
+		void discarded(Data data);
+
+	}
 
 	/**
-	 * Creates a new, empty and opened {@link DataQueue}.
+	 * @param discardListener
+	 *            will be informed about every {@link Data} cleared from this
+	 *            queue - may be <b>null</b>
 	 */
-	public DataQueue() {
-		resetCache();
+	public final void setDiscardListener(
+			final DiscardListener discardListener) {
+		this.discardListener = discardListener;
 	}
 
 	/**
-	 * Appends a "close" to the ring buffer.<br>
-	 * The remaining Data in the ring buffer can still be {@link #get()} but no
-	 * new data can be {@link #put(Data)} into it. After no more data is
-	 * available {@link #get()} throws an {@link IOException}.<br>
+	 * Appends a "close" to the queue.<br>
+	 * The remaining Data in the queue can still be {@link #get()} but no new
+	 * data can be {@link #put(Data)} into it. After no more data is available
+	 * {@link #get()} returns <b>null</b>.<br>
 	 * Has no effect if the {@link DataQueue} is already closed.
 	 */
-	public synchronized void close() {
-		Log.detail("Sending close to ring-buffer '%s'", this);
-		closed = true;
-		notify();
-	}
+	public abstract void close();
 
 	/**
 	 * Clears and (if currently closed) reopens the queue.<br>
-	 * All data in the ring buffer not yet read will be lost.
+	 * All data in the queue not yet read will be lost.<br>
+	 * Must not be called while another thread is accessing the queue.
 	 */
-	public synchronized void resetCache() {
-		Log.detail("Resetting ring-buffer '%s'", this);
-		buffer = new Data[RB_DEFAULT];
-		readPos = 0;
-		writePos = 0;
-		closed = false;
-		priority = PRIO_UNDEFINED;
-		sizeBeforeClear = 0;
-		Log.detail("Reset ring-buffer '%s'", this);
-		notify();
-	}
+	public abstract void resetCache();
 
 	/**
-	 * Reads one {@link Data} from the ring buffer.<br>
+	 * Reads one {@link Data} from the queue.<br>
 	 * Blocks until the {@link Data} is available.<br>
 	 * Should only be called from the Output thread.
 	 * 
@@ -135,31 +141,7 @@ public final class DataQueue {
 	 * @throws InterruptedException
 	 *             if waiting for the next data block has been interrupted
 	 */
-	public Data get() throws InterruptedException {
-		Log.detail("Trying to read in '%s'", this);
-		boolean first = true;
-		synchronized (this) {
-			while (true) {
-				// check if read catches up write?
-				if (readPos != writePos) break;
-				if (first) {
-					// queue empty and waiting in get(), so:
-					priority = PRIO_UNDEFINED;
-					Log.detail("Queue empty and waiting => "
-							+ "undefined priority in '%s'", this);
-				}
-				// if queue closed, we return null to signal end of pipe
-				if (closed) return null;
-				first = false;
-				// block until data available
-				wait();
-			}
-			final Data res = buffer[readPos];
-			Log.detail("Read from %03d '%s' in '%s'", readPos, res, this);
-			readPos = (readPos + 1) % buffer.length;
-			return res;
-		}
-	}
+	public abstract Data get() throws InterruptedException;
 
 	/**
 	 * The return value of {@link DataQueue#put(Data)}.
@@ -183,65 +165,23 @@ public final class DataQueue {
 	}
 
 	/**
-	 * Puts one {@link Data} into the ringbuffer, so it can be read by
+	 * Puts one {@link Data} into the queue, so it can be read by
 	 * {@link #get()}.<br>
 	 * If {@link Data}'s priority is lower than the one of the current elements
 	 * in the queue, the new {@link Data} will silently be dropped. <br>
 	 * If {@link Data}'s priority is higher than the one of the current elements
-	 * in the queue, the queue is cleared before inserting the new {@link Data}. <br>
+	 * in the queue, the queue is cleared before inserting the new {@link Data}
+	 * and the drop count of the origins of all cleared {@link Data}s is
+	 * increased. <br>
 	 * Should only be called from the Input/Converter thread.
 	 * 
 	 * @param data
-	 *            data to put into the ring buffer
+	 *            data to put into the queue
 	 * @return a {@link PutResult}
 	 * @throws IOException
 	 *             if the {@link DataQueue} has been {@link #close()}d.
 	 */
-	public synchronized PutResult put(final Data data) throws IOException {
-		if (closed) throw new IOException("DataQueue is closed");
-
-		boolean hasBeenCleared = false;
-		if (priority != PRIO_UNDEFINED && data.getPriority() < priority) {
-			// silently drop the new Data
-			Log.detail("Dropped '%s' in '%s'", data, this);
-			return PutResult.Dropped;
-		}
-		if (priority != PRIO_UNDEFINED && data.getPriority() > priority) {
-			// fast-clearing of the queue
-			sizeBeforeClear = (writePos - readPos) % buffer.length;
-			if (sizeBeforeClear < 0) sizeBeforeClear += buffer.length;
-			int i = readPos;
-			while (i != writePos) {
-				final PipePart org = buffer[i].getOrigin();
-				if (org != null) org.getFeedback().incDropCount();
-				i = (i + 1) % buffer.length;
-			}
-			readPos = writePos;
-			Log.detail("Cleared '%s' because of '%s'", this, data);
-			hasBeenCleared = true;
-		}
-
-		buffer[writePos] = data;
-		priority = data.getPriority();
-		Log.detail("Put at %03d '%s' in '%s'", writePos, data, this);
-		writePos = (writePos + 1) % buffer.length;
-		if (writePos == readPos) {
-			// we need to increase our ring buffer:
-			// we "insert space" between the current write and
-			// read position so writePos stays the same while
-			// readPos moves.
-			final Data[] newbuf = new Data[buffer.length * 2];
-			readPos += newbuf.length - buffer.length;
-			System.arraycopy(buffer, 0, newbuf, 0, writePos);
-			System.arraycopy(buffer, writePos, newbuf, readPos, buffer.length
-					- writePos);
-			buffer = newbuf;
-			Log.detail("Increased buffer in '%s'", this);
-		}
-
-		notify();
-		return hasBeenCleared ? PutResult.ClearedAndPut : PutResult.Put;
-	}
+	public abstract PutResult put(final Data data) throws IOException;
 
 	/**
 	 * @return the number of {@link Data}s which were in the queue immediately
@@ -250,30 +190,17 @@ public final class DataQueue {
 	 *         Is <b>0></b> if the queue has never been cleared since the last
 	 *         {@link #resetCache()}.
 	 */
-	public int getSizeBeforeClear() {
-		return sizeBeforeClear;
-	}
+	public abstract int getSizeBeforeClear();
 
-	@Override
-	public String toString() {
-		return String.format("cap: %d, read: %d, write: %d, lastPrio: %d",
-				buffer == null ? -1 : buffer.length, readPos, writePos,
-				priority);
-	}
+	/**
+	 * @return the number of {@link Data}s currently waiting in the queue
+	 */
+	public abstract int getSize();
 
-	public synchronized List<Data> getAll() {
-		final List<Data> res = new ArrayList<Data>();
-		int i = readPos;
-		while (i != writePos)
-			i = (i + 1) % buffer.length;
-		if (closed) try {
-			res.add(Data.createFromAscii("QUEUE CLOSED"));
-		} catch (final IOException e) {
-			throw new InternalException(e);
-		} catch (final FormatException e) {
-			throw new InternalException(e);
-		}
-		return res;
-	}
+	/**
+	 * @return a snapshot of all {@link Data}s currently waiting in the queue -
+	 *         only intended for debugging purposes
+	 */
+	public abstract List<Data> getAll();
 
 }
@@ -0,0 +1,176 @@
+// This file is part of PleoCommand:
+// Interactively control Pleo with psychobiological parameters
+//
+// Copyright (C) 2010 Oliver Hoffmann - Hoffmann_Oliver@gmx.de
+//
+// This program is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License
+// as published by the Free Software Foundation; either version 2
+// of the License, or (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Boston, USA.
+
+package pleocmd.pipe.data;
+
+import java.util.AbstractList;
+
+import pleocmd.pipe.cvt.Converter;
+import pleocmd.pipe.val.FloatValue;
+import pleocmd.pipe.val.IntValue;
+import pleocmd.pipe.val.StringValue;
+import pleocmd.pipe.val.Value;
+import pleocmd.pipe.val.ValueType;
+
+/**
+ * Read-only list of {@link Value}s for {@link SingleFloatData} and
+ * {@link MultiFloatData} which is backed by primitive fields.<br>
+ * The {@link Value}s are only created when they are accessed for the first
+ * time, so {@link Converter}s which only use the static accessors of these
+ * classes never create them at all.<br>
+ * As the created {@link Value}s can still be modified, they replace the
+ * primitive fields from then on, so all accessors always agree with
+ * {@link #get(int)}.
+ * 
+ * @author oliver
+ */
+final class FloatSampleList extends AbstractList<Value> {
+
+	private final String ident;
+
+	private final double[] samples;
+
+	private long user;
+
+	private final boolean hasUser;
+
+	private volatile Value[] values;
+
+	private FloatSampleList(final String ident, final double[] samples,
+			final long user, final boolean hasUser) {
+		this.ident = ident;
+		this.samples = samples;
+		this.user = user;
+		this.hasUser = hasUser;
+	}
+
+	/**
+	 * Creates a list for a {@link SingleFloatData}, i.e. the identifier, one
+	 * floating point value and the user data.
+	 * 
+	 * @param ident
+	 *            identifier of the {@link Data}
+	 * @param value
+	 *            the floating point value
+	 * @param user
+	 *            the user data
+	 * @return new list
+	 */
+	static FloatSampleList forSingle(final String ident, final double value,
+			final long user) {
+		return new FloatSampleList(ident, new double[] { value }, user, true);
+	}
+
+	/**
+	 * Creates a list for a {@link MultiFloatData}, i.e. the identifier
+	 * followed by all floating point values.
+	 * 
+	 * @param ident
+	 *            identifier of the {@link Data}
+	 * @param samples
+	 *            the floating point values - will be copied
+	 * @return new list
+	 */
+	static FloatSampleList forMulti(final String ident, final double[] samples) {
+		return new FloatSampleList(ident, samples.clone(), 0, false);
+	}
+
+	/**
+	 * Replaces the value and the user data of a list created by
+	 * {@link #forSingle(String, double, long)} when its {@link Data} is
+	 * reused by the {@link DataPool}.
+	 * 
+	 * @param value
+	 *            the new floating point value
+	 * @param newUser
+	 *            the new user data
+	 */
+	void reset(final double value, final long newUser) {
+		assert hasUser && samples.length == 1;
+		samples[0] = value;
+		user = newUser;
+		values = null;
+	}
+
+	String getIdent() {
+		final Value[] vals = values;
+		return vals == null ? ident : vals[0].asString();
+	}
+
+	int getSampleCount() {
+		return samples.length;
+	}
+
+	/**
+	 * Returns the type of a {@link Value} without creating it.
+	 * 
+	 * @param index
+	 *            index of the {@link Value}
+	 * @return {@link ValueType} of the {@link Value}
+	 */
+	ValueType getType(final int index) {
+		final Value[] vals = values;
+		if (vals != null) return vals[index].getType();
+		if (index == 0) return ValueType.NullTermString;
+		return index <= samples.length ? ValueType.Float64 : ValueType.Int64;
+	}
+
+	double getSample(final int index) {
+		final Value[] vals = values;
+		return vals == null ? samples[index] : vals[index + 1].asDouble();
+	}
+
+	long getUser() {
+		final Value[] vals = values;
+		return vals == null ? user : vals[vals.length - 1].asLong();
+	}
+
+	@Override
+	public int size() {
+		return samples.length + (hasUser ? 2 : 1);
+	}
+
+	@Override
+	public Value get(final int index) {
+		if (index < 0 || index >= size())
+			throw new IndexOutOfBoundsException(String.format(
+					"Index %d out of range [0, %d)", index, size()));
+		Value[] vals = values;
+		if (vals == null) vals = createValues();
+		return vals[index];
+	}
+
+	private synchronized Value[] createValues() {
+		if (values != null) return values;
+		final Value[] vals = new Value[size()];
+		vals[0] = Value.createForType(ValueType.NullTermString);
+		((StringValue) vals[0]).set(ident);
+		for (int i = 0; i < samples.length; ++i) {
+			vals[i + 1] = Value.createForType(ValueType.Float64);
+			((FloatValue) vals[i + 1]).set(samples[i]);
+		}
+		if (hasUser) {
+			vals[vals.length - 1] = Value.createForType(ValueType.Int64);
+			((IntValue) vals[vals.length - 1]).set(user);
+		}
+		values = vals;
+		return vals;
+	}
+
+}
@@ -0,0 +1,395 @@
+// This file is part of PleoCommand:
+// Interactively control Pleo with psychobiological parameters
+//
+// Copyright (C) 2010 Oliver Hoffmann - Hoffmann_Oliver@gmx.de
+//
+// This program is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License
+// as published by the Free Software Foundation; either version 2
+// of the License, or (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Boston, USA.
+
+package pleocmd.pipe.data;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import pleocmd.Log;
+import pleocmd.exc.FormatException;
+import pleocmd.exc.InternalException;
+import pleocmd.pipe.PipePart;
+import pleocmd.pipe.cvt.Converter;
+import pleocmd.pipe.in.Input;
+import pleocmd.pipe.out.Output;
+
+/**
+ * Provides a {@link DataQueue} implemented as a lock-free ring-buffer for
+ * multiple producers ({@link Input} / {@link Converter} threads) and one
+ * consumer (the {@link Output} thread).
+ * <p>
+ * The sequence number of the next free slot, the priority of the queued
+ * {@link Data}s and the "closed" flag are packed into one atomic word, so
+ * dropping, clearing and closing are decided by a single compare-and-set.<br>
+ * Clearing the queue only records the sequence number of the high-priority
+ * {@link Data}. The Output thread then skips all older {@link Data}s in
+ * {@link #get()} and increases the drop count of their origins.<br>
+ * The ring consists of linked segments of fixed size, so it grows without
+ * copying if the Output thread falls behind.
+ * 
+ * @author oliver
+ * @see SynchronizedDataQueue
+ */
+public final class LockFreeDataQueue extends DataQueue {
+
+	/**
+	 * Number of slots in one {@link Segment}.
+	 */
+	private static final int SEG_SIZE = 256;
+
+	/**
+	 * Bit position of the priority inside the state word.
+	 */
+	private static final int PRIO_SHIFT = 48;
+
+	/**
+	 * Mask of the sequence number inside the state word.
+	 */
+	private static final long SEQ_MASK = (1L << PRIO_SHIFT) - 1;
+
+	/**
+	 * Set in the state word if the queue has been {@link #close()}d.
+	 */
+	private static final long CLOSED_FLAG = 1L << 56;
+
+	/**
+	 * The current ring. Will be replaced by {@link #resetCache()}.
+	 */
+	private volatile Ring ring;
+
+	/**
+	 * The Output thread if it is currently blocking in {@link #get()}.
+	 */
+	private volatile Thread waiting;
+
+	private volatile int sizeBeforeClear;
+
+	/**
+	 * Creates a new, empty and opened {@link LockFreeDataQueue} which does
+	 * not own references to its {@link Data}s.
+	 */
+	public LockFreeDataQueue() {
+		this(false);
+	}
+
+	/**
+	 * Creates a new, empty and opened {@link LockFreeDataQueue}.
+	 * 
+	 * @param releaseDiscarded
+	 *            if true, the queue owns one reference to every {@link Data}
+	 *            put into it and releases it if the {@link Data} gets cleared
+	 *            from the queue
+	 */
+	public LockFreeDataQueue(final boolean releaseDiscarded) {
+		super(releaseDiscarded);
+		resetCache();
+	}
+
+	@Override
+	public void close() {
+		Log.detail("Sending close to ring-buffer '%s'", this);
+		final Ring r = ring;
+		long s;
+		do {
+			s = r.state.get();
+		} while (!r.state.compareAndSet(s, s | CLOSED_FLAG));
+		wakeUp();
+	}
+
+	@Override
+	public void resetCache() {
+		Log.detail("Resetting ring-buffer '%s'", this);
+		final Ring old = ring;
+		ring = new Ring();
+		if (old != null) discardAll(old);
+		sizeBeforeClear = 0;
+		Log.detail("Reset ring-buffer '%s'", this);
+		wakeUp();
+	}
+
+	@Override
+	public Data get() throws InterruptedException {
+		while (true) {
+			final Ring r = ring;
+			final long s = r.state.get();
+			final long readSeq = r.readSeq;
+			if (readSeq == seqOf(s)) {
+				// queue empty and waiting in get(), so undefined priority
+				if (prioOf(s) != PRIO_UNDEFINED
+						&& !r.state.compareAndSet(s, pack(seqOf(s),
+								PRIO_UNDEFINED, s))) continue;
+				// if queue closed, we return null to signal end of pipe
+				if ((s & CLOSED_FLAG) != 0) return null;
+				// block until data available - rechecking after publishing
+				// ourself, so no wake-up from put() can be lost
+				waiting = Thread.currentThread();
+				if (ring == r && seqOf(r.state.get()) == readSeq)
+					LockSupport.park(this);
+				waiting = null;
+				if (Thread.interrupted()) throw new InterruptedException();
+				continue;
+			}
+
+			Segment seg = r.head;
+			if (readSeq - seg.base >= SEG_SIZE) {
+				final Segment next = seg.next.get();
+				if (next == null) {
+					// producer has not yet linked the next segment
+					Thread.yield();
+					continue;
+				}
+				r.head = seg = next;
+			}
+			final int idx = (int) (readSeq - seg.base);
+			final Data res = seg.slots.get(idx);
+			if (res == null) {
+				// slot has been claimed but not yet been filled by producer
+				Thread.yield();
+				continue;
+			}
+			seg.slots.lazySet(idx, null);
+			r.readSeq = readSeq + 1;
+			if (readSeq < r.clearedBefore.get()) {
+				// fast-clearing of the queue
+				final PipePart org = res.getOrigin();
+				if (org != null) org.getFeedback().incDropCount();
+				discarded(res);
+				continue;
+			}
+			return res;
+		}
+	}
+
+	@Override
+	public PutResult put(final Data data) throws IOException {
+		final Ring r = ring;
+		final byte prio = data.getPriority();
+		long s;
+		long seq;
+		boolean clear;
+		Segment seg;
+		while (true) {
+			// must be read before claiming the slot, see Ring.tail
+			seg = r.tail.get();
+			s = r.state.get();
+			if ((s & CLOSED_FLAG) != 0)
+				throw new IOException("DataQueue is closed");
+			final byte cur = prioOf(s);
+			if (cur != PRIO_UNDEFINED && prio < cur)
+			// silently drop the new Data
+				return PutResult.Dropped;
+			clear = cur != PRIO_UNDEFINED && prio > cur;
+			seq = seqOf(s);
+			if (r.state.compareAndSet(s, pack(seq + 1, prio, s))) break;
+		}
+
+		if (clear) {
+			long old;
+			do {
+				old = r.clearedBefore.get();
+			} while (old < seq && !r.clearedBefore.compareAndSet(old, seq));
+			sizeBeforeClear = (int) (seq - Math.max(old, r.readSeq));
+		}
+
+		while (seq - seg.base >= SEG_SIZE) {
+			Segment next = seg.next.get();
+			if (next == null) {
+				next = new Segment(seg.base + SEG_SIZE);
+				if (!seg.next.compareAndSet(null, next))
+					next = seg.next.get();
+			}
+			seg = next;
+		}
+		seg.slots.set((int) (seq - seg.base), data);
+		Segment tail = r.tail.get();
+		while (tail.base < seg.base && !r.tail.compareAndSet(tail, seg))
+			tail = r.tail.get();
+
+		wakeUp();
+		return clear ? PutResult.ClearedAndPut : PutResult.Put;
+	}
+
+	@Override
+	public int getSizeBeforeClear() {
+		return sizeBeforeClear;
+	}
+
+	@Override
+	public int getSize() {
+		final Ring r = ring;
+		final long write = seqOf(r.state.get());
+		return (int) Math.max(0,
+				write - Math.max(r.readSeq, r.clearedBefore.get()));
+	}
+
+	@Override
+	public List<Data> getAll() {
+		final Ring r = ring;
+		final long s = r.state.get();
+		final List<Data> res = new ArrayList<Data>();
+		long i = Math.max(r.readSeq, r.clearedBefore.get());
+		Segment seg = r.head;
+		while (i < seqOf(s) && seg != null) {
+			if (i - seg.base >= SEG_SIZE) {
+				seg = seg.next.get();
+				continue;
+			}
+			final Data d = seg.slots.get((int) (i - seg.base));
+			if (d != null) res.add(d);
+			++i;
+		}
+		if ((s & CLOSED_FLAG) != 0) try {
+			res.add(Data.createFromAscii("QUEUE CLOSED"));
+		} catch (final IOException e) {
+			throw new InternalException(e);
+		} catch (final FormatException e) {
+			throw new InternalException(e);
+		}
+		return res;
+	}
+
+	@Override
+	public String toString() {
+		final Ring r = ring;
+		if (r == null) return "uninitialized";
+		final long s = r.state.get();
+		return String.format("read: %d, write: %d, cleared: %d, "
+				+ "lastPrio: %d%s", r.readSeq, seqOf(s), r.clearedBefore.get(),
+				prioOf(s), (s & CLOSED_FLAG) != 0 ? ", closed" : "");
+	}
+
+	/**
+	 * Discards all {@link Data}s which have not yet been read from a ring
+	 * which is no longer in use.
+	 * 
+	 * @param r
+	 *            the old ring
+	 */
+	private void discardAll(final Ring r) {
+		final long end = seqOf(r.state.get());
+		long i = r.readSeq;
+		Segment seg = r.head;
+		while (i < end && seg != null) {
+			if (i - seg.base >= SEG_SIZE) {
+				seg = seg.next.get();
+				continue;
+			}
+			final Data d = seg.slots.getAndSet((int) (i - seg.base), null);
+			if (d != null) discarded(d);
+			++i;
+		}
+	}
+
+	private void wakeUp() {
+		final Thread thr = waiting;
+		if (thr != null) LockSupport.unpark(thr);
+	}
+
+	private static long seqOf(final long state) {
+		return state & SEQ_MASK;
+	}
+
+	private static byte prioOf(final long state) {
+		return (byte) (state >>> PRIO_SHIFT);
+	}
+
+	/**
+	 * @param seq
+	 *            the sequence number of the next free slot
+	 * @param prio
+	 *            the priority of the {@link Data}s in the queue
+	 * @param oldState
+	 *            the state from which the "closed" flag will be taken
+	 * @return a new state word
+	 */
+	private static long pack(final long seq, final byte prio,
+			final long oldState) {
+		return seq | (prio & 0xFFL) << PRIO_SHIFT | oldState & CLOSED_FLAG;
+	}
+
+	/**
+	 * A fixed-size part of the ring.
+	 */
+	private static final class Segment {
+
+		private final long base;
+
+		private final AtomicReferenceArray<Data> slots = new AtomicReferenceArray<Data>(
+				SEG_SIZE);
+
+		private final AtomicReference<Segment> next = new AtomicReference<Segment>();
+
+		Segment(final long base) {
+			this.base = base;
+		}
+
+	}
+
+	/**
+	 * All the state of the queue between two {@link #resetCache()}.
+	 */
+	private static final class Ring {
+
+		/**
+		 * Sequence number of the next free slot, priority of the queued
+		 * {@link Data}s and the "closed" flag.
+		 */
+		private final AtomicLong state = new AtomicLong(pack(0,
+				PRIO_UNDEFINED, 0));
+
+		/**
+		 * All {@link Data}s with a lower sequence number have been cleared by
+		 * a high-priority {@link Data}.
+		 */
+		private final AtomicLong clearedBefore = new AtomicLong();
+
+		/**
+		 * The segment containing the highest published slot or one before.<br>
+		 * Only ever set to a segment containing an already claimed sequence
+		 * number, so a producer which reads it before claiming its own slot
+		 * will always find its slot at or after this segment.
+		 */
+		private final AtomicReference<Segment> tail;
+
+		/**
+		 * The segment containing {@link #readSeq} or the one before. Only
+		 * written by the Output thread.
+		 */
+		private volatile Segment head;
+
+		/**
+		 * Sequence number of the next slot to read. Only written by the Output
+		 * thread.
+		 */
+		private volatile long readSeq;
+
+		Ring() {
+			head = new Segment(0);
+			tail = new AtomicReference<Segment>(head);
+		}
+
+	}
+
+}
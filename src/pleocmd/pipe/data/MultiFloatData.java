@@ -19,9 +19,9 @@
 
 package pleocmd.pipe.data;
 
-import pleocmd.pipe.val.FloatValue;
+import java.util.List;
+
 import pleocmd.pipe.val.Value;
-import pleocmd.pipe.val.ValueType;
 
 public final class MultiFloatData extends MultiValueData {
 
@@ -29,35 +29,40 @@ public final class MultiFloatData extends MultiValueData {
 
 	public MultiFloatData(final double[] values, final Data parent,
 			final byte priority, final long time) {
-		super(IDENT, asValue(values), parent, priority, time);
+		super(FloatSampleList.forMulti(IDENT, values), parent, priority, time);
 	}
 
 	public MultiFloatData(final double[] values, final Data parent) {
-		super(IDENT, asValue(values), parent);
+		super(FloatSampleList.forMulti(IDENT, values), parent);
 	}
 
 	public MultiFloatData(final Data parent) {
 		super(IDENT, parent.toArray(new Value[parent.size()]), parent);
 	}
 
-	private static Value[] asValue(final double[] values) {
-		final Value[] res = new Value[values.length];
-		for (int i = 0; i < values.length; ++i) {
-			res[i] = Value.createForType(ValueType.Float64);
-			((FloatValue) res[i]).set(values[i]);
-		}
-		return res;
+	public MultiFloatData(final Data source, final Data parent) {
+		super(IDENT, source.toArray(new Value[source.size()]), parent, source
+				.getPriority(), source.getTime());
 	}
 
 	public static boolean isMultiFloatData(final Data data) {
+		final List<Value> values = data.getValueList();
+		if (values instanceof FloatSampleList)
+			return IDENT.equals(((FloatSampleList) values).getIdent());
 		return IDENT.equals(data.getSafe(0).asString());
 	}
 
 	public static int getValueCount(final Data data) {
+		final List<Value> values = data.getValueList();
+		if (values instanceof FloatSampleList)
+			return ((FloatSampleList) values).getSampleCount();
 		return MultiValueData.getValueCount(data);
 	}
 
 	public static double getValue(final Data data, final int index) {
+		final List<Value> values = data.getValueList();
+		if (values instanceof FloatSampleList)
+			return ((FloatSampleList) values).getSample(index);
 		return MultiValueData.getValueRaw(data, index).asDouble();
 	}
 
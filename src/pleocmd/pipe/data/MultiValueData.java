@@ -28,27 +28,34 @@ import pleocmd.pipe.val.ValueType;
 
 class MultiValueData extends Data {
 
-	private static List<Value> l;
-
 	protected MultiValueData(final String ident, final Value[] values,
 			final Data parent, final byte priority, final long time) {
-		super(l = new ArrayList<Value>(1 + values.length), parent, priority,
-				time, CTOR_DIRECT);
-		init(ident, values);
+		super(asList(ident, values), parent, priority, time, CTOR_DIRECT);
 	}
 
 	protected MultiValueData(final String ident, final Value[] values,
 			final Data parent) {
-		super(l = new ArrayList<Value>(1 + values.length), parent, CTOR_DIRECT);
-		init(ident, values);
+		super(asList(ident, values), parent, CTOR_DIRECT);
+	}
+
+	protected MultiValueData(final List<Value> values, final Data parent,
+			final byte priority, final long time) {
+		super(values, parent, priority, time, CTOR_DIRECT);
+	}
+
+	protected MultiValueData(final List<Value> values, final Data parent) {
+		super(values, parent, CTOR_DIRECT);
 	}
 
-	private static void init(final String ident, final Value[] values) {
+	private static List<Value> asList(final String ident,
+			final Value[] values) {
+		final List<Value> l = new ArrayList<Value>(1 + values.length);
 		final Value valIdent = Value.createForType(ValueType.NullTermString);
 		((StringValue) valIdent).set(ident);
 		l.add(valIdent);
 		for (final Value v : values)
 			l.add(v);
+		return l;
 	}
 
 	public static int getValueCount(final Data data) {
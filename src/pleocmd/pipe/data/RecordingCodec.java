@@ -0,0 +1,443 @@
+// This file is part of PleoCommand:
+// Interactively control Pleo with psychobiological parameters
+//
+// Copyright (C) 2010 Oliver Hoffmann - Hoffmann_Oliver@gmx.de
+//
+// This program is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License
+// as published by the Free Software Foundation; either version 2
+// of the License, or (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Boston, USA.
+
+package pleocmd.pipe.data;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import pleocmd.exc.FormatException;
+import pleocmd.pipe.val.FloatValue;
+import pleocmd.pipe.val.IntValue;
+import pleocmd.pipe.val.Value;
+import pleocmd.pipe.val.ValueType;
+
+/**
+ * Compact encoding of the {@link Data}s inside one block of a file written by
+ * {@link DataFileWriter}.
+ * <p>
+ * Recordings mostly consist of {@link SingleFloatData}s and
+ * {@link MultiFloatData}s, which all share the same header, the same
+ * identifier and the same field types. Every {@link Data} whose first field
+ * is a string and whose other fields are all numbers is therefore split into
+ * a schema (priority, whether it has a time, field types and identifier),
+ * which is written only once per block, and the numbers which are written
+ * as differences to the previous {@link Data} of the same schema:
+ * <ul>
+ * <li>times and integer fields as zig-zag encoded variable length integers
+ * </li>
+ * <li>floating point fields either as raw 8 bytes or, if XOR encoding is
+ * enabled, as the XOR of their bits with the previous ones, which is written
+ * as one byte with the number of trailing zero bytes (high nibble) and the
+ * number of meaningful bytes (low nibble) followed by the meaningful bytes -
+ * or as just one zero byte if the value did not change at all</li>
+ * </ul>
+ * Every other {@link Data} is written in its normal binary representation.
+ * <p>
+ * Every {@link Data} is preceded by a tag, which is 0 for a {@link Data} in
+ * normal binary representation, 1 for the definition of a new schema
+ * followed by a {@link Data} of that schema or the number of an already
+ * defined schema plus 2.<br>
+ * All schemas and previous values are forgotten at the beginning of each
+ * block, so every block can be decoded on its own.
+ * 
+ * @author oliver
+ */
+final class RecordingCodec {
+
+	private static final int TAG_RAW = 0;
+
+	private static final int TAG_SCHEMA = 1;
+
+	private static final int TAG_FIRST_ID = 2;
+
+	private static final ValueType[] TYPES = ValueType.values();
+
+	private final boolean xor;
+
+	private final List<Schema> schemas = new ArrayList<Schema>();
+
+	private Schema lastSchema;
+
+	private byte[] buf = new byte[256];
+
+	private int len;
+
+	RecordingCodec(final boolean xor) {
+		this.xor = xor;
+	}
+
+	/**
+	 * Forgets all schemas and previous values. Must be called at the
+	 * beginning of every block.
+	 */
+	void reset() {
+		schemas.clear();
+		lastSchema = null;
+	}
+
+	/**
+	 * Appends the compact encoding of one {@link Data} to a block.
+	 * 
+	 * @param data
+	 *            the {@link Data} to encode
+	 * @param out
+	 *            the current block
+	 * @throws IOException
+	 *             if the {@link Data} could not be written
+	 */
+	void encode(final Data data, final ByteArrayOutputStream out)
+			throws IOException {
+		final List<Value> values = data.getValueList();
+		if (!isSchemaCompatible(values)) {
+			// encode first, so a failure leaves no tag behind in the block
+			final ByteArrayOutputStream raw = new ByteArrayOutputStream();
+			data.writeToBinary(new DataOutputStream(raw));
+			out.write(TAG_RAW);
+			raw.writeTo(out);
+			return;
+		}
+		len = 0;
+		Schema schema = findSchema(data, values);
+		if (schema == null) {
+			schema = new Schema(data, values);
+			schemas.add(schema);
+			putVarLong(TAG_SCHEMA);
+			schema.writeDefinition();
+		} else
+			putVarLong(TAG_FIRST_ID + schema.id);
+		lastSchema = schema;
+		if (schema.hasTime) {
+			putVarLong(zigZag(data.getTime() - schema.prevTime));
+			schema.prevTime = data.getTime();
+		}
+		final int cnt = schema.types.length;
+		for (int i = 1; i < cnt; ++i) {
+			final long bits;
+			if (isFloat(schema.types[i])) {
+				bits = Double.doubleToRawLongBits(getDouble(values, i));
+				if (xor)
+					putXor(bits ^ schema.prev[i]);
+				else
+					putFixedLong(bits);
+			} else {
+				bits = getLong(values, i);
+				putVarLong(zigZag(bits - schema.prev[i]));
+			}
+			schema.prev[i] = bits;
+		}
+		out.write(buf, 0, len);
+	}
+
+	/**
+	 * Decodes the next {@link Data} of a block.
+	 * 
+	 * @param in
+	 *            the current block
+	 * @return the next {@link Data}
+	 * @throws IOException
+	 *             if the block ends in the middle of a {@link Data}
+	 * @throws FormatException
+	 *             if the block contains invalid data
+	 */
+	Data decode(final ByteBuffer in) throws IOException, FormatException {
+		try {
+			final long tag = getVarLong(in);
+			if (tag == TAG_RAW) return Data.createFromBinary(in);
+			final Schema schema;
+			if (tag == TAG_SCHEMA) {
+				schema = new Schema(in);
+				schemas.add(schema);
+			} else if (tag - TAG_FIRST_ID < schemas.size())
+				schema = schemas.get((int) (tag - TAG_FIRST_ID));
+			else
+				throw new FormatException(in.position(),
+						"Undefined schema %d", tag - TAG_FIRST_ID);
+			if (schema.hasTime)
+				schema.prevTime += unZigZag(getVarLong(in));
+			final int cnt = schema.types.length;
+			for (int i = 1; i < cnt; ++i)
+				if (isFloat(schema.types[i]))
+					schema.prev[i] = xor ? schema.prev[i] ^ getXor(in) : in
+							.getLong();
+				else
+					schema.prev[i] += unZigZag(getVarLong(in));
+			return schema.createData();
+		} catch (final BufferUnderflowException e) {
+			throw new IOException("Block ends in the middle of a Data");
+		}
+	}
+
+	private Schema findSchema(final Data data, final List<Value> values) {
+		if (lastSchema != null && lastSchema.matches(data, values))
+			return lastSchema;
+		for (final Schema schema : schemas)
+			if (schema.matches(data, values)) return schema;
+		return null;
+	}
+
+	private static boolean isSchemaCompatible(final List<Value> values) {
+		final int cnt = values.size();
+		// same limit as in Schema(ByteBuffer)
+		if (cnt < 2 || cnt > 32) return false;
+		if (values instanceof FloatSampleList) return true;
+		if (!isString(values.get(0).getType())) return false;
+		for (int i = 1; i < cnt; ++i)
+			if (isString(values.get(i).getType())
+					|| values.get(i).getType() == ValueType.Data)
+				return false;
+		return true;
+	}
+
+	private static boolean isString(final ValueType type) {
+		return type == ValueType.NullTermString
+				|| type == ValueType.UTFString;
+	}
+
+	private static boolean isFloat(final ValueType type) {
+		return type == ValueType.Float32 || type == ValueType.Float64;
+	}
+
+	private static ValueType getType(final List<Value> values, final int index) {
+		if (values instanceof FloatSampleList)
+			return ((FloatSampleList) values).getType(index);
+		return values.get(index).getType();
+	}
+
+	private static String getIdent(final List<Value> values) {
+		if (values instanceof FloatSampleList)
+			return ((FloatSampleList) values).getIdent();
+		return values.get(0).asString();
+	}
+
+	private static double getDouble(final List<Value> values, final int index) {
+		if (values instanceof FloatSampleList)
+			return ((FloatSampleList) values).getSample(index - 1);
+		return values.get(index).asDouble();
+	}
+
+	private static long getLong(final List<Value> values, final int index) {
+		if (values instanceof FloatSampleList)
+			return ((FloatSampleList) values).getUser();
+		return values.get(index).asLong();
+	}
+
+	private static long zigZag(final long val) {
+		return val << 1 ^ val >> 63;
+	}
+
+	private static long unZigZag(final long val) {
+		return val >>> 1 ^ -(val & 1);
+	}
+
+	private void ensureCapacity(final int additional) {
+		if (len + additional > buf.length)
+			buf = Arrays.copyOf(buf, Math.max(buf.length * 2, len
+					+ additional));
+	}
+
+	private void putByte(final int b) {
+		ensureCapacity(1);
+		buf[len++] = (byte) b;
+	}
+
+	private void putVarLong(final long val) {
+		ensureCapacity(10);
+		long v = val;
+		while ((v & ~0x7FL) != 0) {
+			buf[len++] = (byte) (v & 0x7F | 0x80);
+			v >>>= 7;
+		}
+		buf[len++] = (byte) v;
+	}
+
+	private void putFixedLong(final long val) {
+		ensureCapacity(8);
+		for (int i = 56; i >= 0; i -= 8)
+			buf[len++] = (byte) (val >>> i);
+	}
+
+	private void putXor(final long val) {
+		ensureCapacity(9);
+		if (val == 0) {
+			buf[len++] = 0;
+			return;
+		}
+		final int lead = Long.numberOfLeadingZeros(val) >> 3;
+		final int trail = Long.numberOfTrailingZeros(val) >> 3;
+		final int cnt = 8 - lead - trail;
+		buf[len++] = (byte) (trail << 4 | cnt);
+		for (int i = (cnt - 1) * 8; i >= 0; i -= 8)
+			buf[len++] = (byte) (val >>> i + trail * 8);
+	}
+
+	private static long getVarLong(final ByteBuffer in) throws FormatException {
+		long val = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			final byte b = in.get();
+			val |= (long) (b & 0x7F) << shift;
+			if (b >= 0) return val;
+		}
+		throw new FormatException(in.position(), "Invalid variable length "
+				+ "integer");
+	}
+
+	private static long getXor(final ByteBuffer in) throws FormatException {
+		final int hdr = in.get() & 0xFF;
+		final int trail = hdr >> 4;
+		final int cnt = hdr & 0x0F;
+		if (trail + cnt > 8)
+			throw new FormatException(in.position(), "Invalid XOR header %02X",
+					hdr);
+		long val = 0;
+		for (int i = 0; i < cnt; ++i)
+			val = val << 8 | in.get() & 0xFF;
+		return val << trail * 8;
+	}
+
+	/**
+	 * Everything a {@link Data} has in common with the other {@link Data}s of
+	 * its kind plus the values of the last {@link Data} of this kind.
+	 */
+	private final class Schema {
+
+		private final int id;
+
+		private final byte priority;
+
+		private final boolean hasTime;
+
+		private final ValueType[] types;
+
+		private final String ident;
+
+		private final long[] prev;
+
+		private long prevTime;
+
+		Schema(final Data data, final List<Value> values) {
+			id = schemas.size();
+			priority = data.getPriority();
+			hasTime = data.getTime() != Data.TIME_NOTIME;
+			types = new ValueType[values.size()];
+			for (int i = 0; i < types.length; ++i)
+				types[i] = getType(values, i);
+			ident = getIdent(values);
+			prev = new long[types.length];
+		}
+
+		Schema(final ByteBuffer in) throws FormatException {
+			id = schemas.size();
+			priority = in.get();
+			hasTime = in.get() != 0;
+			final int cnt = in.get() & 0xFF;
+			if (cnt < 2 || cnt > 32)
+				throw new FormatException(in.position(),
+						"Invalid field count %d in schema", cnt);
+			types = new ValueType[cnt];
+			for (int i = 0; i < cnt; ++i) {
+				final int type = in.get() & 0xFF;
+				if (type >= TYPES.length)
+					throw new FormatException(in.position(),
+							"Invalid type %d in schema", type);
+				types[i] = TYPES[type];
+			}
+			final byte[] ba = new byte[(int) getVarLong(in)];
+			in.get(ba);
+			try {
+				ident = new String(ba, "UTF-8");
+			} catch (final UnsupportedEncodingException e) {
+				throw new FormatException(in.position(), e.toString());
+			}
+			prev = new long[cnt];
+		}
+
+		void writeDefinition() throws UnsupportedEncodingException {
+			putByte(priority);
+			putByte(hasTime ? 1 : 0);
+			putByte(types.length);
+			for (final ValueType type : types)
+				putByte(type.getID());
+			final byte[] ba = ident.getBytes("UTF-8");
+			putVarLong(ba.length);
+			ensureCapacity(ba.length);
+			System.arraycopy(ba, 0, buf, len, ba.length);
+			len += ba.length;
+		}
+
+		boolean matches(final Data data, final List<Value> values) {
+			if (priority != data.getPriority()
+					|| hasTime != (data.getTime() != Data.TIME_NOTIME)
+					|| types.length != values.size()) return false;
+			for (int i = 0; i < types.length; ++i)
+				if (types[i] != getType(values, i)) return false;
+			return ident.equals(getIdent(values));
+		}
+
+		Data createData() throws IOException {
+			final long time = hasTime ? prevTime : Data.TIME_NOTIME;
+			if (isFloatSampleList(SingleFloatData.IDENT, true))
+				return new SingleFloatData(Double.longBitsToDouble(prev[1]),
+						prev[2], null, priority, time);
+			if (isFloatSampleList(MultiFloatData.IDENT, false)) {
+				final double[] samples = new double[types.length - 1];
+				for (int i = 0; i < samples.length; ++i)
+					samples[i] = Double.longBitsToDouble(prev[i + 1]);
+				return new MultiFloatData(samples, null, priority, time);
+			}
+			final List<Value> values = new ArrayList<Value>(types.length);
+			values.add(Value.createForType(types[0]).set(ident));
+			for (int i = 1; i < types.length; ++i) {
+				final Value val = Value.createForType(types[i]);
+				if (val instanceof FloatValue)
+					((FloatValue) val).set(Double.longBitsToDouble(prev[i]));
+				else
+					((IntValue) val).set(prev[i]);
+				values.add(val);
+			}
+			return new Data(values, null, priority, time);
+		}
+
+		/**
+		 * Checks whether the {@link Data}s of this schema can be
+		 * represented by a {@link FloatSampleList}.
+		 */
+		private boolean isFloatSampleList(final String expectedIdent,
+				final boolean withUser) {
+			if (!expectedIdent.equals(ident)
+					|| types[0] != ValueType.NullTermString) return false;
+			final int floats = types.length - (withUser ? 2 : 1);
+			if (withUser ? floats != 1
+					|| types[types.length - 1] != ValueType.Int64 : floats < 1)
+				return false;
+			for (int i = 1; i <= floats; ++i)
+				if (types[i] != ValueType.Float64) return false;
+			return true;
+		}
+
+	}
+
+}
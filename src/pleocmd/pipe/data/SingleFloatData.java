@@ -19,9 +19,9 @@
 
 package pleocmd.pipe.data;
 
-import pleocmd.pipe.val.FloatValue;
+import java.util.List;
+
 import pleocmd.pipe.val.Value;
-import pleocmd.pipe.val.ValueType;
 
 public final class SingleFloatData extends SingleValueData {
 
@@ -29,29 +29,33 @@ public final class SingleFloatData extends SingleValueData {
 
 	public SingleFloatData(final double value, final long user,
 			final Data parent, final byte priority, final long time) {
-		super(IDENT, asValue(value), user, parent, priority, time);
+		super(FloatSampleList.forSingle(IDENT, value, user), parent, priority,
+				time);
 	}
 
 	public SingleFloatData(final double value, final long user,
 			final Data parent) {
-		super(IDENT, asValue(value), user, parent);
-	}
-
-	private static Value asValue(final double value) {
-		final Value val = Value.createForType(ValueType.Float64);
-		((FloatValue) val).set(value);
-		return val;
+		super(FloatSampleList.forSingle(IDENT, value, user), parent);
 	}
 
 	public static boolean isSingleFloatData(final Data data) {
+		final List<Value> values = data.getValueList();
+		if (values instanceof FloatSampleList)
+			return IDENT.equals(((FloatSampleList) values).getIdent());
 		return IDENT.equals(data.getSafe(0).asString());
 	}
 
 	public static double getValue(final Data data) {
+		final List<Value> values = data.getValueList();
+		if (values instanceof FloatSampleList)
+			return ((FloatSampleList) values).getSample(0);
 		return SingleValueData.getValueRaw(data).asDouble();
 	}
 
 	public static long getUser(final Data data) {
+		final List<Value> values = data.getValueList();
+		if (values instanceof FloatSampleList)
+			return ((FloatSampleList) values).getUser();
 		return SingleValueData.getUser(data);
 	}
 
@@ -68,7 +72,45 @@ public final class SingleFloatData extends SingleValueData {
 	 * @return new {@link SingleFloatData}
 	 */
 	public static Data create(final double val, final Data parent) {
-		return new SingleFloatData(val, getUser(parent), parent);
+		return DataPool.obtainSingleFloat(val, getUser(parent), parent,
+				PRIO_DEFAULT, TIME_NOTIME);
+	}
+
+	/**
+	 * Creates a new {@link SingleFloatData} which will be taken from the
+	 * {@link DataPool} if recycling has been enabled.
+	 * 
+	 * @param val
+	 *            value for the new {@link SingleFloatData}
+	 * @param user
+	 *            user data for the new {@link SingleFloatData}
+	 * @param parent
+	 *            the parent which was the cause for this {@link Data} being
+	 *            created - may be <b>null</b>
+	 * @param priority
+	 *            priority of the new {@link Data}
+	 * @param time
+	 *            relative time at which this {@link Data} has been created
+	 * @return new or reused {@link SingleFloatData}
+	 */
+	public static Data create(final double val, final long user,
+			final Data parent, final byte priority, final long time) {
+		return DataPool.obtainSingleFloat(val, user, parent, priority, time);
+	}
+
+	/**
+	 * Reinitializes a {@link SingleFloatData} which has been taken from the
+	 * {@link DataPool}.
+	 */
+	void reuse(final double val, final long user, final Data parent,
+			final byte priority, final long time) {
+		reinit(parent, priority, time);
+		((FloatSampleList) getValueList()).reset(val, user);
+	}
+
+	@Override
+	protected void recycle() {
+		DataPool.recycle(this);
 	}
 
 }
@@ -29,23 +29,29 @@ import pleocmd.pipe.val.ValueType;
 
 class SingleValueData extends Data {
 
-	private static List<Value> l;
-
 	protected SingleValueData(final String ident, final Value value,
 			final long user, final Data parent, final byte priority,
 			final long time) {
-		super(l = new ArrayList<Value>(3), parent, priority, time, CTOR_DIRECT);
-		init(ident, value, user);
+		super(asList(ident, value, user), parent, priority, time, CTOR_DIRECT);
 	}
 
 	protected SingleValueData(final String ident, final Value value,
 			final long user, final Data parent) {
-		super(l = new ArrayList<Value>(3), parent, CTOR_DIRECT);
-		init(ident, value, user);
+		super(asList(ident, value, user), parent, CTOR_DIRECT);
+	}
+
+	protected SingleValueData(final List<Value> values, final Data parent,
+			final byte priority, final long time) {
+		super(values, parent, priority, time, CTOR_DIRECT);
+	}
+
+	protected SingleValueData(final List<Value> values, final Data parent) {
+		super(values, parent, CTOR_DIRECT);
 	}
 
-	private static void init(final String ident, final Value value,
+	private static List<Value> asList(final String ident, final Value value,
 			final long user) {
+		final List<Value> l = new ArrayList<Value>(3);
 		final Value valIdent = Value.createForType(ValueType.NullTermString);
 		((StringValue) valIdent).set(ident);
 		final Value valUser = Value.createForType(ValueType.Int64);
@@ -53,6 +59,7 @@ class SingleValueData extends Data {
 		l.add(valIdent);
 		l.add(value);
 		l.add(valUser);
+		return l;
 	}
 
 	public static Value getValueRaw(final Data data) {
@@ -32,12 +32,15 @@ import pleocmd.exc.FormatException;
 import pleocmd.exc.InputException;
 import pleocmd.exc.InternalException;
 import pleocmd.pipe.data.Data;
+import pleocmd.pipe.data.DataAsciiReader;
 import pleocmd.pipe.val.Syntax;
 
 public final class ConsoleInput extends Input {
 
 	private final ConfigEnum<ReadType> cfgType;
 
+	private DataAsciiReader asciiReader;
+
 	public ConsoleInput() {
 		addConfig(cfgType = new ConfigEnum<ReadType>(ReadType.Ascii));
 		constructed();
@@ -58,9 +61,22 @@ public final class ConsoleInput extends Input {
 		return cfgType.getContent();
 	}
 
+	@Override
+	protected void init0() throws IOException {
+		if (cfgType.getEnum() == ReadType.Ascii)
+			asciiReader = new DataAsciiReader(StandardInput.the());
+	}
+
+	@Override
+	protected void close0() throws IOException {
+		// don't close the reader as this would close the standard input
+		asciiReader = null;
+	}
+
 	@Override
 	protected Data readData0() throws InputException, IOException {
-		if (StandardInput.the().available() <= 0) {
+		if ((asciiReader == null || !asciiReader.hasBufferedData())
+				&& StandardInput.the().available() <= 0) {
 			Log.info("End Of Stream in Console-Input");
 			return null;
 		}
@@ -68,8 +84,11 @@ public final class ConsoleInput extends Input {
 		switch (cfgType.getEnum()) {
 		case Ascii:
 			try {
-				final Data data = Data.createFromAscii(new DataInputStream(
-						StandardInput.the()), syntaxList);
+				final Data data = asciiReader.read();
+				if (data == null) {
+					Log.info("End Of Stream in Console-Input");
+					return null;
+				}
 				Log.consoleIn(StringManip.printSyntaxHighlightedAscii(data));
 				return data;
 			} catch (final FormatException e) {
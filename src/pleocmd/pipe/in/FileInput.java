@@ -19,10 +19,15 @@
 
 package pleocmd.pipe.in;
 
+import java.io.BufferedInputStream;
 import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
 import java.util.Arrays;
 
 import javax.swing.filechooser.FileFilter;
@@ -31,6 +36,7 @@ import javax.swing.filechooser.FileNameExtensionFilter;
 import pleocmd.Log;
 import pleocmd.RunnableWithArgument;
 import pleocmd.StringManip;
+import pleocmd.cfg.ConfigBoolean;
 import pleocmd.cfg.ConfigEnum;
 import pleocmd.cfg.ConfigPath;
 import pleocmd.cfg.ConfigPath.PathType;
@@ -41,20 +47,51 @@ import pleocmd.exc.InternalException;
 import pleocmd.itfc.gui.dse.DataFileBinaryDialog;
 import pleocmd.itfc.gui.dse.DataFileEditDialog;
 import pleocmd.pipe.data.Data;
+import pleocmd.pipe.data.DataAsciiReader;
+import pleocmd.pipe.data.DataFileReader;
 import pleocmd.pipe.out.FileOutput;
 import pleocmd.pipe.out.Output;
 
 public final class FileInput extends Input { // NO_UCD
 
+	/**
+	 * Size of the buffer for reading (not memory-mapped) binary files.
+	 */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * Maximum number of bytes of a file which are mapped into memory at once
+	 * - must be at least as large as the largest {@link Data}.
+	 */
+	private static final long MAP_WINDOW = 64 * 1024 * 1024;
+
 	private final ConfigPath cfgFile;
 
 	private final ConfigEnum<ReadType> cfgType;
 
+	private final ConfigBoolean cfgMemoryMapped;
+
+	private BufferedInputStream buffered;
+
 	private DataInputStream in;
 
+	private FileChannel channel;
+
+	private MappedByteBuffer mapped;
+
+	/**
+	 * Position of the beginning of {@link #mapped} in the file.
+	 */
+	private long mappedPos;
+
+	private DataFileReader reader;
+
+	private DataAsciiReader asciiReader;
+
 	public FileInput() {
 		addConfig(cfgFile = new ConfigPath("File", PathType.FileForReading));
 		addConfig(cfgType = new ConfigEnum<ReadType>(ReadType.class));
+		addConfig(cfgMemoryMapped = new ConfigBoolean("Memory Mapped", false));
 		cfgFile.setFileFilter(Arrays.asList(new FileFilter[] {
 				new FileNameExtensionFilter("ASCII-Textfiles", "txt"),
 				new FileNameExtensionFilter("Pleo ASCII Data", "pad"),
@@ -114,16 +151,52 @@ public final class FileInput extends Input { // NO_UCD
 	}
 
 	@Override
-	protected void init0() throws IOException {
+	protected void init0() throws IOException, InputException {
 		Log.detail("Opening file '%s' for input", cfgFile.getContent());
-		in = new DataInputStream(new FileInputStream(cfgFile.getContent()));
+		if (cfgType.getEnum() == ReadType.Binary
+				&& DataFileReader.isIndexedFile(cfgFile.getContent()))
+			try {
+				reader = new DataFileReader(cfgFile.getContent());
+			} catch (final FormatException e) {
+				throw new InputException(this, true, e,
+						"Cannot read index of file");
+			}
+		else if (cfgType.getEnum() == ReadType.Binary
+				&& cfgMemoryMapped.getContent()) {
+			channel = new FileInputStream(cfgFile.getContent()).getChannel();
+			mapped = null;
+			mappedPos = 0;
+		} else if (cfgType.getEnum() == ReadType.Ascii)
+			asciiReader = new DataAsciiReader(new FileInputStream(cfgFile
+					.getContent()));
+		else {
+			buffered = new BufferedInputStream(new FileInputStream(cfgFile
+					.getContent()), BUFFER_SIZE);
+			in = new DataInputStream(buffered);
+		}
 	}
 
 	@Override
 	protected void close0() throws IOException {
 		Log.detail("Closing file '%s'", cfgFile.getContent());
-		in.close();
-		in = null;
+		if (reader != null) {
+			reader.close();
+			reader = null;
+		}
+		if (asciiReader != null) {
+			asciiReader.close();
+			asciiReader = null;
+		}
+		if (in != null) {
+			in.close();
+			in = null;
+			buffered = null;
+		}
+		if (channel != null) {
+			channel.close();
+			channel = null;
+			mapped = null;
+		}
 	}
 
 	@Override
@@ -138,38 +211,104 @@ public final class FileInput extends Input { // NO_UCD
 
 	@Override
 	protected Data readData0() throws InputException, IOException {
-		if (in.available() <= 0) {
+		if (reader != null) return readIndexed();
+		if (channel != null) return readMapped();
+		if (asciiReader != null) return readAscii();
+		// peek for the end of the file without asking the operating system
+		buffered.mark(1);
+		if (buffered.read() == -1) {
 			Log.info("End Of File in File-Input");
 			return null;
 		}
+		buffered.reset();
 		switch (cfgType.getEnum()) {
-		case Ascii:
+		case Binary:
 			try {
-				final Data data = Data.createFromAscii(in);
+				final Data data = Data.createFromBinary(in);
 				if (Log.canLogDetail())
 					Log.detail("<html>Read from file: %s",
-							StringManip.printSyntaxHighlightedAscii(data));
+							StringManip.printSyntaxHighlightedBinary(data));
 				return data;
 			} catch (final FormatException e) {
 				throw new InputException(this, false, e,
 						"Cannot read from file");
 			}
-		case Binary:
+		default:
+			throw new InternalException(cfgType.getEnum());
+		}
+	}
+
+	private Data readIndexed() throws InputException, IOException {
+		try {
+			final Data data = reader.read();
+			if (data == null)
+				Log.info("End Of File in File-Input");
+			else if (Log.canLogDetail())
+				Log.detail("<html>Read from file: %s",
+						StringManip.printSyntaxHighlightedBinary(data));
+			return data;
+		} catch (final FormatException e) {
+			throw new InputException(this, false, e, "Cannot read from file");
+		}
+	}
+
+	private Data readAscii() throws InputException, IOException {
+		try {
+			final Data data = asciiReader.read();
+			if (data == null)
+				Log.info("End Of File in File-Input");
+			else if (Log.canLogDetail())
+				Log.detail("<html>Read from file: %s", StringManip
+						.printSyntaxHighlightedAscii(data));
+			return data;
+		} catch (final FormatException e) {
+			throw new InputException(this, false, e, "Cannot read from file");
+		}
+	}
+
+	private Data readMapped() throws InputException, IOException {
+		while (true) {
+			if ((mapped == null || !mapped.hasRemaining()) && !remap()) {
+				Log.info("End Of File in File-Input");
+				return null;
+			}
 			try {
-				final Data data = Data.createFromBinary(in);
+				final Data data = Data.createFromBinary(mapped);
 				if (Log.canLogDetail())
 					Log.detail("<html>Read from file: %s",
 							StringManip.printSyntaxHighlightedBinary(data));
 				return data;
+			} catch (final EOFException e) {
+				// Data continues behind the mapped window
+				if (!remap()) throw e;
 			} catch (final FormatException e) {
 				throw new InputException(this, false, e,
 						"Cannot read from file");
 			}
-		default:
-			throw new InternalException(cfgType.getEnum());
 		}
 	}
 
+	/**
+	 * Maps the next part of the file, beginning at the current position, into
+	 * memory.
+	 * 
+	 * @return false if the end of the file has been reached or if there is
+	 *         nothing left which could be mapped additionally
+	 * @throws IOException
+	 *             if mapping failed
+	 */
+	private boolean remap() throws IOException {
+		final long pos = mapped == null ? 0 : mappedPos + mapped.position();
+		final long size = channel.size();
+		if (pos >= size || mapped != null && pos == mappedPos
+				&& mapped.limit() == Math.min(size - pos, MAP_WINDOW))
+			return false;
+		mapped = channel.map(MapMode.READ_ONLY, pos, Math.min(size - pos,
+				MAP_WINDOW));
+		mappedPos = pos;
+		return true;
+	}
+
 	public static String help(final HelpKind kind) {
 		switch (kind) {
 		case Name:
@@ -182,6 +321,9 @@ public final class FileInput extends Input { // NO_UCD
 		case Config2:
 			return "'Ascii' if Data blocks are in ASCII format or\n"
 					+ "   'Binary' if Data blocks should be treated as binary";
+		case Config3:
+			return "If true, binary files without an index will be mapped "
+					+ "into memory instead of being read through a buffer";
 		default:
 			return null;
 		}
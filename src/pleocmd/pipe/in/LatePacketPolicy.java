@@ -0,0 +1,42 @@
+// This file is part of PleoCommand:
+// Interactively control Pleo with psychobiological parameters
+//
+// Copyright (C) 2010 Oliver Hoffmann - Hoffmann_Oliver@gmx.de
+//
+// This program is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License
+// as published by the Free Software Foundation; either version 2
+// of the License, or (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Boston, USA.
+
+package pleocmd.pipe.in;
+
+import pleocmd.pipe.data.Data;
+
+/**
+ * Specifies what a {@link UdpInput} does with a datagram which arrives after
+ * a datagram with a higher sequence number.
+ * 
+ * @author oliver
+ */
+public enum LatePacketPolicy {
+
+	/**
+	 * Passes the content of late datagrams to the pipe like any other.
+	 */
+	Deliver,
+	/**
+	 * Drops late datagrams, so the pipe never receives an older {@link Data}
+	 * after a newer one.
+	 */
+	Drop
+
+}
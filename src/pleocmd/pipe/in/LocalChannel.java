@@ -0,0 +1,41 @@
+// This file is part of PleoCommand:
+// Interactively control Pleo with psychobiological parameters
+//
+// Copyright (C) 2010 Oliver Hoffmann - Hoffmann_Oliver@gmx.de
+//
+// This program is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License
+// as published by the Free Software Foundation; either version 2
+// of the License, or (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Boston, USA.
+
+package pleocmd.pipe.in;
+
+/**
+ * Specifies how a {@link LocalInput} receives {@link pleocmd.pipe.data.Data}
+ * from another process on the same machine.
+ * 
+ * @author oliver
+ */
+public enum LocalChannel {
+
+	/**
+	 * Reads binary {@link pleocmd.pipe.data.Data} blocks from a named pipe
+	 * (FIFO) until the writer closes it.
+	 */
+	NamedPipe,
+	/**
+	 * Reads binary {@link pleocmd.pipe.data.Data} blocks from a
+	 * {@link SharedMemoryRing} until the producer finishes it.
+	 */
+	SharedMemory
+
+}
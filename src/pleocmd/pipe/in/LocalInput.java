@@ -0,0 +1,273 @@
+// This file is part of PleoCommand:
+// Interactively control Pleo with psychobiological parameters
+//
+// Copyright (C) 2010 Oliver Hoffmann - Hoffmann_Oliver@gmx.de
+//
+// This program is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License
+// as published by the Free Software Foundation; either version 2
+// of the License, or (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Boston, USA.
+
+package pleocmd.pipe.in;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.concurrent.locks.LockSupport;
+
+import pleocmd.Log;
+import pleocmd.StringManip;
+import pleocmd.cfg.ConfigEnum;
+import pleocmd.cfg.ConfigInt;
+import pleocmd.cfg.ConfigPath;
+import pleocmd.cfg.ConfigPath.PathType;
+import pleocmd.exc.ConfigurationException;
+import pleocmd.exc.FormatException;
+import pleocmd.exc.InputException;
+import pleocmd.exc.InternalException;
+import pleocmd.pipe.data.Data;
+
+/**
+ * Reads binary {@link Data} blocks from another process on the same machine
+ * without the overhead of the TCP/IP stack.
+ * <p>
+ * Either reads from a named pipe (created via <i>mkfifo</i>) or from a
+ * {@link SharedMemoryRing}. The named pipe is opened when the first
+ * {@link Data} is read, as opening blocks until a writer is available. The
+ * ring is created when this {@link Input} is initialized and polled
+ * afterwards, so passing a {@link Data} needs no system call at all. While
+ * the ring is empty, this {@link Input} yields for a few rounds and parks
+ * only for very short times, which keeps the latency in the range of
+ * microseconds.
+ * 
+ * @author oliver
+ */
+public final class LocalInput extends Input { // NO_UCD
+
+	/**
+	 * Size of the buffer for reading from the named pipe.
+	 */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * Number of times an empty ring is polled with yielding in between
+	 * before the thread is parked.
+	 */
+	private static final int YIELD_ROUNDS = 100;
+
+	/**
+	 * Number of nanoseconds the thread is parked while the ring is empty.
+	 */
+	private static final long PARK_NANOS = 20000;
+
+	/**
+	 * Minimum time in milliseconds between two updates of the statistics.
+	 */
+	private static final long STATS_INTERVAL = 1000;
+
+	private final ConfigPath cfgPath;
+
+	private final ConfigEnum<LocalChannel> cfgChannel;
+
+	private final ConfigInt cfgRingSize;
+
+	private BufferedInputStream buffered;
+
+	private DataInputStream in;
+
+	private SharedMemoryRing ring;
+
+	private long received;
+
+	private long maxUsed;
+
+	private long lastStatistics;
+
+	public LocalInput() {
+		addConfig(cfgPath = new ConfigPath("Path", PathType.FileForReading));
+		addConfig(cfgChannel = new ConfigEnum<LocalChannel>(
+				LocalChannel.class));
+		addConfig(cfgRingSize = new ConfigInt("Ring Size (in KB)", 1024, 4,
+				1024 * 1024));
+		constructed();
+	}
+
+	public LocalInput(final File path, final LocalChannel channel,
+			final int ringSize) throws ConfigurationException {
+		this();
+		cfgPath.setContent(path);
+		cfgChannel.setEnum(channel);
+		cfgRingSize.setContent(ringSize);
+	}
+
+	@Override
+	protected void init0() throws IOException {
+		received = maxUsed = 0;
+		lastStatistics = 0;
+		getFeedback().clearDetails();
+		if (cfgChannel.getEnum() == LocalChannel.SharedMemory) {
+			Log.detail("Creating shared memory ring '%s'", cfgPath
+					.getContent());
+			ring = SharedMemoryRing.create(cfgPath.getContent(), cfgRingSize
+					.getContent() * 1024);
+		}
+	}
+
+	@Override
+	protected void close0() throws IOException {
+		updateStatistics(true);
+		if (in != null) {
+			Log.detail("Closing named pipe '%s'", cfgPath.getContent());
+			in.close();
+			in = null;
+			buffered = null;
+		}
+		if (ring != null) {
+			Log.detail("Closing shared memory ring '%s'", cfgPath
+					.getContent());
+			ring.close();
+			ring = null;
+		}
+	}
+
+	@Override
+	public String getOutputDescription() {
+		return "";
+	}
+
+	@Override
+	protected String getShortConfigDescr0() {
+		return String.format("%s \"%s\"", cfgChannel.getEnum(), cfgPath
+				.getContent().getName());
+	}
+
+	@Override
+	protected Data readData0() throws InputException, IOException {
+		final Data data;
+		try {
+			switch (cfgChannel.getEnum()) {
+			case NamedPipe:
+				data = readFromPipe();
+				break;
+			case SharedMemory:
+				data = readFromRing();
+				break;
+			default:
+				throw new InternalException(cfgChannel.getEnum());
+			}
+		} catch (final FormatException e) {
+			throw new InputException(this, false, e, "Cannot read from '%s'",
+					cfgPath.getContent());
+		}
+		if (data == null) {
+			Log.info("Local-Input '%s' has been closed by the other side",
+					cfgPath.getContent());
+			return null;
+		}
+		++received;
+		updateStatistics(false);
+		if (Log.canLogDetail())
+			Log.detail("<html>Read from '%s': %s", cfgPath.getContent(),
+					StringManip.printSyntaxHighlightedAscii(data));
+		return data;
+	}
+
+	private Data readFromPipe() throws IOException, FormatException {
+		if (in == null) {
+			Log.detail("Waiting for a writer on named pipe '%s'", cfgPath
+					.getContent());
+			buffered = new BufferedInputStream(new FileInputStream(cfgPath
+					.getContent()), BUFFER_SIZE);
+			in = new DataInputStream(buffered);
+		}
+		buffered.mark(1);
+		if (buffered.read() == -1) return null;
+		buffered.reset();
+		return Data.createFromBinary(in);
+	}
+
+	private Data readFromRing() throws IOException, FormatException {
+		int rounds = 0;
+		while (true) {
+			final Data data = ring.poll();
+			if (data != null) {
+				maxUsed = Math.max(maxUsed, ring.getUsed());
+				return data;
+			}
+			if (ring.isFinished()) return null;
+			if (Thread.interrupted()) {
+				Log.detail("Waiting for shared memory ring '%s' "
+						+ "has been interrupted", cfgPath.getContent());
+				return null;
+			}
+			if (++rounds <= YIELD_ROUNDS)
+				Thread.yield();
+			else
+				LockSupport.parkNanos(PARK_NANOS);
+		}
+	}
+
+	private void updateStatistics(final boolean force) {
+		final long now = System.currentTimeMillis();
+		if (!force && now - lastStatistics < STATS_INTERVAL) return;
+		lastStatistics = now;
+		getFeedback().setDetail("Received", String.valueOf(received));
+		if (ring != null)
+			getFeedback().setDetail(
+					"Ring usage",
+					String.format("%d of %d bytes (max %d)", ring.getUsed(),
+							ring.getCapacity(), maxUsed));
+	}
+
+	public static String help(final HelpKind kind) {
+		switch (kind) {
+		case Name:
+			return "Local Input";
+		case Description:
+			return "Reads binary Data blocks from a named pipe or shared "
+					+ "memory of another process on the same machine";
+		case Config1:
+			return "Path to the named pipe or to the file which is mapped "
+					+ "into shared memory";
+		case Config2:
+			return "'NamedPipe' to read from a FIFO created via mkfifo or\n"
+					+ "   'SharedMemory' to read from a ring buffer in a "
+					+ "memory-mapped file";
+		case Config3:
+			return "Size of the ring buffer in shared memory";
+		default:
+			return null;
+		}
+	}
+
+	@Override
+	public String isConfigurationSane() {
+		final File path = cfgPath.getContent();
+		if (cfgChannel.getEnum() == LocalChannel.NamedPipe)
+			return path.canRead() ? null : String.format(
+					"Cannot read from '%s'", path);
+		if (path.exists())
+			return path.canWrite() ? null : String.format(
+					"Cannot write to '%s'", path);
+		final File dir = path.getAbsoluteFile().getParentFile();
+		return dir != null && dir.canWrite() ? null : String.format(
+				"Cannot create '%s'", path);
+	}
+
+	@Override
+	protected int getVisualizeDataSetCount() {
+		return 0;
+	}
+
+}
@@ -0,0 +1,307 @@
+// This file is part of PleoCommand:
+// Interactively control Pleo with psychobiological parameters
+//
+// Copyright (C) 2010 Oliver Hoffmann - Hoffmann_Oliver@gmx.de
+//
+// This program is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License
+// as published by the Free Software Foundation; either version 2
+// of the License, or (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Boston, USA.
+
+package pleocmd.pipe.in;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import javax.swing.filechooser.FileFilter;
+import javax.swing.filechooser.FileNameExtensionFilter;
+
+import pleocmd.Log;
+import pleocmd.StringManip;
+import pleocmd.cfg.ConfigBoolean;
+import pleocmd.cfg.ConfigDouble;
+import pleocmd.cfg.ConfigEnum;
+import pleocmd.cfg.ConfigPath;
+import pleocmd.cfg.ConfigPath.PathType;
+import pleocmd.exc.ConfigurationException;
+import pleocmd.exc.FormatException;
+import pleocmd.exc.InputException;
+import pleocmd.pipe.Pacer;
+import pleocmd.pipe.data.Data;
+import pleocmd.pipe.data.DataAsciiReader;
+import pleocmd.pipe.data.DataFileReader;
+
+/**
+ * Replays a recorded file, emitting every {@link Data} block at the same
+ * distance to the first one as it has been recorded with, scaled by a speed
+ * factor.<br>
+ * The recorded times are taken from the {@link Data}'s time field. Blocks
+ * without a time are emitted directly after their predecessor. The emitted
+ * {@link Data} have no time of their own, so the {@link pleocmd.pipe.Pipe}
+ * stamps them with the time of the replay.<br>
+ * The point in time for every block is computed from the beginning of the
+ * replay instead of from the previous block and waited for with the
+ * {@link Pacer}, so waking up late once is compensated by the following
+ * waits and no drift accumulates. How far the replay lags behind the
+ * (scaled) clock of the recording is reported in the
+ * {@link pleocmd.pipe.PipePartFeedback}.
+ * 
+ * @author oliver
+ */
+public final class ReplayInput extends Input { // NO_UCD
+
+	/**
+	 * Size of the buffer for reading binary files without an index.
+	 */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * Minimum time in milliseconds between two updates of the lag statistics.
+	 */
+	private static final long STATS_INTERVAL = 1000;
+
+	private final ConfigPath cfgFile;
+
+	private final ConfigEnum<ReadType> cfgType;
+
+	private final ConfigDouble cfgSpeed;
+
+	private final ConfigBoolean cfgFastest;
+
+	private DataAsciiReader asciiReader;
+
+	private DataFileReader reader;
+
+	private BufferedInputStream buffered;
+
+	private DataInputStream in;
+
+	/**
+	 * Recorded time of the block which started the current replay clock or
+	 * {@link Data#TIME_NOTIME}.
+	 */
+	private long recStart;
+
+	/**
+	 * Recorded time of the last timed block.
+	 */
+	private long recLast;
+
+	/**
+	 * {@link System#nanoTime()} at which the block at {@link #recStart} has
+	 * been emitted.
+	 */
+	private long replayStart;
+
+	private long lagCur;
+
+	private long lagMax;
+
+	private long lagSum;
+
+	private long lagCount;
+
+	private long lastStatistics;
+
+	public ReplayInput() {
+		addConfig(cfgFile = new ConfigPath("File", PathType.FileForReading));
+		addConfig(cfgType = new ConfigEnum<ReadType>(ReadType.class));
+		addConfig(cfgSpeed = new ConfigDouble("Speed Factor", 1, 0.1, 100,
+				0.1));
+		addConfig(cfgFastest = new ConfigBoolean("As Fast As Possible", false));
+		cfgFile.setFileFilter(Arrays.asList(new FileFilter[] {
+				new FileNameExtensionFilter("ASCII-Textfiles", "txt"),
+				new FileNameExtensionFilter("Pleo ASCII Data", "pad"),
+				new FileNameExtensionFilter("Pleo Binary Data", "pbd") }));
+		constructed();
+	}
+
+	public ReplayInput(final File file, final ReadType type,
+			final double speed) throws ConfigurationException {
+		this();
+		cfgFile.setContent(file);
+		cfgType.setEnum(type);
+		cfgSpeed.setContent(speed);
+	}
+
+	@Override
+	protected void init0() throws IOException, InputException {
+		final File file = cfgFile.getContent();
+		Log.detail("Opening file '%s' for replay", file);
+		if (cfgType.getEnum() == ReadType.Ascii)
+			asciiReader = new DataAsciiReader(new FileInputStream(file));
+		else if (DataFileReader.isIndexedFile(file))
+			try {
+				reader = new DataFileReader(file);
+			} catch (final FormatException e) {
+				throw new InputException(this, true, e,
+						"Cannot read index of file");
+			}
+		else {
+			buffered = new BufferedInputStream(new FileInputStream(file),
+					BUFFER_SIZE);
+			in = new DataInputStream(buffered);
+		}
+		recStart = Data.TIME_NOTIME;
+		lagCur = lagMax = lagSum = lagCount = 0;
+		lastStatistics = 0;
+		getFeedback().clearDetails();
+	}
+
+	@Override
+	protected void close0() throws IOException {
+		Log.detail("Closing file '%s'", cfgFile.getContent());
+		updateStatistics(true);
+		if (asciiReader != null) {
+			asciiReader.close();
+			asciiReader = null;
+		}
+		if (reader != null) {
+			reader.close();
+			reader = null;
+		}
+		if (in != null) {
+			in.close();
+			in = null;
+			buffered = null;
+		}
+	}
+
+	@Override
+	public String getOutputDescription() {
+		return "";
+	}
+
+	@Override
+	protected String getShortConfigDescr0() {
+		return String.format("\"%s\" %s", cfgFile.getContent().getName(),
+				cfgFastest.getContent() ? "fastest" : String.format("%sx",
+						cfgSpeed.getContent()));
+	}
+
+	@Override
+	protected Data readData0() throws InputException, IOException {
+		final Data rec;
+		try {
+			rec = readNext();
+		} catch (final FormatException e) {
+			throw new InputException(this, false, e, "Cannot read from file");
+		}
+		if (rec == null) {
+			Log.info("End Of File in Replay-Input");
+			return null;
+		}
+		if (!cfgFastest.getContent() && rec.getTime() != Data.TIME_NOTIME
+				&& !waitFor(rec.getTime())) {
+			Log.info("Replay has been interrupted");
+			return null;
+		}
+		// keeps the primitive backing of float Data
+		final Data data = Data.wrap(rec, null, rec.getPriority(),
+				Data.TIME_NOTIME);
+		if (Log.canLogDetail())
+			Log.detail("<html>Replayed from file: %s", StringManip
+					.printSyntaxHighlightedAscii(data));
+		return data;
+	}
+
+	private Data readNext() throws IOException, FormatException {
+		if (asciiReader != null) return asciiReader.read();
+		if (reader != null) return reader.read();
+		buffered.mark(1);
+		if (buffered.read() == -1) return null;
+		buffered.reset();
+		return Data.createFromBinary(in);
+	}
+
+	/**
+	 * Waits until the (scaled) time of the recording has reached the given
+	 * time.
+	 * 
+	 * @param recTime
+	 *            recorded time of the next {@link Data} in milliseconds
+	 * @return <b>false</b> if waiting has been interrupted
+	 */
+	private boolean waitFor(final long recTime) {
+		final long now = System.nanoTime();
+		if (recStart == Data.TIME_NOTIME || recTime < recLast) {
+			// first block or the recording's clock has been reset
+			recStart = recTime;
+			replayStart = now;
+		}
+		recLast = recTime;
+		final long target = replayStart
+				+ (long) ((recTime - recStart) * 1000000 / cfgSpeed
+						.getContent());
+		try {
+			lagCur = Pacer.waitUntil(target, Pacer.DEFAULT_SPIN);
+		} catch (final InterruptedException e) {
+			return false;
+		}
+		lagMax = Math.max(lagMax, lagCur);
+		lagSum += lagCur;
+		++lagCount;
+		updateStatistics(false);
+		return true;
+	}
+
+	private void updateStatistics(final boolean force) {
+		final long now = System.currentTimeMillis();
+		if (!force && now - lastStatistics < STATS_INTERVAL) return;
+		lastStatistics = now;
+		if (lagCount == 0) return;
+		getFeedback().setDetail(
+				"Replay lag",
+				String.format("%.3f ms (average %.3f ms, max %.3f ms)",
+						lagCur / 1e6, lagSum / 1e6 / lagCount, lagMax / 1e6));
+		getFeedback().setDetail("Replay position",
+				String.format("%.3f s", (recLast - recStart) / 1e3));
+	}
+
+	public static String help(final HelpKind kind) {
+		switch (kind) {
+		case Name:
+			return "Replay Input";
+		case Description:
+			return "Replays a recorded file with its original timing";
+		case Config1:
+			return "Path to a recorded file in either ASCII or binary form";
+		case Config2:
+			return "'Ascii' if Data blocks are in ASCII format or\n"
+					+ "   'Binary' if Data blocks should be treated as binary";
+		case Config3:
+			return "Factor by which the replay is faster than the recording";
+		case Config4:
+			return "If true, the recorded timing is ignored and Data blocks "
+					+ "are replayed as fast as possible";
+		default:
+			return null;
+		}
+	}
+
+	@Override
+	public String isConfigurationSane() {
+		final File file = cfgFile.getContent();
+		return file.canRead() ? null : String.format("Cannot read from '%s'",
+				file);
+	}
+
+	@Override
+	protected int getVisualizeDataSetCount() {
+		return 0;
+	}
+
+}
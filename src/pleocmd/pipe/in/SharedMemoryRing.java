@@ -0,0 +1,366 @@
+// This file is part of PleoCommand:
+// Interactively control Pleo with psychobiological parameters
+//
+// Copyright (C) 2010 Oliver Hoffmann - Hoffmann_Oliver@gmx.de
+//
+// This program is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License
+// as published by the Free Software Foundation; either version 2
+// of the License, or (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Boston, USA.
+
+package pleocmd.pipe.in;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+import pleocmd.exc.FormatException;
+import pleocmd.exc.InternalException;
+import pleocmd.pipe.data.Data;
+
+/**
+ * A ring buffer in a memory-mapped file through which exactly one producer
+ * passes {@link Data} blocks to exactly one consumer, usually in another
+ * process on the same machine.
+ * <p>
+ * The file starts with a header of {@link #HEADER_SIZE} bytes, all numbers
+ * in big-endian byte order:
+ * <table>
+ * <tr>
+ * <td>0</td>
+ * <td>int</td>
+ * <td>{@link #MAGIC}, written last when the ring has been created</td>
+ * </tr>
+ * <tr>
+ * <td>4</td>
+ * <td>int</td>
+ * <td>capacity of the ring in bytes (a multiple of 8)</td>
+ * </tr>
+ * <tr>
+ * <td>8</td>
+ * <td>int</td>
+ * <td>1 if the producer has finished, 0 otherwise</td>
+ * </tr>
+ * <tr>
+ * <td>64</td>
+ * <td>long</td>
+ * <td>number of bytes ever written by the producer</td>
+ * </tr>
+ * <tr>
+ * <td>128</td>
+ * <td>long</td>
+ * <td>number of bytes ever consumed by the consumer</td>
+ * </tr>
+ * </table>
+ * Each counter is only written by one side and sits in its own cache line.
+ * The ring itself follows the header. Every frame starts at a multiple of 8
+ * with an int giving the length of the binary {@link Data} which follows
+ * it. Frames never wrap around the end of the ring. If a frame does not fit
+ * into the rest of the ring, the producer writes {@link #PADDING} instead
+ * of the length and continues at the beginning.<br>
+ * The producer first writes a complete frame and then advances its
+ * counter, the consumer first copies the frame and then advances its
+ * counter, so neither side needs any system call or lock per frame. A full
+ * fence separates every read or write of a counter from the accesses to the
+ * frames, so a frame is never read before its bytes have arrived and never
+ * overwritten while it is still being copied.
+ * 
+ * @author oliver
+ */
+public final class SharedMemoryRing {
+
+	/**
+	 * Identifies a completely initialized ring ("PLRG").
+	 */
+	public static final int MAGIC = 0x504C5247;
+
+	/**
+	 * Length of a frame which marks the rest of the ring as unused.
+	 */
+	public static final int PADDING = -1;
+
+	public static final int HEADER_SIZE = 192;
+
+	private static final int OFS_MAGIC = 0;
+
+	private static final int OFS_CAPACITY = 4;
+
+	private static final int OFS_FINISHED = 8;
+
+	private static final int OFS_WRITE = 64;
+
+	private static final int OFS_READ = 128;
+
+	private static final int ALIGNMENT = 8;
+
+	/**
+	 * Only accessed by {@link #fullFence()}, as a {@link MappedByteBuffer}
+	 * itself gives no guarantees about the order in which other threads or
+	 * processes see its modifications.
+	 */
+	private static volatile int fence;
+
+	private final RandomAccessFile file;
+
+	private final MappedByteBuffer buffer;
+
+	private final int capacity;
+
+	/**
+	 * Own counter of the producer or consumer using this instance.
+	 */
+	private long position;
+
+	private SharedMemoryRing(final RandomAccessFile file,
+			final MappedByteBuffer buffer, final int capacity,
+			final long position) {
+		this.file = file;
+		this.buffer = buffer;
+		this.capacity = capacity;
+		this.position = position;
+	}
+
+	/**
+	 * Creates a new empty ring, overwriting the given file. Should be called
+	 * by the consumer before the producer {@link #open(File) opens} the
+	 * ring.
+	 * 
+	 * @param path
+	 *            the file which will be mapped into memory
+	 * @param capacity
+	 *            number of bytes available for frames - rounded up to a
+	 *            multiple of 8
+	 * @return the ring for the consumer
+	 * @throws IOException
+	 *             if the file could not be created or mapped
+	 */
+	public static SharedMemoryRing create(final File path, final int capacity)
+			throws IOException {
+		final int cap = align(capacity);
+		final RandomAccessFile raf = new RandomAccessFile(path, "rw");
+		try {
+			raf.setLength(0);
+			raf.setLength(HEADER_SIZE + cap);
+			final MappedByteBuffer buf = raf.getChannel().map(
+					MapMode.READ_WRITE, 0, HEADER_SIZE + cap);
+			buf.putInt(OFS_CAPACITY, cap);
+			buf.putInt(OFS_FINISHED, 0);
+			buf.putLong(OFS_WRITE, 0);
+			buf.putLong(OFS_READ, 0);
+			fullFence();
+			buf.putInt(OFS_MAGIC, MAGIC);
+			return new SharedMemoryRing(raf, buf, cap, 0);
+		} catch (final IOException e) {
+			raf.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Opens a ring which has already been {@link #create(File, int) created}
+	 * by the consumer.
+	 * 
+	 * @param path
+	 *            the file which contains the ring
+	 * @return the ring for the producer
+	 * @throws IOException
+	 *             if the file could not be mapped or contains no valid ring
+	 */
+	public static SharedMemoryRing open(final File path) throws IOException {
+		final RandomAccessFile raf = new RandomAccessFile(path, "rw");
+		try {
+			final FileChannel ch = raf.getChannel();
+			if (ch.size() < HEADER_SIZE)
+				throw new IOException(String.format(
+						"'%s' is too small for a ring", path));
+			final ByteBuffer hdr = ch.map(MapMode.READ_WRITE, 0, HEADER_SIZE);
+			final int magic = hdr.getInt(OFS_MAGIC);
+			fullFence();
+			final int cap = hdr.getInt(OFS_CAPACITY);
+			if (magic != MAGIC || cap <= 0
+					|| cap % ALIGNMENT != 0 || ch.size() < HEADER_SIZE + cap)
+				throw new IOException(String.format(
+						"'%s' contains no valid ring", path));
+			final MappedByteBuffer buf = ch.map(MapMode.READ_WRITE, 0,
+					HEADER_SIZE + cap);
+			return new SharedMemoryRing(raf, buf, cap, buf.getLong(OFS_WRITE));
+		} catch (final IOException e) {
+			raf.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * A full fence: a volatile store followed by a volatile load. Accesses to
+	 * the mapped buffer before this call stay before the store, accesses
+	 * after this call stay after the load, and the store is never reordered
+	 * with the load, so no access can cross the fence in either direction.
+	 * <p>
+	 * Strictly, the Java memory model only promises this for memory shared
+	 * between Java threads. For memory shared with another process this
+	 * relies on the JVM implementing volatile accesses with the
+	 * corresponding CPU barriers, as HotSpot does.
+	 */
+	private static void fullFence() {
+		fence = 0;
+		if (fence != 0) throw new InternalException("Fence has been modified");
+	}
+
+	private static int align(final int size) {
+		return (size + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+	}
+
+	/**
+	 * Copies a {@link Data} into the ring. Must only be called by the
+	 * producer.
+	 * 
+	 * @param data
+	 *            the {@link Data} to pass to the consumer
+	 * @param scratch
+	 *            a buffer large enough for the binary representation of the
+	 *            {@link Data} - its content is overwritten
+	 * @return <b>true</b> if the {@link Data} has been written,
+	 *         <b>false</b> if the ring is currently too full
+	 * @throws IOException
+	 *             if the {@link Data} cannot be put into binary
+	 *             representation or can never fit into the ring
+	 */
+	public boolean offer(final Data data, final ByteBuffer scratch)
+			throws IOException {
+		scratch.clear();
+		try {
+			data.writeToBinary(scratch);
+		} catch (final BufferOverflowException e) {
+			throw new IOException("Scratch buffer too small for " + data);
+		}
+		scratch.flip();
+		final int len = scratch.remaining();
+		final int size = align(4 + len);
+		if (size > capacity)
+			throw new IOException(String.format(
+					"Frame of %d bytes is too large for a ring of %d bytes",
+					len, capacity));
+		final int pos = (int) (position % capacity);
+		final int skip = capacity - pos < size ? capacity - pos : 0;
+		final long read = buffer.getLong(OFS_READ);
+		fullFence();
+		if (position + skip + size - read > capacity) return false;
+		if (skip > 0) buffer.putInt(HEADER_SIZE + pos, PADDING);
+		final int start = skip > 0 ? 0 : pos;
+		final ByteBuffer dst = buffer.duplicate();
+		dst.position(HEADER_SIZE + start + 4);
+		dst.put(scratch);
+		buffer.putInt(HEADER_SIZE + start, len);
+		position += skip + size;
+		fullFence();
+		buffer.putLong(OFS_WRITE, position);
+		return true;
+	}
+
+	/**
+	 * Marks the ring as finished, so the consumer stops after it has read
+	 * all remaining frames. Must only be called by the producer.
+	 */
+	public void finish() {
+		fullFence();
+		buffer.putInt(OFS_FINISHED, 1);
+	}
+
+	/**
+	 * Reads the next {@link Data} from the ring. Must only be called by the
+	 * consumer.
+	 * 
+	 * @return a new {@link Data} or <b>null</b> if the ring is currently
+	 *         empty
+	 * @throws IOException
+	 *             if the ring contains an invalid frame
+	 * @throws FormatException
+	 *             if the frame contains no valid {@link Data}
+	 */
+	public Data poll() throws IOException, FormatException {
+		while (true) {
+			final long written = buffer.getLong(OFS_WRITE);
+			fullFence();
+			if (written == position) return null;
+			final int pos = (int) (position % capacity);
+			final int len = buffer.getInt(HEADER_SIZE + pos);
+			if (len == PADDING) {
+				advance(capacity - pos);
+				continue;
+			}
+			if (len < 0 || align(4 + len) > capacity - pos) {
+				// skip everything the producer has written so far
+				advance(written - position);
+				throw new IOException(String.format(
+						"Invalid frame length %d at %d", len, pos));
+			}
+			final byte[] frame = new byte[len];
+			final ByteBuffer src = buffer.duplicate();
+			src.position(HEADER_SIZE + pos + 4);
+			src.get(frame);
+			advance(align(4 + len));
+			return Data.createFromBinary(ByteBuffer.wrap(frame));
+		}
+	}
+
+	private void advance(final long bytes) {
+		position += bytes;
+		fullFence();
+		buffer.putLong(OFS_READ, position);
+	}
+
+	/**
+	 * @return <b>true</b> if the producer has {@link #finish() finished} and
+	 *         the consumer has read all frames
+	 */
+	public boolean isFinished() {
+		if (buffer.getInt(OFS_FINISHED) == 0) return false;
+		fullFence();
+		return buffer.getLong(OFS_WRITE) == buffer.getLong(OFS_READ);
+	}
+
+	/**
+	 * @return number of bytes available for frames
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return number of bytes currently occupied by frames
+	 */
+	public long getUsed() {
+		return buffer.getLong(OFS_WRITE) - buffer.getLong(OFS_READ);
+	}
+
+	/**
+	 * Closes the underlying file. The memory stays mapped until this object
+	 * has been garbage collected.
+	 * 
+	 * @throws IOException
+	 *             if closing failed
+	 */
+	public void close() throws IOException {
+		file.close();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d of %d bytes used", getUsed(), capacity);
+	}
+
+}
@@ -0,0 +1,273 @@
+// This file is part of PleoCommand:
+// Interactively control Pleo with psychobiological parameters
+//
+// Copyright (C) 2010 Oliver Hoffmann - Hoffmann_Oliver@gmx.de
+//
+// This program is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License
+// as published by the Free Software Foundation; either version 2
+// of the License, or (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Boston, USA.
+
+package pleocmd.pipe.in;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.Random;
+
+import pleocmd.Log;
+import pleocmd.cfg.ConfigDouble;
+import pleocmd.cfg.ConfigEnum;
+import pleocmd.cfg.ConfigInt;
+import pleocmd.cfg.ConfigString;
+import pleocmd.exc.ConfigurationException;
+import pleocmd.exc.InputException;
+import pleocmd.exc.InternalException;
+import pleocmd.pipe.Pacer;
+import pleocmd.pipe.data.Data;
+import pleocmd.pipe.data.MultiFloatData;
+
+/**
+ * Generates a multichannel signal at a high rate as a reproducible load
+ * source which needs no hardware.<br>
+ * Every generated {@link MultiFloatData} contains one sample for every
+ * channel. Instead of waiting before every single {@link Data}, a whole burst
+ * of {@link Data} is generated at once and then handed out one by one. The
+ * bursts are paced with {@link System#nanoTime()} against the beginning of
+ * the generation, so the average rate stays exact even if a single burst is
+ * late.
+ * 
+ * @author oliver
+ */
+public final class SignalGeneratorInput extends Input { // NO_UCD
+
+	/**
+	 * Minimum time in milliseconds between two updates of the rate
+	 * statistics.
+	 */
+	private static final long STATS_INTERVAL = 1000;
+
+	private final ConfigInt cfgChannels;
+
+	private final ConfigInt cfgSamplerate;
+
+	private final ConfigEnum<Waveform> cfgWaveform;
+
+	private final ConfigDouble cfgFrequency;
+
+	private final ConfigDouble cfgAmplitude;
+
+	private final ConfigString cfgPattern;
+
+	private final ConfigInt cfgBurstSize;
+
+	private final ConfigInt cfgSeed;
+
+	private final Queue<Data> pending = new ArrayDeque<Data>();
+
+	private Random rand;
+
+	private double[] pattern;
+
+	/**
+	 * Number of samples per channel generated so far.
+	 */
+	private long sample;
+
+	private long startNanos;
+
+	private long lagNanos;
+
+	private long lastStatistics;
+
+	public SignalGeneratorInput() {
+		addConfig(cfgChannels = new ConfigInt("Channels", 8, 1, 256));
+		addConfig(cfgSamplerate = new ConfigInt("Samplerate (in Hz)", 1000,
+				1, 1000000));
+		addConfig(cfgWaveform = new ConfigEnum<Waveform>(Waveform.Sine));
+		addConfig(cfgFrequency = new ConfigDouble("Frequency (in Hz)", 10, 0,
+				500000, 0.1));
+		addConfig(cfgAmplitude = new ConfigDouble("Amplitude", 1000, 0,
+				Double.MAX_VALUE));
+		addConfig(cfgPattern = new ConfigString("Pattern", "0 1000 0 -1000"));
+		addConfig(cfgBurstSize = new ConfigInt("Burst Size", 100, 1, 100000));
+		addConfig(cfgSeed = new ConfigInt("Seed", 0));
+		constructed();
+	}
+
+	public SignalGeneratorInput(final int channels, final int samplerate,
+			final Waveform waveform, final int burstSize)
+			throws ConfigurationException {
+		this();
+		cfgChannels.setContent(channels);
+		cfgSamplerate.setContent(samplerate);
+		cfgWaveform.setEnum(waveform);
+		cfgBurstSize.setContent(burstSize);
+	}
+
+	@Override
+	protected void init0() throws InputException {
+		rand = new Random(cfgSeed.getContent());
+		try {
+			pattern = parsePattern(cfgPattern.getContent());
+		} catch (final NumberFormatException e) {
+			throw new InputException(this, true, e, "Invalid pattern");
+		}
+		if (cfgWaveform.getEnum() == Waveform.Pattern && pattern.length == 0)
+			throw new InputException(this, true, "Pattern is empty");
+		pending.clear();
+		sample = 0;
+		startNanos = System.nanoTime();
+		lagNanos = 0;
+		lastStatistics = 0;
+		getFeedback().clearDetails();
+	}
+
+	@Override
+	protected void close0() {
+		updateStatistics(true);
+		pending.clear();
+	}
+
+	@Override
+	public String getOutputDescription() {
+		return MultiFloatData.IDENT;
+	}
+
+	@Override
+	protected String getShortConfigDescr0() {
+		return String.format("%d x %d Hz %s", cfgChannels.getContent(),
+				cfgSamplerate.getContent(), cfgWaveform.getContent());
+	}
+
+	@Override
+	protected Data readData0() {
+		if (pending.isEmpty()) {
+			// the first sample of the next burst is due at this time
+			final long due = startNanos
+					+ (long) (sample * 1e9 / cfgSamplerate.getContent());
+			try {
+				lagNanos = Pacer.waitUntil(due, Pacer.DEFAULT_SPIN);
+			} catch (final InterruptedException e) {
+				Log.detail("Signal generation interrupted");
+				return null;
+			}
+			generateBurst();
+			updateStatistics(false);
+		}
+		return pending.poll();
+	}
+
+	private void generateBurst() {
+		final int channels = cfgChannels.getContent();
+		final double rate = cfgSamplerate.getContent();
+		final double freq = cfgFrequency.getContent();
+		final double amp = cfgAmplitude.getContent();
+		final Waveform waveform = cfgWaveform.getEnum();
+		final int len = pattern.length;
+		for (int i = cfgBurstSize.getContent(); i > 0; --i) {
+			final double[] values = new double[channels];
+			final double cycles = sample / rate * freq;
+			for (int ch = 0; ch < channels; ++ch) {
+				final double phase = cycles + (double) ch / channels;
+				switch (waveform) {
+				case Sine:
+					values[ch] = amp * Math.sin(2 * Math.PI * phase);
+					break;
+				case Noise:
+					values[ch] = amp * (1 - 2 * rand.nextDouble());
+					break;
+				case Square:
+					values[ch] = phase - Math.floor(phase) < 0.5 ? amp : -amp;
+					break;
+				case Pattern:
+					values[ch] = pattern[(int) ((sample + ch) % len)];
+					break;
+				default:
+					throw new InternalException(waveform);
+				}
+			}
+			pending.add(new MultiFloatData(values, null));
+			++sample;
+		}
+	}
+
+	private void updateStatistics(final boolean force) {
+		final long now = System.currentTimeMillis();
+		if (!force && now - lastStatistics < STATS_INTERVAL) return;
+		lastStatistics = now;
+		final double secs = Math.max(1, System.nanoTime() - startNanos) / 1e9;
+		getFeedback().setDetail(
+				"Generated",
+				String.format("%d Data, %.0f Data/s, %.0f samples/s", sample,
+						sample / secs, sample * cfgChannels.getContent()
+								/ secs));
+		getFeedback().setDetail("Burst lag",
+				String.format("%.3f ms", lagNanos / 1e6));
+	}
+
+	private static double[] parsePattern(final String str) {
+		final String trimmed = str.trim();
+		if (trimmed.isEmpty()) return new double[0];
+		final String[] parts = trimmed.split("[\\s,;]+");
+		final double[] res = new double[parts.length];
+		for (int i = 0; i < parts.length; ++i)
+			res[i] = Double.parseDouble(parts[i]);
+		return res;
+	}
+
+	public static String help(final HelpKind kind) {
+		switch (kind) {
+		case Name:
+			return "Signal Generator";
+		case Description:
+			return "Generates a multichannel signal at a high rate";
+		case Config1:
+			return "Number of values in every Data block";
+		case Config2:
+			return "Number of Data blocks created per second";
+		case Config3:
+			return "Shape of the generated signal";
+		case Config4:
+			return "Frequency of sine and square waves";
+		case Config5:
+			return "The maximum (absolute) value of sine and square waves "
+					+ "and noise";
+		case Config6:
+			return "A list of values which is repeated by the 'Pattern' "
+					+ "waveform";
+		case Config7:
+			return "Number of Data blocks which are generated at once";
+		case Config8:
+			return "Start value of the random number generator for noise";
+		default:
+			return null;
+		}
+	}
+
+	@Override
+	public String isConfigurationSane() {
+		try {
+			if (cfgWaveform.getEnum() == Waveform.Pattern
+					&& parsePattern(cfgPattern.getContent()).length == 0)
+				return "Pattern is empty";
+		} catch (final NumberFormatException e) {
+			return "Pattern must be a list of numbers";
+		}
+		return null;
+	}
+
+	@Override
+	protected int getVisualizeDataSetCount() {
+		return 0;
+	}
+
+}
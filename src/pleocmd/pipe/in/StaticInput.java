@@ -21,7 +21,6 @@ package pleocmd.pipe.in;
 
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
-import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.StringReader;
 import java.io.StringWriter;
@@ -34,12 +33,13 @@ import pleocmd.exc.InputException;
 import pleocmd.itfc.gui.Layouter;
 import pleocmd.itfc.gui.dse.DataSequenceEditorPanel;
 import pleocmd.pipe.data.Data;
+import pleocmd.pipe.data.DataAsciiReader;
 
 public final class StaticInput extends Input { // NO_UCD
 
 	private final ConfigString cfgInput;
 
-	private DataInputStream in;
+	private DataAsciiReader in;
 
 	public StaticInput() {
 		addConfig(cfgInput = new ConfigString("Input", true) {
@@ -92,8 +92,9 @@ public final class StaticInput extends Input { // NO_UCD
 
 	@Override
 	protected void init0() throws IOException {
-		in = new DataInputStream(new ByteArrayInputStream(cfgInput.getContent()
-				.getBytes("ISO-8859-1")));
+		final byte[] ba = cfgInput.getContent().getBytes("ISO-8859-1");
+		in = new DataAsciiReader(new ByteArrayInputStream(ba), Math.max(1,
+				ba.length));
 	}
 
 	@Override
@@ -115,12 +116,10 @@ public final class StaticInput extends Input { // NO_UCD
 
 	@Override
 	protected Data readData0() throws InputException, IOException {
-		if (in.available() <= 0) {
-			Log.info("End Of List in Static-Input");
-			return null;
-		}
 		try {
-			return Data.createFromAscii(in);
+			final Data data = in.read();
+			if (data == null) Log.info("End Of List in Static-Input");
+			return data;
 		} catch (final FormatException e) {
 			throw new InputException(this, false, e, "Cannot read static data");
 		}
@@ -19,11 +19,20 @@
 
 package pleocmd.pipe.in;
 
-import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
-import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
 
 import pleocmd.Log;
 import pleocmd.StringManip;
@@ -31,22 +40,73 @@ import pleocmd.cfg.ConfigInt;
 import pleocmd.exc.ConfigurationException;
 import pleocmd.exc.FormatException;
 import pleocmd.exc.InputException;
+import pleocmd.pipe.data.CommandData;
 import pleocmd.pipe.data.Data;
 import pleocmd.pipe.data.MultiFloatData;
 
+/**
+ * Accepts any number of concurrent TCP/IP connections and reads binary
+ * {@link Data} blocks from all of them.<br>
+ * All sockets are non-blocking and handled by one {@link Selector}. Every
+ * connection has its own buffer into which bytes are read as they arrive, so
+ * a {@link Data} which has been split across several TCP segments is parsed
+ * as soon as its last part has been received.<br>
+ * Every {@link Data} is returned as a {@link MultiFloatData} whose parent is
+ * a {@link CommandData} describing the connection it has been received from
+ * (see {@link #getConnection(Data)}). The received {@link Data} itself stays
+ * the root of both.
+ * 
+ * @author oliver
+ */
 public final class TcpIpInput extends Input { // NO_UCD
 
+	/**
+	 * Command of the {@link CommandData} which is the parent of all
+	 * {@link Data} read from a TCP/IP connection.
+	 */
+	public static final String CONNECTION_COMMAND = "TcpIpConnection";
+
+	/**
+	 * Initial size of the buffer of one connection - grows if a single
+	 * {@link Data} does not fit into it.
+	 */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * Maximum time in milliseconds to wait for network events before checking
+	 * for timeouts and interruption.
+	 */
+	private static final int SELECT_TIMEOUT = 500;
+
+	/**
+	 * Minimum time in milliseconds between two updates of the throughput
+	 * statistics of a connection.
+	 */
+	private static final long STATS_INTERVAL = 1000;
+
 	private final ConfigInt cfgTimeoutConn;
 
 	private final ConfigInt cfgTimeoutRead;
 
 	private final ConfigInt cfgPort;
 
-	private Socket socket;
+	private final ConfigInt cfgMaxConnections;
+
+	private final Queue<Data> pending = new ArrayDeque<Data>();
+
+	private final List<Connection> connections = new ArrayList<Connection>();
 
-	private ServerSocket serverSocket;
+	private Selector selector;
 
-	private DataInputStream in;
+	private ServerSocketChannel serverChannel;
+
+	private int nextConnectionID;
+
+	/**
+	 * Time at which the last connection has been closed or the
+	 * {@link TcpIpInput} has been initialized.
+	 */
+	private long unconnectedSince;
 
 	public TcpIpInput() {
 		addConfig(cfgPort = new ConfigInt("Port", 19876, 1, 65535));
@@ -54,6 +114,8 @@ public final class TcpIpInput extends Input { // NO_UCD
 				60, 0, 3600));
 		addConfig(cfgTimeoutRead = new ConfigInt("Read-Timeout (sec)", 10, 0,
 				3600));
+		addConfig(cfgMaxConnections = new ConfigInt("Max Connections", 16, 1,
+				1024));
 		constructed();
 	}
 
@@ -68,20 +130,29 @@ public final class TcpIpInput extends Input { // NO_UCD
 
 	@Override
 	protected void init0() throws IOException {
-		serverSocket = new ServerSocket();
-		serverSocket.setPerformancePreferences(0, 2, 1);
-		serverSocket.setReuseAddress(true);
-		serverSocket.setSoTimeout(3000);
-		serverSocket.bind(new InetSocketAddress(cfgPort.getContent()));
-		socket = null;
-		in = null;
+		selector = Selector.open();
+		serverChannel = ServerSocketChannel.open();
+		final ServerSocket ss = serverChannel.socket();
+		ss.setPerformancePreferences(0, 2, 1);
+		ss.setReuseAddress(true);
+		ss.bind(new InetSocketAddress(cfgPort.getContent()));
+		serverChannel.configureBlocking(false);
+		serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+		pending.clear();
+		getFeedback().clearDetails();
+		nextConnectionID = 0;
+		unconnectedSince = System.currentTimeMillis();
 	}
 
 	@Override
 	protected void close0() throws IOException {
-		if (in != null) in.close();
-		if (socket != null) socket.close();
-		if (serverSocket != null) serverSocket.close();
+		for (final Connection conn : new ArrayList<Connection>(connections))
+			closeConnection(conn, "input closed");
+		pending.clear();
+		if (serverChannel != null) serverChannel.close();
+		if (selector != null) selector.close();
+		serverChannel = null;
+		selector = null;
 	}
 
 	@Override
@@ -97,36 +168,146 @@ public final class TcpIpInput extends Input { // NO_UCD
 
 	@Override
 	protected Data readData0() throws IOException, InputException {
-		if (socket == null || !socket.isConnected() || socket.isInputShutdown()) {
-			if (in != null) in.close();
-			if (socket != null) socket.close();
-			final int cnt = Math.max(1, cfgTimeoutConn.getContent() / 3);
-			for (int i = 1;; ++i)
-				try {
-					Log.info("Waiting for TCP/IP connection ...");
-					socket = serverSocket.accept();
-					break;
-				} catch (final IOException e) {
-					if (getPipe().isInitPhaseInterrupted()) return null;
-					if (i == cnt) throw e;
-				}
-			socket.setSoTimeout(cfgTimeoutRead.getContent() * 1000);
-			in = new DataInputStream(socket.getInputStream());
+		while (pending.isEmpty()) {
+			if (Thread.currentThread().isInterrupted()
+					|| getPipe().isInitPhaseInterrupted()) return null;
+			checkTimeouts();
+			if (connections.isEmpty())
+				Log.detail("Waiting for TCP/IP connection ...");
+			if (selector.select(SELECT_TIMEOUT) == 0) continue;
+			final Iterator<SelectionKey> it = selector.selectedKeys()
+					.iterator();
+			while (it.hasNext()) {
+				final SelectionKey key = it.next();
+				it.remove();
+				if (!key.isValid()) continue;
+				if (key.isAcceptable())
+					accept();
+				else if (key.isReadable())
+					read((Connection) key.attachment());
+			}
+		}
+		final Data data = pending.poll();
+		if (Log.canLogDetail())
+			Log.detail("<html>Read from TCP/IP: %s",
+					StringManip.printSyntaxHighlightedBinary(data));
+		return data;
+	}
+
+	private void checkTimeouts() throws InputException {
+		final long now = System.currentTimeMillis();
+		if (connections.isEmpty()) {
+			final long timeout = cfgTimeoutConn.getContent() * 1000L;
+			if (timeout > 0 && now - unconnectedSince >= timeout) {
+				unconnectedSince = now;
+				throw new InputException(this, false,
+						"No TCP/IP connection within %d seconds",
+						cfgTimeoutConn.getContent());
+			}
+			return;
 		}
+		final long timeout = cfgTimeoutRead.getContent() * 1000L;
+		if (timeout <= 0) return;
+		for (final Connection conn : new ArrayList<Connection>(connections))
+			if (now - conn.lastActivity >= timeout) {
+				closeConnection(conn, "read timeout");
+				throw new InputException(this, false,
+						"Cannot read from TCP/IP connection %s within "
+								+ "%d seconds", conn.name, cfgTimeoutRead
+								.getContent());
+			}
+	}
+
+	private void accept() throws IOException {
+		final SocketChannel sc = serverChannel.accept();
+		if (sc == null) return;
+		if (connections.size() >= cfgMaxConnections.getContent()) {
+			Log.warn("Rejecting TCP/IP connection from %s: already %d "
+					+ "connections", sc.socket().getRemoteSocketAddress(),
+					connections.size());
+			sc.close();
+			return;
+		}
+		sc.configureBlocking(false);
+		sc.socket().setTcpNoDelay(true);
+		final Connection conn = new Connection(++nextConnectionID, sc);
+		sc.register(selector, SelectionKey.OP_READ, conn);
+		connections.add(conn);
+		Log.info("Accepted TCP/IP connection %s", conn.name);
+		conn.updateStatistics(true);
+	}
+
+	private void read(final Connection conn) throws InputException {
+		final int cnt;
 		try {
-			final Data data = Data.createFromBinary(in);
-			if (Log.canLogDetail())
-				Log.detail("<html>Read from TCP/IP: %s",
-						StringManip.printSyntaxHighlightedBinary(data));
-			return new MultiFloatData(data);
-		} catch (final FormatException e) {
-			throw new InputException(this, false, e, "Cannot read from TCP/IP");
+			conn.ensureSpace();
+			cnt = conn.channel.read(conn.buf);
 		} catch (final IOException e) {
-			in.close();
-			socket.close();
-			socket = null;
-			throw new InputException(this, false, e, "Cannot read from TCP/IP");
+			closeConnection(conn, e.getMessage());
+			throw new InputException(this, false, e,
+					"Cannot read from TCP/IP connection %s", conn.name);
+		}
+		if (cnt < 0) {
+			closeConnection(conn, "closed by peer");
+			return;
 		}
+		conn.lastActivity = System.currentTimeMillis();
+		conn.bytes += cnt;
+		// parse all complete Data, leaving a partial one in the buffer
+		final ByteBuffer view = conn.buf.duplicate();
+		view.flip();
+		view.position(conn.parsed);
+		while (view.hasRemaining())
+			try {
+				final Data data = Data.createFromBinary(view);
+				pending.add(new MultiFloatData(data, new CommandData(
+						CONNECTION_COMMAND, conn.name, data)));
+				conn.parsed = view.position();
+				++conn.frames;
+			} catch (final EOFException e) {
+				break; // the rest will arrive later
+			} catch (final IOException e) {
+				closeConnection(conn, e.getMessage());
+				throw new InputException(this, false, e,
+						"Cannot read from TCP/IP connection %s", conn.name);
+			} catch (final FormatException e) {
+				// we cannot find the beginning of the next Data
+				closeConnection(conn, "invalid data");
+				throw new InputException(this, false, e,
+						"Cannot read from TCP/IP connection %s", conn.name);
+			}
+		conn.updateStatistics(false);
+	}
+
+	private void closeConnection(final Connection conn, final String reason) {
+		Log.info("Closing TCP/IP connection %s: %s", conn.name, reason);
+		try {
+			conn.channel.close();
+		} catch (final IOException e) {
+			Log.error(e, "Cannot close TCP/IP connection %s", conn.name);
+		}
+		conn.updateStatistics(true);
+		getFeedback().setDetail(conn.name, conn.getStatistics() + " - closed");
+		connections.remove(conn);
+		if (connections.isEmpty())
+			unconnectedSince = System.currentTimeMillis();
+	}
+
+	/**
+	 * Returns the TCP/IP connection a {@link Data} has been received from.
+	 * 
+	 * @param data
+	 *            a {@link Data} created by a {@link TcpIpInput} or one of its
+	 *            descendants
+	 * @return a description of the connection containing its number and the
+	 *         remote address or <b>null</b> if the {@link Data} has not been
+	 *         received via TCP/IP
+	 */
+	public static String getConnection(final Data data) {
+		for (Data d = data; d != null; d = d.getParent())
+			if (CommandData.isCommandData(d, CONNECTION_COMMAND))
+				return CommandData.getArgument(d);
+		return null;
 	}
 
 	public static String help(final HelpKind kind) {
@@ -134,13 +315,17 @@ public final class TcpIpInput extends Input { // NO_UCD
 		case Name:
 			return "TCP/IP Input";
 		case Description:
-			return "Reads Data blocks from a TCP/IP connection";
+			return "Reads Data blocks from any number of TCP/IP connections";
 		case Config1:
 			return "Port number of the client";
 		case Config2:
-			return "Connection Timeout in seconds (0 means infinite)";
+			return "Time in seconds without any connection after which an "
+					+ "error is reported (0 means infinite)";
 		case Config3:
-			return "Timeout for reading in seconds (0 means infinite)";
+			return "Time in seconds without any data after which a "
+					+ "connection is closed (0 means infinite)";
+		case Config4:
+			return "Maximum number of concurrent connections";
 		default:
 			return null;
 		}
@@ -164,4 +349,74 @@ public final class TcpIpInput extends Input { // NO_UCD
 		return 0;
 	}
 
+	/**
+	 * State of one accepted TCP/IP connection.
+	 */
+	private final class Connection {
+
+		private final SocketChannel channel;
+
+		private final String name;
+
+		private final long startTime;
+
+		/**
+		 * Bytes which have been read from the channel. Parsed bytes are
+		 * never overwritten, as binary {@link Data} reference them directly.
+		 */
+		private ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+
+		/**
+		 * Position of the first byte in {@link #buf} which belongs to a not
+		 * yet completely received {@link Data}.
+		 */
+		private int parsed;
+
+		private long bytes;
+
+		private long frames;
+
+		private long lastActivity;
+
+		private long lastStatistics;
+
+		Connection(final int id, final SocketChannel channel) {
+			this.channel = channel;
+			name = String.format("#%d %s", id, channel.socket()
+					.getRemoteSocketAddress());
+			startTime = lastActivity = System.currentTimeMillis();
+		}
+
+		/**
+		 * Makes sure that there is free space at the end of {@link #buf}.
+		 * Instead of compacting it in place, the incomplete {@link Data} is
+		 * copied into a new buffer, so all previously parsed {@link Data}
+		 * stay valid.
+		 */
+		void ensureSpace() {
+			if (buf.hasRemaining()) return;
+			final int partial = buf.position() - parsed;
+			final ByteBuffer nb = ByteBuffer.allocate(Math.max(BUFFER_SIZE,
+					partial * 2));
+			nb.put(buf.array(), parsed, partial);
+			buf = nb;
+			parsed = 0;
+		}
+
+		void updateStatistics(final boolean force) {
+			final long now = System.currentTimeMillis();
+			if (!force && now - lastStatistics < STATS_INTERVAL) return;
+			lastStatistics = now;
+			getFeedback().setDetail(name, getStatistics());
+		}
+
+		String getStatistics() {
+			final double secs = Math.max(1,
+					System.currentTimeMillis() - startTime) / 1000.0;
+			return String.format("%d Data, %d bytes, %.1f Data/s, %.1f KB/s",
+					frames, bytes, frames / secs, bytes / secs / 1024);
+		}
+
+	}
+
 }
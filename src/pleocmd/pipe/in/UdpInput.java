@@ -0,0 +1,421 @@
+// This file is part of PleoCommand:
+// Interactively control Pleo with psychobiological parameters
+//
+// Copyright (C) 2010 Oliver Hoffmann - Hoffmann_Oliver@gmx.de
+//
+// This program is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License
+// as published by the Free Software Foundation; either version 2
+// of the License, or (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Boston, USA.
+
+package pleocmd.pipe.in;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+
+import pleocmd.Log;
+import pleocmd.StringManip;
+import pleocmd.cfg.ConfigEnum;
+import pleocmd.cfg.ConfigInt;
+import pleocmd.exc.ConfigurationException;
+import pleocmd.exc.FormatException;
+import pleocmd.exc.InputException;
+import pleocmd.pipe.data.Data;
+import pleocmd.pipe.data.MultiFloatData;
+
+/**
+ * Receives binary {@link Data} blocks via UDP.<br>
+ * Every datagram starts with a 32 bit sequence number (big-endian), followed
+ * by one or more {@link Data} blocks in their binary representation (see
+ * {@link #writeDatagram(ByteBuffer, int, Collection)}).<br>
+ * Unlike TCP/IP, a delayed or lost datagram never holds back the following
+ * ones. Instead, the sequence numbers of every sender are tracked to count
+ * lost, reordered and duplicate datagrams, which are reported in the
+ * {@link pleocmd.pipe.PipePartFeedback}. Duplicates are always dropped, late
+ * datagrams according to the {@link LatePacketPolicy}.
+ * 
+ * @author oliver
+ */
+public final class UdpInput extends Input { // NO_UCD
+
+	/**
+	 * Size of the sequence number in front of every datagram.
+	 */
+	public static final int HEADER_SIZE = 4;
+
+	/**
+	 * Maximum size of the payload of an UDP datagram.
+	 */
+	public static final int MAX_DATAGRAM_SIZE = 65507;
+
+	/**
+	 * Maximum time in milliseconds to wait for a datagram before checking for
+	 * timeouts and interruption.
+	 */
+	private static final int RECEIVE_TIMEOUT = 500;
+
+	/**
+	 * If a datagram is this many sequence numbers or more older than the
+	 * highest one, the sender is assumed to have been restarted. Duplicates
+	 * are detected for all younger datagrams. Must be a power of two.
+	 */
+	private static final int RESTART_DISTANCE = 1024;
+
+	/**
+	 * Minimum time in milliseconds between two updates of the statistics of a
+	 * sender.
+	 */
+	private static final long STATS_INTERVAL = 1000;
+
+	private final ConfigInt cfgPort;
+
+	private final ConfigInt cfgTimeoutRead;
+
+	private final ConfigEnum<LatePacketPolicy> cfgLatePolicy;
+
+	private final Queue<Data> pending = new ArrayDeque<Data>();
+
+	private final Map<SocketAddress, Sender> senders;
+
+	private DatagramSocket socket;
+
+	private DatagramPacket packet;
+
+	private long lastReceived;
+
+	public UdpInput() {
+		senders = new HashMap<SocketAddress, Sender>();
+		addConfig(cfgPort = new ConfigInt("Port", 19877, 1, 65535));
+		addConfig(cfgTimeoutRead = new ConfigInt("Read-Timeout (sec)", 10, 0,
+				3600));
+		addConfig(cfgLatePolicy = new ConfigEnum<LatePacketPolicy>(
+				LatePacketPolicy.Drop));
+		constructed();
+	}
+
+	public UdpInput(final int port, final LatePacketPolicy latePolicy) {
+		this();
+		try {
+			cfgPort.setContent(port);
+		} catch (final ConfigurationException e) {
+			throw new IllegalArgumentException("Cannot set port", e);
+		}
+		cfgLatePolicy.setEnum(latePolicy);
+	}
+
+	@Override
+	protected void init0() throws IOException {
+		socket = new DatagramSocket(null);
+		socket.setReuseAddress(true);
+		socket.setReceiveBufferSize(1024 * 1024);
+		socket.setSoTimeout(RECEIVE_TIMEOUT);
+		socket.bind(new InetSocketAddress(cfgPort.getContent()));
+		packet = new DatagramPacket(new byte[MAX_DATAGRAM_SIZE],
+				MAX_DATAGRAM_SIZE);
+		pending.clear();
+		senders.clear();
+		getFeedback().clearDetails();
+		lastReceived = System.currentTimeMillis();
+	}
+
+	@Override
+	protected void close0() {
+		for (final Sender sender : senders.values())
+			sender.updateStatistics(true);
+		pending.clear();
+		if (socket != null) socket.close();
+		socket = null;
+		packet = null;
+	}
+
+	@Override
+	public String getOutputDescription() {
+		return MultiFloatData.IDENT;
+	}
+
+	@Override
+	protected String getShortConfigDescr0() {
+		return String.format("%d [%ds, %s]", cfgPort.getContent(),
+				cfgTimeoutRead.getContent(), cfgLatePolicy.getContent());
+	}
+
+	@Override
+	protected Data readData0() throws IOException, InputException {
+		while (pending.isEmpty()) {
+			if (Thread.currentThread().isInterrupted()
+					|| getPipe().isInitPhaseInterrupted()) return null;
+			try {
+				packet.setLength(MAX_DATAGRAM_SIZE);
+				socket.receive(packet);
+			} catch (final SocketTimeoutException e) {
+				final long timeout = cfgTimeoutRead.getContent() * 1000L;
+				final long now = System.currentTimeMillis();
+				if (timeout > 0 && now - lastReceived >= timeout) {
+					lastReceived = now;
+					throw new InputException(this, false,
+							"No UDP datagram within %d seconds",
+							cfgTimeoutRead.getContent());
+				}
+				continue;
+			} catch (final SocketException e) {
+				// socket has been closed while waiting
+				if (socket == null || socket.isClosed()) return null;
+				throw e;
+			}
+			lastReceived = System.currentTimeMillis();
+			receive();
+		}
+		final Data data = pending.poll();
+		if (Log.canLogDetail())
+			Log.detail("<html>Read from UDP: %s",
+					StringManip.printSyntaxHighlightedBinary(data));
+		return data;
+	}
+
+	private void receive() throws InputException {
+		final SocketAddress addr = packet.getSocketAddress();
+		Sender sender = senders.get(addr);
+		if (sender == null) {
+			sender = new Sender(String.valueOf(addr));
+			senders.put(addr, sender);
+			Log.info("Receiving UDP datagrams from %s", sender.name);
+		}
+		final int len = packet.getLength();
+		if (len < HEADER_SIZE) {
+			++sender.invalid;
+			sender.updateStatistics(false);
+			throw new InputException(this, false,
+					"UDP datagram from %s is too short: %d bytes",
+					sender.name, len);
+		}
+		// binary Data reference the buffer, so it must not be reused
+		final ByteBuffer bb = ByteBuffer.wrap(Arrays.copyOfRange(packet
+				.getData(), packet.getOffset(), packet.getOffset() + len));
+		if (!sender.accept(bb.getInt(), cfgLatePolicy.getEnum())) {
+			sender.updateStatistics(false);
+			return;
+		}
+		try {
+			while (bb.hasRemaining()) {
+				pending.add(new MultiFloatData(Data.createFromBinary(bb)));
+				++sender.frames;
+			}
+		} catch (final IOException e) {
+			++sender.invalid;
+			throw new InputException(this, false, e,
+					"Incomplete Data in UDP datagram from %s", sender.name);
+		} catch (final FormatException e) {
+			++sender.invalid;
+			throw new InputException(this, false, e,
+					"Invalid Data in UDP datagram from %s", sender.name);
+		} finally {
+			sender.updateStatistics(false);
+		}
+	}
+
+	/**
+	 * Writes a datagram in the format expected by {@link UdpInput}.
+	 * 
+	 * @param out
+	 *            the buffer receiving the datagram - should have a capacity of
+	 *            at most {@link #MAX_DATAGRAM_SIZE}
+	 * @param sequence
+	 *            the sequence number of the datagram, which must be increased
+	 *            by one for every datagram sent to the same {@link UdpInput}
+	 * @param data
+	 *            the {@link Data} blocks to put into the datagram
+	 * @throws IOException
+	 *             if a {@link Data} cannot be put into binary representation
+	 * @throws BufferOverflowException
+	 *             if the buffer is too small - its position is left unchanged
+	 *             in this case
+	 */
+	public static void writeDatagram(final ByteBuffer out, final int sequence,
+			final Collection<Data> data) throws IOException,
+			BufferOverflowException {
+		final int pos = out.position();
+		try {
+			out.putInt(sequence);
+			for (final Data d : data)
+				d.writeToBinary(out);
+		} catch (final BufferOverflowException e) {
+			out.position(pos);
+			throw e;
+		}
+	}
+
+	public static String help(final HelpKind kind) {
+		switch (kind) {
+		case Name:
+			return "UDP Input";
+		case Description:
+			return "Reads Data blocks from UDP datagrams with sequence numbers";
+		case Config1:
+			return "Port number to receive datagrams on";
+		case Config2:
+			return "Time in seconds without any datagram after which an "
+					+ "error is reported (0 means infinite)";
+		case Config3:
+			return "'Drop' if datagrams arriving after newer ones are "
+					+ "discarded or\n'Deliver' if they are passed on";
+		default:
+			return null;
+		}
+	}
+
+	@Override
+	public String isConfigurationSane() {
+		try {
+			final DatagramSocket ds = new DatagramSocket(null);
+			ds.setReuseAddress(true);
+			ds.bind(new InetSocketAddress(cfgPort.getContent()));
+			ds.close();
+		} catch (final IOException e) {
+			return "Port is already in use";
+		}
+		return null;
+	}
+
+	@Override
+	protected int getVisualizeDataSetCount() {
+		return 0;
+	}
+
+	/**
+	 * Sequence number tracking and statistics of one sender.
+	 */
+	private final class Sender {
+
+		private final String name;
+
+		private boolean first = true;
+
+		private int highest;
+
+		/**
+		 * Bit (s modulo {@link #RESTART_DISTANCE}) is set if the datagram with
+		 * sequence number s has been received, for all s in the range
+		 * ({@link #highest} - {@link #RESTART_DISTANCE}, {@link #highest}].
+		 */
+		private final long[] window = new long[RESTART_DISTANCE / 64];
+
+		private long received;
+
+		private long frames;
+
+		private long lost;
+
+		private long reordered;
+
+		private long lateDropped;
+
+		private long duplicates;
+
+		private long invalid;
+
+		private long lastStatistics;
+
+		Sender(final String name) {
+			this.name = name;
+		}
+
+		/**
+		 * Updates the sequence number tracking for a newly received datagram.
+		 * 
+		 * @param seq
+		 *            sequence number of the datagram
+		 * @param policy
+		 *            what to do if the datagram arrived late
+		 * @return <b>true</b> if the datagram should be passed to the pipe
+		 */
+		boolean accept(final int seq, final LatePacketPolicy policy) {
+			++received;
+			final int diff = seq - highest; // wraps around correctly
+			if (first || diff <= -RESTART_DISTANCE) {
+				if (!first)
+					Log.info("UDP sender %s has been restarted", name);
+				first = false;
+				highest = seq;
+				Arrays.fill(window, 0);
+				markReceived(seq);
+				return true;
+			}
+			if (diff > 0) {
+				// all sequence numbers in between are missing (for now)
+				lost += diff - 1;
+				if (diff >= RESTART_DISTANCE)
+					Arrays.fill(window, 0);
+				else
+					for (int s = highest + 1; s != seq; ++s)
+						clearReceived(s);
+				highest = seq;
+				markReceived(seq);
+				return true;
+			}
+			if (!markReceived(seq)) {
+				++duplicates;
+				return false;
+			}
+			// a datagram counted as lost has arrived after all
+			if (lost > 0) --lost;
+			++reordered;
+			if (policy == LatePacketPolicy.Drop) {
+				++lateDropped;
+				return false;
+			}
+			return true;
+		}
+
+		/**
+		 * @param seq
+		 *            a sequence number inside the window
+		 * @return <b>false</b> if the datagram has already been received
+		 */
+		private boolean markReceived(final int seq) {
+			final int idx = seq >>> 6 & window.length - 1;
+			final long bit = 1L << seq;
+			if ((window[idx] & bit) != 0) return false;
+			window[idx] |= bit;
+			return true;
+		}
+
+		private void clearReceived(final int seq) {
+			window[seq >>> 6 & window.length - 1] &= ~(1L << seq);
+		}
+
+		void updateStatistics(final boolean force) {
+			final long now = System.currentTimeMillis();
+			if (!force && now - lastStatistics < STATS_INTERVAL) return;
+			lastStatistics = now;
+			final String stats = String.format("%d datagrams with %d Data, "
+					+ "%d lost, %d reordered, %d late dropped, "
+					+ "%d duplicates, %d invalid", received, frames, lost,
+					reordered, lateDropped, duplicates, invalid);
+			getFeedback().setDetail(name, stats);
+		}
+
+	}
+
+}
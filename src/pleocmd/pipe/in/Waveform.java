@@ -0,0 +1,47 @@
+// This file is part of PleoCommand:
+// Interactively control Pleo with psychobiological parameters
+//
+// Copyright (C) 2010 Oliver Hoffmann - Hoffmann_Oliver@gmx.de
+//
+// This program is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License
+// as published by the Free Software Foundation; either version 2
+// of the License, or (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Boston, USA.
+
+package pleocmd.pipe.in;
+
+/**
+ * The shape of the signal generated by a {@link SignalGeneratorInput}.
+ * 
+ * @author oliver
+ */
+public enum Waveform {
+
+	/**
+	 * A sine wave, shifted by a fraction of its period on every channel.
+	 */
+	Sine,
+	/**
+	 * Uniformly distributed random values from a reproducible sequence.
+	 */
+	Noise,
+	/**
+	 * A square wave, shifted by a fraction of its period on every channel.
+	 */
+	Square,
+	/**
+	 * A fixed list of values repeated over and over, starting at a different
+	 * value on every channel.
+	 */
+	Pattern
+
+}
@@ -0,0 +1,218 @@
+// This file is part of PleoCommand:
+// Interactively control Pleo with psychobiological parameters
+//
+// Copyright (C) 2010 Oliver Hoffmann - Hoffmann_Oliver@gmx.de
+//
+// This program is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License
+// as published by the Free Software Foundation; either version 2
+// of the License, or (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Boston, USA.
+
+package pleocmd.pipe.out;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import pleocmd.Log;
+
+/**
+ * An {@link OutputStream} to a file which collects all bytes in a buffer and
+ * lets a background thread write full buffers via a {@link FileChannel}, so
+ * the writing thread normally never has to wait for the disk.<br>
+ * Two buffers are used alternately: while the background thread writes one
+ * of them, the other one is being filled. The writing thread only waits if
+ * it fills a buffer faster than the disk can take the other one.
+ * <p>
+ * {@link #flush()} passes the current buffer to the background thread and
+ * lets it force the content of the file to the disk afterwards, but does not
+ * wait for this to happen. Errors of the background thread are thrown by the
+ * next call to any method of this stream.
+ * 
+ * @author oliver
+ */
+final class AsyncFileWriter extends OutputStream implements Runnable {
+
+	private static final int BUFFER_SIZE = 256 * 1024;
+
+	private final FileChannel channel;
+
+	private final Thread thread;
+
+	private ByteBuffer current;
+
+	private ByteBuffer spare;
+
+	/**
+	 * The buffer which has been passed to the background thread or
+	 * <b>null</b>.
+	 */
+	private ByteBuffer pending;
+
+	private boolean pendingForce;
+
+	private boolean closed;
+
+	private IOException error;
+
+	AsyncFileWriter(final File file) throws IOException {
+		channel = new FileOutputStream(file).getChannel();
+		current = ByteBuffer.allocate(BUFFER_SIZE);
+		spare = ByteBuffer.allocate(BUFFER_SIZE);
+		thread = new Thread(this, "File-Writer-" + file.getName());
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	@Override
+	public synchronized void write(final int b) throws IOException {
+		if (!current.hasRemaining()) handOver(false);
+		current.put((byte) b);
+	}
+
+	@Override
+	public synchronized void write(final byte[] b, final int off,
+			final int len) throws IOException {
+		int o = off;
+		int l = len;
+		while (l > 0) {
+			if (!current.hasRemaining()) handOver(false);
+			final int cnt = Math.min(l, current.remaining());
+			current.put(b, o, cnt);
+			o += cnt;
+			l -= cnt;
+		}
+	}
+
+	@Override
+	public synchronized void flush() throws IOException {
+		handOver(true);
+	}
+
+	/**
+	 * Writes the remaining content, forces it to the disk and waits until
+	 * this has been done.
+	 */
+	@Override
+	public void close() throws IOException {
+		IOException exc = null;
+		synchronized (this) {
+			if (closed) return;
+			try {
+				handOver(true);
+				waitForPending();
+			} catch (final IOException e) {
+				exc = e;
+			}
+			closed = true;
+			notifyAll();
+		}
+		try {
+			thread.join();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		channel.close();
+		if (exc != null) throw exc;
+		checkError();
+	}
+
+	/**
+	 * Passes the current buffer to the background thread.<br>
+	 * Must be called with the lock held.
+	 * 
+	 * @param force
+	 *            true if the file should be forced to the disk afterwards
+	 * @throws IOException
+	 *             if the stream has been closed or writing of a previous
+	 *             buffer failed
+	 */
+	private void handOver(final boolean force) throws IOException {
+		checkError();
+		if (closed) throw new IOException("AsyncFileWriter has been closed");
+		if (current.position() == 0 && !force) return;
+		waitForPending();
+		current.flip();
+		pending = current;
+		pendingForce = force;
+		current = spare;
+		spare = null;
+		notifyAll();
+	}
+
+	/**
+	 * Waits until the background thread has finished writing the pending
+	 * buffer and therefore can take the next one.<br>
+	 * Cannot be interrupted, as the caller may be in the middle of writing
+	 * one line or block which must not be left half done (the output lanes of
+	 * the pipe get interrupted by high-priority Data). The interrupted state
+	 * of the thread will be restored afterwards.
+	 */
+	private void waitForPending() throws IOException {
+		boolean interrupted = false;
+		try {
+			while (pending != null) {
+				try {
+					wait();
+				} catch (final InterruptedException e) {
+					interrupted = true;
+				}
+				checkError();
+			}
+		} finally {
+			if (interrupted) Thread.currentThread().interrupt();
+		}
+	}
+
+	private void checkError() throws IOException {
+		if (error != null) throw error;
+	}
+
+	@Override
+	public void run() {
+		while (true) {
+			final ByteBuffer buf;
+			final boolean force;
+			synchronized (this) {
+				while (pending == null && !closed)
+					try {
+						wait();
+					} catch (final InterruptedException e) {
+						Log.error(e, "Background writer interrupted");
+						return;
+					}
+				if (pending == null) return;
+				buf = pending;
+				force = pendingForce;
+			}
+			try {
+				while (buf.hasRemaining())
+					channel.write(buf);
+				if (force) channel.force(false);
+			} catch (final IOException e) {
+				synchronized (this) {
+					error = e;
+				}
+			}
+			synchronized (this) {
+				buf.clear();
+				spare = buf;
+				pending = null;
+				notifyAll();
+			}
+		}
+	}
+
+}
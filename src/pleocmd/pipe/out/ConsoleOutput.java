@@ -30,6 +30,7 @@ import pleocmd.exc.InternalException;
 import pleocmd.exc.OutputException;
 import pleocmd.itfc.gui.MainFrame;
 import pleocmd.pipe.data.Data;
+import pleocmd.pipe.val.AsciiBuffer;
 
 public final class ConsoleOutput extends Output {
 
@@ -37,6 +38,8 @@ public final class ConsoleOutput extends Output {
 
 	private Data lastRoot;
 
+	private final AsciiBuffer asciiBuf = new AsciiBuffer();
+
 	public ConsoleOutput() {
 		addConfig(cfgType = new ConfigEnum<PrintType>(PrintType.class));
 		constructed();
@@ -102,12 +105,14 @@ public final class ConsoleOutput extends Output {
 			Log.consoleOut(out.toString("ISO-8859-1"));
 	}
 
-	private static void printAscii(final Data data) throws IOException {
+	private void printAscii(final Data data) throws IOException {
+		asciiBuf.clear();
+		data.writeToAscii(asciiBuf, false);
 		if (MainFrame.hasGUI())
-			Log.consoleOut2(data.asString(),
+			Log.consoleOut2(asciiBuf.toString(),
 					StringManip.printSyntaxHighlightedAscii(data));
 		else
-			Log.consoleOut(data.asString());
+			Log.consoleOut(asciiBuf.toString());
 	}
 
 	public static String help(final HelpKind kind) { // NO_UCD
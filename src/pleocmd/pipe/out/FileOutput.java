@@ -21,7 +21,6 @@ package pleocmd.pipe.out;
 
 import java.io.DataOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.Arrays;
 
@@ -32,14 +31,18 @@ import pleocmd.Log;
 import pleocmd.RunnableWithArgument;
 import pleocmd.StringManip;
 import pleocmd.cfg.ConfigEnum;
+import pleocmd.cfg.ConfigInt;
 import pleocmd.cfg.ConfigPath;
 import pleocmd.cfg.ConfigPath.PathType;
 import pleocmd.exc.ConfigurationException;
 import pleocmd.exc.InternalException;
 import pleocmd.exc.OutputException;
 import pleocmd.pipe.data.Data;
+import pleocmd.pipe.data.DataFileWriter;
+import pleocmd.pipe.data.DataFileWriter.Encoding;
 import pleocmd.pipe.in.FileInput;
 import pleocmd.pipe.in.Input;
+import pleocmd.pipe.val.AsciiBuffer;
 
 public final class FileOutput extends Output { // NO_UCD
 
@@ -47,13 +50,32 @@ public final class FileOutput extends Output { // NO_UCD
 
 	private final ConfigEnum<PrintType> cfgType;
 
+	private final ConfigEnum<Encoding> cfgEncoding;
+
+	private final ConfigEnum<FlushPolicy> cfgFlushPolicy;
+
+	private final ConfigInt cfgFlushEvery;
+
 	private DataOutputStream out;
 
+	private DataFileWriter writer;
+
+	private final AsciiBuffer asciiBuf = new AsciiBuffer();
+
 	private Data lastRoot;
 
+	private int unflushedCount;
+
+	private long lastFlush;
+
 	public FileOutput() {
 		addConfig(cfgFile = new ConfigPath("File", PathType.FileForWriting));
 		addConfig(cfgType = new ConfigEnum<PrintType>(PrintType.class));
+		addConfig(cfgEncoding = new ConfigEnum<Encoding>(Encoding.Plain));
+		addConfig(cfgFlushPolicy = new ConfigEnum<FlushPolicy>(
+				FlushPolicy.OnClose));
+		addConfig(cfgFlushEvery = new ConfigInt("Flush Every", 1000, 1,
+				Integer.MAX_VALUE));
 		cfgFile.setFileFilter(Arrays.asList(new FileFilter[] {
 				new FileNameExtensionFilter("ASCII-Textfiles", "txt"),
 				new FileNameExtensionFilter("Pleo ASCII Data", "pad"),
@@ -110,14 +132,33 @@ public final class FileOutput extends Output { // NO_UCD
 	protected void init0() throws IOException {
 		Log.detail("Opening file '%s' for output of type '%s'",
 				cfgFile.getContent(), cfgType.getEnum());
-		out = new DataOutputStream(new FileOutputStream(cfgFile.getContent()));
+		switch (cfgType.getEnum()) {
+		case Binary:
+		case BinaryOriginal:
+			writer = new DataFileWriter(new AsyncFileWriter(cfgFile
+					.getContent()), DataFileWriter.DEFAULT_BLOCK_SIZE,
+					cfgEncoding.getEnum());
+			break;
+		default:
+			out = new DataOutputStream(new AsyncFileWriter(cfgFile
+					.getContent()));
+			break;
+		}
+		unflushedCount = 0;
+		lastFlush = System.currentTimeMillis();
 	}
 
 	@Override
 	protected void close0() throws IOException {
 		Log.detail("Closing file '%s'", cfgFile.getContent());
-		out.close();
-		out = null;
+		if (writer != null) {
+			writer.close();
+			writer = null;
+		}
+		if (out != null) {
+			out.close();
+			out = null;
+		}
 		lastRoot = null;
 	}
 
@@ -137,13 +178,13 @@ public final class FileOutput extends Output { // NO_UCD
 		Data root;
 		switch (cfgType.getEnum()) {
 		case Ascii:
-			data.writeToAscii(out, true);
+			writeAscii(data);
 			if (Log.canLogDetail())
 				Log.detail("<html>Written to file: %s",
 						StringManip.printSyntaxHighlightedAscii(data));
 			break;
 		case Binary:
-			data.writeToBinary(out);
+			writer.write(data);
 			if (Log.canLogDetail())
 				Log.detail("<html>Written to file: %s",
 						StringManip.printSyntaxHighlightedBinary(data));
@@ -151,7 +192,7 @@ public final class FileOutput extends Output { // NO_UCD
 		case AsciiOriginal:
 			if (lastRoot != (root = data.getRoot())) {
 				lastRoot = root;
-				root.writeToAscii(out, true);
+				writeAscii(root);
 				if (Log.canLogDetail())
 					Log.detail("<html>Written to file: %s",
 							StringManip.printSyntaxHighlightedAscii(root));
@@ -160,7 +201,7 @@ public final class FileOutput extends Output { // NO_UCD
 		case BinaryOriginal:
 			if (lastRoot != (root = data.getRoot())) {
 				lastRoot = root;
-				root.writeToBinary(out);
+				writer.write(root);
 				if (Log.canLogDetail())
 					Log.detail("<html>Written to file: %s",
 							StringManip.printSyntaxHighlightedBinary(root));
@@ -173,9 +214,45 @@ public final class FileOutput extends Output { // NO_UCD
 		default:
 			throw new InternalException(cfgType.getEnum());
 		}
+		flushIfDue();
 		return true;
 	}
 
+	/**
+	 * Flushes all written {@link Data} to the disk if required by the
+	 * {@link FlushPolicy}. The disk is accessed by a background thread, so
+	 * this only waits if the previous flush has not been finished yet.
+	 * 
+	 * @throws IOException
+	 *             if a previous write to the disk failed
+	 */
+	private void flushIfDue() throws IOException {
+		++unflushedCount;
+		switch (cfgFlushPolicy.getEnum()) {
+		case OnClose:
+			return;
+		case DataCount:
+			if (unflushedCount < cfgFlushEvery.getContent()) return;
+			break;
+		case Interval:
+			if (System.currentTimeMillis() - lastFlush < cfgFlushEvery
+					.getContent()) return;
+			break;
+		default:
+			throw new InternalException(cfgFlushPolicy.getEnum());
+		}
+		if (writer != null) writer.flush();
+		if (out != null) out.flush();
+		unflushedCount = 0;
+		lastFlush = System.currentTimeMillis();
+	}
+
+	private void writeAscii(final Data data) throws IOException {
+		asciiBuf.clear();
+		data.writeToAscii(asciiBuf, true);
+		asciiBuf.writeTo(out);
+	}
+
 	public static String help(final HelpKind kind) { // NO_UCD
 		switch (kind) {
 		case Name:
@@ -187,7 +264,17 @@ public final class FileOutput extends Output { // NO_UCD
 					+ "be written in either ASCII or binary form";
 		case Config2:
 			return "'Ascii' if Data blocks will be in ASCII format or\n"
-					+ "   'Binary' if Data blocks will be written as binary";
+					+ "   'Binary' if Data blocks will be written to an indexed "
+					+ "binary file";
+		case Config3:
+			return "How binary files are encoded: 'Plain' or the more "
+					+ "compact 'Delta' and 'DeltaXor' for recordings";
+		case Config4:
+			return "When written Data blocks are forced to the disk: "
+					+ "'OnClose', after every N Data blocks ('DataCount') "
+					+ "or every N milliseconds ('Interval')";
+		case Config5:
+			return "The N for the flush policy";
 		default:
 			return null;
 		}
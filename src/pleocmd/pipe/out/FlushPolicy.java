@@ -0,0 +1,46 @@
+// This file is part of PleoCommand:
+// Interactively control Pleo with psychobiological parameters
+//
+// Copyright (C) 2010 Oliver Hoffmann - Hoffmann_Oliver@gmx.de
+//
+// This program is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License
+// as published by the Free Software Foundation; either version 2
+// of the License, or (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Boston, USA.
+
+package pleocmd.pipe.out;
+
+import pleocmd.pipe.data.Data;
+
+/**
+ * Specifies when a {@link FileOutput} forces the written {@link Data} to the
+ * disk.
+ * 
+ * @author oliver
+ */
+public enum FlushPolicy {
+
+	/**
+	 * Only when the file is closed.
+	 */
+	OnClose,
+	/**
+	 * After every N {@link Data} blocks.
+	 */
+	DataCount,
+	/**
+	 * With the first {@link Data} block which is written at least N
+	 * milliseconds after the last flush.
+	 */
+	Interval
+
+}
@@ -0,0 +1,235 @@
+// This file is part of PleoCommand:
+// Interactively control Pleo with psychobiological parameters
+//
+// Copyright (C) 2010 Oliver Hoffmann - Hoffmann_Oliver@gmx.de
+//
+// This program is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License
+// as published by the Free Software Foundation; either version 2
+// of the License, or (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Boston, USA.
+
+package pleocmd.pipe.val;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+
+import pleocmd.exc.InternalException;
+import pleocmd.pipe.data.Data;
+
+/**
+ * A growable byte buffer which receives the Ascii representation of one or
+ * more {@link Data}s.<br>
+ * Numbers are formatted directly into the buffer, so a {@link AsciiBuffer}
+ * which is cleared and reused for every {@link Data} does not create any
+ * temporary objects for the fields.
+ * 
+ * @author oliver
+ */
+public final class AsciiBuffer {
+
+	private static final byte[] HEX_TABLE = new byte[] { '0', '1', '2', '3',
+			'4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F' };
+
+	/**
+	 * All powers of ten which can be represented exactly as a double.
+	 */
+	private static final double[] POW10 = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5,
+			1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17,
+			1e18, 1e19, 1e20, 1e21, 1e22 };
+
+	/**
+	 * Largest mantissa which can be represented exactly as a double.
+	 */
+	private static final long MAX_EXACT = 1L << 53;
+
+	private byte[] buf;
+
+	private int len;
+
+	public AsciiBuffer() {
+		this(128);
+	}
+
+	public AsciiBuffer(final int capacity) {
+		buf = new byte[capacity];
+	}
+
+	/**
+	 * Discards the content but keeps the allocated memory.
+	 */
+	public void clear() {
+		len = 0;
+	}
+
+	public int length() {
+		return len;
+	}
+
+	/**
+	 * Writes the whole content with one call.
+	 * 
+	 * @param out
+	 *            the {@link DataOutput} to write to
+	 * @throws IOException
+	 *             if writing failed
+	 */
+	public void writeTo(final DataOutput out) throws IOException {
+		out.write(buf, 0, len);
+	}
+
+	/**
+	 * @return the content in ISO-8859-1 encoding
+	 */
+	@Override
+	public String toString() {
+		try {
+			return new String(buf, 0, len, "ISO-8859-1");
+		} catch (final UnsupportedEncodingException e) {
+			throw new InternalException(e);
+		}
+	}
+
+	private void ensureCapacity(final int additional) {
+		if (len + additional > buf.length) {
+			final byte[] buf2 = new byte[Math.max(buf.length * 2, len
+					+ additional)];
+			System.arraycopy(buf, 0, buf2, 0, len);
+			buf = buf2;
+		}
+	}
+
+	void appendByte(final int b) {
+		ensureCapacity(1);
+		buf[len++] = (byte) b;
+	}
+
+	void append(final byte[] ba) {
+		ensureCapacity(ba.length);
+		System.arraycopy(ba, 0, buf, len, ba.length);
+		len += ba.length;
+	}
+
+	/**
+	 * Appends the characters of a {@link String} in ISO-8859-1 encoding.
+	 * 
+	 * @param str
+	 *            the {@link String} to append
+	 * @return number of bytes appended
+	 */
+	int append(final String str) {
+		final int cnt = str.length();
+		ensureCapacity(cnt);
+		for (int i = 0; i < cnt; ++i) {
+			final char c = str.charAt(i);
+			// same replacement as String.getBytes("ISO-8859-1")
+			buf[len++] = c > 0xFF ? (byte) '?' : (byte) c;
+		}
+		return cnt;
+	}
+
+	/**
+	 * Appends a decimal integer like {@link String#valueOf(long)}.
+	 * 
+	 * @param val
+	 *            the number to append
+	 * @return number of bytes appended
+	 */
+	int append(final long val) {
+		if (val == Long.MIN_VALUE) return append(String.valueOf(val));
+		final int start = len;
+		long v = val;
+		if (v < 0) {
+			appendByte('-');
+			v = -v;
+		}
+		appendDigits(v, 0);
+		return len - start;
+	}
+
+	/**
+	 * Appends a positive integer with at least the given number of digits.
+	 */
+	private void appendDigits(final long val, final int minDigits) {
+		int digits = 1;
+		for (long v = val / 10; v != 0; v /= 10)
+			++digits;
+		if (digits < minDigits) digits = minDigits;
+		ensureCapacity(digits);
+		long v = val;
+		for (int i = len + digits - 1; i >= len; --i) {
+			buf[i] = (byte) ('0' + v % 10);
+			v /= 10;
+		}
+		len += digits;
+	}
+
+	/**
+	 * Appends a floating point number in the same format as
+	 * {@link String#valueOf(double)}, using the shortest representation which
+	 * parses back to exactly the same value.<br>
+	 * Numbers between 0.001 and 10^7 with up to 15 significant digits are
+	 * formatted directly into the buffer, all others are passed on to
+	 * {@link String#valueOf(double)}.
+	 * 
+	 * @param val
+	 *            the number to append
+	 * @return number of bytes appended
+	 */
+	int append(final double val) {
+		final double abs = Math.abs(val);
+		if (abs == 0 || abs >= 1e-3 && abs < 1e7) {
+			final int start = len;
+			for (int d = 0; d < POW10.length; ++d) {
+				final double scaled = abs * POW10[d];
+				if (scaled >= MAX_EXACT) break;
+				final long m = Math.round(scaled);
+				// m and 10^d are exact, so is the quotient
+				if (m / POW10[d] != abs) continue;
+				if (val < 0 || val == 0 && 1 / val < 0) appendByte('-');
+				if (d == 0) {
+					appendDigits(m, 1);
+					appendByte('.');
+					appendByte('0');
+				} else {
+					appendDigits(m / (long) POW10[d], 1);
+					appendByte('.');
+					appendDigits(m % (long) POW10[d], d);
+				}
+				return len - start;
+			}
+		}
+		return append(String.valueOf(val));
+	}
+
+	/**
+	 * Replaces all bytes from the given position to the end by their
+	 * hexadecimal representation.
+	 * 
+	 * @param start
+	 *            position of the first byte to convert
+	 * @return number of bytes the buffer has grown
+	 */
+	int convertToHex(final int start) {
+		final int cnt = len - start;
+		ensureCapacity(cnt);
+		// work backwards, so no byte is overwritten before being converted
+		for (int i = cnt - 1; i >= 0; --i) {
+			final byte b = buf[start + i];
+			buf[start + 2 * i] = HEX_TABLE[b >> 4 & 0x0F];
+			buf[start + 2 * i + 1] = HEX_TABLE[b & 0x0F];
+		}
+		len += cnt;
+		return cnt;
+	}
+
+}
@@ -0,0 +1,176 @@
+// This file is part of PleoCommand:
+// Interactively control Pleo with psychobiological parameters
+//
+// Copyright (C) 2010 Oliver Hoffmann - Hoffmann_Oliver@gmx.de
+//
+// This program is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License
+// as published by the Free Software Foundation; either version 2
+// of the License, or (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Boston, USA.
+
+package pleocmd.pipe.val;
+
+import java.io.UnsupportedEncodingException;
+
+import pleocmd.exc.InternalException;
+
+/**
+ * Parses decimal numbers directly from the bytes of their Ascii
+ * representation without creating any temporary objects.<br>
+ * Accepts the same input as {@link Long#valueOf(String)} (plus a leading '+')
+ * and {@link Double#valueOf(String)}. Floating point numbers which can not be
+ * converted exactly by the fast path are passed on to
+ * {@link Double#valueOf(String)}, so the result is always correctly rounded.
+ * 
+ * @author oliver
+ */
+final class AsciiNumbers {
+
+	/**
+	 * All powers of ten which can be represented exactly as a double.
+	 */
+	private static final double[] POW10 = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5,
+			1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17,
+			1e18, 1e19, 1e20, 1e21, 1e22 };
+
+	/**
+	 * Largest mantissa which can be represented exactly as a double.
+	 */
+	private static final long MAX_EXACT = 1L << 53;
+
+	private AsciiNumbers() {
+		// final class and only static methods
+	}
+
+	/**
+	 * Parses a signed decimal integer.
+	 * 
+	 * @param buf
+	 *            Ascii representation of the number
+	 * @param off
+	 *            index of the first byte in buf
+	 * @param len
+	 *            number of bytes to parse
+	 * @return the number
+	 * @throws NumberFormatException
+	 *             if the bytes are not a valid number or the number does not
+	 *             fit into a long
+	 */
+	static long parseLong(final byte[] buf, final int off, final int len) {
+		final int end = off + len;
+		int i = off;
+		boolean neg = false;
+		if (i < end && (buf[i] == '-' || buf[i] == '+')) neg = buf[i++] == '-';
+		if (i == end) throw invalid(buf, off, len);
+		// accumulate negatively, so Long.MIN_VALUE can be parsed, too
+		final long limit = neg ? Long.MIN_VALUE : -Long.MAX_VALUE;
+		final long multmin = limit / 10;
+		long res = 0;
+		for (; i < end; ++i) {
+			final int digit = buf[i] - '0';
+			if (digit < 0 || digit > 9 || res < multmin)
+				throw invalid(buf, off, len);
+			res *= 10;
+			if (res < limit + digit) throw invalid(buf, off, len);
+			res -= digit;
+		}
+		return neg ? res : -res;
+	}
+
+	/**
+	 * Parses a floating point number.
+	 * 
+	 * @param buf
+	 *            Ascii representation of the number
+	 * @param off
+	 *            index of the first byte in buf
+	 * @param len
+	 *            number of bytes to parse
+	 * @return the number
+	 * @throws NumberFormatException
+	 *             if the bytes are not a valid number
+	 */
+	static double parseDouble(final byte[] buf, final int off, final int len) {
+		final int end = off + len;
+		int i = off;
+		boolean neg = false;
+		if (i < end && (buf[i] == '-' || buf[i] == '+')) neg = buf[i++] == '-';
+		long mant = 0;
+		int digits = 0;
+		int exp = 0;
+		boolean seenDigit = false;
+		boolean seenDot = false;
+		for (; i < end; ++i) {
+			final int b = buf[i];
+			if (b >= '0' && b <= '9') {
+				seenDigit = true;
+				// leading zeros do not count as significant digits
+				if ((mant != 0 || b != '0') && ++digits > 18)
+					return parseDoubleSlow(buf, off, len);
+				mant = mant * 10 + b - '0';
+				if (seenDot) --exp;
+			} else if (b == '.' && !seenDot)
+				seenDot = true;
+			else
+				break;
+		}
+		if (!seenDigit) return parseDoubleSlow(buf, off, len);
+		if (i < end) {
+			// only an exponent may follow
+			if (buf[i] != 'e' && buf[i] != 'E')
+				return parseDoubleSlow(buf, off, len);
+			++i;
+			boolean expNeg = false;
+			if (i < end && (buf[i] == '-' || buf[i] == '+'))
+				expNeg = buf[i++] == '-';
+			if (i == end) return parseDoubleSlow(buf, off, len);
+			int e = 0;
+			for (; i < end; ++i) {
+				final int b = buf[i];
+				if (b < '0' || b > '9' || e > 100000)
+					return parseDoubleSlow(buf, off, len);
+				e = e * 10 + b - '0';
+			}
+			exp += expNeg ? -e : e;
+		}
+		// both mantissa and power of ten are exact, so is the result
+		if (mant > MAX_EXACT || exp < -22 || exp > 22)
+			return parseDoubleSlow(buf, off, len);
+		double res = mant;
+		if (exp < 0)
+			res /= POW10[-exp];
+		else
+			res *= POW10[exp];
+		return neg ? -res : res;
+	}
+
+	private static double parseDoubleSlow(final byte[] buf, final int off,
+			final int len) {
+		return Double.valueOf(toString(buf, off, len));
+	}
+
+	private static NumberFormatException invalid(final byte[] buf,
+			final int off, final int len) {
+		return new NumberFormatException(String.format(
+				"For input string: \"%s\"", toString(buf, off, len)));
+	}
+
+	private static String toString(final byte[] buf, final int off,
+			final int len) {
+		try {
+			return new String(buf, off, len, "ISO-8859-1");
+		} catch (final UnsupportedEncodingException e) {
+			throw new InternalException(e);
+		}
+	}
+
+}
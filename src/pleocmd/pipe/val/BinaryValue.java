@@ -23,6 +23,8 @@ import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 final class BinaryValue extends Value {
@@ -31,7 +33,13 @@ final class BinaryValue extends Value {
 
 	static final ValueType RECOMMENDED_TYPE = ValueType.Data;
 
-	private byte[] val;
+	private volatile byte[] val;
+
+	/**
+	 * The content as a read-only slice of the buffer it has been read from
+	 * if {@link #val} has not been created yet.
+	 */
+	private ByteBuffer slice;
 
 	protected BinaryValue(final ValueType type) {
 		super(type);
@@ -60,8 +68,45 @@ final class BinaryValue extends Value {
 	public int writeToBinary(final DataOutput out) throws IOException {
 		switch (getType()) {
 		case Data:
-			out.writeInt(val.length);
-			out.write(val);
+			final byte[] ba = asByteArray();
+			out.writeInt(ba.length);
+			out.write(ba);
+			return ba.length + 4;
+		default:
+			throw new RuntimeException("Invalid type for this class");
+		}
+	}
+
+	@Override
+	int readFromBuffer(final ByteBuffer in) throws IOException {
+		switch (getType()) {
+		case Data:
+			final int len = in.getInt();
+			if (len < 0)
+				throw new IOException("Invalid binary data size: " + len);
+			if (in.remaining() < len) throw new BufferUnderflowException();
+			final ByteBuffer bb = in.asReadOnlyBuffer();
+			bb.limit(bb.position() + len);
+			slice = bb.slice();
+			val = null;
+			in.position(in.position() + len);
+			return len + 4;
+		default:
+			throw new RuntimeException("Invalid type for this class");
+		}
+	}
+
+	@Override
+	int writeToBuffer(final ByteBuffer out) {
+		switch (getType()) {
+		case Data:
+			if (val == null) {
+				out.putInt(slice.remaining());
+				out.put(slice.duplicate());
+				return slice.remaining() + 4;
+			}
+			out.putInt(val.length);
+			out.put(val);
 			return val.length + 4;
 		default:
 			throw new RuntimeException("Invalid type for this class");
@@ -70,23 +115,32 @@ final class BinaryValue extends Value {
 
 	@Override
 	public void readFromAscii(final byte[] in, final int len) {
+		slice = null;
 		val = new byte[len];
 		System.arraycopy(in, 0, val, 0, len);
 	}
 
 	@Override
-	public int writeToAscii(final DataOutput out) throws IOException {
-		out.write(val);
-		return val.length;
+	int writeToAscii(final AsciiBuffer out) {
+		final byte[] ba = asByteArray();
+		out.append(ba);
+		return ba.length;
 	}
 
 	@Override
 	public String toString() {
-		return DataAsciiConverter.toHexString(val, val.length);
+		final byte[] ba = asByteArray();
+		return DataAsciiConverter.toHexString(ba, ba.length);
 	}
 
 	@Override
 	public byte[] asByteArray() {
+		if (val == null) {
+			// only copied from the buffer if really needed
+			final byte[] ba = new byte[slice.remaining()];
+			slice.duplicate().get(ba);
+			val = ba;
+		}
 		return val;
 	}
 
@@ -97,6 +151,7 @@ final class BinaryValue extends Value {
 
 	@Override
 	public Value set(final String content) throws UnsupportedEncodingException {
+		slice = null;
 		val = content.getBytes("ISO-8859-1");
 		return this;
 	}
@@ -105,12 +160,12 @@ final class BinaryValue extends Value {
 	public boolean equals(final Object o) {
 		if (o == this) return true;
 		if (!(o instanceof BinaryValue)) return false;
-		return Arrays.equals(val, ((BinaryValue) o).val);
+		return Arrays.equals(asByteArray(), ((BinaryValue) o).asByteArray());
 	}
 
 	@Override
 	public int hashCode() {
-		return Arrays.hashCode(val);
+		return Arrays.hashCode(asByteArray());
 	}
 
 }
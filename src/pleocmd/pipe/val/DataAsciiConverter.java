@@ -19,10 +19,9 @@
 
 package pleocmd.pipe.val;
 
-import java.io.ByteArrayOutputStream;
 import java.io.DataInput;
 import java.io.DataOutput;
-import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.util.List;
 
@@ -116,9 +115,6 @@ public final class DataAsciiConverter extends AbstractDataConverter {
 			40, 40, 40, 40, 40, 40, 40, 40, // F8 - FF
 	};
 
-	private static final byte[] HEX_TABLE = new byte[] { '0', '1', '2', '3',
-			'4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F' };
-
 	private final List<Syntax> syntaxList;
 
 	private byte[] buf;
@@ -131,6 +127,17 @@ public final class DataAsciiConverter extends AbstractDataConverter {
 
 	private int index;
 
+	/**
+	 * The stream to read from or <b>null</b> if reading from {@link #src}.
+	 */
+	private final DataInput in;
+
+	private final byte[] src;
+
+	private int srcPos;
+
+	private final int srcEnd;
+
 	/**
 	 * Creates a new {@link DataAsciiConverter} that wraps an existing
 	 * {@link Data} object.
@@ -144,6 +151,9 @@ public final class DataAsciiConverter extends AbstractDataConverter {
 	public DataAsciiConverter(final Data data, final List<Syntax> syntaxList) {
 		super(data);
 		this.syntaxList = syntaxList;
+		in = null;
+		src = null;
+		srcEnd = 0;
 	}
 
 	/**
@@ -164,33 +174,66 @@ public final class DataAsciiConverter extends AbstractDataConverter {
 	 */
 	public DataAsciiConverter(final DataInput in, final List<Syntax> syntaxList)
 			throws IOException, FormatException {
-		Log.detail("Started parsing an ASCII Data object");
 		this.syntaxList = syntaxList;
+		this.in = in;
+		src = null;
+		srcEnd = 0;
+		parse();
+	}
+
+	/**
+	 * Creates a new {@link DataAsciiConverter} and sets all its fields
+	 * according to the Ascii representation of a {@link Data} in a byte
+	 * array.<br>
+	 * Much faster than reading from a {@link DataInput} byte by byte.
+	 * 
+	 * @param ba
+	 *            text data in ISO-8859-1 encoding - parsing stops at the first
+	 *            line-feed or the end of the given range
+	 * @param off
+	 *            index of the first byte in ba
+	 * @param len
+	 *            number of valid bytes in ba
+	 * @param syntaxList
+	 *            an (empty) list which receives all elements found during
+	 *            parsing - may be <b>null</b>
+	 * @throws IOException
+	 *             if the data ends unexpectedly
+	 * @throws FormatException
+	 *             if data is of an invalid type or is of an invalid format for
+	 *             its type
+	 */
+	public DataAsciiConverter(final byte[] ba, final int off, final int len,
+			final List<Syntax> syntaxList) throws IOException, FormatException {
+		this.syntaxList = syntaxList;
+		in = null;
+		src = ba;
+		srcPos = off;
+		srcEnd = off + len;
+		parse();
+	}
+
+	private void parse() throws IOException, FormatException {
+		if (Log.canLogDetail())
+			Log.detail("Started parsing an ASCII Data object");
 		buf = new byte[64];
 		index = -1;
 		while (true) {
 			++index;
-			final byte b;
-			try {
-				b = in.readByte();
-			} catch (final IOException e) {
-				parseValue(getValues().isEmpty());
-				// this was the end of the data block
-				trimValues();
-				Log.detail("Finished parsing an ASCII Data object");
-				return;
-			}
+			final int b = readNext();
 			switch (b) {
+			case -1:
 			case '\n':
 				parseValue(getValues().isEmpty());
 				// this was the end of the data block
 				trimValues();
-				Log.detail("Finished parsing an ASCII Data object");
+				if (Log.canLogDetail())
+					Log.detail("Finished parsing an ASCII Data object");
 				return;
 			case '|':
 				parseValue(false);
-				if (this.syntaxList != null)
-					this.syntaxList.add(new Syntax(Type.FieldDelim, index));
+				if (syntaxList != null)
+					syntaxList.add(new Syntax(Type.FieldDelim, index));
 				// prepare for the next value
 				type = null;
 				isHex = false;
@@ -198,10 +241,10 @@ public final class DataAsciiConverter extends AbstractDataConverter {
 				break;
 			case '[':
 				if (index == 0)
-					parseFlags(in);
+					parseFlags();
 				else
 					// treat '[' on other positions as a normal character
-					putByteIntoBuffer(b);
+					putByteIntoBuffer((byte) b);
 				break;
 			case ':':
 				if (type == null && (buflen == 1 || buflen == 2))
@@ -209,19 +252,39 @@ public final class DataAsciiConverter extends AbstractDataConverter {
 				else
 					// treat (second) ':' on other positions as
 					// a normal character
-					putByteIntoBuffer(b);
+					putByteIntoBuffer((byte) b);
 				break;
 			case ' ':
 				if (buflen > 0) // ignore whitespaces at the beginning
-					putByteIntoBuffer(b);
+					putByteIntoBuffer((byte) b);
 				break;
 			default:
-				putByteIntoBuffer(b);
+				putByteIntoBuffer((byte) b);
 				break;
 			}
 		}
 	}
 
+	/**
+	 * @return the next byte (as an unsigned value) or -1 if the end of the
+	 *         input has been reached or reading failed
+	 */
+	private int readNext() {
+		if (src != null) return srcPos < srcEnd ? src[srcPos++] & 0xFF : -1;
+		try {
+			return in.readByte() & 0xFF;
+		} catch (final IOException e) {
+			return -1;
+		}
+	}
+
+	private byte readByte() throws IOException {
+		if (src == null) return in.readByte();
+		if (srcPos == srcEnd)
+			throw new EOFException("Unexpected end of Ascii data");
+		return src[srcPos++];
+	}
+
 	private void parseValue(final boolean ignoreIfEmpty) throws FormatException {
 		// trim whitespaces
 		final int orgbuflen = buflen;
@@ -234,7 +297,8 @@ public final class DataAsciiConverter extends AbstractDataConverter {
 			// autodetect type
 			isHex = false;
 			type = detectDataType(buf, buflen, orgbuflen);
-			Log.detail("Autodetecting resulted in: %s", type);
+			if (Log.canLogDetail())
+				Log.detail("Autodetecting resulted in: %s", type);
 		}
 
 		// create fitting value
@@ -268,9 +332,11 @@ public final class DataAsciiConverter extends AbstractDataConverter {
 
 		if (isHex) {
 			// we need to decode the data from a hex string
-			Log.detail("Converting hex data with length %d", buflen);
-			final byte[] buf2 = new byte[buflen / 2];
-			for (int i = 0, j = 0; i < buflen;) {
+			if (Log.canLogDetail())
+				Log.detail("Converting hex data with length %d", buflen);
+			// decode in place, j never overtakes i
+			int j = 0;
+			for (int i = 0; i < buflen;) {
 				final int d1 = Character.digit(buf[i++], 16); // CS_IGNORE
 				final int si = index - orgbuflen + i;
 				if (i == buflen)
@@ -286,10 +352,10 @@ public final class DataAsciiConverter extends AbstractDataConverter {
 					throw new FormatException(syntaxList, si,
 							"Broken hexadecimal data: Invalid "
 									+ "character: 0x%02X", buf[i - 1]);
-				buf2[j++] = (byte) (d1 << 4 | d2); // CS_IGNORE
+				buf[j++] = (byte) (d1 << 4 | d2); // CS_IGNORE
 			}
 			try {
-				val.readFromAscii(buf2, buf2.length);
+				val.readFromAscii(buf, j);
 			} catch (final Throwable t) {
 				throw new FormatException(syntaxList, index - orgbuflen,
 						t.getMessage());
@@ -306,19 +372,38 @@ public final class DataAsciiConverter extends AbstractDataConverter {
 
 	public void writeToAscii(final DataOutput out, final boolean writeLF)
 			throws IOException {
-		Log.detail("Writing Data to ASCII output stream");
-		int pos = writeFlags(out);
+		final AsciiBuffer buf = new AsciiBuffer();
+		writeToAscii(buf, writeLF);
+		buf.writeTo(out);
+	}
+
+	/**
+	 * Appends the Ascii representation to the given {@link AsciiBuffer}
+	 * without creating any temporary objects for the single fields.<br>
+	 * Positions in the list of {@link Syntax} elements are relative to the
+	 * length of the {@link AsciiBuffer} before this call.
+	 * 
+	 * @param out
+	 *            the {@link AsciiBuffer} to append to
+	 * @param writeLF
+	 *            if true, a line-feed will be appended
+	 */
+	public void writeToAscii(final AsciiBuffer out, final boolean writeLF) {
+		if (Log.canLogDetail())
+			Log.detail("Writing Data to ASCII output stream");
+		final int base = out.length();
+		writeFlags(out);
 
 		boolean first = true;
 		for (final Value value : getValues()) {
 			// write delimiter if needed
 			if (!first) {
 				if (syntaxList != null)
-					syntaxList.add(new Syntax(Type.FieldDelim, pos));
-				out.writeByte(' ');
-				out.writeByte('|');
-				out.writeByte(' ');
-				pos += 3;
+					syntaxList.add(new Syntax(Type.FieldDelim, out.length()
+							- base));
+				out.appendByte(' ');
+				out.appendByte('|');
+				out.appendByte(' ');
 			}
 			first = false;
 
@@ -326,97 +411,90 @@ public final class DataAsciiConverter extends AbstractDataConverter {
 			// write the field type identifier (and modifier if needed)
 			if (hex) {
 				if (syntaxList != null)
-					syntaxList.add(new Syntax(Type.TypeIdent, pos));
-				out.writeByte(Value.getAsciiTypeChar(value));
-				out.writeByte('x');
-				out.writeByte(':');
-				out.writeByte(' ');
-				pos += 4;
+					syntaxList.add(new Syntax(Type.TypeIdent, out.length()
+							- base));
+				out.appendByte(Value.getAsciiTypeChar(value));
+				out.appendByte('x');
+				out.appendByte(':');
+				out.appendByte(' ');
 			}
 
 			// write the field content in decimal or hex
 			if (hex) {
 				if (syntaxList != null)
-					syntaxList.add(new Syntax(Type.HexField, pos));
-				final ByteArrayOutputStream hexOut = new ByteArrayOutputStream();
-				value.writeToAscii(new DataOutputStream(hexOut));
-				final byte[] ba = hexOut.toByteArray();
-				for (final byte b : ba) {
-					out.write(HEX_TABLE[b >> 4 & 0x0F]);
-					out.write(HEX_TABLE[b & 0x0F]);
-				}
-				pos += ba.length * 2;
+					syntaxList.add(new Syntax(Type.HexField, out.length()
+							- base));
+				final int start = out.length();
+				value.writeToAscii(out);
+				out.convertToHex(start);
 			} else {
-				if (syntaxList != null) switch (value.getType()) {
-				case Float32:
-				case Float64:
-					syntaxList.add(new Syntax(Type.FloatField, pos));
-					break;
-				case Int8:
-				case Int32:
-				case Int64:
-					syntaxList.add(new Syntax(Type.IntField, pos));
-					break;
-				case NullTermString:
-				case UTFString:
-					syntaxList.add(new Syntax(Type.StringField, pos));
-					break;
-				case Data:
-					syntaxList.add(new Syntax(Type.DataField, pos));
-					break;
+				if (syntaxList != null) {
+					final int pos = out.length() - base;
+					switch (value.getType()) {
+					case Float32:
+					case Float64:
+						syntaxList.add(new Syntax(Type.FloatField, pos));
+						break;
+					case Int8:
+					case Int32:
+					case Int64:
+						syntaxList.add(new Syntax(Type.IntField, pos));
+						break;
+					case NullTermString:
+					case UTFString:
+						syntaxList.add(new Syntax(Type.StringField, pos));
+						break;
+					case Data:
+						syntaxList.add(new Syntax(Type.DataField, pos));
+						break;
+					}
 				}
-				pos += value.writeToAscii(out);
+				value.writeToAscii(out);
 			}
 		}
 
 		// write the final block delimiter
-		if (writeLF) out.writeByte('\n');
+		if (writeLF) out.appendByte('\n');
 	}
 
-	private int writeFlags(final DataOutput out) throws IOException {
-		int pos = 0;
+	private void writeFlags(final AsciiBuffer out) {
 		if (getPriority() == Data.PRIO_DEFAULT && getTime() == Data.TIME_NOTIME)
-			return pos;
-		if (syntaxList != null) syntaxList.add(new Syntax(Type.Flags, pos));
-		out.writeByte('[');
-		out.writeByte(' ');
-		pos += 2;
+			return;
+		final int base = out.length();
+		if (syntaxList != null) syntaxList.add(new Syntax(Type.Flags, 0));
+		out.appendByte('[');
+		out.appendByte(' ');
 		if (getPriority() != Data.PRIO_DEFAULT) {
 			if (syntaxList != null)
-				syntaxList.add(new Syntax(Type.FlagPrio, pos));
-			out.writeByte('P');
-			if (getPriority() < 0) out.writeByte('-');
-			out.writeByte('0' + Math.abs(getPriority()) / 10);
-			out.writeByte('0' + Math.abs(getPriority()) % 10);
-			out.writeByte(' ');
-			pos += getPriority() < 0 ? 5 : 4;
+				syntaxList.add(new Syntax(Type.FlagPrio, out.length() - base));
+			out.appendByte('P');
+			if (getPriority() < 0) out.appendByte('-');
+			out.appendByte('0' + Math.abs(getPriority()) / 10);
+			out.appendByte('0' + Math.abs(getPriority()) % 10);
+			out.appendByte(' ');
 		}
 		if (getTime() != Data.TIME_NOTIME) {
 			if (syntaxList != null)
-				syntaxList.add(new Syntax(Type.FlagTime, pos));
-			out.writeByte('T');
+				syntaxList.add(new Syntax(Type.FlagTime, out.length() - base));
+			out.appendByte('T');
 			final boolean inSec = getTime() % 1000 == 0;
-			final long val = inSec ? getTime() / 1000 : getTime();
-			final byte[] ba = String.valueOf(val).getBytes("ISO-8859-1");
-			out.write(ba);
-			if (!inSec) out.write('m');
-			out.write('s');
-			out.writeByte(' ');
-			pos += ba.length + (inSec ? 3 : 4);
+			out.append(inSec ? getTime() / 1000 : getTime());
+			if (!inSec) out.appendByte('m');
+			out.appendByte('s');
+			out.appendByte(' ');
 		}
-		if (syntaxList != null) syntaxList.add(new Syntax(Type.Flags, pos));
-		out.writeByte(']');
-		out.writeByte(' ');
-		pos += 2;
-		return pos;
+		if (syntaxList != null)
+			syntaxList.add(new Syntax(Type.Flags, out.length() - base));
+		out.appendByte(']');
+		out.appendByte(' ');
 	}
 
-	private void parseFlags(final DataInput in) throws IOException,
+	private void parseFlags() throws IOException,
 			FormatException {
 		if (syntaxList != null) syntaxList.add(new Syntax(Type.Flags, index));
 		while (true) {
 			++index;
-			final byte b = in.readByte();
+			final byte b = readByte();
 			switch (b) {
 			case ' ': // just ignore any spaces in flag list
 				break;
@@ -426,11 +504,11 @@ public final class DataAsciiConverter extends AbstractDataConverter {
 				return;
 			case 'P':
 			case 'p':
-				parseFlagPriority(in);
+				parseFlagPriority();
 				break;
 			case 'T':
 			case 't':
-				parseFlagTime(in);
+				parseFlagTime();
 				break;
 			default:
 				throw new FormatException(syntaxList, index,
@@ -439,16 +517,16 @@ public final class DataAsciiConverter extends AbstractDataConverter {
 		}
 	}
 
-	private void parseFlagPriority(final DataInput in) throws IOException,
+	private void parseFlagPriority() throws IOException,
 			FormatException {
 		if (syntaxList != null)
 			syntaxList.add(new Syntax(Type.FlagPrio, index));
 		++index;
-		byte b = in.readByte();
+		byte b = readByte();
 		final boolean neg = b == '-';
 		if (neg) {
 			++index;
-			b = in.readByte();
+			b = readByte();
 		}
 		byte res = 0;
 		if (b < '0' || b > '9')
@@ -456,14 +534,15 @@ public final class DataAsciiConverter extends AbstractDataConverter {
 					"Invalid character 0x%02X in priority", b);
 		res += (b - '0') * 10;
 		++index;
-		b = in.readByte();
+		b = readByte();
 		if (b < '0' || b > '9')
 			throw new FormatException(syntaxList, index,
 					"Invalid character 0x%02X in priority", b);
 		res += b - '0';
 		if (neg) res = (byte) -res;
 
-		Log.detail("Parsed priority: %d", res);
+		if (Log.canLogDetail())
+			Log.detail("Parsed priority: %d", res);
 
 		if (res < Data.PRIO_LOWEST || res > Data.PRIO_HIGHEST)
 			throw new FormatException(syntaxList, index,
@@ -472,17 +551,17 @@ public final class DataAsciiConverter extends AbstractDataConverter {
 		setPriority(res);
 	}
 
-	private void parseFlagTime(final DataInput in) throws IOException,
+	private void parseFlagTime() throws IOException,
 			FormatException {
 		if (syntaxList != null)
 			syntaxList.add(new Syntax(Type.FlagTime, index));
 		long res = 0;
 		while (true) {
 			++index;
-			final byte b = in.readByte();
+			final byte b = readByte();
 			if (b == 'm') {
 				++index;
-				final byte b2 = in.readByte();
+				final byte b2 = readByte();
 				if (b2 != 's')
 					throw new FormatException(syntaxList, index, "Invalid "
 							+ "character 0x%02X in time at position %d", b2,
@@ -500,7 +579,8 @@ public final class DataAsciiConverter extends AbstractDataConverter {
 			res += b - '0';
 		}
 
-		Log.detail("Parsed time: %d ms", res);
+		if (Log.canLogDetail())
+			Log.detail("Parsed time: %d ms", res);
 
 		if (res > 0xFFFFFFFFL)
 			throw new FormatException(syntaxList, index,
@@ -524,7 +604,8 @@ public final class DataAsciiConverter extends AbstractDataConverter {
 		} else
 			isHex = false;
 		buflen = 0;
-		Log.detail("Forced type '%s' - hex: %s", type, isHex);
+		if (Log.canLogDetail())
+			Log.detail("Forced type '%s' - hex: %s", type, isHex);
 	}
 
 	private void putByteIntoBuffer(final byte b) {
@@ -554,12 +635,14 @@ public final class DataAsciiConverter extends AbstractDataConverter {
 	 */
 	private ValueType detectDataType(final byte[] data, final int len,
 			final int orgbuflen) throws FormatException {
-		Log.detail("Autodetecting data type of %d bytes", len);
+		if (Log.canLogDetail())
+			Log.detail("Autodetecting data type of %d bytes", len);
 		int tat;
 		int res = 0;
-		final boolean[] found = new boolean[256];
+		boolean foundFloat = false;
 		for (int i = 0; i < len; ++i) {
-			found[tat = TYPE_AUTODETECT_TABLE[data[i] & 0xFF]] = true;
+			tat = TYPE_AUTODETECT_TABLE[data[i] & 0xFF];
+			if (tat == 9) foundFloat = true;
 			if ((res = Math.max(res, tat)) == 40)
 				throw new FormatException(syntaxList, index - orgbuflen + i,
 						"Invalid character for any known data type: 0x%02X",
@@ -572,7 +655,7 @@ public final class DataAsciiConverter extends AbstractDataConverter {
 		case 30: // valid string characters
 			return ValueType.NullTermString;
 		case 10: // valid digits
-			return found[9] ? ValueType.Float64 : ValueType.Int64;
+			return foundFloat ? ValueType.Float64 : ValueType.Int64;
 		default:
 			throw new InternalException(
 					"Invalid entry in TYPE_AUTODETECT_TABLE: %d", res);
@@ -21,7 +21,12 @@ package pleocmd.pipe.val;
 
 import java.io.DataInput;
 import java.io.DataOutput;
+import java.io.EOFException;
 import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.List;
 
 import pleocmd.Log;
@@ -164,6 +169,8 @@ public final class DataBinaryConverter extends AbstractDataConverter {
 	public static final int FLAG_RESERVED_4 = 0x10;
 	private static final int FLAG_RESERVED_MASK = 0x18;
 
+	private static final ValueType[] TYPES = ValueType.values();
+
 	/**
 	 * Creates a new {@link DataBinaryConverter} that wraps an existing
 	 * {@link Data} object.
@@ -193,34 +200,19 @@ public final class DataBinaryConverter extends AbstractDataConverter {
 	 */
 	public DataBinaryConverter(final DataInput in, final List<Syntax> syntaxList)
 			throws IOException, FormatException {
-		Log.detail("Started parsing a binary Data object");
+		if (Log.canLogDetail())
+			Log.detail("Started parsing a binary Data object");
 		int pos = 0;
 		final int hdr = in.readInt();
-		final int flags = hdr >> 27 & 0x1F; // first 5 bits
+		final int flags = checkFlags(hdr, syntaxList);
 		int cnt = (hdr >> 24 & 0x07) + 1; // next 3 bits
-
 		final ValueType[] types = new ValueType[32];
 		for (int i = 0; i < cnt; ++i)
-			types[i] = ValueType.values()[hdr >> (7 - i) * 3 & 0x07];
-
-		if ((flags & FLAG_RESERVED_MASK) != 0)
-			throw new FormatException(syntaxList, pos,
-					"Reserved flags have been set: 0x%02X", flags);
-		if (syntaxList != null) {
-			syntaxList.add(new Syntax(Type.Flags, pos));
-			syntaxList.add(new Syntax(Type.TypeIdent, pos + 1));
-		}
+			types[i] = TYPES[hdr >> (7 - i) * 3 & 0x07];
 		pos += 4;
 		if ((flags & FLAG_PRIORITY) != 0) {
-			final byte prio = in.readByte();
-			if (prio < Data.PRIO_LOWEST || prio > Data.PRIO_HIGHEST)
-				throw new FormatException(syntaxList, pos,
-						"Priority is out of range: %d not between %d and %d",
-						prio, Data.PRIO_LOWEST, Data.PRIO_HIGHEST);
-			if (syntaxList != null)
-				syntaxList.add(new Syntax(Type.FlagPrio, pos));
+			setPriority(checkPriority(in.readByte(), syntaxList, pos));
 			++pos;
-			setPriority(prio);
 		}
 		if ((flags & FLAG_TIME) != 0) {
 			if (syntaxList != null)
@@ -231,80 +223,215 @@ public final class DataBinaryConverter extends AbstractDataConverter {
 			setTime(ms);
 		}
 		if ((flags & FLAG_VERYLONG) != 0) {
-			if (syntaxList != null)
-				syntaxList.add(new Syntax(Type.FlagVeryLong, pos));
-			if (cnt < 8)
-				throw new FormatException(syntaxList, pos, "VeryLong-Flag set "
-						+ "but field-count in header %d instead of 8", cnt);
+			checkVeryLong(cnt, syntaxList, pos);
 			final byte[] ba = new byte[10];
 			in.readFully(ba);
-			cnt = (ba[0] >> 3 & 0x1F) + 1; // first 5 bits (MSB)
-			// 24 * 3 bits following
-			Log.detail("VeryLong-Bytes are '%s'",
-					DataAsciiConverter.toHexString(ba, 10));
-			int bp = 4;
-			for (int i = 8; i < cnt; ++i) {
-				final int b0 = getBit(ba, ++bp) ? 4 : 0;
-				final int b1 = getBit(ba, ++bp) ? 2 : 0;
-				final int b2 = getBit(ba, ++bp) ? 1 : 0;
-				types[i] = ValueType.values()[b0 | b1 | b2];
-			}
+			cnt = parseVeryLong(ba, types);
 			pos += 10;
 		}
-		Log.detail("Header is 0x%08X => flags: 0x%02X count: %d", hdr, flags,
-				cnt);
+		if (Log.canLogDetail())
+			Log.detail("Header is 0x%08X => flags: 0x%02X count: %d", hdr, flags,
+					cnt);
 		for (int i = 0; i < cnt; ++i) {
-			if (syntaxList != null) switch (types[i]) {
-			case Float32:
-			case Float64:
-				syntaxList.add(new Syntax(Type.FloatField, pos));
-				break;
-			case Int8:
-			case Int32:
-			case Int64:
-				syntaxList.add(new Syntax(Type.IntField, pos));
-				break;
-			case NullTermString:
-			case UTFString:
-				syntaxList.add(new Syntax(Type.StringField, pos));
-				break;
-			case Data:
-				syntaxList.add(new Syntax(Type.DataField, pos));
-				break;
-			default:
-				syntaxList.add(new Syntax(Type.Error, pos));
-			}
+			addFieldSyntax(syntaxList, types[i], pos);
 			final Value val = Value.createForType(types[i]);
-			Log.detail("Reading value of type '%s' from binary", types[i]);
+			if (Log.canLogDetail())
+				Log.detail("Reading value of type '%s' from binary", types[i]);
 			pos += val.readFromBinary(in);
 			getValues().add(val);
 		}
 		trimValues();
 		if (syntaxList != null) syntaxList.add(new Syntax(Type.Error, pos));
-		Log.detail("Finished parsing a binary Data object");
+		if (Log.canLogDetail())
+			Log.detail("Finished parsing a binary Data object");
+	}
+
+	/**
+	 * Creates a new {@link DataBinaryConverter} and sets all its fields
+	 * according to the binary representation of a {@link Data} in the
+	 * {@link ByteBuffer}, starting at its current position.<br>
+	 * The {@link Value}s are decoded directly from the buffer. Binary payloads
+	 * are not copied but kept as slices of the buffer, so its content must
+	 * not be modified as long as the {@link Data} is in use.<br>
+	 * On success, the position of the buffer is moved behind the
+	 * {@link Data}. If the buffer does not contain the complete {@link Data},
+	 * its position is left unchanged, so more bytes can be appended and
+	 * parsing can be retried.
+	 * 
+	 * @param in
+	 *            buffer with binary data - its byte order will be ignored
+	 * @param syntaxList
+	 *            an (empty) list which receives all elements found during
+	 *            parsing - may be <b>null</b>
+	 * @throws IOException
+	 *             if the buffer does not contain a complete {@link Data}
+	 * @throws FormatException
+	 *             if data is of an invalid type or is of an invalid format for
+	 *             its type
+	 */
+	public DataBinaryConverter(final ByteBuffer in, final List<Syntax> syntaxList)
+			throws IOException, FormatException {
+		if (Log.canLogDetail())
+			Log.detail("Started parsing a binary Data object from a buffer");
+		final int start = in.position();
+		final ByteOrder order = in.order();
+		in.order(ByteOrder.BIG_ENDIAN);
+		int pos = 0;
+		try {
+			final int hdr = in.getInt();
+			final int flags = checkFlags(hdr, syntaxList);
+			int cnt = (hdr >> 24 & 0x07) + 1; // next 3 bits
+			final ValueType[] types = new ValueType[32];
+			for (int i = 0; i < cnt; ++i)
+				types[i] = TYPES[hdr >> (7 - i) * 3 & 0x07];
+			pos += 4;
+			if ((flags & FLAG_PRIORITY) != 0) {
+				setPriority(checkPriority(in.get(), syntaxList, pos));
+				++pos;
+			}
+			if ((flags & FLAG_TIME) != 0) {
+				if (syntaxList != null)
+					syntaxList.add(new Syntax(Type.FlagTime, pos));
+				setTime(in.getInt() & 0xFFFFFFFFL);
+				pos += 4;
+			}
+			if ((flags & FLAG_VERYLONG) != 0) {
+				checkVeryLong(cnt, syntaxList, pos);
+				final byte[] ba = new byte[10];
+				in.get(ba);
+				cnt = parseVeryLong(ba, types);
+				pos += 10;
+			}
+			for (int i = 0; i < cnt; ++i) {
+				addFieldSyntax(syntaxList, types[i], pos);
+				final Value val = Value.createForType(types[i]);
+				pos += val.readFromBuffer(in);
+				getValues().add(val);
+			}
+		} catch (final BufferUnderflowException e) {
+			in.position(start);
+			throw new EOFException(String.format("Buffer contains only %d "
+					+ "bytes of a binary Data object", in.remaining()));
+		} finally {
+			in.order(order);
+		}
+		trimValues();
+		if (syntaxList != null) syntaxList.add(new Syntax(Type.Error, pos));
+		if (Log.canLogDetail())
+			Log.detail("Finished parsing a binary Data object from a buffer");
+	}
+
+	private static int checkFlags(final int hdr, final List<Syntax> syntaxList)
+			throws FormatException {
+		final int flags = hdr >> 27 & 0x1F; // first 5 bits
+		if ((flags & FLAG_RESERVED_MASK) != 0)
+			throw new FormatException(syntaxList, 0,
+					"Reserved flags have been set: 0x%02X", flags);
+		if (syntaxList != null) {
+			syntaxList.add(new Syntax(Type.Flags, 0));
+			syntaxList.add(new Syntax(Type.TypeIdent, 1));
+		}
+		return flags;
+	}
+
+	private static byte checkPriority(final byte prio,
+			final List<Syntax> syntaxList, final int pos)
+			throws FormatException {
+		if (prio < Data.PRIO_LOWEST || prio > Data.PRIO_HIGHEST)
+			throw new FormatException(syntaxList, pos,
+					"Priority is out of range: %d not between %d and %d",
+					prio, Data.PRIO_LOWEST, Data.PRIO_HIGHEST);
+		if (syntaxList != null) syntaxList.add(new Syntax(Type.FlagPrio, pos));
+		return prio;
+	}
+
+	private static void checkVeryLong(final int cnt,
+			final List<Syntax> syntaxList, final int pos)
+			throws FormatException {
+		if (syntaxList != null)
+			syntaxList.add(new Syntax(Type.FlagVeryLong, pos));
+		if (cnt < 8)
+			throw new FormatException(syntaxList, pos, "VeryLong-Flag set "
+					+ "but field-count in header %d instead of 8", cnt);
+	}
+
+	/**
+	 * Reads the number and types of all fields from the 10 bytes appended if
+	 * {@link #FLAG_VERYLONG} is set.
+	 * 
+	 * @param ba
+	 *            the 10 bytes
+	 * @param types
+	 *            receives the types of fields #8 to #31
+	 * @return number of fields
+	 */
+	private static int parseVeryLong(final byte[] ba, final ValueType[] types) {
+		final int cnt = (ba[0] >> 3 & 0x1F) + 1; // first 5 bits (MSB)
+		// 24 * 3 bits following
+		if (Log.canLogDetail())
+			Log.detail("VeryLong-Bytes are '%s'", DataAsciiConverter
+					.toHexString(ba, 10));
+		int bp = 4;
+		for (int i = 8; i < cnt; ++i) {
+			final int b0 = getBit(ba, ++bp) ? 4 : 0;
+			final int b1 = getBit(ba, ++bp) ? 2 : 0;
+			final int b2 = getBit(ba, ++bp) ? 1 : 0;
+			types[i] = TYPES[b0 | b1 | b2];
+		}
+		return cnt;
+	}
+
+	private static void addFieldSyntax(final List<Syntax> syntaxList,
+			final ValueType type, final int pos) {
+		if (syntaxList != null) switch (type) {
+		case Float32:
+		case Float64:
+			syntaxList.add(new Syntax(Type.FloatField, pos));
+			break;
+		case Int8:
+		case Int32:
+		case Int64:
+			syntaxList.add(new Syntax(Type.IntField, pos));
+			break;
+		case NullTermString:
+		case UTFString:
+			syntaxList.add(new Syntax(Type.StringField, pos));
+			break;
+		case Data:
+			syntaxList.add(new Syntax(Type.DataField, pos));
+			break;
+		default:
+			syntaxList.add(new Syntax(Type.Error, pos));
+		}
 	}
 
 	private static boolean getBit(final byte[] ba, final int idx) {
 		return (ba[idx / 8] & 1 << 7 - idx % 8) != 0;
 	}
 
-	public void writeToBinary(final DataOutput out,
-			final List<Syntax> syntaxList) throws IOException {
-		Log.detail("Writing Data to binary output stream");
-
+	/**
+	 * Compacts all {@link Value}s and checks their number.
+	 * 
+	 * @return number of {@link Value}s
+	 * @throws IOException
+	 *             if the number of {@link Value}s can not be represented
+	 */
+	private int prepareWrite() throws IOException {
 		for (final Value value : getValues())
 			value.compact();
 
 		final int cnt = getValues().size();
-		final int cnt1 = Math.min(8, cnt);
 		if (cnt == 0)
 			throw new IOException(
 					"Cannot write binary data without any values assigned to it");
 		if (cnt > 32)
 			throw new IOException(
 					"Cannot handle more than 32 values for binary data");
+		return cnt;
+	}
 
-		// write header
+	private int createHeader(final int cnt) {
+		final int cnt1 = Math.min(8, cnt);
 		int flags = 0;
 		if (getPriority() != Data.PRIO_DEFAULT) flags |= FLAG_PRIORITY;
 		if (getTime() != Data.TIME_NOTIME) flags |= FLAG_TIME;
@@ -312,7 +439,43 @@ public final class DataBinaryConverter extends AbstractDataConverter {
 		int hdr = (flags & 0x1F) << 27 | (cnt1 - 1 & 0x07) << 24;
 		for (int i = 0; i < cnt1; ++i)
 			hdr |= (getValues().get(i).getType().getID() & 0x07) << (7 - i) * 3;
-		out.writeInt(hdr);
+		return hdr;
+	}
+
+	/**
+	 * Creates the 10 bytes which are appended if {@link #FLAG_VERYLONG} is
+	 * set: 5 bits for count, then 24 * 3 bits for type (last 3 bits ignored).
+	 * 
+	 * @param cnt
+	 *            number of {@link Value}s
+	 * @return 10 bytes
+	 */
+	private byte[] createVeryLong(final int cnt) {
+		final BitArray bits = new BitArray(80);
+		bits.set(0, (cnt - 1 & 0x10) != 0);
+		bits.set(1, (cnt - 1 & 0x08) != 0);
+		bits.set(2, (cnt - 1 & 0x04) != 0);
+		bits.set(3, (cnt - 1 & 0x02) != 0);
+		bits.set(4, (cnt - 1 & 0x01) != 0);
+		int bp = 4;
+		for (int i = 8; i < cnt; ++i) {
+			final int id = getValues().get(i).getType().getID() & 0x07;
+			bits.set(++bp, (id & 0x04) != 0);
+			bits.set(++bp, (id & 0x02) != 0);
+			bits.set(++bp, (id & 0x01) != 0);
+		}
+		return bits.toByteArray();
+	}
+
+	public void writeToBinary(final DataOutput out,
+			final List<Syntax> syntaxList) throws IOException {
+		if (Log.canLogDetail())
+			Log.detail("Writing Data to binary output stream");
+
+		final int cnt = prepareWrite();
+
+		// write header
+		out.writeInt(createHeader(cnt));
 		int pos = 0;
 		if (syntaxList != null) {
 			syntaxList.add(new Syntax(Type.Flags, pos));
@@ -335,22 +498,7 @@ public final class DataBinaryConverter extends AbstractDataConverter {
 			pos += 4;
 		}
 		if (cnt > 8) {
-			// 10 bytes: 5 bits for count, then 24 * 3 bits for type
-			// (last 3 bits ignored)
-			final BitArray bits = new BitArray(80);
-			bits.set(0, (cnt - 1 & 0x10) != 0);
-			bits.set(1, (cnt - 1 & 0x08) != 0);
-			bits.set(2, (cnt - 1 & 0x04) != 0);
-			bits.set(3, (cnt - 1 & 0x02) != 0);
-			bits.set(4, (cnt - 1 & 0x01) != 0);
-			int bp = 4;
-			for (int i = 8; i < cnt; ++i) {
-				final int id = getValues().get(i).getType().getID() & 0x07;
-				bits.set(++bp, (id & 0x04) != 0);
-				bits.set(++bp, (id & 0x02) != 0);
-				bits.set(++bp, (id & 0x01) != 0);
-			}
-			out.write(bits.toByteArray());
+			out.write(createVeryLong(cnt));
 			if (syntaxList != null)
 				syntaxList.add(new Syntax(Type.FlagVeryLong, pos));
 			pos += 10;
@@ -358,28 +506,75 @@ public final class DataBinaryConverter extends AbstractDataConverter {
 
 		// write the field content
 		for (final Value value : getValues()) {
-			if (syntaxList != null) switch (value.getType()) {
-			case Float32:
-			case Float64:
-				syntaxList.add(new Syntax(Type.FloatField, pos));
-				break;
-			case Int8:
-			case Int32:
-			case Int64:
-				syntaxList.add(new Syntax(Type.IntField, pos));
-				break;
-			case NullTermString:
-			case UTFString:
-				syntaxList.add(new Syntax(Type.StringField, pos));
-				break;
-			case Data:
-				syntaxList.add(new Syntax(Type.DataField, pos));
-				break;
-			default:
-				syntaxList.add(new Syntax(Type.Error, pos));
-			}
+			addFieldSyntax(syntaxList, value.getType(), pos);
 			pos += value.writeToBinary(out);
 		}
 	}
 
+	/**
+	 * Writes the {@link Data} in binary form directly into a
+	 * {@link ByteBuffer}, starting at its current position.<br>
+	 * If the buffer has not enough room left, its position is left unchanged
+	 * and a {@link BufferOverflowException} is thrown.
+	 * 
+	 * @param out
+	 *            the buffer to write to - its byte order will be ignored
+	 * @param syntaxList
+	 *            an (empty) list which receives all elements created during
+	 *            writing - may be <b>null</b>
+	 * @throws IOException
+	 *             if the {@link Data} can not be put into binary
+	 *             representation
+	 * @throws BufferOverflowException
+	 *             if the buffer is too small
+	 */
+	public void writeToBinary(final ByteBuffer out,
+			final List<Syntax> syntaxList) throws IOException,
+			BufferOverflowException {
+		if (Log.canLogDetail())
+			Log.detail("Writing Data to binary buffer");
+
+		final int cnt = prepareWrite();
+		final int start = out.position();
+		final ByteOrder order = out.order();
+		out.order(ByteOrder.BIG_ENDIAN);
+		try {
+			out.putInt(createHeader(cnt));
+			int pos = 0;
+			if (syntaxList != null) {
+				syntaxList.add(new Syntax(Type.Flags, pos));
+				syntaxList.add(new Syntax(Type.TypeIdent, pos + 1));
+			}
+			pos += 4;
+			if (getPriority() != Data.PRIO_DEFAULT) {
+				out.put(getPriority());
+				if (syntaxList != null)
+					syntaxList.add(new Syntax(Type.FlagPrio, pos));
+				++pos;
+			}
+			if (getTime() != Data.TIME_NOTIME) {
+				assert getTime() >= 0 && getTime() <= 0xFFFFFFFFL : getTime();
+				out.putInt((int) getTime());
+				if (syntaxList != null)
+					syntaxList.add(new Syntax(Type.FlagTime, pos));
+				pos += 4;
+			}
+			if (cnt > 8) {
+				out.put(createVeryLong(cnt));
+				if (syntaxList != null)
+					syntaxList.add(new Syntax(Type.FlagVeryLong, pos));
+				pos += 10;
+			}
+			for (final Value value : getValues()) {
+				addFieldSyntax(syntaxList, value.getType(), pos);
+				pos += value.writeToBuffer(out);
+			}
+		} catch (final BufferOverflowException e) {
+			out.position(start);
+			throw e;
+		} finally {
+			out.order(order);
+		}
+	}
+
 }
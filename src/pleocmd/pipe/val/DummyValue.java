@@ -21,6 +21,7 @@ package pleocmd.pipe.val;
 
 import java.io.DataInput;
 import java.io.DataOutput;
+import java.nio.ByteBuffer;
 
 import pleocmd.pipe.data.Data;
 
@@ -48,13 +49,23 @@ public final class DummyValue extends Value {
 		throw new UnsupportedOperationException("This is a dummy value");
 	}
 
+	@Override
+	int readFromBuffer(final ByteBuffer in) {
+		throw new UnsupportedOperationException("This is a dummy value");
+	}
+
+	@Override
+	int writeToBuffer(final ByteBuffer out) {
+		throw new UnsupportedOperationException("This is a dummy value");
+	}
+
 	@Override
 	void readFromAscii(final byte[] in, final int len) {
 		throw new UnsupportedOperationException("This is a dummy value");
 	}
 
 	@Override
-	int writeToAscii(final DataOutput out) {
+	int writeToAscii(final AsciiBuffer out) {
 		throw new UnsupportedOperationException("This is a dummy value");
 	}
 
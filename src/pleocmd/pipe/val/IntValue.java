@@ -22,6 +22,7 @@ package pleocmd.pipe.val;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 public final class IntValue extends Value {
 
@@ -72,19 +73,47 @@ public final class IntValue extends Value {
 	}
 
 	@Override
-	void readFromAscii(final byte[] in, final int len) throws IOException {
-		// work around for java bug: Long.valueOf can't handle "\+[0-9]+"
-		if (in.length > 0 && in[0] == '+')
-			val = Long.valueOf(new String(in, 1, len - 1, "US-ASCII"));
-		else
-			val = Long.valueOf(new String(in, 0, len, "US-ASCII"));
+	int readFromBuffer(final ByteBuffer in) {
+		switch (getType()) {
+		case Int8:
+			val = in.get();
+			return 1;
+		case Int32:
+			val = in.getInt();
+			return 4;
+		case Int64:
+			val = in.getLong();
+			return 8;
+		default:
+			throw new RuntimeException("Invalid type for this class");
+		}
+	}
+
+	@Override
+	int writeToBuffer(final ByteBuffer out) {
+		switch (getType()) {
+		case Int8:
+			out.put((byte) val);
+			return 1;
+		case Int32:
+			out.putInt((int) val);
+			return 4;
+		case Int64:
+			out.putLong(val);
+			return 8;
+		default:
+			throw new RuntimeException("Invalid type for this class");
+		}
+	}
+
+	@Override
+	void readFromAscii(final byte[] in, final int len) {
+		val = AsciiNumbers.parseLong(in, 0, len);
 	}
 
 	@Override
-	int writeToAscii(final DataOutput out) throws IOException {
-		final byte[] ba = String.valueOf(val).getBytes("US-ASCII");
-		out.write(ba);
-		return ba.length;
+	int writeToAscii(final AsciiBuffer out) {
+		return out.append(val);
 	}
 
 	@Override
@@ -24,6 +24,10 @@ import java.io.DataOutput;
 import java.io.IOException;
 import java.io.UTFDataFormatException;
 import java.io.UnsupportedEncodingException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 
 import pleocmd.exc.InternalException;
 
@@ -68,6 +72,8 @@ public final class StringValue extends Value {
 			0, 0, 0, 0, 0, 0, 0, 0, // F8 - FF
 	};
 
+	private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
 	private String val;
 
 	protected StringValue(final ValueType type) {
@@ -121,19 +127,80 @@ public final class StringValue extends Value {
 	}
 
 	@Override
-	void readFromAscii(final byte[] in, final int len) {
-		try {
-			val = new String(in, 0, len, "ISO-8859-1");
-		} catch (final UnsupportedEncodingException e) {
-			throw new InternalException(e);
+	int readFromBuffer(final ByteBuffer in) throws IOException {
+		switch (getType()) {
+		case UTFString: {
+			final int len = in.getShort() & 0xFFFF;
+			if (in.remaining() < len) throw new BufferUnderflowException();
+			if (in.hasArray())
+				val = decodeUTF(in.array(), in.arrayOffset() + in.position(),
+						len);
+			else {
+				final byte[] ba = new byte[len];
+				in.duplicate().get(ba);
+				val = decodeUTF(ba, 0, len);
+			}
+			in.position(in.position() + len);
+			return len + 2;
+		}
+		case NullTermString: {
+			// find the terminating zero without copying anything
+			final int start = in.position();
+			int end = start;
+			final int limit = in.limit();
+			while (end < limit && in.get(end) != 0)
+				++end;
+			if (end == limit) throw new BufferUnderflowException();
+			final int len = end - start;
+			if (in.hasArray())
+				val = new String(in.array(), in.arrayOffset() + start, len,
+						"ISO-8859-1");
+			else {
+				final byte[] ba = new byte[len];
+				in.get(ba);
+				val = new String(ba, 0, len, "ISO-8859-1");
+			}
+			in.position(end + 1);
+			return len + 1;
+		}
+		default:
+			throw new RuntimeException("Invalid type for this class");
 		}
 	}
 
 	@Override
-	int writeToAscii(final DataOutput out) throws IOException {
-		final byte[] ba = val.getBytes("ISO-8859-1");
-		out.write(ba);
-		return ba.length;
+	int writeToBuffer(final ByteBuffer out) throws IOException {
+		switch (getType()) {
+		case UTFString: {
+			final byte[] ba = encodeUTF(val);
+			out.put(ba);
+			return ba.length;
+		}
+		case NullTermString: {
+			final int len = val.length();
+			if (out.remaining() < len + 1)
+				throw new BufferOverflowException();
+			for (int i = 0; i < len; ++i) {
+				final char c = val.charAt(i);
+				// same replacement as String.getBytes("ISO-8859-1")
+				out.put(c > 0xFF ? (byte) '?' : (byte) c);
+			}
+			out.put((byte) 0);
+			return len + 1;
+		}
+		default:
+			throw new RuntimeException("Invalid type for this class");
+		}
+	}
+
+	@Override
+	void readFromAscii(final byte[] in, final int len) {
+		val = new String(in, 0, len, ISO_8859_1);
+	}
+
+	@Override
+	int writeToAscii(final AsciiBuffer out) {
+		return out.append(val);
 	}
 
 	@Override
@@ -198,27 +265,31 @@ public final class StringValue extends Value {
 		return val.hashCode();
 	}
 
-	// copied from DataInputStream but removed reading utflen
 	private static String readUTF(final DataInput in, final int utflen)
 			throws IOException {
 		final byte[] bytearr = new byte[utflen];
+		in.readFully(bytearr, 0, utflen);
+		return decodeUTF(bytearr, 0, utflen);
+	}
+
+	// copied from DataInputStream but removed reading utflen
+	private static String decodeUTF(final byte[] bytearr, final int off,
+			final int utflen) throws UTFDataFormatException {
 		final char[] chararr = new char[utflen];
 
 		int c, char2, char3;
 		int count = 0;
 		int charArrCount = 0;
 
-		in.readFully(bytearr, 0, utflen);
-
 		while (count < utflen) {
-			c = bytearr[count] & 0xff;
+			c = bytearr[off + count] & 0xff;
 			if (c > 127) break;
 			count++;
 			chararr[charArrCount++] = (char) c;
 		}
 
 		while (count < utflen) {
-			c = bytearr[count] & 0xff;
+			c = bytearr[off + count] & 0xff;
 			switch (c >> 4) {
 			case 0:
 			case 1:
@@ -239,7 +310,7 @@ public final class StringValue extends Value {
 				if (count > utflen)
 					throw new UTFDataFormatException(
 							"malformed input: partial character at end");
-				char2 = bytearr[count - 1];
+				char2 = bytearr[off + count - 1];
 				if ((char2 & 0xC0) != 0x80)
 					throw new UTFDataFormatException(
 							"malformed input around byte " + count);
@@ -251,8 +322,8 @@ public final class StringValue extends Value {
 				if (count > utflen)
 					throw new UTFDataFormatException(
 							"malformed input: partial character at end");
-				char2 = bytearr[count - 2];
-				char3 = bytearr[count - 1];
+				char2 = bytearr[off + count - 2];
+				char3 = bytearr[off + count - 1];
 				if ((char2 & 0xC0) != 0x80 || (char3 & 0xC0) != 0x80)
 					throw new UTFDataFormatException(
 							"malformed input around byte " + (count - 1));
@@ -269,9 +340,16 @@ public final class StringValue extends Value {
 		return new String(chararr, 0, charArrCount);
 	}
 
-	// copied from DataOutputStream (is not public there)
 	private static int writeUTF(final String str, final DataOutput out)
 			throws IOException {
+		final byte[] bytearr = encodeUTF(str);
+		out.write(bytearr);
+		return bytearr.length;
+	}
+
+	// copied from DataOutputStream (is not public there)
+	private static byte[] encodeUTF(final String str)
+			throws UTFDataFormatException {
 		final int strlen = str.length();
 		int utflen = 0;
 		int c, count = 0;
@@ -316,8 +394,7 @@ public final class StringValue extends Value {
 				bytearr[count++] = (byte) (0x80 | c >> 0 & 0x3F);
 			}
 		}
-		out.write(bytearr, 0, utflen + 2);
-		return utflen + 2;
+		return bytearr;
 	}
 
 }
@@ -22,6 +22,9 @@ package pleocmd.pipe.val;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import pleocmd.exc.InternalException;
 import pleocmd.pipe.data.Data;
@@ -35,6 +38,13 @@ import pleocmd.pipe.data.Data;
  */
 public abstract class Value {
 
+	/**
+	 * Caches the TYPE_CHAR of all subclasses, so it has to be looked up via
+	 * reflection only once per class.
+	 */
+	private static final Map<Class<? extends Value>, Character> TYPE_CHARS =
+			new ConcurrentHashMap<Class<? extends Value>, Character>();
+
 	private ValueType type;
 
 	/**
@@ -151,9 +161,13 @@ public abstract class Value {
 	}
 
 	static int getAsciiTypeChar(final Value value) {
+		final Class<? extends Value> clazz = value.getClass();
+		Character c = TYPE_CHARS.get(clazz);
+		if (c != null) return c;
 		try {
-			return (Character) value.getClass().getDeclaredField("TYPE_CHAR")
-					.get(null);
+			c = (Character) clazz.getDeclaredField("TYPE_CHAR").get(null);
+			TYPE_CHARS.put(clazz, c);
+			return c;
 		} catch (final Throwable t) {
 			// CS_IGNORE_PREV Catch everything that may go wrong here
 			throw new InternalException("Cannot access field TYPE_CHAR "
@@ -174,6 +188,20 @@ public abstract class Value {
 
 	abstract int writeToBinary(final DataOutput out) throws IOException;
 
+	/**
+	 * Should only be called from {@link DataBinaryConverter}.
+	 * 
+	 * @param in
+	 *            big-endian buffer from which to read the {@link Value} in
+	 *            binary form
+	 * @return number of bytes read from the buffer
+	 * @throws IOException
+	 *             if reading failed
+	 */
+	abstract int readFromBuffer(final ByteBuffer in) throws IOException;
+
+	abstract int writeToBuffer(final ByteBuffer out) throws IOException;
+
 	/**
 	 * Should only be called from {@link DataAsciiConverter}.
 	 * 
@@ -186,7 +214,7 @@ public abstract class Value {
 	 */
 	abstract void readFromAscii(final byte[] in, int len) throws IOException;
 
-	abstract int writeToAscii(DataOutput out) throws IOException;
+	abstract int writeToAscii(AsciiBuffer out);
 
 	@Override
 	public abstract String toString();
@@ -0,0 +1,207 @@
+// This file is part of PleoCommand:
+// Interactively control Pleo with psychobiological parameters
+//
+// Copyright (C) 2010 Oliver Hoffmann - Hoffmann_Oliver@gmx.de
+//
+// This program is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License
+// as published by the Free Software Foundation; either version 2
+// of the License, or (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Boston, USA.
+
+package test.pleocmd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import pleocmd.Log;
+import pleocmd.Log.Type;
+import pleocmd.cfg.Configuration;
+
+public final class LogAppenderTest extends Testcases {
+
+	private static final int QUEUE_SIZE = 16;
+
+	private static final String MARKER = "LogAppenderTest ";
+
+	@Test(timeout = 60000)
+	public void testOverflowPolicies() throws Exception {
+		final PrintStream oldErr = System.err; // CS_IGNORE
+		try {
+			testBlock();
+			testDropNewest();
+			testDropDetailFirst();
+		} finally {
+			System.setErr(oldErr);
+			Log.setMinLogType(Type.Warn);
+			configure("true", 4096, "DropDetailFirst");
+		}
+	}
+
+	private static void testBlock() throws Exception {
+		final GateStream gs = startGated("Block");
+		fill(QUEUE_SIZE, 0);
+		assertEquals(QUEUE_SIZE, Log.getQueueDepth());
+		final Thread blocked = logInThread("blocked");
+		blocked.join(200);
+		assertTrue("Logging thread has not been blocked", blocked.isAlive());
+		gs.gate.countDown();
+		blocked.join();
+		Log.flush();
+		assertEquals(0, Log.getDroppedCount());
+		assertEquals(QUEUE_SIZE + 2, gs.countLines());
+		assertTrue(gs.toString().contains(MARKER + "blocked"));
+		Log.consoleOut("Tested blocking overflow");
+	}
+
+	private static void testDropNewest() throws Exception {
+		final GateStream gs = startGated("DropNewest");
+		fill(QUEUE_SIZE, 0);
+		for (int i = 0; i < 5; ++i)
+			Log.warn(MARKER + "dropped %d", i);
+		assertEquals(5, Log.getDroppedCount());
+		assertEquals(QUEUE_SIZE, Log.getQueueDepth());
+		gs.gate.countDown();
+		Log.flush();
+		assertEquals(QUEUE_SIZE + 1, gs.countLines());
+		assertFalse(gs.toString().contains(MARKER + "dropped"));
+		Log.consoleOut("Tested dropping newest on overflow");
+	}
+
+	private static void testDropDetailFirst() throws Exception {
+		final GateStream gs = startGated("DropDetailFirst");
+		fill(QUEUE_SIZE - 4, 4);
+		// replaces the two oldest detailed messages
+		Log.warn(MARKER + "kept 1");
+		Log.warn(MARKER + "kept 2");
+		assertEquals(2, Log.getDroppedCount());
+		// a new detailed message is dropped itself
+		Log.detail(MARKER + "new detail");
+		assertEquals(3, Log.getDroppedCount());
+		// replaces the remaining detailed messages
+		Log.warn(MARKER + "kept 3");
+		Log.warn(MARKER + "kept 4");
+		assertEquals(4 + 1, Log.getDroppedCount());
+		assertEquals(QUEUE_SIZE, Log.getQueueDepth());
+		// no more detailed messages, so we have to wait
+		final Thread blocked = logInThread("blocked");
+		blocked.join(200);
+		assertTrue("Logging thread has not been blocked", blocked.isAlive());
+		gs.gate.countDown();
+		blocked.join();
+		Log.flush();
+		assertEquals(5, Log.getDroppedCount());
+		assertEquals(QUEUE_SIZE + 2, gs.countLines());
+		assertFalse(gs.toString().contains("detail"));
+		for (int i = 1; i <= 4; ++i)
+			assertTrue(gs.toString().contains(MARKER + "kept " + i));
+		Log.consoleOut("Tested dropping detailed messages on overflow");
+	}
+
+	/**
+	 * Creates a new asynchronous appender with the given overflow policy and
+	 * blocks its thread while it publishes the first message, so the queue
+	 * is empty and cannot be drained afterwards.
+	 */
+	private static GateStream startGated(final String overflow)
+			throws Exception {
+		Log.setMinLogType(Type.Warn);
+		configure("true", QUEUE_SIZE, overflow);
+		Log.flush();
+		final GateStream gs = new GateStream();
+		System.setErr(new PrintStream(gs, true));
+		Log.setMinLogType(Type.Detail);
+		Log.warn(MARKER + "first");
+		assertTrue("Appender did not start publishing", gs.entered.await(10,
+				TimeUnit.SECONDS));
+		assertEquals(0, Log.getQueueDepth());
+		return gs;
+	}
+
+	private static void fill(final int warnings, final int details) {
+		for (int i = 0; i < details; ++i)
+			Log.detail(MARKER + "detail %d", i);
+		for (int i = 0; i < warnings; ++i)
+			Log.warn(MARKER + "fill %d", i);
+	}
+
+	private static Thread logInThread(final String msg) {
+		final Thread thr = new Thread("LogAppenderTest-Logger") {
+			@Override
+			public void run() {
+				Log.warn(MARKER + msg);
+			}
+		};
+		thr.start();
+		return thr;
+	}
+
+	private static void configure(final String async, final int size,
+			final String overflow) throws Exception {
+		Configuration.getMain().readFromReader(
+				new BufferedReader(new StringReader(String.format(
+						"[LogConfig]\nAsynchronous Output: %s\n"
+								+ "Queue Size: %d\nQueue Overflow: %s\n",
+						async, size, overflow))), null);
+	}
+
+	/**
+	 * Blocks every write until {@link #gate} has been opened and collects all
+	 * written text.
+	 */
+	private static final class GateStream extends OutputStream {
+
+		private final CountDownLatch entered = new CountDownLatch(1);
+
+		private final CountDownLatch gate = new CountDownLatch(1);
+
+		private final StringBuffer text = new StringBuffer();
+
+		GateStream() {
+			// just make it accessible
+		}
+
+		@Override
+		public void write(final int b) {
+			entered.countDown();
+			try {
+				gate.await();
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			text.append((char) b);
+		}
+
+		int countLines() {
+			int cnt = 0;
+			for (final String line : text.toString().split("\n"))
+				if (line.contains(MARKER)) ++cnt;
+			return cnt;
+		}
+
+		@Override
+		public String toString() {
+			return text.toString();
+		}
+
+	}
+
+}
@@ -0,0 +1,132 @@
+// This file is part of PleoCommand:
+// Interactively control Pleo with psychobiological parameters
+//
+// Copyright (C) 2010 Oliver Hoffmann - Hoffmann_Oliver@gmx.de
+//
+// This program is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License
+// as published by the Free Software Foundation; either version 2
+// of the License, or (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Boston, USA.
+package test.pleocmd.pipe;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import pleocmd.Log;
+import pleocmd.cfg.Configuration;
+import pleocmd.pipe.Pipe;
+import pleocmd.pipe.PipeFeedback;
+import pleocmd.pipe.cvt.DataBlockSplitter;
+import pleocmd.pipe.cvt.ThresholdConverter;
+import pleocmd.pipe.in.StaticInput;
+import pleocmd.pipe.out.FileOutput;
+import pleocmd.pipe.out.PrintType;
+import test.pleocmd.Testcases;
+
+public final class ConverterStagesTest extends Testcases {
+
+	private static final int BLOCKS = 500;
+
+	@Test
+	public void testOrderingKept() throws Exception {
+		final StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < BLOCKS; ++i)
+			sb.append(String.format("list of float|%d.0|%d.5|%d.25\n", i,
+					i, i));
+		final String input = sb.toString();
+
+		Log.consoleOut("Converting %d blocks in the Input-Thread", BLOCKS);
+		final List<String> expected = runPipe(input, 0, 256);
+		assertEquals("Wrong number of output lines: ", BLOCKS * 6 + 1,
+				expected.size());
+
+		Log.consoleOut("Converting %d blocks on 2 workers", BLOCKS);
+		assertEquals("Output differs: ", expected, runPipe(input, 2, 256));
+
+		Log.consoleOut("Converting %d blocks on 3 workers with tiny queue",
+				BLOCKS);
+		assertEquals("Output differs: ", expected, runPipe(input, 3, 1));
+	}
+
+	private List<String> runPipe(final String input, final int threads,
+			final int queueSize) throws Exception {
+		final Configuration config = new Configuration();
+		final Pipe pipe = new Pipe(config);
+		config.readFromReader(new BufferedReader(new StringReader(String
+				.format("[Pipe]\nConverter Threads: %d\n"
+						+ "Converter Queue Size: %d\n", threads, queueSize))),
+				pipe);
+		final File tmpFile1 = File.createTempFile("ConverterStagesTest", null);
+		final File tmpFile2 = File.createTempFile("ConverterStagesTest", null);
+		try {
+			// every Output gets Data from only one origin, as ordering is
+			// only guaranteed per origin
+			final StaticInput in = new StaticInput(input);
+			final DataBlockSplitter cvt = new DataBlockSplitter();
+			final ThresholdConverter thr = new ThresholdConverter();
+			final FileOutput out1 = new FileOutput(tmpFile1, PrintType.Ascii);
+			final FileOutput out2 = new FileOutput(tmpFile2, PrintType.Ascii);
+			pipe.addInput(in);
+			pipe.addConverter(cvt);
+			pipe.addConverter(thr);
+			pipe.addOutput(out1);
+			pipe.addOutput(out2);
+			in.connectToPipePart(cvt);
+			cvt.connectToPipePart(thr);
+			cvt.connectToPipePart(out1);
+			thr.connectToPipePart(out2);
+			pipe.configure();
+			pipe.pipeAllData();
+
+			final PipeFeedback fb = pipe.getFeedback();
+			Log.consoleOut(fb.toString());
+			assertEquals("Data Input Count is wrong: ", BLOCKS, fb
+					.getDataInputCount());
+			assertEquals("Data Conversion Count is wrong: ", BLOCKS * 4, fb
+					.getDataConvertedCount());
+			assertEquals("Error Count is wrong: ", 0, fb.getTemporaryErrors()
+					.size()
+					+ fb.getPermanentErrors().size());
+			final List<String> res = readLines(tmpFile1);
+			res.add("--");
+			res.addAll(readLines(tmpFile2));
+			return res;
+		} finally {
+			tmpFile1.delete();
+			tmpFile2.delete();
+		}
+	}
+
+	private static List<String> readLines(final File file) throws IOException {
+		final List<String> res = new ArrayList<String>();
+		final BufferedReader in = new BufferedReader(new FileReader(file));
+		try {
+			String line;
+			while ((line = in.readLine()) != null)
+				// remove time which depends on speed of Input-Thread
+				res.add(line.replaceFirst("^\\[ T\\d+ms \\] ", ""));
+		} finally {
+			in.close();
+		}
+		return res;
+	}
+
+}
@@ -0,0 +1,127 @@
+// This file is part of PleoCommand:
+// Interactively control Pleo with psychobiological parameters
+//
+// Copyright (C) 2010 Oliver Hoffmann - Hoffmann_Oliver@gmx.de
+//
+// This program is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License
+// as published by the Free Software Foundation; either version 2
+// of the License, or (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Boston, USA.
+
+package test.pleocmd.pipe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import pleocmd.Log;
+import pleocmd.cfg.Configuration;
+import pleocmd.pipe.InputMergePolicy;
+import pleocmd.pipe.Pipe;
+import pleocmd.pipe.PipeFeedback;
+import pleocmd.pipe.in.StaticInput;
+import pleocmd.pipe.out.FileOutput;
+import pleocmd.pipe.out.PrintType;
+import test.pleocmd.Testcases;
+
+public final class InputMergerTest extends Testcases {
+
+	private static final int BLOCKS = 200;
+
+	/**
+	 * Matches the value of a block, which is the same as its time in ms.
+	 */
+	private static final Pattern VALUE_PATTERN = Pattern
+			.compile("\\| (\\d+)\\.0$");
+
+	@Test
+	public void testMergePolicies() throws Exception {
+		for (final InputMergePolicy policy : InputMergePolicy.values()) {
+			Log.consoleOut("Merging %d blocks from 2 inputs by %s", BLOCKS,
+					policy);
+			final List<Long> times = runPipe(policy);
+			assertEquals("Wrong number of output lines: ", BLOCKS, times
+					.size());
+			if (policy == InputMergePolicy.Timestamp)
+				for (int i = 1; i < times.size(); ++i)
+					assertTrue("Output not ordered by time: " + times, times
+							.get(i - 1) <= times.get(i));
+		}
+	}
+
+	private List<Long> runPipe(final InputMergePolicy policy)
+			throws Exception {
+		final Configuration config = new Configuration();
+		final Pipe pipe = new Pipe(config);
+		config.readFromReader(new BufferedReader(new StringReader(String
+				.format("[Pipe]\nInputMergePolicy: %s\n"
+						+ "Reorder Window (ms): 5000\n", policy))), pipe);
+		final File tmpFile = File.createTempFile("InputMergerTest", null);
+		try {
+			// one input has all even, the other all odd times
+			final StringBuilder sb1 = new StringBuilder();
+			final StringBuilder sb2 = new StringBuilder();
+			for (int i = 0; i < BLOCKS; ++i)
+				(i % 2 == 0 ? sb1 : sb2).append(String.format(
+						"[T%dms]list of float|%d.0\n", i, i));
+			final StaticInput in1 = new StaticInput(sb1.toString());
+			final StaticInput in2 = new StaticInput(sb2.toString());
+			final FileOutput out = new FileOutput(tmpFile, PrintType.Ascii);
+			pipe.addInput(in1);
+			pipe.addInput(in2);
+			pipe.addOutput(out);
+			in1.connectToPipePart(out);
+			in2.connectToPipePart(out);
+			pipe.configure();
+			pipe.pipeAllData();
+
+			final PipeFeedback fb = pipe.getFeedback();
+			Log.consoleOut(fb.toString());
+			assertEquals("Data Input Count is wrong: ", BLOCKS, fb
+					.getDataInputCount());
+			assertEquals("Error Count is wrong: ", 0, fb.getTemporaryErrors()
+					.size()
+					+ fb.getPermanentErrors().size());
+			return readTimes(tmpFile);
+		} finally {
+			tmpFile.delete();
+		}
+	}
+
+	private static List<Long> readTimes(final File file) throws IOException {
+		final List<Long> res = new ArrayList<Long>();
+		final BufferedReader in = new BufferedReader(new FileReader(file));
+		try {
+			String line;
+			while ((line = in.readLine()) != null) {
+				final Matcher m = VALUE_PATTERN.matcher(line);
+				assertTrue("Line has no value: " + line, m.find());
+				res.add(Long.valueOf(m.group(1)));
+			}
+		} finally {
+			in.close();
+		}
+		return res;
+	}
+
+}
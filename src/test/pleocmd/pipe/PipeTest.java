@@ -101,6 +101,16 @@ public class PipeTest extends Testcases {
 		Log.consoleOut("Test timed execution (short delay)");
 		fb = testSimplePipe("SC|SLEEP|100\n[T50ms]SC|ECHO|Short Delay\n", 100,
 				-1, 2, 0, 2, 0, 0, 0, 0, 0);
+		assertEquals("Scheduling Jitter Count is wrong: ", 0, fb
+				.getSchedulingJitterCount());
+
+		Log.consoleOut("Test timed execution (scheduling jitter)");
+		fb = testSimplePipe("[T100ms]SC|ECHO|Timed\n", 100, -1, 1, 0, 1, 0,
+				0, 0, 0, 0);
+		assertEquals("Scheduling Jitter Count is wrong: ", 1, fb
+				.getSchedulingJitterCount());
+		assertTrue("Scheduling Jitter too high", fb
+				.getMaxSchedulingJitter() < 20000000);
 
 		Log.consoleOut("Test timed execution (long delay)");
 		fb = testSimplePipe("SC|SLEEP|500\n[T0ms]SC|ECHO|Long Delay\n", 500,
@@ -198,6 +208,17 @@ public class PipeTest extends Testcases {
 		tmpFile.mkdir();
 		fb = testSimplePipe(p, -1, -1, 1, 0, 1, 0, 1, 0, 0, 0);
 		tmpFile.delete();
+
+		Log.consoleOut("Test timed execution (long delay, two outputs)");
+		p.reset();
+		p.addInput(in1 = new StaticInput("SC|SLEEP|500\n"
+				+ "[T0ms]SC|ECHO|Long Delay\n"));
+		p.addOutput(out1 = new InternalCommandOutput());
+		p.addOutput(out2 = new InternalCommandOutput());
+		in1.connectToPipePart(out1);
+		in1.connectToPipePart(out2);
+		// behind in both lanes, but counted only once
+		fb = testSimplePipe(p, 500, -1, 2, 0, -1, 0, 0, 0, 0, 1);
 	}
 
 	// CS_IGNORE_NEXT this many parameters are ok here - only a test case
@@ -259,6 +280,9 @@ public class PipeTest extends Testcases {
 		if (dataOut != -1)
 			assertEquals("Data Output Count is wrong: ", dataOut,
 					fb.getDataOutputCount());
+		if (fb.getDataOutputCount() > 0)
+			assertTrue("Start to first output not measured", fb
+					.getStartToFirstOutput() >= 0);
 		if (minTime != -1)
 			assertTrue("Took not long enough", fb.getElapsed() >= minTime);
 		if (maxTime != -1)
@@ -20,18 +20,30 @@
 package test.pleocmd.pipe.data;
 
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
 
 import org.junit.Test;
 
 import pleocmd.Log;
 import pleocmd.pipe.data.Data;
+import pleocmd.pipe.data.DataPool;
 import pleocmd.pipe.data.DataQueue;
+import pleocmd.pipe.data.DataQueue.DiscardListener;
+import pleocmd.pipe.data.DataQueue.PutResult;
+import pleocmd.pipe.data.LockFreeDataQueue;
 import pleocmd.pipe.data.SingleFloatData;
+import pleocmd.pipe.data.SynchronizedDataQueue;
 import pleocmd.pipe.val.Value;
 import test.pleocmd.Testcases;
 
@@ -39,14 +51,63 @@ public final class DataQueueTest extends Testcases {
 
 	private static final int BUF_SIZE = 1024;
 
+	private static final int PRODUCERS = 4;
+
+	private static final int BENCH_COUNT = 50000;
+
 	@Test(timeout = 60000)
 	public void testPutAndGet() throws IOException, InterruptedException {
+		testPutAndGet(new SynchronizedDataQueue());
+		testPutAndGet(new LockFreeDataQueue());
+	}
+
+	@Test(timeout = 60000)
+	public void testConcurrentPut() throws IOException, InterruptedException {
+		testConcurrentPut(new SynchronizedDataQueue(), BUF_SIZE);
+		testConcurrentPut(new LockFreeDataQueue(), BUF_SIZE);
+	}
+
+	@Test(timeout = 60000)
+	public void testClearedAndPut() throws IOException, InterruptedException {
+		testClearedAndPut(new SynchronizedDataQueue());
+		testClearedAndPut(new LockFreeDataQueue());
+	}
+
+	@Test(timeout = 60000)
+	public void testClearReleases() throws IOException, InterruptedException {
+		try {
+			DataPool.configure(true, false);
+			testClearReleases(new SynchronizedDataQueue(true));
+			testClearReleases(new LockFreeDataQueue(true));
+		} finally {
+			DataPool.configure(false, false);
+		}
+	}
+
+	/**
+	 * Compares the throughput of the implementations of {@link DataQueue} for
+	 * one consumer and {@link #PRODUCERS} producers.
+	 */
+	@Test(timeout = 120000)
+	public void testThroughput() throws IOException, InterruptedException {
+		for (int i = 0; i < 3; ++i) {
+			final long tSync = testConcurrentPut(new SynchronizedDataQueue(),
+					BENCH_COUNT);
+			final long tLF = testConcurrentPut(new LockFreeDataQueue(),
+					BENCH_COUNT);
+			Log.consoleOut("Passed %d Data from %d threads: synchronized "
+					+ "%d ms, lock-free %d ms", BENCH_COUNT * PRODUCERS,
+					PRODUCERS, tSync / 1000000, tLF / 1000000);
+		}
+	}
+
+	private void testPutAndGet(final DataQueue queue) throws IOException,
+			InterruptedException {
 		// prepare
 		final Data[] buf0 = new Data[BUF_SIZE];
 		final Data[] buf1 = new Data[BUF_SIZE];
 		for (int i = 0; i < BUF_SIZE; ++i)
 			buf0[i] = new Data(new ArrayList<Value>(0), null);
-		final DataQueue queue = new DataQueue();
 
 		// execute twice
 		for (int i = 0; i < 2; ++i) {
@@ -91,6 +152,104 @@ public final class DataQueueTest extends Testcases {
 		Log.consoleOut("Done testing DataQueue");
 	}
 
+	private long testConcurrentPut(final DataQueue queue, final int count)
+			throws InterruptedException {
+		final Data data = createData(0);
+		final List<Thread> producers = new ArrayList<Thread>();
+		for (int i = 0; i < PRODUCERS; ++i)
+			producers.add(new Thread("DataQueueTest-Producer") {
+				@Override
+				public void run() {
+					try {
+						for (int j = 0; j < count; ++j)
+							queue.put(data);
+					} catch (final IOException e) {
+						Log.error(e);
+					}
+				}
+			});
+		final long start = System.nanoTime();
+		for (final Thread thr : producers)
+			thr.start();
+		for (int i = 0; i < count * PRODUCERS; ++i)
+			assertSame(data, queue.get());
+		final long elapsed = System.nanoTime() - start;
+		for (final Thread thr : producers)
+			thr.join();
+		queue.close();
+		assertNull(queue.get());
+		return elapsed;
+	}
+
+	private void testClearedAndPut(final DataQueue queue) throws IOException,
+			InterruptedException {
+		for (int i = 0; i < BUF_SIZE; ++i)
+			assertSame(PutResult.Put, queue.put(createData(0)));
+		final Data high = createData(2);
+		assertSame(PutResult.ClearedAndPut, queue.put(high));
+		assertEquals(BUF_SIZE, queue.getSizeBeforeClear());
+		assertSame(PutResult.Dropped, queue.put(createData(1)));
+		assertSame(PutResult.Put, queue.put(high));
+		assertEquals(2, queue.getAll().size());
+		assertSame(high, queue.get());
+		assertSame(high, queue.get());
+		queue.close();
+		assertNull(queue.get());
+		// queue has been empty, so everything will be accepted again
+		queue.resetCache();
+		assertSame(PutResult.Put, queue.put(createData(-1)));
+		Log.consoleOut("Tested clearing of DataQueue '%s'", queue);
+	}
+
+	private void testClearReleases(final DataQueue queue) throws IOException,
+			InterruptedException {
+		final Set<Data> discarded = Collections
+				.newSetFromMap(new IdentityHashMap<Data, Boolean>());
+		queue.setDiscardListener(new DiscardListener() {
+			@Override
+			public void discarded(final Data data) {
+				assertFalse("Data released before listener", data
+						.isReleased());
+				discarded.add(data);
+			}
+		});
+		final List<Data> cleared = new ArrayList<Data>();
+		for (int i = 0; i < 10; ++i)
+			cleared.add(createPooledData(0));
+		for (final Data data : cleared)
+			assertSame(PutResult.Put, queue.put(data));
+		final Data high = createPooledData(2);
+		assertSame(PutResult.ClearedAndPut, queue.put(high));
+		assertSame(high, queue.get());
+		for (final Data data : cleared)
+			assertTrue("Cleared Data has not been released", data
+					.isReleased());
+		assertFalse(high.isReleased());
+		high.release();
+		assertEquals(cleared.size(), discarded.size());
+		assertTrue(discarded.containsAll(cleared));
+		// released Data may be reused from the pool
+		discarded.clear();
+
+		final List<Data> reset = new ArrayList<Data>();
+		for (int i = 0; i < 3; ++i) {
+			reset.add(createPooledData(2));
+			queue.put(reset.get(i));
+		}
+		queue.resetCache();
+		for (final Data data : reset)
+			assertTrue("Data lost by reset has not been released", data
+					.isReleased());
+		assertEquals(reset.size(), discarded.size());
+		assertTrue(discarded.containsAll(reset));
+		Log.consoleOut("Tested releasing of cleared Data in '%s'", queue);
+	}
+
+	private Data createPooledData(final int prioDelta) {
+		return SingleFloatData.create(0.3, 5, null,
+				(byte) (Data.PRIO_DEFAULT + prioDelta), Data.TIME_NOTIME);
+	}
+
 	private Data createData(final int prioDelta) {
 		return new SingleFloatData(0.3, 5, null,
 				(byte) (Data.PRIO_DEFAULT + prioDelta), Data.TIME_NOTIME);
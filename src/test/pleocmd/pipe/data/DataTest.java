@@ -20,28 +20,53 @@
 package test.pleocmd.pipe.data;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 
 import org.junit.Test;
 
 import pleocmd.Log;
 import pleocmd.exc.FormatException;
 import pleocmd.pipe.data.Data;
+import pleocmd.pipe.data.DataAsciiReader;
+import pleocmd.pipe.data.DataFileReader;
+import pleocmd.pipe.data.DataFileWriter;
+import pleocmd.pipe.data.DataPool;
+import pleocmd.pipe.data.MultiFloatData;
+import pleocmd.pipe.data.SingleFloatData;
+import pleocmd.pipe.val.AsciiBuffer;
+import pleocmd.pipe.val.FloatValue;
+import pleocmd.pipe.val.IntValue;
 import pleocmd.pipe.val.Value;
 import pleocmd.pipe.val.ValueType;
 import test.pleocmd.Testcases;
 
 public final class DataTest extends Testcases {
 
+	private static final int ALLOC_COUNT = 20000;
+
 	@Test
 	public void testConversion() throws IOException, FormatException {
 
@@ -81,6 +106,15 @@ public final class DataTest extends Testcases {
 		values.clear();
 		assertEquals("not shallow copied:", 6, d3.size());
 
+		for (int i = 0; i < 10; ++i)
+			values.add(Value.createForType(ValueType.Int64).set(
+					String.valueOf(i * 100000000000L)));
+		values.add(Value.createForType(ValueType.UTFString).set("\u00E4 1"));
+		final Data d7 = new Data(values, null, Data.PRIO_LOWEST, 99);
+		testBinaryConversion(d7);
+		Log.consoleOut("Tested conversion of Data #7: '%s'", d7);
+		values.clear();
+
 		final Data d4 = Data.createFromAscii("[]");
 		Log.consoleOut("Tested string creation of Data #4: '%s'", d4);
 
@@ -125,6 +159,170 @@ public final class DataTest extends Testcases {
 		Log.consoleOut("Data testing done");
 	}
 
+	@Test
+	public void testFloatData() throws IOException, FormatException {
+		final Data sf = new SingleFloatData(2.5, 7, null);
+		final Data sfParsed = Data.createFromAscii(sf.asString());
+		assertEquals(3, sf.size());
+		assertEquals(sfParsed, sf);
+		assertEquals(sf, sfParsed);
+		assertEquals(sfParsed.hashCode(), sf.hashCode());
+		for (final Data d : new Data[] { sf, sfParsed }) {
+			assertTrue(SingleFloatData.isSingleFloatData(d));
+			assertFalse(MultiFloatData.isMultiFloatData(d));
+			assertEquals(2.5, SingleFloatData.getValue(d), 0);
+			assertEquals(7, SingleFloatData.getUser(d));
+		}
+		Log.consoleOut("Tested SingleFloatData '%s'", sf);
+
+		final double[] samples = new double[] { 1, -0.25, 1e-7 };
+		final Data mf = new MultiFloatData(samples, null);
+		samples[0] = 99;
+		final Data mfParsed = Data.createFromAscii(mf.asString());
+		assertEquals(4, mf.size());
+		assertEquals(mfParsed, mf);
+		for (final Data d : new Data[] { mf, mfParsed }) {
+			assertTrue(MultiFloatData.isMultiFloatData(d));
+			assertFalse(SingleFloatData.isSingleFloatData(d));
+			assertEquals(3, MultiFloatData.getValueCount(d));
+			assertEquals(1, MultiFloatData.getValue(d, 0), 0);
+			assertEquals(-0.25, MultiFloatData.getValue(d, 1), 0);
+			assertEquals(1e-7, MultiFloatData.getValue(d, 2), 0);
+		}
+		try {
+			mf.get(4);
+			fail("IndexOutOfBoundsException not thrown");
+		} catch (final IndexOutOfBoundsException e) {
+			assertTrue(e.toString(), e.getMessage().contains("not exist"));
+		}
+		Log.consoleOut("Tested MultiFloatData '%s'", mf);
+
+		// a modified Value must be seen by the accessors and all writers
+		final Data sfMod = new SingleFloatData(2.5, 7, null);
+		((FloatValue) sfMod.get(1)).set(-3.5);
+		((IntValue) sfMod.get(2)).set(11);
+		assertEquals(-3.5, SingleFloatData.getValue(sfMod), 0);
+		assertEquals(11, SingleFloatData.getUser(sfMod));
+		final Data mfMod = new MultiFloatData(samples, null);
+		((FloatValue) mfMod.get(2)).set(5.5);
+		assertEquals(5.5, MultiFloatData.getValue(mfMod, 1), 0);
+		final File file = File.createTempFile("PleoCommand", ".pbd");
+		file.deleteOnExit();
+		for (final DataFileWriter.Encoding enc : DataFileWriter.Encoding
+				.values()) {
+			final DataFileWriter writer = new DataFileWriter(
+					new FileOutputStream(file),
+					DataFileWriter.DEFAULT_BLOCK_SIZE, enc);
+			writer.write(sfMod);
+			writer.write(mfMod);
+			writer.close();
+			final DataFileReader reader = new DataFileReader(file);
+			assertEquals(sfMod, reader.read());
+			assertEquals(mfMod, reader.read());
+			reader.close();
+		}
+		file.delete();
+		assertEquals(sfMod, Data.createFromAscii(sfMod.asString()));
+		assertEquals(mfMod, Data.createFromAscii(mfMod.asString()));
+
+		// wrapping keeps the values instead of copying them
+		final Data mfWrapped = Data.wrap(mf, null, (byte) 5,
+				Data.TIME_NOTIME);
+		assertEquals(5, mfWrapped.getPriority());
+		assertEquals(Data.TIME_NOTIME, mfWrapped.getTime());
+		assertEquals(-0.25, MultiFloatData.getValue(mfWrapped, 1), 0);
+		assertSame(mf.get(2), mfWrapped.get(2));
+	}
+
+	@Test
+	public void testDataPool() throws IOException, FormatException {
+		final Data root = Data.createFromAscii("Multi|1|2");
+		try {
+			DataPool.configure(true, false);
+			final Data d1 = SingleFloatData.create(1.5, 3, root,
+					Data.PRIO_DEFAULT, Data.TIME_NOTIME);
+			assertTrue(d1.getParent() == root);
+			d1.retain();
+			d1.release();
+			assertFalse(d1.isReleased());
+			d1.release();
+			assertTrue(d1.isReleased());
+			assertEquals(1, DataPool.getFreeCount());
+			final Data d2 = SingleFloatData.create(-4, 0, root,
+					Data.PRIO_DEFAULT, Data.TIME_NOTIME);
+			assertTrue("Data has not been reused", d1 == d2);
+			assertFalse(d2.isReleased());
+			assertEquals(-4, SingleFloatData.getValue(d2), 0);
+			assertEquals(-4, d2.get(1).asDouble(), 0);
+			assertEquals(0, SingleFloatData.getUser(d2));
+			Log.consoleOut("Tested reusing '%s'", d2);
+			d2.release();
+
+			DataPool.configure(true, true);
+			final Data d3 = SingleFloatData.create(2, 0, root,
+					Data.PRIO_DEFAULT, Data.TIME_NOTIME);
+			d3.release();
+			try {
+				SingleFloatData.getValue(d3);
+				fail("IllegalStateException not thrown");
+			} catch (final IllegalStateException e) {
+				assertTrue(e.toString(), e.getMessage().contains("released"));
+			}
+			try {
+				d3.release();
+				fail("IllegalStateException not thrown");
+			} catch (final IllegalStateException e) {
+				assertTrue(e.toString(), e.getMessage().contains("released"));
+			}
+			assertTrue(SingleFloatData.create(2, 0, root, Data.PRIO_DEFAULT,
+					Data.TIME_NOTIME) != d3);
+			Log.consoleOut("Tested detection of use after release");
+		} finally {
+			DataPool.configure(false, false);
+		}
+	}
+
+	@Test
+	public void testLogAllocation() throws IOException, FormatException {
+		final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+			Log.consoleOut("Measuring allocated bytes is not supported");
+			return;
+		}
+		final com.sun.management.ThreadMXBean allocBean;
+		allocBean = (com.sun.management.ThreadMXBean) bean;
+		final long tid = Thread.currentThread().getId();
+		final byte[] line = "[T10ms]SC|ECHO|Allocation test\n"
+				.getBytes("ISO-8859-1");
+
+		// detailed messages are not logged, so parsing a Data must not
+		// capture the caller of any Log.detail() - run three times so the
+		// last round is measured with compiled code
+		long perData = 0;
+		for (int round = 0; round < 3; ++round) {
+			final long before = allocBean.getThreadAllocatedBytes(tid);
+			for (int i = 0; i < ALLOC_COUNT; ++i)
+				Data.createFromAscii(new DataInputStream(
+						new ByteArrayInputStream(line)));
+			perData = (allocBean.getThreadAllocatedBytes(tid) - before)
+					/ ALLOC_COUNT;
+		}
+
+		// that's what every single Log.detail() has cost before
+		final long before = allocBean.getThreadAllocatedBytes(tid);
+		for (int i = 0; i < ALLOC_COUNT; ++i)
+			assertTrue(new Throwable().getStackTrace().length > 0);
+		final long perCaller = (allocBean.getThreadAllocatedBytes(tid) - before)
+				/ ALLOC_COUNT;
+
+		Log.consoleOut("Parsing one Data allocates %d bytes, "
+				+ "capturing the caller of one log message %d bytes",
+				perData, perCaller);
+		// parsing issues more than ten detailed messages
+		assertTrue("Disabled logging still captures the caller",
+				perData < 3 * perCaller);
+	}
+
 	private void testBinaryConversion(final Data data) throws IOException,
 			FormatException {
 		final ByteArrayOutputStream out = new ByteArrayOutputStream();
@@ -134,6 +332,505 @@ public final class DataTest extends Testcases {
 				out.toByteArray());
 		final Data newData = Data.createFromBinary(new DataInputStream(in));
 		assertEquals(data, newData);
+
+		// the same via ByteBuffers
+		final byte[] ba = out.toByteArray();
+		for (final ByteBuffer bb : new ByteBuffer[] {
+				ByteBuffer.allocate(ba.length + 3),
+				ByteBuffer.allocateDirect(ba.length + 3) }) {
+			bb.put((byte) 1);
+			data.writeToBinary(bb);
+			assertEquals(ba.length + 1, bb.position());
+			try {
+				data.writeToBinary(bb);
+				fail("BufferOverflowException not thrown");
+			} catch (final BufferOverflowException e) {
+				assertEquals(ba.length + 1, bb.position());
+			}
+			bb.flip();
+			bb.get();
+			final ByteBuffer part = bb.duplicate();
+			part.limit(part.limit() - 1);
+			try {
+				Data.createFromBinary(part);
+				fail("IOException not thrown");
+			} catch (final EOFException e) {
+				assertEquals(1, part.position());
+			}
+			assertEquals(data, Data.createFromBinary(bb));
+			assertFalse(bb.hasRemaining());
+			bb.flip();
+			bb.get();
+			final byte[] ba2 = new byte[ba.length];
+			bb.get(ba2);
+			assertTrue(Arrays.equals(ba, ba2));
+		}
+	}
+
+	@Test
+	public void testBinaryCodecSpeed() throws IOException, FormatException {
+		final List<Value> values = new ArrayList<Value>();
+		values.add(Value.createForType(ValueType.NullTermString).set("test"));
+		values.add(Value.createForType(ValueType.Float64).set("0.125"));
+		values.add(Value.createForType(ValueType.Int64).set("123456789"));
+		values.add(Value.createForType(ValueType.Data).set(
+				"some binary payload of a few bytes"));
+		final Data data = new Data(values, null);
+		final int cnt = 20000;
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		data.writeToBinary(new DataOutputStream(out));
+		final ByteBuffer bb = ByteBuffer.allocate(out.size() * cnt);
+
+		for (int round = 0; round < 5; ++round) {
+			out.reset();
+			bb.clear();
+			long start = System.nanoTime();
+			final DataOutputStream dos = new DataOutputStream(out);
+			for (int i = 0; i < cnt; ++i)
+				data.writeToBinary(dos);
+			final long streamWrite = System.nanoTime() - start;
+			start = System.nanoTime();
+			for (int i = 0; i < cnt; ++i)
+				data.writeToBinary(bb);
+			final long bufferWrite = System.nanoTime() - start;
+			assertEquals(out.size(), bb.position());
+
+			start = System.nanoTime();
+			final DataInputStream dis = new DataInputStream(
+					new ByteArrayInputStream(out.toByteArray()));
+			for (int i = 0; i < cnt; ++i)
+				Data.createFromBinary(dis);
+			final long streamRead = System.nanoTime() - start;
+			bb.flip();
+			start = System.nanoTime();
+			for (int i = 0; i < cnt; ++i)
+				Data.createFromBinary(bb);
+			final long bufferRead = System.nanoTime() - start;
+			assertFalse(bb.hasRemaining());
+
+			Log.consoleOut("%d Data: writing %d ms via stream, %d ms via "
+					+ "buffer; reading %d ms via stream, %d ms via buffer",
+					cnt, streamWrite / 1000000, bufferWrite / 1000000,
+					streamRead / 1000000, bufferRead / 1000000);
+		}
+	}
+
+	@Test
+	public void testAsciiNumbers() throws IOException, FormatException {
+		final String[] doubles = { "0", "-0.0", "+5", ".5", "5.", "0.1",
+				"3.14159", "1e22", "1e23", "-2.5E-3", "000123.4500",
+				"123456789012345678901", "0.30000000000000004",
+				"1.7976931348623157E308", "4.9E-324", "NaN", "-Infinity" };
+		for (final String str : doubles)
+			assertEquals(str, Double.valueOf(str), Data.createFromAscii(
+					"F:" + str).get(0).asDouble(), 0);
+		final Random rand = new Random(42);
+		for (int i = 0; i < 10000; ++i) {
+			final double d = (rand.nextDouble() - 0.5)
+					* Math.pow(10, rand.nextInt(40) - 20);
+			for (final String str : new String[] { String.valueOf(d),
+					String.format("%.6f", d) })
+				assertEquals(str, Double.valueOf(str), Data.createFromAscii(
+						"F:" + str).get(0).asDouble(), 0);
+		}
+		Log.consoleOut("Tested parsing floating point numbers");
+
+		final String[] longs = { "0", "-1", "+17", "007",
+				String.valueOf(Long.MAX_VALUE), String.valueOf(Long.MIN_VALUE) };
+		for (final String str : longs)
+			assertEquals(str, (long) Long.valueOf(str.replace("+", "")), Data
+					.createFromAscii(str).get(0).asLong());
+		for (final String str : new String[] { "I:9223372036854775808",
+				"I:-9223372036854775809", "I:1-2", "I:-" })
+			try {
+				Data.createFromAscii(str);
+				fail("FormatException not thrown for " + str);
+			} catch (final FormatException e) {
+				assertTrue(e.toString(), e.getMessage().contains(
+						"For input string"));
+			}
+		Log.consoleOut("Tested parsing integer numbers");
+	}
+
+	@Test
+	public void testAsciiParserSpeed() throws IOException, FormatException {
+		final int cnt = 20000;
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final Random rand = new Random(42);
+		for (int i = 0; i < cnt; ++i)
+			out.write(String.format("[T%dms]Multi|%s|%f|%f|%d|%d\n", i,
+					rand.nextDouble(), rand.nextDouble(),
+					rand.nextGaussian() * 1000, rand.nextInt(),
+					rand.nextLong()).getBytes("ISO-8859-1"));
+		final byte[] ba = out.toByteArray();
+		for (int round = 0; round < 5; ++round) {
+			final DataInputStream in = new DataInputStream(
+					new ByteArrayInputStream(ba));
+			long start = System.nanoTime();
+			for (int i = 0; i < cnt; ++i)
+				Data.createFromAscii(in);
+			final long viaStream = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			int pos = 0;
+			for (int i = 0; i < cnt; ++i) {
+				int end = pos;
+				while (ba[end] != '\n')
+					++end;
+				Data.createFromAscii(ba, pos, end - pos);
+				pos = end + 1;
+			}
+			final long viaArray = System.nanoTime() - start;
+			Log.consoleOut("Parsed %d Ascii Data (%d bytes): %d per second "
+					+ "from a stream, %d per second from an array", cnt,
+					ba.length, cnt * 1000000000L / viaStream,
+					cnt * 1000000000L / viaArray);
+		}
+	}
+
+	@Test
+	public void testAsciiWriter() throws IOException, FormatException {
+		final List<Double> doubles = new ArrayList<Double>(Arrays.asList(0.0,
+				-0.0, 1.0, -1.0, 0.1, 0.1 + 0.2, 0.001, 0.00099, 1e7,
+				9999999.5, 1e22, 123.456, -5e-324, Double.MAX_VALUE,
+				Double.NaN, Double.NEGATIVE_INFINITY));
+		final Random rand = new Random(42);
+		for (int i = 0; i < 10000; ++i) {
+			final double d = (rand.nextDouble() - 0.5)
+					* Math.pow(10, rand.nextInt(20) - 8);
+			doubles.add(d);
+			doubles.add(Math.round(d * 1000) / 1000.0);
+			doubles.add((float) d + 0.0);
+		}
+		for (final double d : doubles)
+			assertEquals(String.valueOf(d), new Data(Arrays.asList(Value
+					.createForType(ValueType.Float64).set(String.valueOf(d))),
+					null).asString());
+		Log.consoleOut("Tested writing floating point numbers");
+
+		final long[] longs = { 0, -1, 7, 10, -100, Long.MAX_VALUE,
+				Long.MIN_VALUE, rand.nextLong() };
+		for (final long l : longs)
+			assertEquals(String.valueOf(l), new Data(Arrays.asList(Value
+					.createForType(ValueType.Int64).set(String.valueOf(l))),
+					null).asString());
+		assertEquals("[ P-05 T12s ] -3 | 2.5 | Sx: 410A", new Data(Arrays
+				.asList(Value.createForType(ValueType.Int32).set("-3"), Value
+						.createForType(ValueType.Float32).set("2.5"), Value
+						.createForType(ValueType.NullTermString).set("A\n")),
+				null, (byte) -5, 12000).asString());
+		Log.consoleOut("Tested writing integer numbers and flags");
+
+		final int cnt = 20000;
+		final List<Data> list = new ArrayList<Data>(cnt);
+		for (int i = 0; i < cnt; ++i)
+			list.add(Data.createFromAscii(String.format(
+					"[T%dms]Multi|%s|%s|%d|%d", i, rand.nextDouble(), Math
+							.round(rand.nextGaussian() * 1e5) / 100.0, rand
+							.nextInt(), rand.nextLong())));
+		final AsciiBuffer buf = new AsciiBuffer();
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		for (int round = 0; round < 5; ++round) {
+			out.reset();
+			final DataOutputStream dos = new DataOutputStream(out);
+			long start = System.nanoTime();
+			for (final Data data : list)
+				data.writeToAscii(dos, true);
+			final long viaStream = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			for (final Data data : list) {
+				buf.clear();
+				data.writeToAscii(buf, true);
+			}
+			final long viaBuffer = System.nanoTime() - start;
+			Log.consoleOut("Written %d Ascii Data: %d per second to a "
+					+ "stream, %d per second to a reused buffer", cnt, cnt
+					* 1000000000L / viaStream, cnt * 1000000000L / viaBuffer);
+		}
+	}
+
+	@Test
+	public void testAsciiReader() throws IOException, FormatException {
+		final Random rand = new Random(7);
+		final int cnt = 20000;
+		final StringBuilder sb = new StringBuilder();
+		final List<String> lines = new ArrayList<String>(cnt);
+		for (int i = 0; i < cnt; ++i) {
+			final String line = String.format("[T%dms]Multi|%s|%d|%s", i,
+					rand.nextDouble(), rand.nextInt(), rand.nextInt(3) == 0 ? "x"
+							: "some longer text in the data block");
+			lines.add(Data.createFromAscii(line).asString());
+			sb.append(line);
+			if (i < cnt - 1) sb.append('\n'); // last line without line-feed
+		}
+		final byte[] ba = sb.toString().getBytes("ISO-8859-1");
+
+		// a tiny chunk which must grow and a stream which delivers only a
+		// few bytes at once, like the console does
+		DataAsciiReader rd = new DataAsciiReader(new ByteArrayInputStream(ba) {
+			@Override
+			public synchronized int read(final byte[] b, final int off,
+					final int len) {
+				return super.read(b, off, Math.min(len, 7));
+			}
+
+			@Override
+			public synchronized int available() {
+				return 0;
+			}
+		}, 4);
+		for (final String line : lines)
+			assertEquals(line, rd.read().asString());
+		assertEquals(null, rd.read());
+		assertFalse(rd.hasBufferedData());
+		Log.consoleOut("Tested reading Ascii Data in small chunks");
+
+		rd = new DataAsciiReader(new ByteArrayInputStream(ba));
+		final List<Data> batch = new ArrayList<Data>();
+		int batches = 0;
+		while (rd.readBatch(batch) > 0)
+			++batches;
+		assertEquals(cnt, batch.size());
+		assertEquals(lines.get(cnt - 1), batch.get(cnt - 1).asString());
+		assertTrue(batches < cnt / 100);
+		Log.consoleOut("Read %d Ascii Data in %d batches", cnt, batches);
+
+		rd = new DataAsciiReader(new ByteArrayInputStream(
+				"1\n[T]\n2\n".getBytes("ISO-8859-1")));
+		batch.clear();
+		assertEquals(1, rd.readBatch(batch));
+		try {
+			rd.readBatch(batch);
+			fail("FormatException not thrown");
+		} catch (final FormatException e) {
+			assertTrue(e.toString(), e.getMessage().contains("time"));
+		}
+		assertEquals("2", rd.read().asString());
+		assertEquals(null, rd.read());
+		Log.consoleOut("Tested skipping invalid lines");
+
+		for (int round = 0; round < 5; ++round) {
+			final InputStream in = new DataInputStream(
+					new ByteArrayInputStream(ba));
+			long start = System.nanoTime();
+			while (in.available() > 0)
+				Data.createFromAscii((DataInputStream) in);
+			final long viaStream = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			rd = new DataAsciiReader(new ByteArrayInputStream(ba));
+			while (rd.read() != null) {
+				// just parse
+			}
+			final long viaChunks = System.nanoTime() - start;
+			Log.consoleOut("Read %d Ascii Data: %d per second from a "
+					+ "stream, %d per second in chunks", cnt, cnt
+					* 1000000000L / viaStream, cnt * 1000000000L / viaChunks);
+		}
+	}
+
+	@Test
+	public void testIndexedFile() throws IOException, FormatException {
+		final File file = File.createTempFile("PleoCommand", ".pbd");
+		file.deleteOnExit();
+		final int cnt = 1000;
+		final List<Data> list = new ArrayList<Data>(cnt);
+		final DataFileWriter writer = new DataFileWriter(new FileOutputStream(
+				file), 256, DataFileWriter.Encoding.Plain);
+		for (int i = 0; i < cnt; ++i) {
+			final Data data = Data.createFromAscii(String.format(
+					"[T%dms]Test|%d|%d.5|%s", i * 10, i, i, i % 7 == 0 ? "x"
+							: "yy"));
+			list.add(data);
+			writer.write(data);
+		}
+		writer.close();
+		assertTrue(DataFileReader.isIndexedFile(file));
+
+		DataFileReader reader = new DataFileReader(file);
+		assertEquals(cnt, reader.getFrameCount());
+		assertTrue(reader.getBlockCount() > 10);
+		for (final Data data : list)
+			assertEquals(data, reader.read());
+		assertEquals(null, reader.read());
+		reader.seekToFrame(537);
+		assertEquals(537, reader.getPosition());
+		assertEquals(list.get(537), reader.read());
+		reader.seekToFrame(0);
+		assertEquals(list.get(0), reader.read());
+		reader.seekToTime(5005);
+		assertEquals(501, reader.getPosition());
+		assertEquals(list.get(501), reader.read());
+		assertEquals(list.get(502), reader.read());
+		reader.seekToTime(cnt * 10);
+		assertEquals(null, reader.read());
+		reader.seekToFrame(cnt);
+		assertEquals(null, reader.read());
+		final int blocks = reader.getBlockCount();
+		reader.close();
+		Log.consoleOut("Tested indexed file with %d Data in %d blocks", cnt,
+				blocks);
+
+		// cut off the index and the last block, so the index gets rebuilt
+		final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		raf.setLength(raf.length() - blocks * 24 - 16 - 10);
+		raf.close();
+		reader = new DataFileReader(file);
+		assertEquals(blocks - 1, reader.getBlockCount());
+		reader.seekToTime(2000);
+		assertEquals(list.get(200), reader.read());
+		final long rebuilt = reader.getFrameCount();
+		reader.seekToFrame(rebuilt - 1);
+		assertEquals(list.get((int) rebuilt - 1), reader.read());
+		assertEquals(null, reader.read());
+		reader.close();
+		Log.consoleOut("Tested rebuilding index of %d Data", rebuilt);
+
+		final FileOutputStream out = new FileOutputStream(file);
+		list.get(0).writeToBinary(new DataOutputStream(out));
+		out.close();
+		assertFalse(DataFileReader.isIndexedFile(file));
+		file.delete();
+	}
+
+	@Test
+	public void testIndexedFileRejectedData() throws IOException,
+			FormatException {
+		final File file = File.createTempFile("PleoCommand", ".pbd");
+		file.deleteOnExit();
+		final Data valid = new MultiFloatData(new double[4], null,
+				Data.PRIO_DEFAULT, 10);
+		final Data tooMany = new MultiFloatData(new double[40], null,
+				Data.PRIO_DEFAULT, 20);
+		for (final DataFileWriter.Encoding enc : DataFileWriter.Encoding
+				.values()) {
+			final DataFileWriter writer = new DataFileWriter(
+					new FileOutputStream(file), 64, enc);
+			// rejected as first Data of the first and of a later block
+			for (int i = 0; i < 2; ++i) {
+				try {
+					writer.write(tooMany);
+					fail(String.format("Encoding %s accepted %d values", enc,
+							tooMany.size()));
+				} catch (final IOException e) {
+					// expected
+				}
+				writer.write(valid);
+				writer.flush();
+			}
+			writer.close();
+
+			// the index must be found via the footer, not be rebuilt
+			final RandomAccessFile raf = new RandomAccessFile(file, "r");
+			raf.seek(raf.length() - 16);
+			final long indexPos = raf.readLong();
+			final int blocks = raf.readInt();
+			assertEquals(DataFileWriter.FOOTER_MAGIC, raf.readInt());
+			assertEquals(2, blocks);
+			assertEquals(raf.length(), indexPos + blocks * 24 + 16);
+			raf.close();
+
+			final DataFileReader reader = new DataFileReader(file);
+			assertEquals(2, reader.getFrameCount());
+			assertEquals(valid, reader.read());
+			assertEquals(valid, reader.read());
+			assertEquals(null, reader.read());
+			reader.seekToFrame(1);
+			assertEquals(valid, reader.read());
+			reader.close();
+		}
+		file.delete();
+	}
+
+	@Test
+	public void testRecordingEncoding() throws IOException, FormatException {
+		final File file = File.createTempFile("PleoCommand", ".pbd");
+		file.deleteOnExit();
+		final int cnt = 50000;
+		final List<Data> list = new ArrayList<Data>(cnt);
+		final Random rand = new Random(42);
+		final double[] samples = new double[8];
+		for (int i = 0; i < cnt; ++i) {
+			// 8 channels sampled with 10 bit at 100 Hz plus some events
+			for (int j = 0; j < samples.length; ++j)
+				samples[j] = Math.round((Math.sin(i / 50.0 + j) + rand
+						.nextGaussian() * 0.01) * 512) / 512.0;
+			list.add(new MultiFloatData(samples, null, Data.PRIO_DEFAULT,
+					i * 10));
+			if (i % 10 == 0)
+				list.add(new SingleFloatData(samples[0], i / 100, null,
+						Data.PRIO_DEFAULT, i * 10));
+			if (i % 1000 == 0)
+				list.add(Data.createFromAscii(String.format(
+						"[P-10 T%dms]Event|%d|some text", i * 10, i)));
+		}
+		final long[] sizes = new long[DataFileWriter.Encoding.values().length];
+		for (final DataFileWriter.Encoding enc : DataFileWriter.Encoding
+				.values()) {
+			final DataFileWriter writer = new DataFileWriter(
+					new BufferedOutputStream(new FileOutputStream(file)),
+					DataFileWriter.DEFAULT_BLOCK_SIZE, enc);
+			for (final Data data : list)
+				writer.write(data);
+			writer.close();
+			sizes[enc.ordinal()] = file.length();
+
+			final DataFileReader reader = new DataFileReader(file);
+			assertEquals(list.size(), reader.getFrameCount());
+			for (final Data data : list)
+				assertEquals(data, reader.read());
+			assertEquals(null, reader.read());
+			reader.seekToFrame(list.size() / 2 + 3);
+			assertEquals(list.get(list.size() / 2 + 3), reader.read());
+			reader.close();
+		}
+		file.delete();
+		final long plain = sizes[DataFileWriter.Encoding.Plain.ordinal()];
+		final long delta = sizes[DataFileWriter.Encoding.Delta.ordinal()];
+		final long xor = sizes[DataFileWriter.Encoding.DeltaXor.ordinal()];
+		// repeated headers are gone, but the noisy doubles stay the same
+		assertTrue("Delta encoding too large: " + delta + " of " + plain,
+				delta < plain * 9 / 10);
+		// only the changed bits of the 10 bit samples are stored
+		assertTrue("DeltaXor encoding too large: " + xor + " of " + plain,
+				xor < plain / 3);
+	}
+
+	@Test
+	public void testRecordingManyChannels() throws IOException,
+			FormatException {
+		final File file = File.createTempFile("PleoCommand", ".pbd");
+		file.deleteOnExit();
+		// 31 channels plus the identifier is the maximum of binary Data
+		final Data max = new MultiFloatData(new double[31], null,
+				Data.PRIO_DEFAULT, 10);
+		final Data tooMany = new MultiFloatData(new double[40], null,
+				Data.PRIO_DEFAULT, 20);
+		for (final DataFileWriter.Encoding enc : DataFileWriter.Encoding
+				.values()) {
+			final DataFileWriter writer = new DataFileWriter(
+					new FileOutputStream(file),
+					DataFileWriter.DEFAULT_BLOCK_SIZE, enc);
+			writer.write(max);
+			writer.write(max);
+			try {
+				writer.write(tooMany);
+				fail(String.format("Encoding %s accepted %d values", enc,
+						tooMany.size()));
+			} catch (final IOException e) {
+				assertTrue(e.toString(), e.getMessage().contains("32"));
+			}
+			writer.write(max);
+			writer.close();
+
+			final DataFileReader reader = new DataFileReader(file);
+			for (int i = 0; i < 3; ++i)
+				assertEquals(max, reader.read());
+			assertEquals(null, reader.read());
+			reader.close();
+		}
+		file.delete();
 	}
 
 	private void testAsciiConversion(final Data data) throws IOException,
@@ -0,0 +1,143 @@
+// This file is part of PleoCommand:
+// Interactively control Pleo with psychobiological parameters
+//
+// Copyright (C) 2010 Oliver Hoffmann - Hoffmann_Oliver@gmx.de
+//
+// This program is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License
+// as published by the Free Software Foundation; either version 2
+// of the License, or (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Boston, USA.
+
+package test.pleocmd.pipe.in;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import pleocmd.Log;
+import pleocmd.cfg.Configuration;
+import pleocmd.pipe.Pipe;
+import pleocmd.pipe.data.Data;
+import pleocmd.pipe.data.MultiFloatData;
+import pleocmd.pipe.in.LocalChannel;
+import pleocmd.pipe.in.LocalInput;
+import pleocmd.pipe.in.SharedMemoryRing;
+import test.pleocmd.Testcases;
+
+public final class LocalInputTest extends Testcases {
+
+	private static final int BLOCKS = 20000;
+
+	@Test
+	public void testSharedMemory() throws Exception {
+		final File file = File.createTempFile("LocalInputTest", null);
+		try {
+			final Pipe pipe = new Pipe(new Configuration());
+			// a tiny ring, so the producer has to wrap around and wait often
+			final LocalInput in = new LocalInput(file,
+					LocalChannel.SharedMemory, 4);
+			pipe.addInput(in);
+			in.configure();
+			in.init();
+
+			final Thread producer = new Thread("LocalInputTest-Producer") {
+				@Override
+				public void run() {
+					try {
+						final SharedMemoryRing ring = SharedMemoryRing
+								.open(file);
+						final ByteBuffer scratch = ByteBuffer.allocate(1024);
+						for (int i = 0; i < BLOCKS; ++i) {
+							final Data data = Data.createFromAscii(String
+									.format("Test|%d.0|%d.5", i, i % 7));
+							while (!ring.offer(data, scratch))
+								Thread.yield();
+						}
+						ring.finish();
+						ring.close();
+					} catch (final Exception e) { // CS_IGNORE
+						Log.error(e);
+					}
+				}
+			};
+			producer.start();
+			for (int i = 0; i < BLOCKS; ++i) {
+				final Data data = in.readData();
+				assertEquals(i, MultiFloatData.getValue(data, 0), 0);
+				assertEquals(i % 7 + 0.5, MultiFloatData.getValue(data, 1), 0);
+			}
+			assertNull(in.readData());
+			producer.join();
+			in.close();
+			Log.consoleOut("Passed %d blocks through shared memory: %s",
+					BLOCKS, in.getFeedback().getDetails());
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testNamedPipe() throws Exception {
+		final File file = new File(System.getProperty("java.io.tmpdir"),
+				"LocalInputTest-" + System.nanoTime());
+		try {
+			if (new ProcessBuilder("mkfifo", file.getPath()).start()
+					.waitFor() != 0) {
+				Log.consoleOut("Cannot create named pipe - skipping test");
+				return;
+			}
+		} catch (final Exception e) { // CS_IGNORE
+			Log.consoleOut("Cannot create named pipe - skipping test");
+			return;
+		}
+		try {
+			final Pipe pipe = new Pipe(new Configuration());
+			final LocalInput in = new LocalInput(file,
+					LocalChannel.NamedPipe, 4);
+			pipe.addInput(in);
+			in.configure();
+			in.init();
+
+			final Thread producer = new Thread("LocalInputTest-Producer") {
+				@Override
+				public void run() {
+					try {
+						final DataOutputStream out = new DataOutputStream(
+								new FileOutputStream(file));
+						for (int i = 0; i < BLOCKS; ++i)
+							Data.createFromAscii(String.format("Test|%d.0", i))
+									.writeToBinary(out);
+						out.close();
+					} catch (final Exception e) { // CS_IGNORE
+						Log.error(e);
+					}
+				}
+			};
+			producer.start();
+			for (int i = 0; i < BLOCKS; ++i)
+				assertEquals(i, MultiFloatData.getValue(in.readData(), 0), 0);
+			assertNull(in.readData());
+			producer.join();
+			in.close();
+			Log.consoleOut("Passed %d blocks through a named pipe", BLOCKS);
+		} finally {
+			file.delete();
+		}
+	}
+
+}
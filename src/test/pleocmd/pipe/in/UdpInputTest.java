@@ -0,0 +1,119 @@
+// This file is part of PleoCommand:
+// Interactively control Pleo with psychobiological parameters
+//
+// Copyright (C) 2010 Oliver Hoffmann - Hoffmann_Oliver@gmx.de
+//
+// This program is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License
+// as published by the Free Software Foundation; either version 2
+// of the License, or (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Boston, USA.
+
+package test.pleocmd.pipe.in;
+
+import static org.junit.Assert.assertEquals;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import pleocmd.Log;
+import pleocmd.cfg.Configuration;
+import pleocmd.pipe.Pipe;
+import pleocmd.pipe.data.Data;
+import pleocmd.pipe.data.MultiFloatData;
+import pleocmd.pipe.in.LatePacketPolicy;
+import pleocmd.pipe.in.UdpInput;
+import test.pleocmd.Testcases;
+
+public final class UdpInputTest extends Testcases {
+
+	private static final int PORT = 19878;
+
+	/**
+	 * Sequence numbers of the datagrams in the order they are sent: 3 is
+	 * late and then duplicated, 7 is missing.
+	 */
+	private static final int[] SEQUENCE = { 0, 1, 2, 4, 5, 3, 3, 6, 8 };
+
+	@Test
+	public void testLossAccounting() throws Exception {
+		List<Integer> got = receive(SEQUENCE, LatePacketPolicy.Drop,
+				14, "9 datagrams with 14 Data, 1 lost, 1 reordered, 1 late dropped, "
+				+ "1 duplicates, 0 invalid");
+		assertEquals(Arrays.asList(0, 1, 2, 4, 5, 6, 8), got);
+		Log.consoleOut("Dropped late UDP datagram");
+
+		got = receive(SEQUENCE, LatePacketPolicy.Deliver, 16,
+				"9 datagrams with 16 Data, 1 lost, 1 reordered, 0 late dropped, 1 duplicates, "
+				+ "0 invalid");
+		assertEquals(Arrays.asList(0, 1, 2, 4, 5, 3, 6, 8), got);
+		Log.consoleOut("Delivered late UDP datagram");
+	}
+
+	@Test
+	public void testVeryLateDuplicate() throws Exception {
+		// 50 is late by 150 datagrams and then duplicated
+		final int[] sequence = new int[203];
+		for (int i = 0; i < 200; ++i)
+			sequence[i] = i < 50 ? i : i + 1;
+		sequence[200] = 50;
+		sequence[201] = 50;
+		sequence[202] = 201;
+		final List<Integer> got = receive(sequence, LatePacketPolicy.Deliver,
+				404, "203 datagrams with 404 Data, 0 lost, 1 reordered, "
+						+ "0 late dropped, 1 duplicates, 0 invalid");
+		assertEquals(Arrays.asList(50, 201), got.subList(200, 202));
+		Log.consoleOut("Dropped very late duplicate UDP datagram");
+	}
+
+	private static List<Integer> receive(final int[] sequence,
+			final LatePacketPolicy policy, final int expected,
+			final String expectedStats) throws Exception {
+		final Pipe pipe = new Pipe(new Configuration());
+		final UdpInput in = new UdpInput(PORT, policy);
+		pipe.addInput(in);
+		in.configure();
+		in.init();
+
+		// a loopback sender with two Data blocks per datagram
+		final DatagramSocket ds = new DatagramSocket();
+		final ByteBuffer bb = ByteBuffer.allocate(UdpInput.MAX_DATAGRAM_SIZE);
+		for (final int seq : sequence) {
+			bb.clear();
+			UdpInput.writeDatagram(bb, seq, Arrays.asList(Data
+					.createFromAscii(seq + ".0|0.5"), Data
+					.createFromAscii(seq + ".0|1.5")));
+			ds.send(new DatagramPacket(bb.array(), bb.position(), InetAddress
+					.getLocalHost(), PORT));
+		}
+		ds.close();
+
+		final List<Integer> seqs = new ArrayList<Integer>();
+		for (int i = 0; i < expected; ++i) {
+			final Data data = in.readData();
+			assertEquals(i % 2 + 0.5, MultiFloatData.getValue(data, 1), 0);
+			if (i % 2 == 0)
+				seqs.add((int) MultiFloatData.getValue(data, 0));
+		}
+		in.close();
+		assertEquals(expectedStats, in.getFeedback().getDetails().values()
+				.iterator().next());
+		return seqs;
+	}
+
+}